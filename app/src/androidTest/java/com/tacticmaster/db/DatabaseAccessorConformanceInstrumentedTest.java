@@ -0,0 +1,260 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.COLUMN_FEN;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_MOVES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEMES;
+import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
+import static java.util.Objects.isNull;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The SQLite {@link DatabaseAccessor} held to the contract of the unit tests'
+ * PuzzleRepositoryConformanceTest, over the same pack. SQLite only runs on a device, so the
+ * contract is repeated here; keep the two in step. Both databases live in memory and the
+ * side files in a fresh directory, so the app's own progress is never touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseAccessorConformanceInstrumentedTest {
+
+    private static final String FEN = "8/8/8/8/8/8/8/K6k w - - 0 1";
+    private static final List<Puzzle> PUZZLES = List.of(
+            new Puzzle("aaa01", FEN, "a1a2 h1h2", 1200, "fork", false),
+            new Puzzle("aaa02", FEN, "a1b1", 1200, "pin", false),
+            new Puzzle("aaa03", FEN, "a1a2", 1400, "fork pin", false),
+            new Puzzle("aaa04", FEN, "a1b2 h1g1", 1600, "endgame", false),
+            new Puzzle("aaa05", FEN, "a1a2", 1800, "fork", false)
+    );
+
+    private SQLiteDatabase puzzleDatabase;
+    private SQLiteDatabase progressDatabase;
+    private File filesDir;
+    private DatabaseAccessor repository;
+
+    @Before
+    public void createRepository() {
+        puzzleDatabase = SQLiteDatabase.create(null);
+        puzzleDatabase.execSQL("CREATE TABLE " + PUZZLE_TABLE_NAME + " (" +
+                COLUMN_PUZZLE_ID + " TEXT, " + COLUMN_FEN + " TEXT, " + COLUMN_MOVES + " TEXT, " +
+                COLUMN_RATING + " INTEGER, " + COLUMN_THEMES + " TEXT, UNIQUE(" + COLUMN_PUZZLE_ID + "))");
+        try (SQLiteStatement insert = puzzleDatabase.compileStatement("INSERT INTO " + PUZZLE_TABLE_NAME +
+                " VALUES (?, ?, ?, ?, ?)")) {
+            for (Puzzle puzzle : PUZZLES) {
+                insert.bindString(1, puzzle.puzzleId());
+                insert.bindString(2, puzzle.fen());
+                insert.bindString(3, puzzle.moves());
+                insert.bindLong(4, puzzle.rating());
+                insert.bindString(5, puzzle.themes());
+                insert.executeInsert();
+            }
+        }
+        DatabaseHelper.createSamplingIndex(puzzleDatabase);
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        DatabaseHelper dbHelper = new InMemoryDatabaseHelper(context);
+        progressDatabase = SQLiteDatabase.create(null);
+        dbHelper.onCreate(progressDatabase);
+        filesDir = new File(context.getCacheDir(), "conformance-" + System.nanoTime());
+        assertTrue(filesDir.mkdirs());
+        repository = new DatabaseAccessor(dbHelper);
+    }
+
+    @After
+    public void closeRepository() {
+        repository.close();
+        puzzleDatabase.close();
+        progressDatabase.close();
+        File[] files = filesDir.listFiles();
+        if (!isNull(files)) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        filesDir.delete();
+    }
+
+    private List<Puzzle> sample(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask) {
+        return repository.getPuzzlesWithinRange(lowestRating, highestRating, excludedPuzzleIds, themeMask);
+    }
+
+    private static Set<String> idsOf(List<Puzzle> puzzles) {
+        return puzzles.stream().map(Puzzle::puzzleId).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testEveryPuzzleIsFoundById() {
+        for (Puzzle puzzle : PUZZLES) {
+            assertEquals(puzzle, repository.getPuzzleById(puzzle.puzzleId()));
+        }
+    }
+
+    @Test
+    public void testUnknownIdIsNotFound() {
+        assertThrows(NoSuchElementException.class, () -> repository.getPuzzleById("zzz99"));
+    }
+
+    @Test
+    public void testCountsPuzzlesAndSolves() {
+        assertEquals(PUZZLES.size(), repository.getAllPuzzleCount());
+        assertEquals(0, repository.getSolvedPuzzleCount());
+
+        repository.setSolved("aaa03");
+        repository.setSolved("aaa03");
+
+        assertEquals(1, repository.getSolvedPuzzleCount());
+    }
+
+    @Test
+    public void testSamplesStayInTheBandWithOnePuzzlePerRating() {
+        for (int i = 0; i < 20; i++) {
+            List<Puzzle> sampled = sample(1200, 1400, Set.of(), ThemeMask.NONE);
+
+            assertEquals(2, sampled.size());
+            assertEquals(2, sampled.stream().map(Puzzle::rating).distinct().count());
+            assertTrue(sampled.stream().allMatch(puzzle -> puzzle.rating() >= 1200 && puzzle.rating() <= 1400));
+            assertTrue(sampled.stream().noneMatch(Puzzle::solved));
+        }
+    }
+
+    @Test
+    public void testSamplesEveryRatingOfAWideBand() {
+        Set<Integer> ratings = new HashSet<>();
+        sample(0, 3000, Set.of(), ThemeMask.NONE).forEach(puzzle -> ratings.add(puzzle.rating()));
+
+        assertEquals(Set.of(1200, 1400, 1600, 1800), ratings);
+    }
+
+    @Test
+    public void testSolvedAndExcludedPuzzlesAreNotSampled() {
+        repository.setSolved("aaa03");
+
+        assertFalse(repository.wasNotSolved("aaa03"));
+        assertTrue(repository.wasNotSolved("aaa04"));
+        assertTrue(repository.getPuzzleById("aaa03").solved());
+        assertEquals(Set.of("aaa04"), idsOf(sample(1300, 1700, Set.of(), ThemeMask.NONE)));
+        assertTrue(sample(1300, 1700, Set.of("aaa04"), ThemeMask.NONE).isEmpty());
+    }
+
+    @Test
+    public void testSamplesOnlyPuzzlesWithAMaskedTheme() {
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Set.of("aaa02", "aaa03"), idsOf(sample(1000, 2000, Set.of("aaa01"), ThemeMask.bitOf("pin"))));
+        }
+        assertTrue(sample(1000, 2000, Set.of(), ThemeMask.bitOf("zugzwang")).isEmpty());
+    }
+
+    @Test
+    public void testEmptyBandSamplesNothing() {
+        assertTrue(sample(1900, 2500, Set.of(), ThemeMask.NONE).isEmpty());
+        assertTrue(sample(1300, 1350, Set.of(), ThemeMask.NONE).isEmpty());
+    }
+
+    @Test
+    public void testListsTheThemesOfThePack() {
+        assertEquals(Set.of("endgame", "fork", "pin"), repository.getPuzzleThemes());
+    }
+
+    @Test
+    public void testThemesWithoutUnsolvedPuzzlesAreNotListed() {
+        repository.setSolved("aaa04");
+
+        assertEquals(Set.of("fork", "pin"), repository.getPuzzleThemes());
+    }
+
+    @Test
+    public void testIdIndexCompletesEveryIdOfThePack() {
+        PuzzleIdIndex index = repository.getPuzzleIdIndex();
+
+        assertEquals(PUZZLES.size(), index.size());
+        assertEquals(List.of("aaa01", "aaa02", "aaa03", "aaa04", "aaa05"), index.complete("aaa0", 10));
+        assertEquals(List.of("aaa04"), index.complete("aaa04", 10));
+        assertTrue(index.complete("b", 10).isEmpty());
+    }
+
+    @Test
+    public void testRatingHistogramFollowsSolves() {
+        RatingHistogram histogram = repository.getRatingHistogram();
+        assertEquals(PUZZLES.size(), histogram.unsolved(1000, 2000, ThemeMask.NONE));
+
+        repository.setSolved("aaa01");
+        repository.setSolved("aaa01");
+
+        assertEquals(PUZZLES.size() - 1, histogram.unsolved(1000, 2000, ThemeMask.NONE));
+        assertEquals(2, histogram.unsolved(1000, 2000, ThemeMask.bitOf("pin")));
+    }
+
+    @Test
+    public void testNoReviewIsDueWithoutAFailedAttempt() {
+        assertNull(repository.pollDueReview(ThemeMask.NONE));
+    }
+
+    /**
+     * Hands out the in-memory databases instead of installing the pack and opening the app's
+     * progress store.
+     */
+    private final class InMemoryDatabaseHelper extends DatabaseHelper {
+
+        InMemoryDatabaseHelper(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void createDatabase() {
+        }
+
+        @Override
+        public synchronized SQLiteDatabase acquireDatabase() {
+            return puzzleDatabase;
+        }
+
+        @Override
+        public synchronized void releaseDatabase() {
+        }
+
+        @Override
+        public SQLiteDatabase getWritableDatabase() {
+            return progressDatabase;
+        }
+
+        @Override
+        File progressJournalFile() {
+            return new File(filesDir, PROGRESS_JOURNAL_NAME);
+        }
+
+        @Override
+        File themePerformanceFile() {
+            return new File(filesDir, THEME_PERFORMANCE_NAME);
+        }
+
+        @Override
+        File puzzleCacheFile(PuzzleBackend backend) {
+            return new File(filesDir, PUZZLE_CACHE_NAME);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.COLUMN_FEN;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_MOVES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEMES;
+import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
+import static org.junit.Assert.assertFalse;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Runs EXPLAIN QUERY PLAN for the hot statements against a generated puzzle pack and a fresh
+ * progress database, and fails as soon as the planner falls back to a full table scan, e.g.
+ * because an index was dropped or a query stopped matching it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanInstrumentedTest {
+
+    private static final int FIXTURE_PUZZLES = 5_000;
+    private static final String FEN = "8/8/8/8/8/8/8/K6k w - - 0 1";
+
+    private SQLiteDatabase puzzleDatabase;
+    private SQLiteDatabase progressDatabase;
+
+    @Before
+    public void createFixture() {
+        puzzleDatabase = SQLiteDatabase.create(null);
+        // Same shape as the table tactics-generator ships in the pack.
+        puzzleDatabase.execSQL("CREATE TABLE " + PUZZLE_TABLE_NAME + " (" +
+                COLUMN_PUZZLE_ID + " TEXT, " + COLUMN_FEN + " TEXT, " + COLUMN_MOVES + " TEXT, " +
+                COLUMN_RATING + " INTEGER, " + COLUMN_THEMES + " TEXT, UNIQUE(" + COLUMN_PUZZLE_ID + "))");
+        puzzleDatabase.beginTransaction();
+        try (SQLiteStatement insert = puzzleDatabase.compileStatement("INSERT INTO " + PUZZLE_TABLE_NAME +
+                " VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < FIXTURE_PUZZLES; i++) {
+                insert.bindString(1, String.format(Locale.ROOT, "p%05d", i));
+                insert.bindString(2, FEN);
+                insert.bindString(3, "a1a2 h1h2");
+                insert.bindLong(4, 600 + (i * 37L) % 2400);
+                insert.bindString(5, ThemeMask.THEMES.get(i % ThemeMask.THEMES.size()));
+                insert.executeInsert();
+            }
+            puzzleDatabase.setTransactionSuccessful();
+        } finally {
+            puzzleDatabase.endTransaction();
+        }
+        DatabaseHelper.createSamplingIndex(puzzleDatabase);
+
+        progressDatabase = SQLiteDatabase.create(null);
+        new DatabaseHelper(InstrumentationRegistry.getInstrumentation().getTargetContext()).onCreate(progressDatabase);
+    }
+
+    @After
+    public void closeFixture() {
+        puzzleDatabase.close();
+        progressDatabase.close();
+    }
+
+    @Test
+    public void testPuzzleLookupsSearchById() {
+        assertNoFullScan(puzzleDatabase, DatabaseAccessor.PUZZLE_BY_ID);
+        assertNoFullScan(puzzleDatabase, DatabaseAccessor.RATING_BY_ID);
+    }
+
+    @Test
+    public void testSamplingPagesSeekIntoTheSamplingIndex() {
+        List<String> unused = new ArrayList<>();
+        String themeFilter = PuzzleSampler.buildFilter(1L, unused);
+        String excludedRatings = PuzzleSampler.excludeRatings(Set.of(1500, 1600), unused);
+        for (String where : List.of(PuzzleSampler.WITHIN_RATING, PuzzleSampler.ABOVE_RATING)) {
+            assertNoFullScan(puzzleDatabase, PuzzleSampler.pageQuery(where, ""));
+            assertNoFullScan(puzzleDatabase, PuzzleSampler.pageQuery(where, themeFilter));
+            assertNoFullScan(puzzleDatabase, PuzzleSampler.pageQuery(where, themeFilter + excludedRatings));
+        }
+    }
+
+    @Test
+    public void testProgressUpdatesSearchById() {
+        assertNoFullScan(progressDatabase, ProgressStore.MARK_SOLVED);
+    }
+
+    @Test
+    public void testReviewQueriesUseTheDueIndex() {
+        assertNoFullScan(progressDatabase, ReviewStore.REVIEW_BY_ID);
+        assertNoFullScan(progressDatabase, ReviewStore.REVIEWS_AFTER + PuzzleSampler.PAGE_SIZE);
+    }
+
+    private static void assertNoFullScan(SQLiteDatabase db, String sql) {
+        String[] args = new String[(int) sql.chars().filter(c -> c == '?').count()];
+        Arrays.fill(args, "1");
+        List<String> plan = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        }
+        assertFalse("No plan for " + sql, plan.isEmpty());
+        for (String step : plan) {
+            // "SCAN t USING INDEX i" walks an index in order; a bare "SCAN t" reads every row.
+            assertFalse("Full table scan in " + sql + ": " + plan, step.startsWith("SCAN") && !step.contains(" USING "));
+        }
+    }
+}
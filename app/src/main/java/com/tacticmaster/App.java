@@ -1,6 +1,7 @@
 package com.tacticmaster;
 
 import android.app.Application;
+import android.os.StrictMode;
 
 import org.acra.ACRA;
 import org.acra.config.CoreConfigurationBuilder;
@@ -13,6 +14,15 @@ public class App extends Application {
     public void onCreate() {
         super.onCreate();
 
+        if (BuildConfig.DEBUG) {
+            // Database work runs on DatabaseExecutor; flag anything that slips back onto the UI thread.
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+        }
+
         var toastConfiguration = new ToastConfigurationBuilder()
                 .withText(getString(R.string.acra_toast_text))
                 .build();
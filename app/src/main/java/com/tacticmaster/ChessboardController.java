@@ -4,10 +4,13 @@ import static java.util.Objects.isNull;
 
 import android.content.ActivityNotFoundException;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.tacticmaster.board.ChessboardView;
-import com.tacticmaster.db.DatabaseAccessor;
+import com.tacticmaster.db.DatabaseExecutor;
+import com.tacticmaster.db.PuzzleRepository;
+import com.tacticmaster.puzzle.PuzzleAttempt;
 import com.tacticmaster.puzzle.PuzzleGame;
 import com.tacticmaster.puzzle.PuzzleManager;
 import com.tacticmaster.puzzle.PuzzleThemesDialogHelper;
@@ -23,7 +26,8 @@ public class ChessboardController implements ChessboardView.PuzzleFinishedListen
     private static final String TAG = "ChessboardController";
     private static final String LICHESS_TRAINING_URL = "https://lichess.org/training/";
 
-    private final DatabaseAccessor databaseAccessor;
+    private final PuzzleRepository puzzleRepository;
+    private final DatabaseExecutor databaseExecutor;
     private final ChessboardView chessboardView;
     private final PuzzleTextViews puzzleTextViews;
     private final PuzzleManager puzzleManager;
@@ -33,17 +37,25 @@ public class ChessboardController implements ChessboardView.PuzzleFinishedListen
     private int playerRating;
     private boolean autoplay;
     private String pieceSet;
+    // When the current puzzle was put on the board, for the attempt's solve time.
+    private String shownPuzzleId;
+    private long puzzleShownAt;
+    private boolean boardShown;
 
     public ChessboardController(
-            DatabaseAccessor databaseAccessor,
+            PuzzleRepository puzzleRepository,
+            DatabaseExecutor databaseExecutor,
             SettingsManager settingsManager,
             PuzzleManager puzzleManager,
             PuzzleThemesDialogHelper puzzleThemesDialogHelper,
             ChessboardView chessboardView,
             PuzzleTextViews puzzleTextViews) {
 
-        if (isNull(databaseAccessor)) {
-            throw new IllegalArgumentException("DatabaseAccessor cannot be null");
+        if (isNull(puzzleRepository)) {
+            throw new IllegalArgumentException("PuzzleRepository cannot be null");
+        }
+        if (isNull(databaseExecutor)) {
+            throw new IllegalArgumentException("DatabaseExecutor cannot be null");
         }
         if (isNull(settingsManager)) {
             throw new IllegalArgumentException("SettingsManager cannot be null");
@@ -61,7 +73,8 @@ public class ChessboardController implements ChessboardView.PuzzleFinishedListen
             throw new IllegalArgumentException("PuzzleTextViews cannot be null");
         }
 
-        this.databaseAccessor = databaseAccessor;
+        this.puzzleRepository = puzzleRepository;
+        this.databaseExecutor = databaseExecutor;
         this.settingsManager = settingsManager;
         this.puzzleManager = puzzleManager;
         this.puzzleThemesDialogHelper = puzzleThemesDialogHelper;
@@ -111,34 +124,66 @@ public class ChessboardController implements ChessboardView.PuzzleFinishedListen
     }
 
 
+    /**
+     * Shows the current puzzle. The solved/total header is filled in once the counters
+     * arrive from the read pool. Does nothing while the first batch is still loading;
+     * the pending load renders when it lands.
+     */
     public void renderPuzzle() {
+        if (!puzzleManager.hasCurrentPuzzle()) {
+            Log.d(TAG, "No puzzle loaded yet, skipping render");
+            return;
+        }
         var puzzle = puzzleManager.getCurrentPuzzle();
         chessboardView.setPuzzle(puzzle);
+        // Re-renders, e.g. after a theme change or a finished puzzle, keep the solve clock running.
+        if (!puzzle.getPuzzleId().equals(shownPuzzleId)) {
+            shownPuzzleId = puzzle.getPuzzleId();
+            puzzleShownAt = SystemClock.elapsedRealtime();
+        }
+        if (!boardShown) {
+            boardShown = true;
+            // Posted behind the frame setPuzzle invalidated, so the trace ends once it is drawn.
+            chessboardView.post(() -> StartupTrace.onFirstBoardDrawn(chessboardView.getContext()));
+        }
         settingsManager.setLastPuzzleId(puzzle.getPuzzleId());
+        var shown = puzzle.toPuzzle();
+        databaseExecutor.write(() -> puzzleRepository.rememberPuzzle(shown));
 
         puzzleTextViews.setPuzzleId(puzzle.getPuzzleId());
         puzzleTextViews.setPuzzleRating(puzzle.rating());
-        puzzleTextViews.setPuzzlesSolvedCount(databaseAccessor.getSolvedPuzzleCount(), databaseAccessor.getAllPuzzleCount());
+        databaseExecutor.read(() -> new int[]{puzzleRepository.getSolvedPuzzleCount(), puzzleRepository.getAllPuzzleCount()},
+                counts -> puzzleTextViews.setPuzzlesSolvedCount(counts[0], counts[1]),
+                e -> Log.w(TAG, "Could not read puzzle counters", e));
         puzzleTextViews.setPlayerRating(playerRating);
         puzzleTextViews.setPuzzleSolved(puzzle.solved());
-        puzzleThemesDialogHelper.prepareDialogContent(chessboardView.getContext(), puzzleTextViews.getFilterButton(), puzzleTextViews.getFilterDropdown(), this::renderPuzzle);
+        puzzleThemesDialogHelper.prepareDialogContent(chessboardView.getContext(), puzzleTextViews.getFilterButton(), puzzleTextViews.getFilterDropdown(), this::loadNextPuzzle);
     }
 
     public void loadPreviousPuzzle() {
-        puzzleManager.moveToPreviousPuzzle();
-        renderPuzzle();
+        databaseExecutor.write(() -> {
+            puzzleManager.moveToPreviousPuzzle();
+            return null;
+        }, result -> renderPuzzle(), this::onNoMorePuzzles);
     }
 
     public void loadNextPuzzle() {
-        try {
+        databaseExecutor.write(() -> {
             puzzleManager.moveToNextPuzzle();
-        } catch (NoSuchElementException e) {
+            return null;
+        }, result -> {
+            renderPuzzle();
+            Log.d(TAG, "Successfully loaded next puzzle");
+        }, this::onNoMorePuzzles);
+    }
+
+    private void onNoMorePuzzles(Exception e) {
+        if (e instanceof NoSuchElementException) {
             chessboardView.makeText(R.string.no_more_puzzles);
             Log.w(TAG, "No more puzzles available", e);
-            return;
+        } else {
+            Log.e(TAG, "Failed to load puzzles", e);
         }
-        renderPuzzle();
-        Log.d(TAG, "Successfully loaded next puzzle");
     }
 
     public void restoreLastPuzzleOrLoadNext(String lastPuzzleId) {
@@ -146,15 +191,20 @@ public class ChessboardController implements ChessboardView.PuzzleFinishedListen
             loadNextPuzzle();
             return;
         }
-        try {
+        databaseExecutor.write(() -> {
             puzzleManager.loadPuzzleById(lastPuzzleId);
-        } catch (NoSuchElementException e) {
-            Log.w(TAG, "Saved puzzle ID no longer available, loading next: " + lastPuzzleId, e);
+            return null;
+        }, result -> {
+            renderPuzzle();
+            Log.d(TAG, "Restored last puzzle: " + lastPuzzleId);
+        }, e -> {
+            if (e instanceof NoSuchElementException) {
+                Log.w(TAG, "Saved puzzle ID no longer available, loading next: " + lastPuzzleId, e);
+            } else {
+                Log.e(TAG, "Failed to restore puzzle " + lastPuzzleId + ", loading next", e);
+            }
             loadNextPuzzle();
-            return;
-        }
-        renderPuzzle();
-        Log.d(TAG, "Restored last puzzle: " + lastPuzzleId);
+        });
     }
 
     public void loadPuzzleById(String puzzleId) {
@@ -164,15 +214,20 @@ public class ChessboardController implements ChessboardView.PuzzleFinishedListen
             return;
         }
 
-        try {
+        databaseExecutor.write(() -> {
             puzzleManager.loadPuzzleById(puzzleId);
-        } catch (NoSuchElementException e) {
-            chessboardView.makeText(R.string.invalid_puzzle_id);
-            Log.w(TAG, "Invalid puzzle ID: " + puzzleId, e);
-            return;
-        }
-        renderPuzzle();
-        Log.d(TAG, "Successfully loaded puzzle by ID: " + puzzleId);
+            return null;
+        }, result -> {
+            renderPuzzle();
+            Log.d(TAG, "Successfully loaded puzzle by ID: " + puzzleId);
+        }, e -> {
+            if (e instanceof NoSuchElementException) {
+                chessboardView.makeText(R.string.invalid_puzzle_id);
+                Log.w(TAG, "Invalid puzzle ID: " + puzzleId, e);
+            } else {
+                Log.e(TAG, "Failed to load puzzle " + puzzleId, e);
+            }
+        });
     }
 
     public void puzzleIdLinkClicked() {
@@ -232,21 +287,47 @@ public class ChessboardController implements ChessboardView.PuzzleFinishedListen
         return this.autoplay;
     }
 
+    /**
+     * Queues the finished attempt on the writer; the rating has already been updated for it.
+     */
+    private void recordPuzzleAttempt(PuzzleGame puzzle, boolean solved, long solveTimeMillis, int ratingBefore) {
+        var attempt = new PuzzleAttempt(puzzle.getPuzzleId(), puzzle.themes(), puzzle.rating(), System.currentTimeMillis(),
+                solveTimeMillis, puzzle.hintsUsed(), solved, ratingBefore, playerRating);
+        databaseExecutor.write(() -> puzzleRepository.recordPuzzleAttempt(attempt));
+    }
+
     @Override
     public void onPuzzleSolved(PuzzleGame puzzle) {
-        if (databaseAccessor.wasNotSolved(puzzle.getPuzzleId())) {
-            databaseAccessor.setSolved(puzzle.getPuzzleId());
-            updatePlayerRating(puzzle.rating(), 1.0);
-            puzzle.setSolved(true);
-            puzzleTextViews.setPuzzleSolved(true);
-        }
+        String puzzleId = puzzle.getPuzzleId();
+        long solveTimeMillis = SystemClock.elapsedRealtime() - puzzleShownAt;
+        databaseExecutor.write(() -> {
+            boolean firstSolve = puzzleRepository.wasNotSolved(puzzleId);
+            if (firstSolve) {
+                puzzleRepository.setSolved(puzzleId);
+            }
+            return firstSolve;
+        }, firstSolve -> {
+            int ratingBefore = playerRating;
+            if (firstSolve) {
+                updatePlayerRating(puzzle.rating(), 1.0);
+                puzzle.setSolved(true);
+                puzzleTextViews.setPuzzleSolved(true);
+            }
+            recordPuzzleAttempt(puzzle, true, solveTimeMillis, ratingBefore);
+        }, e -> Log.e(TAG, "Could not record solved puzzle " + puzzleId, e));
     }
 
     @Override
     public void onPuzzleNotSolved(PuzzleGame puzzle) {
-        if (databaseAccessor.wasNotSolved(puzzle.getPuzzleId())) {
-            updatePlayerRating(puzzle.rating(), 0.0);
-        }
+        String puzzleId = puzzle.getPuzzleId();
+        long solveTimeMillis = SystemClock.elapsedRealtime() - puzzleShownAt;
+        databaseExecutor.write(() -> puzzleRepository.wasNotSolved(puzzleId), notSolved -> {
+            int ratingBefore = playerRating;
+            if (notSolved) {
+                updatePlayerRating(puzzle.rating(), 0.0);
+            }
+            recordPuzzleAttempt(puzzle, false, solveTimeMillis, ratingBefore);
+        }, e -> Log.e(TAG, "Could not record failed puzzle " + puzzleId, e));
     }
 
     @Override
@@ -256,12 +337,21 @@ public class ChessboardController implements ChessboardView.PuzzleFinishedListen
         }
     }
 
+    /**
+     * Writes journaled progress to the database, e.g. when the app goes to the background.
+     */
+    public void flushProgress() {
+        databaseExecutor.write(puzzleRepository::flushProgress);
+    }
+
     /**
      * Cleans up resources and cancels any running operations.
      * Should be called when the controller is no longer needed.
      */
     public void cleanup() {
         puzzleTextViews.cleanup();
+        // Drop our reference on the shared database handle once queued work has run; the last holder closes it
+        databaseExecutor.write(puzzleRepository::close);
         // Release sound player resources
         SoundPlayer.getInstance().release();
         Log.d(TAG, "ChessboardController cleanup completed");
@@ -5,12 +5,13 @@ import static java.util.Objects.isNull;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.WindowManager;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodManager;
-import android.widget.EditText;
+import android.widget.AutoCompleteTextView;
 import android.widget.ImageButton;
 import android.widget.TextView;
 
@@ -20,15 +21,25 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.tacticmaster.board.ChessboardView;
-import com.tacticmaster.db.DatabaseAccessor;
+import com.tacticmaster.db.DatabaseExecutor;
 import com.tacticmaster.db.DatabaseHelper;
+import com.tacticmaster.db.PackManager;
+import com.tacticmaster.db.PuzzleBackend;
+import com.tacticmaster.db.PuzzleRepository;
+import com.tacticmaster.db.QueryTimings;
+import com.tacticmaster.db.TimedPuzzleRepository;
 import com.tacticmaster.puzzle.PuzzleManager;
+import com.tacticmaster.puzzle.PuzzlePrefetcher;
 import com.tacticmaster.puzzle.PuzzleThemesDialogHelper;
 import com.tacticmaster.settings.SettingsActivity;
 import com.tacticmaster.settings.SettingsManager;
 
 public class MainActivity extends AppCompatActivity {
 
+    private static final String TAG = "MainActivity";
+    // Names a PuzzleBackend to start with, e.g. am start --es com.tacticmaster.extra.PUZZLE_BACKEND binary
+    static final String EXTRA_PUZZLE_BACKEND = "com.tacticmaster.extra.PUZZLE_BACKEND";
+
     private ChessboardController chessboardController;
     private SettingsManager settingsManager;
 
@@ -49,21 +60,42 @@ public class MainActivity extends AppCompatActivity {
             return insets;
         });
 
-        DatabaseAccessor databaseAccessor = new DatabaseAccessor(new DatabaseHelper(this));
+        DatabaseHelper databaseHelper = DatabaseHelper.getInstance(this);
+        PuzzleBackend backend = PuzzleBackend.fromName(getIntent().getStringExtra(EXTRA_PUZZLE_BACKEND));
+        Log.i(TAG, "Puzzle backend: " + backend);
+        PackManager packManager = new PackManager();
+        backend.registerPacks(packManager, databaseHelper);
+        PuzzleRepository puzzleRepository = new TimedPuzzleRepository(packManager, QueryTimings.getInstance());
+        DatabaseExecutor databaseExecutor = DatabaseExecutor.getInstance();
         ChessboardView chessboardView = findViewById(R.id.chessboard_view);
         chessboardView.setPlayerTurnIcon(findViewById(R.id.player_turn_icon));
         chessboardView.setPuzzleHintView(findViewById(R.id.hint_path_view));
+        PuzzleTextViews puzzleTextViews = new PuzzleTextViews(this);
+        // The install itself runs with the first puzzle load on the writer; this only tells the user.
+        databaseExecutor.read(databaseHelper::isPackCurrent, current -> {
+            if (!current) {
+                chessboardView.makeText(R.string.preparing_puzzles);
+            }
+        }, e -> Log.w(TAG, "Could not read pack metadata", e));
+        databaseHelper.setInstallListener((bytesRead, totalBytes) -> {
+            if (totalBytes > 0) {
+                int percent = (int) (bytesRead * 100 / totalBytes);
+                runOnUiThread(() -> puzzleTextViews.setInstallProgress(percent));
+            }
+        });
 
         settingsManager = SettingsManager.getInstance(this);
-        var puzzleManager = new PuzzleManager(databaseAccessor, settingsManager.getPlayerRating());
+        var puzzleManager = new PuzzleManager(puzzleRepository, settingsManager.getPlayerRating(),
+                new PuzzlePrefetcher(databaseExecutor.readExecutor()));
 
         chessboardController = new ChessboardController(
-                databaseAccessor,
+                puzzleRepository,
+                databaseExecutor,
                 settingsManager,
                 puzzleManager,
-                new PuzzleThemesDialogHelper(databaseAccessor, puzzleManager),
+                new PuzzleThemesDialogHelper(puzzleRepository, databaseExecutor, puzzleManager),
                 chessboardView,
-                new PuzzleTextViews(this));
+                puzzleTextViews);
 
         chessboardController.restoreLastPuzzleOrLoadNext(settingsManager.getLastPuzzleId());
 
@@ -73,20 +105,24 @@ public class MainActivity extends AppCompatActivity {
         ImageButton hint = findViewById(R.id.puzzle_hint);
         ImageButton shareFenButton = findViewById(R.id.share_fen_button);
         ImageButton settingsButton = findViewById(R.id.settings_button);
-        EditText puzzleId = findViewById(R.id.puzzle_id);
+        AutoCompleteTextView puzzleId = findViewById(R.id.puzzle_id);
         ImageButton puzzleIdLink = findViewById(R.id.puzzle_id_link);
 
         reloadPuzzle.setOnClickListener(v -> onReloadPuzzleClicked());
         previousPuzzle.setOnClickListener(v -> onPreviousPuzzleClicked());
         nextPuzzle.setOnClickListener(v -> onNextPuzzleClicked());
         hint.setOnClickListener(v -> onPuzzleHintClicked());
+        PuzzleIdSuggestions puzzleIdSuggestions = new PuzzleIdSuggestions(this, puzzleRepository, databaseExecutor);
+        puzzleId.setAdapter(puzzleIdSuggestions);
+        puzzleId.setOnFocusChangeListener((v, hasFocus) -> {
+            if (hasFocus) {
+                puzzleIdSuggestions.loadIndex();
+            }
+        });
+        puzzleId.setOnItemClickListener((parent, view, position, id) -> onPuzzleIdEntered(puzzleId));
         puzzleId.setOnEditorActionListener((TextView v, int actionId, KeyEvent event) -> {
             if (actionId == EditorInfo.IME_ACTION_DONE) {
-                chessboardController.loadPuzzleById(puzzleId.getText().toString());
-                InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
-                if (!isNull(imm)) {
-                    imm.hideSoftInputFromWindow(v.getWindowToken(), 0);
-                }
+                onPuzzleIdEntered(puzzleId);
                 return true;
             }
             return false;
@@ -121,6 +157,12 @@ public class MainActivity extends AppCompatActivity {
         applyDisplaySettings();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        chessboardController.flushProgress();
+    }
+
     private void applyDisplaySettings() {
         TextView puzzleRating = findViewById(R.id.puzzle_rating);
         View puzzleIdContainer = findViewById(R.id.puzzle_id_container);
@@ -134,6 +176,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // The helper is process-wide; do not let it hold on to this activity.
+        DatabaseHelper.getInstance(this).setInstallListener(null);
         if (!isNull(chessboardController)) {
             chessboardController.cleanup();
         }
@@ -155,6 +199,15 @@ public class MainActivity extends AppCompatActivity {
         chessboardController.puzzleHintClicked();
     }
 
+    private void onPuzzleIdEntered(AutoCompleteTextView puzzleId) {
+        puzzleId.dismissDropDown();
+        chessboardController.loadPuzzleById(puzzleId.getText().toString());
+        InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (!isNull(imm)) {
+            imm.hideSoftInputFromWindow(puzzleId.getWindowToken(), 0);
+        }
+    }
+
     private void onPuzzleIdLinkClicked() {
         chessboardController.puzzleIdLinkClicked();
     }
@@ -0,0 +1,85 @@
+package com.tacticmaster;
+
+import static java.util.Objects.isNull;
+
+import android.content.Context;
+import android.util.Log;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import androidx.annotation.NonNull;
+
+import com.tacticmaster.db.DatabaseExecutor;
+import com.tacticmaster.db.PuzzleIdIndex;
+import com.tacticmaster.db.PuzzleRepository;
+
+import java.util.List;
+
+/**
+ * Drop-down of the puzzle ids starting with what has been typed into the puzzle id field.
+ * <p>
+ * The {@link PuzzleIdIndex} is read on the database read pool the first time it is asked
+ * for and kept for the activity's lifetime; nothing is suggested until it has arrived. Each
+ * keystroke is then one binary search over the index.
+ */
+class PuzzleIdSuggestions extends ArrayAdapter<String> {
+
+    private static final String TAG = "PuzzleIdSuggestions";
+    static final int MAX_SUGGESTIONS = 8;
+
+    private final PuzzleRepository puzzleRepository;
+    private final DatabaseExecutor databaseExecutor;
+    private final Filter filter = new PrefixFilter();
+    // Read by the filter's worker thread.
+    private volatile PuzzleIdIndex puzzleIdIndex = PuzzleIdIndex.EMPTY;
+    private boolean loading;
+
+    PuzzleIdSuggestions(Context context, PuzzleRepository puzzleRepository, DatabaseExecutor databaseExecutor) {
+        super(context, android.R.layout.simple_dropdown_item_1line);
+        this.puzzleRepository = puzzleRepository;
+        this.databaseExecutor = databaseExecutor;
+    }
+
+    /**
+     * Starts reading the index unless that has already happened; call it on the main thread.
+     */
+    void loadIndex() {
+        if (loading) {
+            return;
+        }
+        loading = true;
+        databaseExecutor.read(puzzleRepository::getPuzzleIdIndex, index -> puzzleIdIndex = index, e -> {
+            Log.w(TAG, "Could not read the puzzle ids", e);
+            loading = false;
+        });
+    }
+
+    @NonNull
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+
+    private final class PrefixFilter extends Filter {
+
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<String> matches = isNull(constraint)
+                    ? List.of()
+                    : puzzleIdIndex.complete(constraint.toString().trim(), MAX_SUGGESTIONS);
+            FilterResults results = new FilterResults();
+            results.values = matches;
+            results.count = matches.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            setNotifyOnChange(false);
+            clear();
+            addAll((List<String>) results.values);
+            notifyDataSetChanged();
+        }
+    }
+}
@@ -13,7 +13,7 @@ import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.style.ForegroundColorSpan;
 import android.view.View;
-import android.widget.EditText;
+import android.widget.AutoCompleteTextView;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -34,7 +34,7 @@ public class PuzzleTextViews {
 
     private final Activity activity;
     private final TextView puzzleIdLabelTextView;
-    private final EditText puzzleIdEditText;
+    private final AutoCompleteTextView puzzleIdEditText;
     private final TextView puzzleRatingTextView;
     private final TextView puzzlesSolvedTextView;
     private final TextView playerRatingTextView;
@@ -92,7 +92,8 @@ public class PuzzleTextViews {
             return;
         }
         puzzleIdLabelTextView.setTypeface(null, Typeface.BOLD);
-        puzzleIdEditText.setText(puzzleId);
+        // Showing the id must not open the id suggestions.
+        puzzleIdEditText.setText(puzzleId, false);
         puzzleIdEditText.setContentDescription(activity.getString(R.string.content_desc_puzzle_id, puzzleId));
         setUnsolvedState();
     }
@@ -103,6 +104,14 @@ public class PuzzleTextViews {
         puzzlesSolvedTextView.setContentDescription(activity.getString(R.string.content_desc_puzzles_solved, solvedCount, totalCount));
     }
 
+    /**
+     * Shows pack install progress in the counter line until the first puzzle's counters replace it.
+     */
+    public void setInstallProgress(int percent) {
+        puzzlesSolvedTextView.setText(activity.getString(R.string.preparing_puzzles_progress, percent));
+        puzzlesSolvedTextView.setContentDescription(puzzlesSolvedTextView.getText());
+    }
+
     public void setPuzzleSolved(boolean solved) {
         if (solved) {
             applyTextViewStyle(puzzleIdEditText, Color.GREEN, SOLVED_ALPHA);
@@ -0,0 +1,47 @@
+package com.tacticmaster;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures a cold start from process start to the first puzzle drawn on the board, logs it
+ * against {@link #COLD_START_BUDGET_MILLIS} and reports the activity as fully drawn, so the
+ * same number also shows up in the platform's startup metrics.
+ */
+public final class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+
+    // Target for a cold start to the first board frame on a low-end device.
+    static final long COLD_START_BUDGET_MILLIS = 1_500;
+
+    private static final AtomicBoolean firstBoardDrawn = new AtomicBoolean();
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Records the first board frame of this process; later calls do nothing. Returns the
+     * time since process start, or -1 if the first frame was already recorded.
+     */
+    static long onFirstBoardDrawn(Context context) {
+        if (!firstBoardDrawn.compareAndSet(false, true)) {
+            return -1;
+        }
+        long elapsedMillis = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        if (elapsedMillis > COLD_START_BUDGET_MILLIS) {
+            Log.w(TAG, "Cold start to first board took " + elapsedMillis + " ms, budget " + COLD_START_BUDGET_MILLIS + " ms");
+        } else {
+            Log.i(TAG, "Cold start to first board took " + elapsedMillis + " ms");
+        }
+        if (context instanceof Activity) {
+            ((Activity) context).reportFullyDrawn();
+        }
+        return elapsedMillis;
+    }
+}
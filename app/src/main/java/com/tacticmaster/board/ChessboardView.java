@@ -442,6 +442,7 @@ public class ChessboardView extends View implements PuzzleHintView.ViewChangedLi
 
     public void puzzleHintClicked() {
         if (!isNull(chessboard) && chessboard.isPlayersTurn()) {
+            puzzleGame.hintUsed();
             puzzleHintView.showHint(chessboard.transformFenMove(puzzleGame.getNextMove(false)), getTileSize());
         }
     }
@@ -460,7 +461,7 @@ public class ChessboardView extends View implements PuzzleHintView.ViewChangedLi
         puzzleFinished = false;
         this.puzzleGame = puzzle;
         puzzleGame.reset();
-        this.chessboard = new Chessboard(puzzleGame.fen());
+        this.chessboard = puzzleGame.takeBoard();
         initPaints();
         updatePlayerTurnIcon();
         removeSelection();
@@ -0,0 +1,38 @@
+package com.tacticmaster.db;
+
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import java.util.TimeZone;
+
+/**
+ * Totals over a group of attempts (a day, a theme or a rating bucket), as kept in the
+ * rollup tables.
+ */
+public record AttemptStats(int attempts, int solved, long solveTimeMillis, int hintsUsed) {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    static AttemptStats of(PuzzleAttempt attempt) {
+        return new AttemptStats(1, attempt.solved() ? 1 : 0, attempt.solveTimeMillis(), attempt.hintsUsed());
+    }
+
+    AttemptStats plus(AttemptStats other) {
+        return new AttemptStats(attempts + other.attempts, solved + other.solved,
+                solveTimeMillis + other.solveTimeMillis, hintsUsed + other.hintsUsed);
+    }
+
+    public double accuracy() {
+        return attempts == 0 ? 0 : (double) solved / attempts;
+    }
+
+    public long averageSolveTimeMillis() {
+        return attempts == 0 ? 0 : solveTimeMillis / attempts;
+    }
+
+    /**
+     * Days since the epoch in the device's time zone, the key of the daily statistics.
+     */
+    public static long dayOf(long epochMillis) {
+        return Math.floorDiv(epochMillis + TimeZone.getDefault().getOffset(epochMillis), DAY_MILLIS);
+    }
+}
@@ -0,0 +1,238 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.ATTEMPTS_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_ATTEMPTED_AT;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_ATTEMPTS;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_BUCKET;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_DAY;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_HINTS_USED;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING_AFTER;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING_BEFORE;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SOLVED;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SOLVE_TIME_MILLIS;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEME;
+import static com.tacticmaster.db.PuzzleTable.DAILY_STATS_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.RATING_STATS_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.THEME_STATS_TABLE_NAME;
+import static java.util.Objects.isNull;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Attempt history plus rollups per day, theme and rating bucket, in the progress database.
+ * <p>
+ * Attempts are queued and written in batches of {@link #FLUSH_SIZE}, or on {@link #flush()}:
+ * one transaction inserts the raw rows and adds each batch's totals to the rollup rows, so
+ * the statistics never scan the history. Queued attempts are folded into the statistics,
+ * so a read sees them before they are written. They live only in memory until then, so a
+ * killed process loses at most {@code FLUSH_SIZE - 1} of them.
+ */
+class AttemptStore {
+
+    private static final String TAG = "AttemptStore";
+
+    static final int FLUSH_SIZE = 16;
+    static final int RATING_BUCKET_WIDTH = 100;
+
+    private static final String INSERT_ATTEMPT = "INSERT INTO " + ATTEMPTS_TABLE_NAME + " (" +
+            COLUMN_PUZZLE_ID + ", " + COLUMN_ATTEMPTED_AT + ", " + COLUMN_SOLVE_TIME_MILLIS + ", " +
+            COLUMN_HINTS_USED + ", " + COLUMN_SOLVED + ", " + COLUMN_RATING_BEFORE + ", " + COLUMN_RATING_AFTER +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final Rollup<Long> DAILY = new Rollup<>(DAILY_STATS_TABLE_NAME, COLUMN_DAY);
+    private static final Rollup<String> THEME = new Rollup<>(THEME_STATS_TABLE_NAME, COLUMN_THEME);
+    private static final Rollup<Integer> RATING = new Rollup<>(RATING_STATS_TABLE_NAME, COLUMN_BUCKET);
+
+    private final SQLiteDatabase database;
+    private final StatementCache statements;
+    private final List<PuzzleAttempt> pending = new ArrayList<>();
+
+    AttemptStore(SQLiteDatabase database) {
+        if (isNull(database)) {
+            throw new IllegalArgumentException("database must not be null");
+        }
+        this.database = database;
+        this.statements = new StatementCache(database);
+    }
+
+    synchronized void add(PuzzleAttempt attempt) {
+        pending.add(attempt);
+        if (pending.size() >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        database.beginTransaction();
+        try {
+            SQLiteStatement insert = statements.get(INSERT_ATTEMPT);
+            for (PuzzleAttempt attempt : pending) {
+                insert.bindString(1, attempt.puzzleId());
+                insert.bindLong(2, attempt.attemptedAt());
+                insert.bindLong(3, attempt.solveTimeMillis());
+                insert.bindLong(4, attempt.hintsUsed());
+                insert.bindLong(5, attempt.solved() ? 1 : 0);
+                insert.bindLong(6, attempt.ratingBefore());
+                insert.bindLong(7, attempt.ratingAfter());
+                insert.executeInsert();
+            }
+            apply(DAILY, byDay(pending));
+            apply(THEME, byTheme(pending));
+            apply(RATING, byRatingBucket(pending));
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Log.d(TAG, "Wrote " + pending.size() + " attempts");
+        pending.clear();
+    }
+
+    // No UPSERT before SQLite 3.24, so each key is inserted if missing and then added to.
+    private <K> void apply(Rollup<K> rollup, Map<K, AttemptStats> totals) {
+        for (Map.Entry<K, AttemptStats> entry : totals.entrySet()) {
+            SQLiteStatement insert = statements.get(rollup.insertIfMissing);
+            bindKey(insert, 1, entry.getKey());
+            insert.executeInsert();
+
+            AttemptStats stats = entry.getValue();
+            SQLiteStatement update = statements.get(rollup.add);
+            update.bindLong(1, stats.attempts());
+            update.bindLong(2, stats.solved());
+            update.bindLong(3, stats.solveTimeMillis());
+            update.bindLong(4, stats.hintsUsed());
+            bindKey(update, 5, entry.getKey());
+            update.executeUpdateDelete();
+        }
+    }
+
+    private static void bindKey(SQLiteStatement statement, int index, Object key) {
+        if (key instanceof String) {
+            statement.bindString(index, (String) key);
+        } else {
+            statement.bindLong(index, ((Number) key).longValue());
+        }
+    }
+
+    /**
+     * Totals per day from {@code fromDay} to {@code toDay} inclusive, in day order; days
+     * without attempts are absent.
+     */
+    synchronized SortedMap<Long, AttemptStats> dailyStats(long fromDay, long toDay) {
+        SortedMap<Long, AttemptStats> stats = read(DAILY, " WHERE " + COLUMN_DAY + " BETWEEN ? AND ?",
+                new String[]{String.valueOf(fromDay), String.valueOf(toDay)}, Cursor::getLong);
+        byDay(pending).forEach((day, totals) -> {
+            if (day >= fromDay && day <= toDay) {
+                stats.merge(day, totals, AttemptStats::plus);
+            }
+        });
+        return stats;
+    }
+
+    synchronized SortedMap<String, AttemptStats> themeStats() {
+        SortedMap<String, AttemptStats> stats = read(THEME, "", null, Cursor::getString);
+        byTheme(pending).forEach((theme, totals) -> stats.merge(theme, totals, AttemptStats::plus));
+        return stats;
+    }
+
+    /**
+     * Totals keyed by the lowest puzzle rating of each {@link #RATING_BUCKET_WIDTH}-wide bucket.
+     */
+    synchronized SortedMap<Integer, AttemptStats> ratingBucketStats() {
+        SortedMap<Integer, AttemptStats> stats = read(RATING, "", null, Cursor::getInt);
+        byRatingBucket(pending).forEach((bucket, totals) -> stats.merge(bucket, totals, AttemptStats::plus));
+        return stats;
+    }
+
+    private <K> SortedMap<K, AttemptStats> read(Rollup<K> rollup, String where, String[] args, KeyReader<K> keyReader) {
+        SortedMap<K, AttemptStats> stats = new TreeMap<>();
+        try (Cursor cursor = database.rawQuery(rollup.select + where, args)) {
+            while (cursor.moveToNext()) {
+                stats.put(keyReader.read(cursor, 0),
+                        new AttemptStats(cursor.getInt(1), cursor.getInt(2), cursor.getLong(3), cursor.getInt(4)));
+            }
+        }
+        return stats;
+    }
+
+    private static Map<Long, AttemptStats> byDay(List<PuzzleAttempt> attempts) {
+        return group(attempts, attempt -> List.of(AttemptStats.dayOf(attempt.attemptedAt())));
+    }
+
+    private static Map<String, AttemptStats> byTheme(List<PuzzleAttempt> attempts) {
+        return group(attempts, attempt -> {
+            List<String> themes = new ArrayList<>();
+            if (!isNull(attempt.themes())) {
+                for (String theme : attempt.themes().split(" ")) {
+                    if (!theme.isEmpty()) {
+                        themes.add(theme);
+                    }
+                }
+            }
+            return themes;
+        });
+    }
+
+    private static Map<Integer, AttemptStats> byRatingBucket(List<PuzzleAttempt> attempts) {
+        return group(attempts, attempt -> List.of(Math.floorDiv(attempt.puzzleRating(), RATING_BUCKET_WIDTH) * RATING_BUCKET_WIDTH));
+    }
+
+    private static <K> Map<K, AttemptStats> group(List<PuzzleAttempt> attempts, Function<PuzzleAttempt, List<K>> keys) {
+        Map<K, AttemptStats> totals = new TreeMap<>();
+        for (PuzzleAttempt attempt : attempts) {
+            AttemptStats stats = AttemptStats.of(attempt);
+            for (K key : keys.apply(attempt)) {
+                totals.merge(key, stats, AttemptStats::plus);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Writes queued attempts and releases the compiled statements; called before the
+     * underlying handle is closed.
+     */
+    synchronized void close() {
+        try {
+            flush();
+        } finally {
+            statements.close();
+        }
+    }
+
+    private interface KeyReader<K> {
+        K read(Cursor cursor, int column);
+    }
+
+    private static final class Rollup<K> {
+        final String insertIfMissing;
+        final String add;
+        final String select;
+
+        Rollup(String table, String keyColumn) {
+            insertIfMissing = "INSERT OR IGNORE INTO " + table + " (" + keyColumn + ") VALUES (?)";
+            add = "UPDATE " + table + " SET " +
+                    COLUMN_ATTEMPTS + " = " + COLUMN_ATTEMPTS + " + ?, " +
+                    COLUMN_SOLVED + " = " + COLUMN_SOLVED + " + ?, " +
+                    COLUMN_SOLVE_TIME_MILLIS + " = " + COLUMN_SOLVE_TIME_MILLIS + " + ?, " +
+                    COLUMN_HINTS_USED + " = " + COLUMN_HINTS_USED + " + ? WHERE " + keyColumn + " = ?";
+            select = "SELECT " + keyColumn + ", " + COLUMN_ATTEMPTS + ", " + COLUMN_SOLVED + ", " +
+                    COLUMN_SOLVE_TIME_MILLIS + ", " + COLUMN_HINTS_USED + " FROM " + table;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PackedPuzzleCodec.RECORD_SIZE;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Read-only puzzle pack in a memory-mapped binary file, an alternative to reading puzzles
+ * through SQLite cursors.
+ * <p>
+ * After a 16-byte header (magic, format version, {@link DatabaseHelper#PACK_VERSION}, record
+ * count) come the {@link PackedPuzzleCodec} records sorted by rating, so a rating band is two
+ * binary searches. An id index follows: the packed ids in ascending order, then for each of
+ * them the ordinal of its record. Themes are restored from the theme mask, so themes without
+ * a {@link ThemeMask} bit are not kept. Written by {@link BinaryPuzzlePackWriter}.
+ */
+public final class BinaryPuzzlePack {
+
+    static final int MAGIC = 0x544D504B;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    // As many rows as the SQLite sampler reads in one bounded seek.
+    static final int ROWS_PER_SEEK = PuzzleSampler.PAGES_PER_SEEK * PuzzleSampler.PAGE_SIZE;
+
+    private final ByteBuffer buffer;
+    private final int packVersion;
+    private final int count;
+    private final int keysOffset;
+    private final int ordinalsOffset;
+
+    BinaryPuzzlePack(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary puzzle pack");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary puzzle pack format " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.packVersion = buffer.getInt(8);
+        this.count = buffer.getInt(12);
+        long expectedSize = HEADER_SIZE + (long) count * (RECORD_SIZE + Long.BYTES + Integer.BYTES);
+        if (count < 0 || buffer.capacity() != expectedSize) {
+            throw new IOException("Binary puzzle pack is truncated");
+        }
+        this.keysOffset = HEADER_SIZE + count * RECORD_SIZE;
+        this.ordinalsOffset = keysOffset + count * Long.BYTES;
+    }
+
+    public static BinaryPuzzlePack open(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Binary puzzle pack is too large to map: " + size);
+            }
+            // The mapping stays valid after the channel is closed.
+            return new BinaryPuzzlePack(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Reads the pack version from the header alone, or 0 if the file is missing or not a pack.
+     */
+    static int readPackVersion(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return 0;
+            }
+            return input.readInt();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    int packVersion() {
+        return packVersion;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Same contract as the SQLite sampler: up to {@link PuzzleSampler#BATCH_SIZE} random
+     * puzzles from the band, at most one per distinct rating, skipping excluded and solved
+     * puzzles and, unless {@code themeMask} is {@link ThemeMask#NONE}, puzzles without any of
+     * the masked themes. Solved puzzles are given as ordinals of this pack and are skipped
+     * without decoding their ids.
+     * <p>
+     * Probes are bounded like the SQLite sampler's: a walk tests at most
+     * {@link #ROWS_PER_SEEK} rows before the probe seeks elsewhere, at most
+     * {@link PuzzleSampler#SEEKS_PER_PROBE} times. Only the first probe of a batch then walks
+     * the band to its end, so an empty batch still means the band is exhausted.
+     */
+    List<Puzzle> sample(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask, SolvedBitmap solvedOrdinals, Random random) {
+        List<Puzzle> sampled = new ArrayList<>();
+        int from = lowerBound(lowestRating);
+        int to = lowerBound(highestRating + 1);
+        if (from >= to || solvedOrdinals.cardinality(from, to) == to - from) {
+            return sampled;
+        }
+        Set<Integer> sampledRatings = new HashSet<>();
+        while (sampled.size() < PuzzleSampler.BATCH_SIZE) {
+            int match = probe(from, to, excludedPuzzleIds, themeMask, solvedOrdinals, sampledRatings, random, sampled.isEmpty());
+            if (match < 0) {
+                break;
+            }
+            sampledRatings.add(PackedPuzzleCodec.rating(buffer, offsetOf(match)));
+            sampled.add(puzzleAt(match, false));
+        }
+        return sampled;
+    }
+
+    /**
+     * Returns the ordinal of a puzzle in [from, to) that is not skipped, or -1 if there is
+     * none or, unless {@code exhaustive}, if every bounded seek gave up.
+     */
+    int probe(int from, int to, Set<String> excludedPuzzleIds, long themeMask, SolvedBitmap solvedOrdinals, Set<Integer> sampledRatings, Random random, boolean exhaustive) {
+        for (int seek = 0; seek < PuzzleSampler.SEEKS_PER_PROBE; seek++) {
+            RowBudget budget = new RowBudget(ROWS_PER_SEEK);
+            int match = seek(from, to, excludedPuzzleIds, themeMask, solvedOrdinals, sampledRatings, random, budget);
+            if (match >= 0 || !budget.spent) {
+                return match;
+            }
+        }
+        return exhaustive ? seek(from, to, excludedPuzzleIds, themeMask, solvedOrdinals, sampledRatings, random, new RowBudget(Integer.MAX_VALUE)) : -1;
+    }
+
+    private int seek(int from, int to, Set<String> excludedPuzzleIds, long themeMask, SolvedBitmap solvedOrdinals, Set<Integer> sampledRatings, Random random, RowBudget budget) {
+        int start = from + random.nextInt(to - from);
+        int match = walk(start, to, excludedPuzzleIds, themeMask, solvedOrdinals, sampledRatings, budget);
+        if (match >= 0 || budget.spent) {
+            return match;
+        }
+        return walk(from, start, excludedPuzzleIds, themeMask, solvedOrdinals, sampledRatings, budget);
+    }
+
+    // Solved runs and sampled ratings are jumped over, so only the rows tested count against the budget.
+    private int walk(int from, int to, Set<String> excludedPuzzleIds, long themeMask, SolvedBitmap solvedOrdinals, Set<Integer> sampledRatings, RowBudget budget) {
+        int ordinal = from;
+        while (ordinal < to) {
+            if (solvedOrdinals.contains(ordinal)) {
+                ordinal = solvedOrdinals.nextAbsent(ordinal);
+                continue;
+            }
+            int offset = offsetOf(ordinal);
+            int rating = PackedPuzzleCodec.rating(buffer, offset);
+            if (sampledRatings.contains(rating)) {
+                ordinal = lowerBound(rating + 1);
+                continue;
+            }
+            if (budget.rowsLeft == 0) {
+                budget.spent = true;
+                return -1;
+            }
+            budget.rowsLeft--;
+            if (themeMask == ThemeMask.NONE || (PackedPuzzleCodec.themeMask(buffer, offset) & themeMask) != 0) {
+                String puzzleId = PackedPuzzleCodec.decodeId(PackedPuzzleCodec.id(buffer, offset));
+                if (!excludedPuzzleIds.contains(puzzleId)) {
+                    return ordinal;
+                }
+            }
+            ordinal++;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the puzzle with this id, or null if the pack does not contain it.
+     */
+    Puzzle findById(String puzzleId, SolvedBitmap solvedOrdinals) {
+        int ordinal = ordinalOf(puzzleId);
+        return ordinal < 0 ? null : puzzleAt(ordinal, solvedOrdinals.contains(ordinal));
+    }
+
+    /**
+     * The position of a puzzle's record in rating order, or -1 if the pack does not contain it.
+     */
+    int ordinalOf(String puzzleId) {
+        long key = PackedPuzzleCodec.encodeId(puzzleId);
+        if (key < 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = buffer.getLong(keysOffset + mid * Long.BYTES);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return buffer.getInt(ordinalsOffset + mid * Integer.BYTES);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A copy of the id index's keys, packed ids in ascending order.
+     */
+    long[] idKeys() {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = buffer.getLong(keysOffset + i * Long.BYTES);
+        }
+        return keys;
+    }
+
+    String idAt(int ordinal) {
+        return PackedPuzzleCodec.decodeId(PackedPuzzleCodec.id(buffer, offsetOf(ordinal)));
+    }
+
+    int ratingAt(int ordinal) {
+        return PackedPuzzleCodec.rating(buffer, offsetOf(ordinal));
+    }
+
+    long themeMaskAt(int ordinal) {
+        return PackedPuzzleCodec.themeMask(buffer, offsetOf(ordinal));
+    }
+
+    private Puzzle puzzleAt(int ordinal, boolean solved) {
+        int offset = offsetOf(ordinal);
+        return new Puzzle(
+                PackedPuzzleCodec.decodeId(PackedPuzzleCodec.id(buffer, offset)),
+                PackedPuzzleCodec.decodeFen(buffer, offset),
+                PackedPuzzleCodec.decodeMoves(buffer, offset),
+                PackedPuzzleCodec.rating(buffer, offset),
+                String.join(" ", ThemeMask.themesOf(PackedPuzzleCodec.themeMask(buffer, offset))),
+                solved
+        );
+    }
+
+    // First ordinal whose rating is at least the given one.
+    private int lowerBound(int rating) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (PackedPuzzleCodec.rating(buffer, offsetOf(mid)) < rating) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int offsetOf(int ordinal) {
+        return HEADER_SIZE + ordinal * RECORD_SIZE;
+    }
+
+    // Rows one seek may still test; spent once a walk stopped for lack of them.
+    private static final class RowBudget {
+        int rowsLeft;
+        boolean spent;
+
+        RowBudget(int rowsLeft) {
+            this.rowsLeft = rowsLeft;
+        }
+    }
+}
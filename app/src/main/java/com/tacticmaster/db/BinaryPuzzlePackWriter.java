@@ -0,0 +1,167 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PackedPuzzleCodec.RECORD_SIZE;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_FEN;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_MOVES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEME_MASK;
+import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Streams puzzles, in ascending rating order, into a {@link BinaryPuzzlePack} file.
+ * <p>
+ * Records are written in chunks as they arrive; only the packed ids are kept in memory to
+ * build the id index in {@link #finish()}. {@link #add} skips and counts a puzzle that does
+ * not fit the fixed-width layout, while {@link #convert} fails on it, so a converted pack
+ * always holds the same puzzles as the table it came from.
+ */
+final class BinaryPuzzlePackWriter implements Closeable {
+
+    private static final String TAG = "BinaryPuzzlePackWriter";
+    private static final int RECORDS_PER_CHUNK = 1024;
+    private static final int INDEX_CHUNK_BYTES = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int packVersion;
+    private final ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * RECORDS_PER_CHUNK);
+    private long[] keys = new long[RECORDS_PER_CHUNK];
+    private int count;
+    private int skipped;
+    private int lastRating = Integer.MIN_VALUE;
+
+    BinaryPuzzlePackWriter(File target, int packVersion) throws IOException {
+        this.file = new RandomAccessFile(target, "rw");
+        this.channel = file.getChannel();
+        this.packVersion = packVersion;
+        channel.truncate(0);
+        channel.position(BinaryPuzzlePack.HEADER_SIZE);
+    }
+
+    /**
+     * Converts the puzzle table of an installed pack. Returns the number of puzzles written,
+     * or throws as soon as a puzzle does not fit the layout; the target is then incomplete.
+     */
+    static int convert(SQLiteDatabase db, File target, int packVersion) throws IOException {
+        String query = "SELECT " + COLUMN_PUZZLE_ID + ", " + COLUMN_FEN + ", " + COLUMN_MOVES + ", " +
+                COLUMN_RATING + ", " + COLUMN_THEME_MASK + " FROM " + PUZZLE_TABLE_NAME +
+                " ORDER BY " + COLUMN_RATING;
+        try (BinaryPuzzlePackWriter writer = new BinaryPuzzlePackWriter(target, packVersion);
+             Cursor cursor = db.rawQuery(query, null)) {
+            while (cursor.moveToNext()) {
+                String puzzleId = cursor.getString(0);
+                if (!writer.add(puzzleId, cursor.getString(1), cursor.getString(2), cursor.getInt(3), cursor.getLong(4))) {
+                    throw new IOException("Puzzle " + puzzleId + " does not fit the binary pack layout");
+                }
+            }
+            writer.finish();
+            return writer.count;
+        }
+    }
+
+    /**
+     * Appends one puzzle. Returns false if it cannot be encoded and was skipped.
+     */
+    boolean add(String puzzleId, String fen, String moves, int rating, long themeMask) throws IOException {
+        if (rating < lastRating) {
+            throw new IllegalArgumentException("Puzzles must be added in ascending rating order");
+        }
+        int offset = chunk.position();
+        try {
+            PackedPuzzleCodec.encode(chunk, offset, puzzleId, fen, moves, rating, themeMask);
+        } catch (IllegalArgumentException e) {
+            skipped++;
+            return false;
+        }
+        chunk.position(offset + RECORD_SIZE);
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[count++] = PackedPuzzleCodec.encodeId(puzzleId);
+        lastRating = rating;
+        if (!chunk.hasRemaining()) {
+            flush(chunk);
+        }
+        return true;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int skipped() {
+        return skipped;
+    }
+
+    /**
+     * Writes the id index and the header. The file is a valid pack only after this returns.
+     */
+    void finish() throws IOException {
+        flush(chunk);
+
+        long[] sortedKeys = Arrays.copyOf(keys, count);
+        Arrays.sort(sortedKeys);
+        for (int i = 1; i < count; i++) {
+            if (sortedKeys[i] == sortedKeys[i - 1]) {
+                throw new IllegalArgumentException("Duplicate puzzle id " + PackedPuzzleCodec.decodeId(sortedKeys[i]));
+            }
+        }
+        int[] ordinals = new int[count];
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            ordinals[Arrays.binarySearch(sortedKeys, keys[ordinal])] = ordinal;
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(INDEX_CHUNK_BYTES);
+        for (long key : sortedKeys) {
+            if (index.remaining() < Long.BYTES) {
+                flush(index);
+            }
+            index.putLong(key);
+        }
+        for (int ordinal : ordinals) {
+            if (index.remaining() < Integer.BYTES) {
+                flush(index);
+            }
+            index.putInt(ordinal);
+        }
+        flush(index);
+
+        ByteBuffer header = ByteBuffer.allocate(BinaryPuzzlePack.HEADER_SIZE);
+        header.putInt(BinaryPuzzlePack.MAGIC).putInt(BinaryPuzzlePack.FORMAT_VERSION).putInt(packVersion).putInt(count);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+        if (skipped > 0) {
+            Log.w(TAG, "Skipped " + skipped + " puzzles that do not fit the binary pack layout");
+        }
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,235 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PuzzleRepository} reading puzzles from the memory-mapped {@link BinaryPuzzlePack}
+ * instead of SQLite; progress comes from the same {@link ProgressStores} the
+ * {@link DatabaseAccessor} uses, so switching backends keeps it.
+ * <p>
+ * The pack is converted from the installed SQLite pack and opened on first use. If that
+ * fails, every call fails with the same {@link IllegalStateException} rather than quietly
+ * reading through SQLite, since this backend is only chosen to be measured.
+ */
+public final class BinaryPuzzleRepository implements PuzzleRepository {
+
+    private final DatabaseHelper dbHelper;
+    private final ProgressStores stores;
+    private final Random random = new Random();
+    private BinaryPuzzlePack pack;
+    private IOException openFailure;
+    // Pack ordinals of the solved puzzles, built on first use.
+    private SolvedBitmap solvedOrdinals;
+    private RatingHistogram ratingHistogram;
+
+    public BinaryPuzzleRepository(DatabaseHelper dbHelper) {
+        this(dbHelper, new ProgressStores(dbHelper, PuzzleBackend.BINARY));
+    }
+
+    BinaryPuzzleRepository(DatabaseHelper dbHelper, ProgressStores stores) {
+        this.dbHelper = dbHelper;
+        this.stores = stores;
+    }
+
+    private synchronized BinaryPuzzlePack pack() {
+        // Taking the pack handle first installs the pack to convert and enforces close().
+        stores.database();
+        if (isNull(pack) && isNull(openFailure)) {
+            try {
+                pack = dbHelper.openBinaryPack();
+            } catch (IOException e) {
+                openFailure = e;
+            }
+        }
+        if (isNull(pack)) {
+            throw new IllegalStateException("Binary puzzle pack could not be opened", openFailure);
+        }
+        return pack;
+    }
+
+    private synchronized SolvedBitmap solvedOrdinals() {
+        if (isNull(solvedOrdinals)) {
+            BinaryPuzzlePack pack = pack();
+            SolvedBitmap bitmap = new SolvedBitmap();
+            for (String puzzleId : stores.progress().solvedIds()) {
+                int ordinal = pack.ordinalOf(puzzleId);
+                if (ordinal >= 0) {
+                    bitmap.add(ordinal);
+                }
+            }
+            solvedOrdinals = bitmap;
+        }
+        return solvedOrdinals;
+    }
+
+    @Override
+    public synchronized void close() {
+        stores.close();
+        pack = null;
+        solvedOrdinals = null;
+        ratingHistogram = null;
+    }
+
+    @Override
+    public List<Puzzle> getPuzzlesWithinRange(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask) {
+        return pack().sample(lowestRating, highestRating, excludedPuzzleIds, themeMask, solvedOrdinals(), random);
+    }
+
+    /**
+     * Answered from the {@link PuzzleCache} when possible, which maps no pack.
+     */
+    @Override
+    public Puzzle getPuzzleById(String puzzleId) throws NoSuchElementException {
+        PuzzleCache cache = stores.puzzleCache();
+        Puzzle puzzle = cache.get(puzzleId);
+        if (isNull(puzzle)) {
+            puzzle = pack().findById(puzzleId, solvedOrdinals());
+            if (isNull(puzzle)) {
+                throw new NoSuchElementException("Puzzle ID " + puzzleId + " not found");
+            }
+            cache.put(puzzle);
+        }
+        return puzzle;
+    }
+
+    /**
+     * The themes with a {@link ThemeMask} bit that some unsolved puzzle still carries.
+     */
+    @Override
+    public Set<String> getPuzzleThemes() {
+        Set<String> themes = ConcurrentHashMap.newKeySet();
+        themes.addAll(ThemeMask.themesOf(getRatingHistogram().unsolvedThemeMask()));
+        return themes;
+    }
+
+    @Override
+    public PuzzleIdIndex getPuzzleIdIndex() {
+        return new PuzzleIdIndex(pack().idKeys());
+    }
+
+    @Override
+    public int getAllPuzzleCount() {
+        return pack().size();
+    }
+
+    @Override
+    public int getSolvedPuzzleCount() {
+        return stores.progress().getSolvedCount();
+    }
+
+    /**
+     * Unsolved puzzle counts per rating and theme, built from the pack's columns on first use
+     * and kept current by {@link #setSolved(String)}.
+     */
+    @Override
+    public synchronized RatingHistogram getRatingHistogram() {
+        if (isNull(ratingHistogram)) {
+            BinaryPuzzlePack pack = pack();
+            SolvedBitmap solved = solvedOrdinals();
+            RatingHistogram histogram = new RatingHistogram();
+            for (int ordinal = solved.nextAbsent(0); ordinal < pack.size(); ordinal = solved.nextAbsent(ordinal + 1)) {
+                histogram.add(pack.ratingAt(ordinal), pack.themeMaskAt(ordinal));
+            }
+            ratingHistogram = histogram;
+        }
+        return ratingHistogram;
+    }
+
+    @Override
+    public boolean wasNotSolved(String puzzleId) {
+        return !stores.progress().isSolved(puzzleId);
+    }
+
+    // Synchronized so a solve cannot fall between the solved ordinals and the histogram.
+    @Override
+    public synchronized void setSolved(String puzzleId) {
+        BinaryPuzzlePack pack = pack();
+        SolvedBitmap solved = solvedOrdinals();
+        stores.progress().markSolved(puzzleId);
+        stores.puzzleCache().markSolved(puzzleId);
+        int ordinal = pack.ordinalOf(puzzleId);
+        if (ordinal >= 0 && solved.add(ordinal) && !isNull(ratingHistogram)) {
+            ratingHistogram.remove(pack.ratingAt(ordinal), pack.themeMaskAt(ordinal));
+        }
+    }
+
+    /**
+     * Queues an attempt as {@link DatabaseAccessor#recordPuzzleAttempt(PuzzleAttempt)} does,
+     * with the same window: attempts queued since the last batch or flush are lost if the
+     * process is killed, since only solves are journaled.
+     */
+    @Override
+    public void recordPuzzleAttempt(PuzzleAttempt attempt) {
+        stores.attempts().add(attempt);
+        stores.themePerformance().record(attempt);
+        stores.reviews().record(attempt);
+    }
+
+    @Override
+    public String pollDueReview(long themeMask) {
+        return stores.reviews().pollDue(System.currentTimeMillis(), themeMask);
+    }
+
+    @Override
+    public void rememberPuzzle(Puzzle puzzle) {
+        stores.puzzleCache().put(puzzle);
+    }
+
+    @Override
+    public void flushProgress() {
+        stores.flush();
+    }
+
+    /**
+     * Solved progress as a compressed bitmap of pack ordinals, a few KB even for hundreds of
+     * thousands of solved puzzles. Only valid for the same pack version.
+     */
+    public byte[] exportSolvedProgress() throws IOException {
+        BinaryPuzzlePack pack = pack();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(pack.packVersion());
+            solvedOrdinals().writeTo(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Marks every puzzle of an {@link #exportSolvedProgress()} export as solved and returns how
+     * many were not solved before.
+     */
+    public int importSolvedProgress(byte[] export) throws IOException {
+        BinaryPuzzlePack pack = pack();
+        SolvedBitmap imported;
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(export))) {
+            int packVersion = input.readInt();
+            if (packVersion != pack.packVersion()) {
+                throw new IOException("Export is for pack version " + packVersion + ", installed is " + pack.packVersion());
+            }
+            imported = SolvedBitmap.readFrom(input);
+        }
+        SolvedBitmap solved = solvedOrdinals();
+        int[] added = {0};
+        imported.forEach(ordinal -> {
+            if (ordinal < pack.size() && !solved.contains(ordinal)) {
+                setSolved(pack.idAt(ordinal));
+                added[0]++;
+            }
+        });
+        return added[0];
+    }
+}
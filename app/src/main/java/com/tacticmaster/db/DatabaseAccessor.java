@@ -1,145 +1,347 @@
 package com.tacticmaster.db;
 
+import static com.tacticmaster.db.PuzzleTable.COLUMN_FEN;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_MOVES;
 import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
 import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
-import static com.tacticmaster.db.PuzzleTable.COLUMN_SOLVED;
 import static com.tacticmaster.db.PuzzleTable.COLUMN_THEMES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEME_MASK;
 import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
 import static java.util.Objects.isNull;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.util.Log;
 
 import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
+import com.tacticmaster.puzzle.ThemePerformance;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.ConcurrentHashMap;
 
-public class DatabaseAccessor {
+/**
+ * The SQLite {@link PuzzleRepository}: puzzles come from the installed pack and progress from
+ * the {@link ProgressStores} it shares with {@link BinaryPuzzleRepository}.
+ * <p>
+ * {@link #importedPack(DatabaseHelper, ProgressStores)} reads the imported pack instead. It
+ * shares the progress of the bundled pack's repository, which alone polls reviews, counts
+ * solved puzzles and keeps the puzzle cache, and which closes the progress for both.
+ */
+public class DatabaseAccessor implements PuzzleRepository {
 
-    private final DatabaseHelper dbHelper;
+    static final String PUZZLE_BY_ID = "SELECT " + COLUMN_PUZZLE_ID + ", " + COLUMN_FEN + ", " + COLUMN_MOVES + ", " +
+            COLUMN_RATING + ", " + COLUMN_THEMES + " FROM " + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_PUZZLE_ID + " = ?";
+    private static final String ALL_RATINGS = "SELECT " + COLUMN_PUZZLE_ID + ", " + COLUMN_RATING + ", " + COLUMN_THEME_MASK +
+            " FROM " + PUZZLE_TABLE_NAME;
+    private static final String ALL_IDS = "SELECT " + COLUMN_PUZZLE_ID + " FROM " + PUZZLE_TABLE_NAME;
+    static final String RATING_BY_ID = "SELECT " + COLUMN_RATING + ", " + COLUMN_THEME_MASK + " FROM " +
+            PUZZLE_TABLE_NAME + " WHERE " + COLUMN_PUZZLE_ID + " = ?";
+
+    private final PuzzleSampler puzzleSampler = new PuzzleSampler(new Random());
+    private final ProgressStores stores;
+    // Null for the bundled pack, which is read through the stores' handle.
+    private final DatabaseHelper importedPackHelper;
+    private SQLiteDatabase importedPack;
+    private boolean closed;
+    private RatingHistogram ratingHistogram;
+    // Counted once per pack file; reloadPack() counts again.
+    private int allPuzzleCount = -1;
 
     public DatabaseAccessor(DatabaseHelper dbHelper) {
-        this.dbHelper = dbHelper;
-        try {
-            dbHelper.createDatabase();
-        } catch (IOException e) {
-            Log.e("DatabaseAccessor", "Failed to create database", e);
+        this(new ProgressStores(dbHelper, PuzzleBackend.SQLITE), null);
+    }
+
+    DatabaseAccessor(ProgressStores stores) {
+        this(stores, null);
+    }
+
+    private DatabaseAccessor(ProgressStores stores, DatabaseHelper importedPackHelper) {
+        this.stores = stores;
+        this.importedPackHelper = importedPackHelper;
+    }
+
+    /**
+     * A repository over {@link DatabaseHelper#IMPORTED_PACK_NAME}, which is created empty on
+     * first use, keeping progress in the bundled pack's {@code stores}.
+     */
+    static DatabaseAccessor importedPack(DatabaseHelper dbHelper, ProgressStores stores) {
+        return new DatabaseAccessor(stores, dbHelper);
+    }
+
+    private boolean isImportedPack() {
+        return !isNull(importedPackHelper);
+    }
+
+    /**
+     * The handle puzzles are read through. Taking the stores' handle first installs the
+     * bundled pack, which an import is checked against, and fails once the progress is closed.
+     */
+    private synchronized SQLiteDatabase pack() {
+        if (closed) {
+            throw new IllegalStateException("Puzzle repository is closed");
+        }
+        SQLiteDatabase bundled = stores.database();
+        if (!isImportedPack()) {
+            return bundled;
+        }
+        if (isNull(importedPack)) {
+            try {
+                importedPack = importedPackHelper.openImportedPack();
+            } catch (IOException e) {
+                throw new IllegalStateException("Imported puzzle pack could not be opened", e);
+            }
+        }
+        return importedPack;
+    }
+
+    /**
+     * Releases this accessor's reference on the shared handle, or closes the imported pack.
+     * Safe to call more than once; work still queued for this accessor afterwards fails
+     * instead of reopening the handle.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (isImportedPack()) {
+            closeImportedPack();
+        } else {
+            stores.close();
         }
+        ratingHistogram = null;
     }
 
+    /**
+     * Drops the counts read from the pack and, for the imported pack, the handle on the file
+     * an import has since replaced; both are read again on next use.
+     */
+    @Override
+    public synchronized void reloadPack() {
+        ratingHistogram = null;
+        allPuzzleCount = -1;
+        closeImportedPack();
+    }
+
+    private void closeImportedPack() {
+        if (!isNull(importedPack)) {
+            importedPack.close();
+            importedPack = null;
+        }
+    }
+
+    @Override
     public boolean wasNotSolved(String puzzleId) {
-        try (SQLiteDatabase db = dbHelper.openDatabase()) {
-            String query = "SELECT " + COLUMN_SOLVED + " FROM " + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_PUZZLE_ID + " = ?";
-            try (Cursor cursor = db.rawQuery(query, new String[]{puzzleId})) {
+        return !stores.progress().isSolved(puzzleId);
+    }
+
+    // Synchronized so a solve cannot fall between the solved set and the histogram built from it.
+    @Override
+    public synchronized void setSolved(String puzzleId) {
+        boolean newlySolved = !stores.progress().isSolved(puzzleId);
+        stores.progress().markSolved(puzzleId);
+        stores.puzzleCache().markSolved(puzzleId);
+        if (newlySolved && !isNull(ratingHistogram)) {
+            try (Cursor cursor = pack().rawQuery(RATING_BY_ID, new String[]{puzzleId})) {
                 if (cursor.moveToFirst()) {
-                    return cursor.getInt(0) != 1;
+                    ratingHistogram.remove(cursor.getInt(0), cursor.getLong(1));
                 }
             }
         }
-        return true;
     }
 
-    public void setSolved(String puzzleId) {
-        try (SQLiteDatabase db = dbHelper.openDatabase()) {
-            db.execSQL("UPDATE " + PUZZLE_TABLE_NAME + " SET " + COLUMN_SOLVED + " = 1 WHERE " + COLUMN_PUZZLE_ID + " = ?", new String[]{puzzleId});
+    /**
+     * Unsolved puzzle counts per rating and theme, built with one pass over the pack on
+     * first use and kept current by {@link #setSolved(String)}.
+     */
+    @Override
+    public synchronized RatingHistogram getRatingHistogram() {
+        if (isNull(ratingHistogram)) {
+            RatingHistogram histogram = new RatingHistogram();
+            Set<String> solvedIds = stores.progress().solvedIds();
+            try (Cursor cursor = pack().rawQuery(ALL_RATINGS, null)) {
+                while (cursor.moveToNext()) {
+                    if (!solvedIds.contains(cursor.getString(0))) {
+                        histogram.add(cursor.getInt(1), cursor.getLong(2));
+                    }
+                }
+            }
+            ratingHistogram = histogram;
         }
+        return ratingHistogram;
     }
 
-    public int getSolvedPuzzleCount() {
-        try (SQLiteDatabase db = dbHelper.openDatabase();
-             Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_SOLVED + " = 1", null)) {
-            if (cursor.moveToFirst()) {
-                return cursor.getInt(0);
-            }
-        }
-        return 0;
+    /**
+     * Queues an attempt for the history and statistics; it is written with the next batch.
+     * A failed attempt, or any attempt at a puzzle under review, also updates the review
+     * schedule right away.
+     * <p>
+     * Unlike solves, queued attempts are not journaled: if the process is killed before the
+     * next batch or {@link #flushProgress()}, which the activity calls from onPause, up to
+     * {@link AttemptStore#FLUSH_SIZE} - 1 attempts are lost from the history and statistics.
+     */
+    @Override
+    public void recordPuzzleAttempt(PuzzleAttempt attempt) {
+        stores.attempts().add(attempt);
+        stores.themePerformance().record(attempt);
+        stores.reviews().record(attempt);
     }
 
-    public int getAllPuzzleCount() {
-        try (SQLiteDatabase db = dbHelper.openDatabase();
-             Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + PUZZLE_TABLE_NAME, null)) {
-            if (cursor.moveToFirst()) {
-                return cursor.getInt(0);
-            }
+    /**
+     * Takes the most overdue failed puzzle off the review queue, or returns null if no review
+     * is due. The puzzle is offered again after its next attempt is recorded. The queue holds
+     * the reviews of every pack sharing the progress, so the imported pack leaves it to the
+     * bundled one.
+     */
+    @Override
+    public String pollDueReview(long themeMask) {
+        return isImportedPack() ? null : stores.reviews().pollDue(System.currentTimeMillis(), themeMask);
+    }
+
+    /**
+     * The per-theme performance snapshot, loaded on first use. It is updated by
+     * {@link #recordPuzzleAttempt(PuzzleAttempt)} and can be queried from any thread.
+     */
+    public ThemePerformance getThemePerformance() {
+        return stores.themePerformance();
+    }
+
+    /**
+     * Writes journaled progress and queued attempts to the database now rather than at the
+     * next threshold, and saves the theme performance and puzzle cache snapshots if they changed.
+     */
+    @Override
+    public void flushProgress() {
+        stores.flush();
+    }
+
+    /**
+     * The LRU cache in front of {@link #getPuzzleById(String)}, warmed from the snapshot the
+     * last session saved on first use.
+     */
+    public PuzzleCache getPuzzleCache() {
+        return stores.puzzleCache();
+    }
+
+    /**
+     * Marks a puzzle as just shown, so it is among those the next session starts with cached.
+     */
+    @Override
+    public void rememberPuzzle(Puzzle puzzle) {
+        if (!isImportedPack()) {
+            stores.puzzleCache().put(puzzle);
         }
-        return 0;
     }
 
-    public List<Puzzle> getPuzzlesWithinRange(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, Set<String> themes) {
-        try (SQLiteDatabase db = dbHelper.openDatabase()) {
-            List<String> selectionArgs = new ArrayList<>();
+    /**
+     * Attempt totals per {@link AttemptStats#dayOf(long) day} within the inclusive range, read
+     * from the daily rollup.
+     */
+    public SortedMap<Long, AttemptStats> getDailyStats(long fromDay, long toDay) {
+        return stores.attempts().dailyStats(fromDay, toDay);
+    }
 
-            StringBuilder queryBuilder = new StringBuilder("SELECT * FROM " + PUZZLE_TABLE_NAME +
-                    " WHERE " + COLUMN_RATING + " >= ?" +
-                    " AND " + COLUMN_RATING + " <= ?" +
-                    " AND " + COLUMN_SOLVED + " = 0");
-            selectionArgs.add(String.valueOf(lowestRating));
-            selectionArgs.add(String.valueOf(highestRating));
+    public SortedMap<String, AttemptStats> getThemeStats() {
+        return stores.attempts().themeStats();
+    }
 
-            if (!excludedPuzzleIds.isEmpty()) {
-                StringBuilder placeholders = new StringBuilder();
-                for (int i = 0; i < excludedPuzzleIds.size(); i++) {
-                    if (i > 0) {
-                        placeholders.append(",");
-                    }
-                    placeholders.append("?");
-                }
-                queryBuilder.append(" AND ").append(COLUMN_PUZZLE_ID).append(" NOT IN (").append(placeholders).append(")");
-                selectionArgs.addAll(excludedPuzzleIds);
-            }
+    /**
+     * Attempt totals keyed by the lowest puzzle rating of each 100-point bucket.
+     */
+    public SortedMap<Integer, AttemptStats> getRatingBucketStats() {
+        return stores.attempts().ratingBucketStats();
+    }
+
+    /**
+     * Answered from the in-memory solved set, which {@link #setSolved(String)} updates together
+     * with the progress store, so reading it costs no query. The set is shared, so the imported
+     * pack's solved puzzles are counted by the bundled pack.
+     */
+    @Override
+    public int getSolvedPuzzleCount() {
+        return isImportedPack() ? 0 : stores.progress().getSolvedCount();
+    }
 
-            if (!isNull(themes) && !themes.isEmpty()) {
-                queryBuilder.append(" AND (");
-                for (String theme : themes) {
-                    queryBuilder.append("(' ' || ").append(COLUMN_THEMES).append(" || ' ') LIKE ? OR ");
-                    selectionArgs.add("% " + theme + " %");
+    @Override
+    public synchronized int getAllPuzzleCount() {
+        if (allPuzzleCount < 0) {
+            try (Cursor cursor = pack().rawQuery("SELECT COUNT(*) FROM " + PUZZLE_TABLE_NAME, null)) {
+                if (cursor.moveToFirst()) {
+                    allPuzzleCount = cursor.getInt(0);
                 }
-                queryBuilder.setLength(queryBuilder.length() - 4);
-                queryBuilder.append(")");
             }
-
-            queryBuilder.append(" GROUP BY ").append(COLUMN_RATING).append(" ORDER BY RANDOM() LIMIT 5");
-
-            return executeQuery(db, queryBuilder.toString(), selectionArgs.toArray(new String[0]));
         }
+        return Math.max(allPuzzleCount, 0);
+    }
+
+    @Override
+    public List<Puzzle> getPuzzlesWithinRange(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask) {
+        return puzzleSampler.sample(pack(), lowestRating, highestRating, excludedPuzzleIds, themeMask, stores.progress().solvedIds());
     }
 
+    /**
+     * Answered from the {@link PuzzleCache} when possible, which opens neither database. The
+     * cache holds bundled puzzles only, so the imported pack always queries its own file.
+     */
+    @Override
     public Puzzle getPuzzleById(String puzzleId) throws NoSuchElementException {
-        try (SQLiteDatabase db = dbHelper.openDatabase()) {
-            String query = "SELECT * FROM " + PUZZLE_TABLE_NAME +
-                    " WHERE " + COLUMN_PUZZLE_ID + " = ?";
-            List<Puzzle> puzzles = executeQuery(db, query, new String[]{puzzleId});
+        PuzzleCache cache = isImportedPack() ? null : stores.puzzleCache();
+        Puzzle puzzle = isNull(cache) ? null : cache.get(puzzleId);
+        if (isNull(puzzle)) {
+            // The SQL never changes, so the connection's prepared-statement cache parses it only once.
+            List<Puzzle> puzzles = executeQuery(pack(), PUZZLE_BY_ID, new String[]{puzzleId}, stores.progress().solvedIds());
             if (puzzles.isEmpty()) {
                 throw new NoSuchElementException("Puzzle ID " + puzzleId + " not found");
             }
-            return puzzles.get(0);
+            puzzle = puzzles.get(0);
+            if (!isNull(cache)) {
+                cache.put(puzzle);
+            }
+        }
+        return puzzle;
+    }
+
+    /**
+     * Read with one pass over the ids in SQLite.
+     */
+    @Override
+    public PuzzleIdIndex getPuzzleIdIndex() {
+        try (Cursor cursor = pack().rawQuery(ALL_IDS, null)) {
+            long[] keys = new long[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext() && count < keys.length) {
+                long key = PackedPuzzleCodec.encodeId(cursor.getString(0));
+                if (key >= 0) {
+                    keys[count++] = key;
+                }
+            }
+            return new PuzzleIdIndex(count == keys.length ? keys : Arrays.copyOf(keys, count));
         }
     }
 
-    private List<Puzzle> executeQuery(SQLiteDatabase db, String query, String[] selectionArgs) {
+    static List<Puzzle> executeQuery(SQLiteDatabase db, String query, String[] selectionArgs, Set<String> solvedPuzzleIds) {
         List<Puzzle> puzzles = new ArrayList<>();
         try (Cursor cursor = db.rawQuery(query, selectionArgs)) {
             int puzzleIdIndex = cursor.getColumnIndex(COLUMN_PUZZLE_ID);
-            int fenIndex = cursor.getColumnIndex(PuzzleTable.COLUMN_FEN);
-            int movesIndex = cursor.getColumnIndex(PuzzleTable.COLUMN_MOVES);
+            int fenIndex = cursor.getColumnIndex(COLUMN_FEN);
+            int movesIndex = cursor.getColumnIndex(COLUMN_MOVES);
             int ratingIndex = cursor.getColumnIndex(COLUMN_RATING);
-            int solvedIndex = cursor.getColumnIndex(COLUMN_SOLVED);
             int themesIndex = cursor.getColumnIndex(COLUMN_THEMES);
             while (cursor.moveToNext()) {
-                if (puzzleIdIndex >= 0 && fenIndex >= 0 && movesIndex >= 0 && ratingIndex >= 0 && solvedIndex >= 0 && themesIndex >= 0) {
+                if (puzzleIdIndex >= 0 && fenIndex >= 0 && movesIndex >= 0 && ratingIndex >= 0 && themesIndex >= 0) {
+                    String id = cursor.getString(puzzleIdIndex);
                     puzzles.add(new Puzzle(
-                            cursor.getString(puzzleIdIndex),
+                            id,
                             cursor.getString(fenIndex),
                             cursor.getString(movesIndex),
                             cursor.getInt(ratingIndex),
                             cursor.getString(themesIndex),
-                            cursor.getInt(solvedIndex) == 1
+                            solvedPuzzleIds.contains(id)
                     ));
                 }
             }
@@ -147,25 +349,15 @@ public class DatabaseAccessor {
         return puzzles;
     }
 
+    /**
+     * The themes with a {@link ThemeMask} bit that some unsolved puzzle still carries, read
+     * off the {@link #getRatingHistogram() histogram}, so a theme drops out once its last
+     * puzzle is solved and no call walks the pack.
+     */
+    @Override
     public Set<String> getPuzzleThemes() {
-        String query = "SELECT DISTINCT " + COLUMN_THEMES + " FROM " + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_THEMES + " IS NOT NULL AND " + COLUMN_THEMES + " != '' AND " + COLUMN_SOLVED + " = 0";
-
-        try (SQLiteDatabase db = dbHelper.openDatabase(); Cursor cursor = db.rawQuery(query, null)) {
-            Set<String> newThemes = ConcurrentHashMap.newKeySet();
-            int themesIndex = cursor.getColumnIndex(COLUMN_THEMES);
-            while (cursor.moveToNext()) {
-                if (themesIndex >= 0) {
-                    String themes = cursor.getString(themesIndex);
-                    if (!isNull(themes) && !themes.isEmpty()) {
-                        for (String theme : themes.split(" ")) {
-                            if (!theme.isEmpty()) {
-                                newThemes.add(theme);
-                            }
-                        }
-                    }
-                }
-            }
-            return newThemes;
-        }
+        Set<String> themes = ConcurrentHashMap.newKeySet();
+        themes.addAll(ThemeMask.themesOf(getRatingHistogram().unsolvedThemeMask()));
+        return themes;
     }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs database work off the UI thread and posts results back to the main looper.
+ * <p>
+ * Work that has to happen in submission order (writes, and anything that moves the
+ * puzzle buffer) goes through a single writer thread; independent reads such as the
+ * header counters or the theme scan run on a small read pool. SQLite in WAL mode lets
+ * those readers proceed while the writer commits.
+ */
+public class DatabaseExecutor {
+
+    private static final String TAG = "DatabaseExecutor";
+    private static final int READER_THREADS = 2;
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static DatabaseExecutor instance;
+
+    private final Executor writer;
+    private final Executor readers;
+    private final Executor mainThread;
+
+    public DatabaseExecutor(Executor writer, Executor readers, Executor mainThread) {
+        if (isNull(writer) || isNull(readers) || isNull(mainThread)) {
+            throw new IllegalArgumentException("Executors cannot be null");
+        }
+        this.writer = writer;
+        this.readers = readers;
+        this.mainThread = mainThread;
+    }
+
+    /**
+     * Process-wide executor. Its threads outlive any one activity, so work queued from
+     * onDestroy (such as releasing the database) still runs after the activity is gone.
+     */
+    public static synchronized DatabaseExecutor getInstance() {
+        if (isNull(instance)) {
+            ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "db-writer"));
+            ExecutorService readers = Executors.newFixedThreadPool(READER_THREADS, runnable -> new Thread(runnable, "db-reader"));
+            Handler handler = new Handler(Looper.getMainLooper());
+            instance = new DatabaseExecutor(writer, readers, handler::post);
+        }
+        return instance;
+    }
+
+    /**
+     * The read pool itself, for background work that hands its results over without
+     * going through the main looper.
+     */
+    public Executor readExecutor() {
+        return readers;
+    }
+
+    public <T> void read(Callable<T> work, Callback<T> onResult, Callback<Exception> onError) {
+        submit(readers, work, onResult, onError);
+    }
+
+    public <T> void write(Callable<T> work, Callback<T> onResult, Callback<Exception> onError) {
+        submit(writer, work, onResult, onError);
+    }
+
+    public void write(Runnable work) {
+        submit(writer, () -> {
+            work.run();
+            return null;
+        }, result -> {
+        }, e -> Log.e(TAG, "Database write failed", e));
+    }
+
+    private <T> void submit(Executor executor, Callable<T> work, Callback<T> onResult, Callback<Exception> onError) {
+        executor.execute(() -> {
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                mainThread.execute(() -> onError.onResult(e));
+                return;
+            }
+            mainThread.execute(() -> onResult.onResult(result));
+        });
+    }
+}
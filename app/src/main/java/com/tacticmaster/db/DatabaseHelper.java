@@ -1,114 +1,557 @@
 package com.tacticmaster.db;
 
+import static com.tacticmaster.db.PuzzleTable.ATTEMPTS_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_ATTEMPTED_AT;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_ATTEMPTS;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_BUCKET;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_DAY;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_DUE_AT;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_EASE;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_FEN;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_HINTS_USED;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_INTERVAL_DAYS;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_MOVES;
 import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING_AFTER;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING_BEFORE;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_REPETITIONS;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SAMPLE_KEY;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SEQUENCE;
 import static com.tacticmaster.db.PuzzleTable.COLUMN_SOLVED;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SOLVE_TIME_MILLIS;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEME;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEMES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEME_MASK;
+import static com.tacticmaster.db.PuzzleTable.DAILY_STATS_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.INDEX_RATING_SAMPLE_KEY;
+import static com.tacticmaster.db.PuzzleTable.INDEX_REVIEW_DUE;
+import static com.tacticmaster.db.PuzzleTable.INDEX_SAMPLING;
+import static com.tacticmaster.db.PuzzleTable.JOURNAL_STATE_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.PROGRESS_TABLE_NAME;
 import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.RATING_STATS_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.REVIEW_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.THEME_STATS_TABLE_NAME;
 import static java.util.Objects.isNull;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
 
+/**
+ * Owns the two databases behind the app:
+ * <ul>
+ *     <li>the puzzle pack ({@link #DATABASE_NAME}), copied from the assets once per
+ *     {@link #PACK_VERSION}, prepared for sampling and afterwards only opened read-only;</li>
+ *     <li>the imported pack ({@link #IMPORTED_PACK_NAME}), built by {@link #importPuzzles}
+ *     and kept across new versions of the bundled pack;</li>
+ *     <li>the progress store ({@link #PROGRESS_DATABASE_NAME}), a small WAL-mode database
+ *     keyed by PuzzleId that this {@link SQLiteOpenHelper} creates and migrates.</li>
+ * </ul>
+ * Shipping a new pack therefore replaces one file and never has to replay user progress.
+ */
 public class DatabaseHelper extends SQLiteOpenHelper {
 
+    private static final String TAG = "DatabaseHelper";
+
     public static final String DATABASE_NAME = "puzzle.db";
-    private static final int DATABASE_VERSION = 4;
+    public static final String PROGRESS_DATABASE_NAME = "progress.db";
+    public static final String BINARY_PACK_NAME = "puzzle.pack";
+    public static final String PROGRESS_JOURNAL_NAME = "progress.journal";
+    public static final String THEME_PERFORMANCE_NAME = "theme_performance.bin";
+    public static final String PACK_METADATA_NAME = "puzzle.meta";
+    public static final String PUZZLE_CACHE_NAME = "puzzle_cache.bin";
+    public static final String IMPORTED_PACK_NAME = "imported.db";
+
+    // Bump whenever a new puzzle.db asset ships. The installed pack records it in PRAGMA user_version.
+    static final int PACK_VERSION = 4;
+    private static final int DATABASE_VERSION = 5;
+    private static final String PROGRESS_SCHEMA = "progress";
+    private static final String BUNDLED_SCHEMA = "bundled";
+
+    // Tuning for the shared pack handle: negative cache_size is in KiB, mmap_size in bytes.
+    private static final int PAGE_CACHE_KIB = 8 * 1024;
+    private static final long MMAP_SIZE_BYTES = 64L * 1024 * 1024;
+
+    private static DatabaseHelper instance;
+
     private final Context context;
     private final String databasePath;
 
+    private SQLiteDatabase sharedDatabase;
+    private int sharedDatabaseReferences;
+    private volatile PackInstaller.Listener installListener;
+
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (isNull(instance)) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
     public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        super(context, PROGRESS_DATABASE_NAME, null, DATABASE_VERSION);
         this.context = context;
         this.databasePath = context.getFilesDir().getPath() + "/" + DATABASE_NAME;
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE_NAME + " (" +
+                COLUMN_PUZZLE_ID + " TEXT PRIMARY KEY NOT NULL, " +
+                COLUMN_SOLVED + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0) WITHOUT ROWID");
+        createJournalState(db);
+        createAttemptTables(db);
+        createReviewTable(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion < 4 && newVersion >= 4) {
-            SQLiteDatabase localDb = openDatabase();
-
-            // Store solved puzzle IDs
-            String[] solvedPuzzleIds = null;
-            try (Cursor cursor = localDb.rawQuery("SELECT " + COLUMN_PUZZLE_ID + " FROM " + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_SOLVED + " = 1", null)) {
-                solvedPuzzleIds = new String[cursor.getCount()];
-                int index = 0;
-                while (cursor.moveToNext()) {
-                    solvedPuzzleIds[index++] = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PUZZLE_ID));
-                }
+        if (oldVersion < 2) {
+            createJournalState(db);
+        }
+        if (oldVersion < 3) {
+            createAttemptTables(db);
+        }
+        if (oldVersion < 4) {
+            createReviewTable(db);
+        } else if (oldVersion < 5) {
+            db.execSQL("ALTER TABLE " + REVIEW_TABLE_NAME + " ADD COLUMN " + COLUMN_THEME_MASK + " INTEGER NOT NULL DEFAULT 0");
+        }
+    }
+
+    // Sequence of the last ProgressJournal entry applied, committed with the entries themselves.
+    private static void createJournalState(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + JOURNAL_STATE_TABLE_NAME + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_SEQUENCE + " INTEGER NOT NULL)");
+    }
+
+    // Raw attempt history and the rollups AttemptStore keeps next to it.
+    private static void createAttemptTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + ATTEMPTS_TABLE_NAME + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_PUZZLE_ID + " TEXT NOT NULL, " +
+                COLUMN_ATTEMPTED_AT + " INTEGER NOT NULL, " +
+                COLUMN_SOLVE_TIME_MILLIS + " INTEGER NOT NULL, " +
+                COLUMN_HINTS_USED + " INTEGER NOT NULL, " +
+                COLUMN_SOLVED + " INTEGER NOT NULL, " +
+                COLUMN_RATING_BEFORE + " INTEGER NOT NULL, " +
+                COLUMN_RATING_AFTER + " INTEGER NOT NULL)");
+        createRollup(db, DAILY_STATS_TABLE_NAME, COLUMN_DAY + " INTEGER PRIMARY KEY", "");
+        createRollup(db, THEME_STATS_TABLE_NAME, COLUMN_THEME + " TEXT PRIMARY KEY NOT NULL", " WITHOUT ROWID");
+        createRollup(db, RATING_STATS_TABLE_NAME, COLUMN_BUCKET + " INTEGER PRIMARY KEY", "");
+    }
+
+    // Review state per failed puzzle; ReviewQueue pages through it in due order. Rows from
+    // before the theme mask was kept read 0 and get theirs with the next attempt.
+    private static void createReviewTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + REVIEW_TABLE_NAME + " (" +
+                COLUMN_PUZZLE_ID + " TEXT PRIMARY KEY NOT NULL, " +
+                COLUMN_DUE_AT + " INTEGER NOT NULL, " +
+                COLUMN_INTERVAL_DAYS + " INTEGER NOT NULL, " +
+                COLUMN_EASE + " INTEGER NOT NULL, " +
+                COLUMN_REPETITIONS + " INTEGER NOT NULL, " +
+                COLUMN_THEME_MASK + " INTEGER NOT NULL DEFAULT 0) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_REVIEW_DUE + " ON " + REVIEW_TABLE_NAME + " (" + COLUMN_DUE_AT + ", " + COLUMN_PUZZLE_ID + ")");
+    }
+
+    private static void createRollup(SQLiteDatabase db, String table, String key, String options) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + table + " (" + key + ", " +
+                COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_SOLVED + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_SOLVE_TIME_MILLIS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_HINTS_USED + " INTEGER NOT NULL DEFAULT 0)" + options);
+    }
+
+    File progressJournalFile() {
+        return new File(context.getFilesDir(), PROGRESS_JOURNAL_NAME);
+    }
+
+    File themePerformanceFile() {
+        return new File(context.getFilesDir(), THEME_PERFORMANCE_NAME);
+    }
+
+    /**
+     * The puzzle cache snapshot of one backend. A {@link PuzzleBackend#BINARY} puzzle only
+     * has the themes its {@link ThemeMask} keeps, so it must not be restored into another
+     * backend's session; {@link PuzzleBackend#SQLITE} keeps the name snapshots had before.
+     */
+    File puzzleCacheFile(PuzzleBackend backend) {
+        String name = backend == PuzzleBackend.SQLITE ? PUZZLE_CACHE_NAME
+                : "puzzle_cache_" + backend.name().toLowerCase(Locale.ROOT) + ".bin";
+        return new File(context.getFilesDir(), name);
+    }
+
+    File importedPackFile() {
+        return new File(context.getFilesDir(), IMPORTED_PACK_NAME);
+    }
+
+    File packMetadataFile() {
+        return new File(context.getFilesDir(), PACK_METADATA_NAME);
+    }
+
+    /**
+     * Whether the installed pack is recorded as current in its {@link PackMetadata}, i.e.
+     * {@link #createDatabase()} has nothing to do. Reads one small file and opens no database,
+     * so it can decide whether to show a progress state, though still off the UI thread.
+     */
+    public boolean isPackCurrent() {
+        return PackMetadata.isCurrent(packMetadataFile(), new File(databasePath), PACK_VERSION);
+    }
+
+    /**
+     * Receives copy progress of the next pack install, on the thread that runs it.
+     */
+    public void setInstallListener(PackInstaller.Listener installListener) {
+        this.installListener = installListener;
+    }
+
+    /**
+     * Installs the bundled pack if it is missing or older than {@link #PACK_VERSION}. When the
+     * {@link PackMetadata} still describes the installed file this returns without opening
+     * SQLite; otherwise the pack's own version is checked, and the metadata is rewritten
+     * after an install or for a pack installed before the metadata existed.
+     */
+    public void createDatabase() throws IOException {
+        if (isPackCurrent()) {
+            return;
+        }
+        File pack = new File(databasePath);
+        if (readVersion(pack) < PACK_VERSION) {
+            Log.i(TAG, "Installing puzzle pack version " + PACK_VERSION);
+            installPack(pack);
+        }
+        PackMetadata.of(pack, PACK_VERSION).write(packMetadataFile());
+    }
+
+    private static int readVersion(File database) {
+        if (!database.exists()) {
+            return 0;
+        }
+        try (SQLiteDatabase db = SQLiteDatabase.openDatabase(database.getPath(), null, SQLiteDatabase.OPEN_READONLY)) {
+            return db.getVersion();
+        } catch (SQLiteException e) {
+            Log.w(TAG, database.getName() + " is unreadable, reinstalling", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Installs the pack in steps that can each run again, so an install cut short by process
+     * death resumes on the next start:
+     * <ol>
+     *     <li>copy the asset to a staging file and prepare it; its version is written last,
+     *     so a staging file already at {@link #PACK_VERSION} is complete and kept;</li>
+     *     <li>carry progress out of a legacy pack, which is idempotent;</li>
+     *     <li>rename the staging file over the old pack, replacing it atomically.</li>
+     * </ol>
+     * The old pack stays intact until the rename.
+     */
+    private void installPack(File pack) throws IOException {
+        File staging = new File(databasePath + ".staging");
+        if (readVersion(staging) < PACK_VERSION) {
+            // Also drops the journal of an interrupted run, which must not be replayed onto a fresh copy.
+            SQLiteDatabase.deleteDatabase(staging);
+            long copied = PackInstaller.install(context.getAssets(), DATABASE_NAME, staging, installListener);
+            Log.i(TAG, "Copied " + copied + " bytes of puzzle pack");
+            try (SQLiteDatabase db = SQLiteDatabase.openDatabase(staging.getPath(), null, SQLiteDatabase.OPEN_READWRITE)) {
+                createSamplingIndex(db);
+                db.setVersion(PACK_VERSION);
             }
+        } else {
+            Log.i(TAG, "Resuming interrupted install from " + staging.getName());
+        }
+        if (pack.exists()) {
+            importLegacyProgress();
+            deleteSidecarFiles(pack);
+        }
+        // Version stub of the helper that used to own puzzle.db before progress was split out.
+        context.deleteDatabase(DATABASE_NAME);
+        if (!staging.renameTo(pack)) {
+            throw new IOException("Could not move " + staging + " to " + pack);
+        }
+    }
 
-            // Close database
-            localDb.close();
+    /**
+     * Runs a {@link PuzzleCsvImporter} against a copy of the imported pack and, once the whole
+     * file is imported, drops the puzzles the bundled pack already has, indexes the copy and
+     * renames it over {@link #IMPORTED_PACK_NAME}. The bundled pack is never written, so
+     * imported puzzles survive a new {@link #PACK_VERSION}. The copy and its import position
+     * survive cancellation and process death, so calling this again with the same file resumes.
+     * <p>
+     * Repositories already reading the imported pack keep their counts and their handle on the
+     * previous file until {@link PuzzleRepository#reloadPack()} is called, e.g. on the
+     * {@link PackManager}. Nothing in the app calls this yet; it is API-only until there is
+     * an import screen. Runs for minutes on a full export, so keep it on a background thread.
+     */
+    public PuzzleCsvImporter.Result importPuzzles(PuzzleCsvImporter importer) throws IOException {
+        createDatabase();
+        File imported = importedPackFile();
+        File copy = new File(imported.getPath() + ".import");
+        if (!copy.exists()) {
+            File partial = new File(copy.getPath() + ".tmp");
+            SQLiteDatabase.deleteDatabase(partial);
+            if (imported.exists()) {
+                copyFile(imported, partial);
+            } else {
+                createEmptyPack(partial);
+            }
+            if (!partial.renameTo(copy)) {
+                throw new IOException("Could not move " + partial + " to " + copy);
+            }
+        }
+        PuzzleCsvImporter.Result result;
+        try (SQLiteDatabase db = SQLiteDatabase.openDatabase(copy.getPath(), null, SQLiteDatabase.OPEN_READWRITE)) {
+            result = importer.importInto(db);
+            if (result.complete()) {
+                int duplicates = dropBundledPuzzles(db, databasePath);
+                createSamplingIndex(db);
+                result = new PuzzleCsvImporter.Result(result.imported() - duplicates, result.skipped() + duplicates, true);
+            }
+        }
+        if (result.complete()) {
+            deleteSidecarFiles(imported);
+            if (!copy.renameTo(imported)) {
+                throw new IOException("Could not move " + copy + " to " + imported);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the puzzles the bundled pack also has from an imported pack, so an id lives in
+     * one pack only, and returns how many there were.
+     */
+    static int dropBundledPuzzles(SQLiteDatabase imported, String bundledPath) {
+        imported.execSQL("ATTACH DATABASE ? AS " + BUNDLED_SCHEMA, new Object[]{bundledPath});
+        try (SQLiteStatement delete = imported.compileStatement("DELETE FROM main." + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_PUZZLE_ID +
+                " IN (SELECT " + COLUMN_PUZZLE_ID + " FROM " + BUNDLED_SCHEMA + "." + PUZZLE_TABLE_NAME + ")")) {
+            return delete.executeUpdateDelete();
+        } finally {
+            imported.execSQL("DETACH DATABASE " + BUNDLED_SCHEMA);
+        }
+    }
 
-            // Copy new database
+    /**
+     * Opens the imported pack read-only for the caller to close, creating it empty first if
+     * nothing was imported yet.
+     */
+    SQLiteDatabase openImportedPack() throws IOException {
+        File imported = importedPackFile();
+        if (!imported.exists()) {
+            File partial = new File(imported.getPath() + ".tmp");
+            SQLiteDatabase.deleteDatabase(partial);
+            createEmptyPack(partial);
+            if (!partial.renameTo(imported)) {
+                throw new IOException("Could not move " + partial + " to " + imported);
+            }
+        }
+        return SQLiteDatabase.openDatabase(imported.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+    }
+
+    // The puzzle table as the bundled asset declares it, with the sampling index.
+    private static void createEmptyPack(File file) {
+        try (SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null)) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + PUZZLE_TABLE_NAME + " (" +
+                    COLUMN_PUZZLE_ID + " TEXT, " + COLUMN_FEN + " TEXT, " + COLUMN_MOVES + " TEXT, " +
+                    COLUMN_RATING + " INTEGER, " + COLUMN_THEMES + " TEXT, UNIQUE(" + COLUMN_PUZZLE_ID + "))");
+            createSamplingIndex(db);
+        }
+    }
+
+    private static void copyFile(File source, File target) throws IOException {
+        try (FileInputStream input = new FileInputStream(source);
+             FileOutputStream output = new FileOutputStream(target);
+             FileChannel from = input.getChannel();
+             FileChannel to = output.getChannel()) {
+            long size = from.size();
+            long copied = 0;
+            while (copied < size) {
+                copied += from.transferTo(copied, size - copied, to);
+            }
+            to.force(true);
+        }
+    }
+
+    // A journal left next to the old pack would otherwise be rolled back into the new one.
+    private static void deleteSidecarFiles(File database) {
+        for (String suffix : new String[]{"-journal", "-wal", "-shm"}) {
+            File sidecar = new File(database.getPath() + suffix);
+            if (sidecar.exists() && !sidecar.delete()) {
+                Log.w(TAG, "Could not delete " + sidecar);
+            }
+        }
+    }
+
+    /**
+     * Packs installed before the progress store existed kept solved flags in their own
+     * Solved column. Carries them over before the file is replaced.
+     */
+    private void importLegacyProgress() {
+        SQLiteDatabase legacy;
+        try {
+            legacy = SQLiteDatabase.openDatabase(databasePath, null, SQLiteDatabase.OPEN_READWRITE);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not open previous puzzle pack, progress not imported", e);
+            return;
+        }
+        try (legacy) {
+            if (!hasColumn(legacy, PUZZLE_TABLE_NAME, COLUMN_SOLVED)) {
+                return;
+            }
+            // Creates the progress schema before another connection writes into it.
+            getWritableDatabase();
+            importLegacyProgress(legacy, context.getDatabasePath(PROGRESS_DATABASE_NAME).getPath());
+        }
+    }
+
+    /**
+     * Copies the solved flags of a legacy pack into the progress store with two set-based
+     * statements in one transaction. The progress file is attached to the legacy pack's own
+     * connection, since attaching it to the progress helper's connection would make Android
+     * switch off WAL there. SQLite 3.9 has no UPSERT, so missing rows are inserted first and
+     * the UPDATE then flags them all.
+     */
+    static void importLegacyProgress(SQLiteDatabase legacy, String progressPath) {
+        String progressTable = PROGRESS_SCHEMA + "." + PROGRESS_TABLE_NAME;
+        String solvedInPack = "SELECT " + COLUMN_PUZZLE_ID + " FROM main." + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_SOLVED + " = 1";
+        legacy.execSQL("ATTACH DATABASE ? AS " + PROGRESS_SCHEMA, new Object[]{progressPath});
+        try {
+            legacy.beginTransaction();
             try {
-                copyDatabase();
-            } catch (IOException e) {
-                throw new RuntimeException("Error copying database during upgrade", e);
+                legacy.execSQL("INSERT OR IGNORE INTO " + progressTable + " (" + COLUMN_PUZZLE_ID + ") " + solvedInPack);
+                legacy.execSQL("UPDATE " + progressTable + " SET " + COLUMN_SOLVED + " = 1 WHERE " + COLUMN_SOLVED + " = 0 AND " +
+                        COLUMN_PUZZLE_ID + " IN (" + solvedInPack + ")");
+                legacy.setTransactionSuccessful();
+            } finally {
+                legacy.endTransaction();
             }
+        } finally {
+            legacy.execSQL("DETACH DATABASE " + PROGRESS_SCHEMA);
+        }
+    }
 
-            // Reopen database and apply schema changes
-            localDb = openDatabase();
-            localDb.execSQL("ALTER TABLE " + PUZZLE_TABLE_NAME + " ADD COLUMN " + COLUMN_SOLVED + " INTEGER DEFAULT 0");
+    /**
+     * Gives every puzzle a random, fixed SampleKey and a theme bitmask and indexes them
+     * together with the rating, so {@link PuzzleSampler} can seek to a random row inside
+     * a rating band and test the theme filter from the index alone. Idempotent, so an
+     * interrupted upgrade can simply run it again.
+     */
+    static void createSamplingIndex(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            if (!hasColumn(db, PUZZLE_TABLE_NAME, COLUMN_SAMPLE_KEY)) {
+                db.execSQL("ALTER TABLE " + PUZZLE_TABLE_NAME + " ADD COLUMN " + COLUMN_SAMPLE_KEY + " INTEGER");
+            }
+            if (!hasColumn(db, PUZZLE_TABLE_NAME, COLUMN_THEME_MASK)) {
+                db.execSQL("ALTER TABLE " + PUZZLE_TABLE_NAME + " ADD COLUMN " + COLUMN_THEME_MASK + " INTEGER");
+            }
+            db.execSQL("UPDATE " + PUZZLE_TABLE_NAME + " SET " + COLUMN_SAMPLE_KEY + " = random() WHERE " + COLUMN_SAMPLE_KEY + " IS NULL");
+            db.execSQL("UPDATE " + PUZZLE_TABLE_NAME + " SET " + COLUMN_THEME_MASK + " = " + ThemeMask.sqlExpression() + " WHERE " + COLUMN_THEME_MASK + " IS NULL");
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_RATING_SAMPLE_KEY);
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_SAMPLING + " ON " + PUZZLE_TABLE_NAME + " (" + COLUMN_RATING + ", " + COLUMN_SAMPLE_KEY + ", " + COLUMN_THEME_MASK + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
 
-            if (!isNull(solvedPuzzleIds) && solvedPuzzleIds.length > 0) {
-                ContentValues values = new ContentValues();
-                values.put(COLUMN_SOLVED, 1);
-                for (String puzzleId : solvedPuzzleIds) {
-                    localDb.update(PUZZLE_TABLE_NAME, values, COLUMN_PUZZLE_ID + " = ?", new String[]{puzzleId});
+    static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (nameIndex >= 0 && column.equals(cursor.getString(nameIndex))) {
+                    return true;
                 }
             }
-
-            localDb.close();
         }
+        return false;
     }
 
-    public void createDatabase() throws IOException {
-        boolean dbExist = checkDatabase();
-        if (!dbExist) {
-            copyDatabase();
-            SQLiteDatabase db = openDatabase();
-            db.execSQL("ALTER TABLE " + PUZZLE_TABLE_NAME + " ADD COLUMN " + COLUMN_SOLVED + " INTEGER DEFAULT 0");
-            db.close();
+    /**
+     * Opens the binary copy of the pack, converting it from the installed SQLite pack first
+     * if it is missing or older than {@link #PACK_VERSION}. The conversion reads the whole
+     * table, so like {@link #createDatabase()} this belongs on a background thread.
+     */
+    public BinaryPuzzlePack openBinaryPack() throws IOException {
+        File binaryPack = new File(context.getFilesDir(), BINARY_PACK_NAME);
+        if (BinaryPuzzlePack.readPackVersion(binaryPack) < PACK_VERSION) {
+            createDatabase();
+            File staging = new File(binaryPack.getPath() + ".staging");
+            SQLiteDatabase db = acquireDatabase();
+            try {
+                int converted = BinaryPuzzlePackWriter.convert(db, staging, PACK_VERSION);
+                Log.i(TAG, "Converted " + converted + " puzzles to " + BINARY_PACK_NAME);
+            } catch (IOException e) {
+                if (!staging.delete()) {
+                    Log.w(TAG, "Could not delete " + staging);
+                }
+                throw e;
+            } finally {
+                releaseDatabase();
+            }
+            if (!staging.renameTo(binaryPack)) {
+                throw new IOException("Could not move " + staging + " to " + binaryPack);
+            }
         }
+        return BinaryPuzzlePack.open(binaryPack);
     }
 
-    private boolean checkDatabase() {
-        if (!new File(databasePath).exists()) {
-            Log.i("DatabaseHelper", "Database does not exist yet, will create from assets");
-            return false;
+    /**
+     * Returns the process-wide read-only pack handle, opening it on first use. Every call
+     * must be balanced by {@link #releaseDatabase()}; once the last holder releases it,
+     * both the pack and the progress store are closed.
+     */
+    public synchronized SQLiteDatabase acquireDatabase() {
+        if (isNull(sharedDatabase) || !sharedDatabase.isOpen()) {
+            sharedDatabase = openPack();
         }
-        SQLiteDatabase db = getWritableDatabase(); // open the bundled database once, to trigger onUpdate if needed
-        db.close();
-        return true;
+        sharedDatabaseReferences++;
+        return sharedDatabase;
     }
 
-    private void copyDatabase() throws IOException {
-        try (InputStream input = context.getAssets().open(DATABASE_NAME);
-             OutputStream output = new FileOutputStream(databasePath)) {
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = input.read(buffer)) > 0) {
-                output.write(buffer, 0, length);
+    public synchronized void releaseDatabase() {
+        if (sharedDatabaseReferences == 0) {
+            Log.w(TAG, "releaseDatabase called without a matching acquireDatabase");
+            return;
+        }
+        sharedDatabaseReferences--;
+        if (sharedDatabaseReferences == 0) {
+            if (!isNull(sharedDatabase)) {
+                sharedDatabase.close();
+                sharedDatabase = null;
             }
-            output.flush();
+            close();
         }
     }
 
-    public SQLiteDatabase openDatabase() {
-        return SQLiteDatabase.openDatabase(databasePath, null, SQLiteDatabase.OPEN_READWRITE);
+    private SQLiteDatabase openPack() {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(databasePath, null, SQLiteDatabase.OPEN_READONLY);
+        applyPragma(db, "cache_size = -" + PAGE_CACHE_KIB);
+        applyPragma(db, "mmap_size = " + MMAP_SIZE_BYTES);
+        return db;
+    }
+
+    private static void applyPragma(SQLiteDatabase db, String pragma) {
+        // mmap_size echoes the new value back as a row, which execSQL refuses, so go through a cursor.
+        try (Cursor cursor = db.rawQuery("PRAGMA " + pragma, null)) {
+            cursor.moveToFirst();
+        }
     }
 }
@@ -0,0 +1,300 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * {@link PuzzleRepository} holding a whole pack in primitive arrays, for small packs, tests
+ * and benchmarks against the disk-backed backends.
+ * <p>
+ * The puzzles are taken from the source on first use and sorted by rating, so a rating band
+ * is two binary searches and sampling walks it the way {@link BinaryPuzzlePack} does; sorted
+ * ids with their ordinals answer lookups. Puzzles given as solved start out solved. Progress
+ * and reviews live only in memory and are lost with the repository.
+ */
+public final class InMemoryPuzzleRepository implements PuzzleRepository {
+
+    private final Supplier<? extends Collection<Puzzle>> source;
+    private final Random random;
+    private final Map<String, Review> reviews = new HashMap<>();
+    private final ReviewQueue reviewQueue = new ReviewQueue(this::reviewsAfter);
+    private Pack pack;
+    private SolvedBitmap solvedOrdinals;
+    private RatingHistogram ratingHistogram;
+    private boolean closed;
+
+    public InMemoryPuzzleRepository(Supplier<? extends Collection<Puzzle>> source) {
+        this(source, new Random());
+    }
+
+    InMemoryPuzzleRepository(Supplier<? extends Collection<Puzzle>> source, Random random) {
+        if (isNull(source)) {
+            throw new IllegalArgumentException("source must not be null");
+        }
+        this.source = source;
+        this.random = random;
+    }
+
+    private synchronized Pack pack() {
+        if (closed) {
+            throw new IllegalStateException("InMemoryPuzzleRepository is closed");
+        }
+        if (isNull(pack)) {
+            Collection<Puzzle> puzzles = source.get();
+            pack = new Pack(puzzles);
+            solvedOrdinals = new SolvedBitmap();
+            for (Puzzle puzzle : puzzles) {
+                if (puzzle.solved()) {
+                    solvedOrdinals.add(pack.ordinalOf(puzzle.puzzleId()));
+                }
+            }
+        }
+        return pack;
+    }
+
+    @Override
+    public synchronized List<Puzzle> getPuzzlesWithinRange(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask) {
+        Pack pack = pack();
+        List<Puzzle> sampled = new ArrayList<>();
+        int from = pack.lowerBound(lowestRating);
+        int to = pack.lowerBound(highestRating + 1);
+        if (from >= to) {
+            return sampled;
+        }
+        Set<Integer> sampledRatings = new HashSet<>();
+        while (sampled.size() < PuzzleSampler.BATCH_SIZE) {
+            int start = from + random.nextInt(to - from);
+            int match = walk(pack, start, to, excludedPuzzleIds, themeMask, sampledRatings);
+            if (match < 0) {
+                match = walk(pack, from, start, excludedPuzzleIds, themeMask, sampledRatings);
+            }
+            if (match < 0) {
+                break;
+            }
+            sampledRatings.add(pack.ratings[match]);
+            sampled.add(pack.puzzleAt(match, false));
+        }
+        return sampled;
+    }
+
+    private int walk(Pack pack, int from, int to, Set<String> excludedPuzzleIds, long themeMask, Set<Integer> sampledRatings) {
+        int ordinal = from;
+        while (ordinal < to) {
+            if (solvedOrdinals.contains(ordinal)) {
+                ordinal = solvedOrdinals.nextAbsent(ordinal);
+                continue;
+            }
+            int rating = pack.ratings[ordinal];
+            if (sampledRatings.contains(rating)) {
+                ordinal = pack.lowerBound(rating + 1);
+                continue;
+            }
+            if ((themeMask == ThemeMask.NONE || (pack.themeMasks[ordinal] & themeMask) != 0)
+                    && !excludedPuzzleIds.contains(pack.ids[ordinal])) {
+                return ordinal;
+            }
+            ordinal++;
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized Puzzle getPuzzleById(String puzzleId) throws NoSuchElementException {
+        Pack pack = pack();
+        int ordinal = pack.ordinalOf(puzzleId);
+        if (ordinal < 0) {
+            throw new NoSuchElementException("Puzzle ID " + puzzleId + " not found");
+        }
+        return pack.puzzleAt(ordinal, solvedOrdinals.contains(ordinal));
+    }
+
+    /**
+     * The themes that still have unsolved puzzles.
+     */
+    @Override
+    public synchronized Set<String> getPuzzleThemes() {
+        Set<String> themes = ConcurrentHashMap.newKeySet();
+        themes.addAll(ThemeMask.themesOf(getRatingHistogram().unsolvedThemeMask()));
+        return themes;
+    }
+
+    @Override
+    public synchronized PuzzleIdIndex getPuzzleIdIndex() {
+        return PuzzleIdIndex.of(Arrays.asList(pack().sortedIds));
+    }
+
+    @Override
+    public synchronized int getAllPuzzleCount() {
+        return pack().ids.length;
+    }
+
+    @Override
+    public synchronized int getSolvedPuzzleCount() {
+        pack();
+        return solvedOrdinals.cardinality();
+    }
+
+    @Override
+    public synchronized RatingHistogram getRatingHistogram() {
+        Pack pack = pack();
+        if (isNull(ratingHistogram)) {
+            RatingHistogram histogram = new RatingHistogram();
+            for (int ordinal = solvedOrdinals.nextAbsent(0); ordinal < pack.ids.length; ordinal = solvedOrdinals.nextAbsent(ordinal + 1)) {
+                histogram.add(pack.ratings[ordinal], pack.themeMasks[ordinal]);
+            }
+            ratingHistogram = histogram;
+        }
+        return ratingHistogram;
+    }
+
+    /**
+     * Only puzzles of this pack can be solved; other ids are ignored.
+     */
+    @Override
+    public synchronized boolean wasNotSolved(String puzzleId) {
+        int ordinal = pack().ordinalOf(puzzleId);
+        return ordinal < 0 || !solvedOrdinals.contains(ordinal);
+    }
+
+    @Override
+    public synchronized void setSolved(String puzzleId) {
+        Pack pack = pack();
+        int ordinal = pack.ordinalOf(puzzleId);
+        if (ordinal >= 0 && solvedOrdinals.add(ordinal) && !isNull(ratingHistogram)) {
+            ratingHistogram.remove(pack.ratings[ordinal], pack.themeMasks[ordinal]);
+        }
+    }
+
+    /**
+     * Schedules reviews by the same rules as {@link ReviewStore}.
+     */
+    @Override
+    public synchronized void recordPuzzleAttempt(PuzzleAttempt attempt) {
+        Review next = ReviewStore.next(reviews.get(attempt.puzzleId()), attempt);
+        if (isNull(next)) {
+            return;
+        }
+        reviews.put(next.puzzleId(), next);
+        reviewQueue.onScheduled(next);
+    }
+
+    @Override
+    public synchronized String pollDueReview(long themeMask) {
+        return reviewQueue.pollDue(System.currentTimeMillis(), themeMask);
+    }
+
+    private List<Review> reviewsAfter(long dueAt, String puzzleId, int limit) {
+        List<Review> after = new ArrayList<>();
+        for (Review review : reviews.values()) {
+            if (review.compareTo(dueAt, puzzleId) > 0) {
+                after.add(review);
+            }
+        }
+        after.sort((a, b) -> a.compareTo(b.dueAt(), b.puzzleId()));
+        return after.subList(0, Math.min(limit, after.size()));
+    }
+
+    // Every puzzle is already in memory.
+    @Override
+    public void rememberPuzzle(Puzzle puzzle) {
+    }
+
+    @Override
+    public void flushProgress() {
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        pack = null;
+        solvedOrdinals = null;
+        ratingHistogram = null;
+    }
+
+    /**
+     * The puzzles in rating order, one array per column, and an id index of the ids in
+     * ascending order with the ordinal of each.
+     */
+    private static final class Pack {
+        final String[] ids;
+        final String[] fens;
+        final String[] moves;
+        final String[] themes;
+        final int[] ratings;
+        final long[] themeMasks;
+        final String[] sortedIds;
+        final int[] sortedOrdinals;
+
+        Pack(Collection<Puzzle> puzzles) {
+            Puzzle[] byRating = puzzles.toArray(new Puzzle[0]);
+            Arrays.sort(byRating, Comparator.comparingInt(Puzzle::rating).thenComparing(Puzzle::puzzleId));
+            int count = byRating.length;
+            ids = new String[count];
+            fens = new String[count];
+            moves = new String[count];
+            themes = new String[count];
+            ratings = new int[count];
+            themeMasks = new long[count];
+            for (int i = 0; i < count; i++) {
+                Puzzle puzzle = byRating[i];
+                ids[i] = puzzle.puzzleId();
+                fens[i] = puzzle.fen();
+                moves[i] = puzzle.moves();
+                themes[i] = isNull(puzzle.themes()) ? "" : puzzle.themes();
+                ratings[i] = puzzle.rating();
+                themeMasks[i] = ThemeMask.parse(puzzle.themes());
+            }
+            Integer[] byId = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                byId[i] = i;
+            }
+            Arrays.sort(byId, Comparator.comparing(ordinal -> ids[ordinal]));
+            sortedIds = new String[count];
+            sortedOrdinals = new int[count];
+            for (int i = 0; i < count; i++) {
+                sortedIds[i] = ids[byId[i]];
+                sortedOrdinals[i] = byId[i];
+            }
+        }
+
+        int ordinalOf(String puzzleId) {
+            int index = Arrays.binarySearch(sortedIds, puzzleId);
+            return index < 0 ? -1 : sortedOrdinals[index];
+        }
+
+        // First ordinal whose rating is at least the given one.
+        int lowerBound(int rating) {
+            int low = 0;
+            int high = ratings.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ratings[mid] < rating) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        Puzzle puzzleAt(int ordinal, boolean solved) {
+            return new Puzzle(ids[ordinal], fens[ordinal], moves[ordinal], ratings[ordinal], themes[ordinal], solved);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.tacticmaster.db;
+
+/**
+ * Log-linear histogram of latencies in microseconds: four buckets per power of two, so any
+ * percentile it reports is at most a quarter above the true value, in under 2 KB however
+ * many calls are recorded.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+    // Values below SUB_BUCKETS get a bucket each; every power of two above gets SUB_BUCKETS.
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+
+    synchronized void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[bucketOf(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    synchronized long count() {
+        return count;
+    }
+
+    synchronized long max() {
+        return max;
+    }
+
+    /**
+     * The latency that {@code percentile} percent of the calls stayed within, as the upper
+     * bound of its bucket but never above the largest recorded value; 0 before any call.
+     */
+    synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
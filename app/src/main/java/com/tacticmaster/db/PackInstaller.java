@@ -0,0 +1,218 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the bundled pack out of the assets into a file, decompressing it on the way if
+ * the APK ships {@code puzzle.db.gz} instead of {@code puzzle.db}.
+ * <p>
+ * Data moves through one {@link #BUFFER_SIZE} buffer into a {@link FileChannel}, which is
+ * forced to disk before the caller renames the file into place. The pipeline that builds
+ * the pack ships its SHA-256 as {@code puzzle.db.sha256}, in {@code sha256sum} format; the
+ * digest of the decompressed data is computed in the same pass and a mismatch fails the
+ * install, as does data that does not start with the SQLite header. A gzip asset is also
+ * checked by its own trailer. Progress is reported in asset bytes consumed, at most once
+ * per percent.
+ */
+public final class PackInstaller {
+
+    public interface Listener {
+        /**
+         * @param totalBytes size of the asset, or -1 if the asset is stored compressed in the APK
+         */
+        void onProgress(long bytesRead, long totalBytes);
+    }
+
+    static final int BUFFER_SIZE = 256 * 1024;
+    static final String COMPRESSED_SUFFIX = ".gz";
+    static final String CHECKSUM_SUFFIX = ".sha256";
+    static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final byte[] SQLITE_HEADER = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+
+    private PackInstaller() {
+    }
+
+    /**
+     * Copies the asset {@code name}, or {@code name.gz} if that exists, to {@code target} and
+     * returns the number of bytes written, once they match the digest in {@code name.sha256}.
+     */
+    static long install(AssetManager assets, String name, File target, Listener listener) throws IOException {
+        byte[] expectedDigest = readDigest(assets, name + CHECKSUM_SUFFIX);
+        String assetName = name + COMPRESSED_SUFFIX;
+        InputStream asset;
+        try {
+            asset = assets.open(assetName);
+        } catch (FileNotFoundException e) {
+            assetName = name;
+            asset = assets.open(assetName);
+        }
+        long totalBytes = assetLength(assets, assetName);
+        boolean compressed = assetName.endsWith(COMPRESSED_SUFFIX);
+        try (CountingInputStream counted = new CountingInputStream(asset);
+             InputStream source = compressed ? new GZIPInputStream(counted, BUFFER_SIZE) : counted) {
+            return copy(source, counted, target, totalBytes, listener, expectedDigest);
+        }
+    }
+
+    // The first field of a sha256sum line: 64 hex digits.
+    private static byte[] readDigest(AssetManager assets, String assetName) throws IOException {
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(assets.open(assetName), StandardCharsets.US_ASCII))) {
+            line = reader.readLine();
+        } catch (FileNotFoundException e) {
+            throw new IOException("Puzzle pack asset ships without " + assetName, e);
+        }
+        String hex = isNull(line) ? "" : line.trim().split("\\s+", 2)[0];
+        byte[] digest = new byte[32];
+        if (hex.length() != digest.length * 2) {
+            throw new IOException(assetName + " holds no SHA-256 digest");
+        }
+        for (int i = 0; i < digest.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException(assetName + " holds no SHA-256 digest");
+            }
+            digest[i] = (byte) (high << 4 | low);
+        }
+        return digest;
+    }
+
+    // Only assets stored uncompressed in the APK have a file descriptor, and so a known length.
+    private static long assetLength(AssetManager assets, String assetName) {
+        try {
+            AssetFileDescriptor descriptor = assets.openFd(assetName);
+            try {
+                return descriptor.getLength();
+            } finally {
+                descriptor.close();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    static long copy(InputStream source, CountingInputStream counted, File target, long totalBytes, Listener listener,
+                     byte[] expectedDigest) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long written = 0;
+        long reportedPercent = -1;
+        try (FileOutputStream output = new FileOutputStream(target);
+             FileChannel channel = output.getChannel()) {
+            int length;
+            while ((length = readFully(source, bytes)) > 0) {
+                if (written == 0) {
+                    checkHeader(bytes, length);
+                }
+                digest.update(bytes, 0, length);
+                buffer.clear().limit(length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                written += length;
+                long percent = totalBytes > 0 ? counted.count() * 100 / totalBytes : -1;
+                if (!isNull(listener) && (percent != reportedPercent || totalBytes <= 0)) {
+                    reportedPercent = percent;
+                    listener.onProgress(counted.count(), totalBytes);
+                }
+            }
+            if (written == 0) {
+                throw new IOException("Puzzle pack asset is empty");
+            }
+            if (!MessageDigest.isEqual(expectedDigest, digest.digest())) {
+                throw new IOException("Puzzle pack asset does not match its " + DIGEST_ALGORITHM + " checksum");
+            }
+            channel.force(true);
+        }
+        return written;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java and Android runtime provides SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Fills the buffer unless the stream ends, so every write but the last is a full buffer.
+    private static int readFully(InputStream source, byte[] bytes) throws IOException {
+        int filled = 0;
+        int length;
+        while (filled < bytes.length && (length = source.read(bytes, filled, bytes.length - filled)) > 0) {
+            filled += length;
+        }
+        return filled;
+    }
+
+    private static void checkHeader(byte[] bytes, int length) throws IOException {
+        if (length < SQLITE_HEADER.length) {
+            throw new IOException("Puzzle pack asset is not a SQLite database");
+        }
+        for (int i = 0; i < SQLITE_HEADER.length; i++) {
+            if (bytes[i] != SQLITE_HEADER[i]) {
+                throw new IOException("Puzzle pack asset is not a SQLite database");
+            }
+        }
+    }
+
+    static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
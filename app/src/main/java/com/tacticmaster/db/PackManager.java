@@ -0,0 +1,379 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes {@link PuzzleRepository} calls across several puzzle packs, such as the bundled
+ * pack, an endgame pack or an imported CSV. Each pack is a repository of its own, with its
+ * own rating and theme indexes and its own progress.
+ * <p>
+ * A batch is split between the enabled packs in proportion to the unsolved candidates each
+ * one's {@link RatingHistogram} counts in the band, so every pack is asked for at most one
+ * batch and no band is ever merged whole. Lookups go to the first enabled pack that has the
+ * id and progress goes to the pack a puzzle came from, so an id is expected to live in one
+ * pack. Enabling or disabling a pack only swaps the list the next call reads; nothing is
+ * opened or closed for it.
+ */
+public final class PackManager implements PuzzleRepository {
+
+    public static final String BUNDLED_PACK = "bundled";
+    public static final String IMPORTED_PACK = "imported";
+
+    private final Random random;
+    private final Map<String, Pack> packs = new LinkedHashMap<>();
+    // Replaced whenever a pack is registered or toggled, so calls read it without the lock.
+    private volatile List<Pack> enabledPacks = List.of();
+
+    public PackManager() {
+        this(new Random());
+    }
+
+    PackManager(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Adds an enabled pack under a name of its own.
+     */
+    public synchronized void register(String name, PuzzleRepository repository) {
+        if (isNull(name) || isNull(repository)) {
+            throw new IllegalArgumentException("name and repository must not be null");
+        }
+        if (packs.containsKey(name)) {
+            throw new IllegalArgumentException("Pack already registered: " + name);
+        }
+        packs.put(name, new Pack(repository));
+        publishEnabledPacks();
+    }
+
+    public synchronized void setEnabled(String name, boolean enabled) {
+        Pack pack = packs.get(name);
+        if (isNull(pack)) {
+            throw new IllegalArgumentException("Unknown pack: " + name);
+        }
+        pack.enabled = enabled;
+        publishEnabledPacks();
+    }
+
+    public synchronized boolean isEnabled(String name) {
+        Pack pack = packs.get(name);
+        return !isNull(pack) && pack.enabled;
+    }
+
+    public synchronized List<String> getPackNames() {
+        return new ArrayList<>(packs.keySet());
+    }
+
+    private void publishEnabledPacks() {
+        List<Pack> enabled = new ArrayList<>();
+        for (Pack pack : packs.values()) {
+            if (pack.enabled) {
+                enabled.add(pack);
+            }
+        }
+        enabledPacks = List.copyOf(enabled);
+    }
+
+    private synchronized List<Pack> allPacks() {
+        return new ArrayList<>(packs.values());
+    }
+
+    @Override
+    public List<Puzzle> getPuzzlesWithinRange(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask) {
+        List<Pack> enabled = enabledPacks;
+        Batch batch = new Batch();
+        if (enabled.size() == 1) {
+            Pack pack = enabled.get(0);
+            batch.takeAll(pack.repository.getPuzzlesWithinRange(lowestRating, highestRating, excludedPuzzleIds, themeMask));
+            return batch.puzzles;
+        }
+
+        int[] candidates = new int[enabled.size()];
+        int total = 0;
+        for (int i = 0; i < enabled.size(); i++) {
+            candidates[i] = enabled.get(i).candidates(lowestRating, highestRating, themeMask);
+            total += candidates[i];
+        }
+        int[] shares = new int[enabled.size()];
+        for (int slot = 0; slot < PuzzleSampler.BATCH_SIZE && total > 0; slot++) {
+            int draw = random.nextInt(total);
+            int pack = 0;
+            while (draw >= candidates[pack]) {
+                draw -= candidates[pack++];
+            }
+            shares[pack]++;
+        }
+
+        List<Puzzle> spares = new ArrayList<>();
+        for (int i = 0; i < enabled.size(); i++) {
+            if (shares[i] == 0) {
+                continue;
+            }
+            Pack pack = enabled.get(i);
+            int taken = 0;
+            for (Puzzle puzzle : pack.repository.getPuzzlesWithinRange(lowestRating, highestRating, excludedPuzzleIds, themeMask)) {
+                if (taken < shares[i] && batch.take(puzzle)) {
+                    taken++;
+                } else {
+                    spares.add(puzzle);
+                }
+            }
+        }
+        // Slots a pack could not fill go to what the other packs returned beyond their share.
+        for (Puzzle spare : spares) {
+            batch.take(spare);
+        }
+        // Histogram counts are upper bounds, so the band is only empty once every pack with
+        // candidates has come back empty. If no pack counts any, each one is still asked
+        // rather than trusting the counts alone.
+        for (int i = 0; i < enabled.size() && batch.puzzles.isEmpty(); i++) {
+            if (shares[i] == 0 && (candidates[i] > 0 || total == 0)) {
+                Pack pack = enabled.get(i);
+                batch.takeAll(pack.repository.getPuzzlesWithinRange(lowestRating, highestRating, excludedPuzzleIds, themeMask));
+            }
+        }
+        return batch.puzzles;
+    }
+
+    @Override
+    public Puzzle getPuzzleById(String puzzleId) throws NoSuchElementException {
+        for (Pack pack : enabledPacks) {
+            Puzzle puzzle = pack.find(puzzleId);
+            if (!isNull(puzzle)) {
+                return puzzle;
+            }
+        }
+        throw new NoSuchElementException("Puzzle ID " + puzzleId + " not found");
+    }
+
+    /**
+     * The pack a puzzle came from, looked up in the id indexes of the enabled and then the
+     * disabled packs; null if no pack has it. Nothing is remembered per puzzle, so the
+     * indexes are the only state that grows with the packs.
+     */
+    private Pack ownerOf(String puzzleId) {
+        List<Pack> enabled = enabledPacks;
+        for (Pack pack : enabled) {
+            if (pack.has(puzzleId)) {
+                return pack;
+            }
+        }
+        for (Pack pack : allPacks()) {
+            if (!enabled.contains(pack) && pack.has(puzzleId)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Set<String> getPuzzleThemes() {
+        Set<String> themes = ConcurrentHashMap.newKeySet();
+        for (Pack pack : enabledPacks) {
+            themes.addAll(pack.repository.getPuzzleThemes());
+        }
+        return themes;
+    }
+
+    @Override
+    public PuzzleIdIndex getPuzzleIdIndex() {
+        List<PuzzleIdIndex> indexes = new ArrayList<>();
+        for (Pack pack : enabledPacks) {
+            indexes.add(pack.idIndex());
+        }
+        return PuzzleIdIndex.union(indexes);
+    }
+
+    @Override
+    public int getAllPuzzleCount() {
+        int count = 0;
+        for (Pack pack : enabledPacks) {
+            count += pack.repository.getAllPuzzleCount();
+        }
+        return count;
+    }
+
+    @Override
+    public int getSolvedPuzzleCount() {
+        int count = 0;
+        for (Pack pack : enabledPacks) {
+            count += pack.repository.getSolvedPuzzleCount();
+        }
+        return count;
+    }
+
+    /**
+     * The sum of the enabled packs' histograms as they were enabled at this call, or null if
+     * one of them has none.
+     */
+    @Override
+    public RatingHistogram getRatingHistogram() {
+        List<RatingHistogram> histograms = new ArrayList<>();
+        for (Pack pack : enabledPacks) {
+            RatingHistogram histogram = pack.repository.getRatingHistogram();
+            if (isNull(histogram)) {
+                return null;
+            }
+            histograms.add(histogram);
+        }
+        return histograms.size() == 1 ? histograms.get(0) : RatingHistogram.sumOf(histograms);
+    }
+
+    @Override
+    public boolean wasNotSolved(String puzzleId) {
+        Pack owner = ownerOf(puzzleId);
+        return isNull(owner) || owner.repository.wasNotSolved(puzzleId);
+    }
+
+    @Override
+    public void setSolved(String puzzleId) {
+        Pack owner = ownerOf(puzzleId);
+        if (!isNull(owner)) {
+            owner.repository.setSolved(puzzleId);
+        }
+    }
+
+    @Override
+    public void recordPuzzleAttempt(PuzzleAttempt attempt) {
+        Pack owner = ownerOf(attempt.puzzleId());
+        if (!isNull(owner)) {
+            owner.repository.recordPuzzleAttempt(attempt);
+        }
+    }
+
+    /**
+     * Packs may share one review queue, so the pack that returns a review is not taken as its
+     * owner; the owner is looked up by id when the puzzle is loaded.
+     */
+    @Override
+    public String pollDueReview(long themeMask) {
+        for (Pack pack : enabledPacks) {
+            String puzzleId = pack.repository.pollDueReview(themeMask);
+            if (!isNull(puzzleId)) {
+                return puzzleId;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void rememberPuzzle(Puzzle puzzle) {
+        Pack owner = ownerOf(puzzle.puzzleId());
+        if (!isNull(owner)) {
+            owner.repository.rememberPuzzle(puzzle);
+        }
+    }
+
+    /**
+     * Flushes every registered pack, enabled or not, since progress may have gone to a pack
+     * disabled since.
+     */
+    @Override
+    public void flushProgress() {
+        for (Pack pack : allPacks()) {
+            pack.repository.flushProgress();
+        }
+    }
+
+    /**
+     * Reloads every registered pack and drops their id indexes, which a replaced pack file
+     * may no longer match.
+     */
+    @Override
+    public void reloadPack() {
+        for (Pack pack : allPacks()) {
+            pack.reload();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Pack pack : allPacks()) {
+            pack.repository.close();
+        }
+    }
+
+    private static final class Pack {
+        final PuzzleRepository repository;
+        // Guarded by the PackManager.
+        boolean enabled = true;
+        // Read on first use and again after reload().
+        private PuzzleIdIndex idIndex;
+
+        Pack(PuzzleRepository repository) {
+            this.repository = repository;
+        }
+
+        int candidates(int lowestRating, int highestRating, long themeMask) {
+            RatingHistogram histogram = repository.getRatingHistogram();
+            return isNull(histogram) ? repository.getAllPuzzleCount() : histogram.unsolved(lowestRating, highestRating, themeMask);
+        }
+
+        synchronized void reload() {
+            idIndex = null;
+            repository.reloadPack();
+        }
+
+        synchronized PuzzleIdIndex idIndex() {
+            if (isNull(idIndex)) {
+                idIndex = repository.getPuzzleIdIndex();
+            }
+            return idIndex;
+        }
+
+        boolean has(String puzzleId) {
+            if (PackedPuzzleCodec.encodeId(puzzleId) >= 0) {
+                return idIndex().contains(puzzleId);
+            }
+            // The index cannot hold an id that does not pack, so only a lookup can tell.
+            return !isNull(find(puzzleId));
+        }
+
+        Puzzle find(String puzzleId) {
+            try {
+                return repository.getPuzzleById(puzzleId);
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Puzzles collected for one call: at most {@link PuzzleSampler#BATCH_SIZE}, each rating
+     * and id once.
+     */
+    private static final class Batch {
+        final List<Puzzle> puzzles = new ArrayList<>();
+        final Set<Integer> ratings = new HashSet<>();
+        final Set<String> puzzleIds = new HashSet<>();
+
+        boolean take(Puzzle puzzle) {
+            if (puzzles.size() >= PuzzleSampler.BATCH_SIZE || ratings.contains(puzzle.rating())
+                    || !puzzleIds.add(puzzle.puzzleId())) {
+                return false;
+            }
+            ratings.add(puzzle.rating());
+            puzzles.add(puzzle);
+            return true;
+        }
+
+        void takeAll(List<Puzzle> puzzles) {
+            for (Puzzle puzzle : puzzles) {
+                take(puzzle);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * What was installed as the puzzle pack: its {@link DatabaseHelper#PACK_VERSION}, size and
+ * modification time, kept in a file of a few dozen bytes next to it.
+ * <p>
+ * On a normal start {@link #describes(File, int)} compares the version and two file
+ * attributes, so no SQLite connection is opened just to learn that nothing changed.
+ * Recording them only reads the file attributes, never the pack itself; the asset's content
+ * is verified while {@link PackInstaller} copies it.
+ */
+record PackMetadata(int packVersion, long size, long lastModified) {
+
+    private static final int MAGIC = 0x544D4D44;
+    // Version 1 also held a CRC-32 of the pack; such files are read as missing.
+    private static final int FORMAT_VERSION = 2;
+
+    static PackMetadata of(File pack, int packVersion) {
+        return new PackMetadata(packVersion, pack.length(), pack.lastModified());
+    }
+
+    /**
+     * Whether the pack file is still the one described, at the given version.
+     */
+    boolean describes(File pack, int packVersion) {
+        return this.packVersion == packVersion && pack.length() == size && pack.lastModified() == lastModified;
+    }
+
+    /**
+     * Reads saved metadata, or returns null if the file is missing or unreadable.
+     */
+    static PackMetadata read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            return new PackMetadata(input.readInt(), input.readLong(), input.readLong());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes to a temporary file and renames it over, so a crash never leaves a partial file.
+     */
+    void write(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(temporary))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(packVersion);
+            output.writeLong(size);
+            output.writeLong(lastModified);
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    static boolean isCurrent(File metadataFile, File pack, int packVersion) {
+        PackMetadata metadata = read(metadataFile);
+        return !isNull(metadata) && metadata.describes(pack, packVersion);
+    }
+}
@@ -0,0 +1,293 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width record layout of a {@link BinaryPuzzlePack}.
+ * <p>
+ * The id is up to eight ASCII characters packed big-endian into a long, so comparing the
+ * longs orders ids like comparing the strings. The position is one nibble per square plus
+ * the side to move, castling rights, en passant square and move clocks; moves are 16-bit
+ * codes of from square, to square and promotion piece. Every field is read and written at
+ * an absolute offset, so one buffer can be shared between threads.
+ */
+final class PackedPuzzleCodec {
+
+    static final int MAX_MOVES = 16;
+
+    static final int ID = 0;
+    static final int RATING = 8;
+    static final int THEME_MASK = 10;
+    static final int BOARD = 18;
+    static final int FLAGS = 50;
+    static final int EN_PASSANT = 51;
+    static final int HALFMOVE_CLOCK = 52;
+    static final int FULLMOVE_NUMBER = 53;
+    static final int MOVE_COUNT = 55;
+    static final int MOVES = 56;
+    static final int RECORD_SIZE = MOVES + MAX_MOVES * Short.BYTES;
+
+    private static final int ID_LENGTH = Long.BYTES;
+    private static final int BLACK_TO_MOVE = 1;
+    private static final int NO_SQUARE = 0xFF;
+    private static final int BLACK_PIECE = 8;
+    private static final String PIECES = "PNBRQK";
+    private static final String CASTLING = "KQkq";
+    private static final String PROMOTIONS = "nbrq";
+
+    private PackedPuzzleCodec() {
+    }
+
+    /**
+     * Writes one record at {@code offset}. Throws {@link IllegalArgumentException} if a field
+     * does not fit the layout or the FEN or moves would not come back unchanged.
+     */
+    static void encode(ByteBuffer buffer, int offset, String puzzleId, String fen, String moves, int rating, long themeMask) {
+        long id = encodeId(puzzleId);
+        if (id < 0) {
+            throw new IllegalArgumentException("Puzzle id does not fit: " + puzzleId);
+        }
+        if (rating < 0 || rating > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Rating out of range: " + rating);
+        }
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            buffer.put(offset + i, (byte) 0);
+        }
+        buffer.putLong(offset + ID, id);
+        buffer.putShort(offset + RATING, (short) rating);
+        buffer.putLong(offset + THEME_MASK, themeMask);
+        encodePosition(buffer, offset, fen);
+        encodeMoves(buffer, offset, moves);
+        if (!fen.equals(decodeFen(buffer, offset))) {
+            throw new IllegalArgumentException("FEN is not in canonical form: " + fen);
+        }
+        if (!moves.equals(decodeMoves(buffer, offset))) {
+            throw new IllegalArgumentException("Moves are not in canonical form: " + moves);
+        }
+    }
+
+    /**
+     * Packs an id into a non-negative long, or returns -1 if it is empty, longer than
+     * eight characters or not plain ASCII.
+     */
+    static long encodeId(String puzzleId) {
+        if (isNull(puzzleId) || puzzleId.isEmpty() || puzzleId.length() > ID_LENGTH) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int c = i < puzzleId.length() ? puzzleId.charAt(i) : 0;
+            if (i < puzzleId.length() && (c == 0 || c > 0x7F)) {
+                return -1;
+            }
+            id = (id << 8) | c;
+        }
+        return id;
+    }
+
+    static String decodeId(long id) {
+        StringBuilder puzzleId = new StringBuilder(ID_LENGTH);
+        for (int shift = (ID_LENGTH - 1) * 8; shift >= 0; shift -= 8) {
+            int c = (int) (id >>> shift) & 0xFF;
+            if (c == 0) {
+                break;
+            }
+            puzzleId.append((char) c);
+        }
+        return puzzleId.toString();
+    }
+
+    static long id(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + ID);
+    }
+
+    static int rating(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset + RATING);
+    }
+
+    static long themeMask(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + THEME_MASK);
+    }
+
+    private static void encodePosition(ByteBuffer buffer, int offset, String fen) {
+        String[] fields = isNull(fen) ? new String[0] : fen.split(" ");
+        if (fields.length != 6) {
+            throw new IllegalArgumentException("Expected six FEN fields: " + fen);
+        }
+        String[] ranks = fields[0].split("/");
+        if (ranks.length != 8) {
+            throw new IllegalArgumentException("Expected eight ranks: " + fen);
+        }
+        for (int r = 0; r < 8; r++) {
+            int file = 0;
+            for (char c : ranks[r].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    file += c - '0';
+                } else {
+                    if (file >= 8) {
+                        throw new IllegalArgumentException("Rank overflows: " + fen);
+                    }
+                    setPiece(buffer, offset, (7 - r) * 8 + file, pieceCode(c));
+                    file++;
+                }
+            }
+            if (file != 8) {
+                throw new IllegalArgumentException("Rank is not eight squares wide: " + fen);
+            }
+        }
+
+        int flags = "b".equals(fields[1]) ? BLACK_TO_MOVE : 0;
+        if (!"-".equals(fields[2])) {
+            for (char c : fields[2].toCharArray()) {
+                int right = CASTLING.indexOf(c);
+                if (right < 0) {
+                    throw new IllegalArgumentException("Unknown castling right: " + fen);
+                }
+                flags |= 2 << right;
+            }
+        }
+        buffer.put(offset + FLAGS, (byte) flags);
+        buffer.put(offset + EN_PASSANT, (byte) ("-".equals(fields[3]) ? NO_SQUARE : square(fields[3], 0)));
+
+        int halfmoveClock = Integer.parseInt(fields[4]);
+        int fullmoveNumber = Integer.parseInt(fields[5]);
+        if (halfmoveClock < 0 || halfmoveClock > 0xFF || fullmoveNumber < 0 || fullmoveNumber > 0xFFFF) {
+            throw new IllegalArgumentException("Move clocks out of range: " + fen);
+        }
+        buffer.put(offset + HALFMOVE_CLOCK, (byte) halfmoveClock);
+        buffer.putShort(offset + FULLMOVE_NUMBER, (short) fullmoveNumber);
+    }
+
+    static String decodeFen(ByteBuffer buffer, int offset) {
+        StringBuilder fen = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int code = piece(buffer, offset, rank * 8 + file);
+                if (code == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                fen.append(pieceChar(code));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank > 0) {
+                fen.append('/');
+            }
+        }
+
+        int flags = buffer.get(offset + FLAGS);
+        fen.append((flags & BLACK_TO_MOVE) != 0 ? " b " : " w ");
+        int castlingStart = fen.length();
+        for (int right = 0; right < CASTLING.length(); right++) {
+            if ((flags & (2 << right)) != 0) {
+                fen.append(CASTLING.charAt(right));
+            }
+        }
+        if (fen.length() == castlingStart) {
+            fen.append('-');
+        }
+
+        int enPassant = buffer.get(offset + EN_PASSANT) & 0xFF;
+        fen.append(' ').append(enPassant == NO_SQUARE ? "-" : squareName(enPassant));
+        fen.append(' ').append(buffer.get(offset + HALFMOVE_CLOCK) & 0xFF);
+        fen.append(' ').append(buffer.getShort(offset + FULLMOVE_NUMBER) & 0xFFFF);
+        return fen.toString();
+    }
+
+    private static void encodeMoves(ByteBuffer buffer, int offset, String moves) {
+        String[] uciMoves = isNull(moves) || moves.isEmpty() ? new String[0] : moves.split(" ");
+        if (uciMoves.length == 0 || uciMoves.length > MAX_MOVES) {
+            throw new IllegalArgumentException("Unsupported number of moves: " + moves);
+        }
+        buffer.put(offset + MOVE_COUNT, (byte) uciMoves.length);
+        for (int i = 0; i < uciMoves.length; i++) {
+            buffer.putShort(offset + MOVES + i * Short.BYTES, encodeMove(uciMoves[i]));
+        }
+    }
+
+    static short encodeMove(String uciMove) {
+        if (uciMove.length() != 4 && uciMove.length() != 5) {
+            throw new IllegalArgumentException("Not a UCI move: " + uciMove);
+        }
+        int promotion = 0;
+        if (uciMove.length() == 5) {
+            promotion = PROMOTIONS.indexOf(uciMove.charAt(4)) + 1;
+            if (promotion == 0) {
+                throw new IllegalArgumentException("Unknown promotion piece: " + uciMove);
+            }
+        }
+        return (short) (square(uciMove, 0) | square(uciMove, 2) << 6 | promotion << 12);
+    }
+
+    static String decodeMoves(ByteBuffer buffer, int offset) {
+        int count = buffer.get(offset + MOVE_COUNT);
+        StringBuilder moves = new StringBuilder(count * 5);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                moves.append(' ');
+            }
+            int move = buffer.getShort(offset + MOVES + i * Short.BYTES);
+            moves.append(squareName(move & 0x3F)).append(squareName((move >> 6) & 0x3F));
+            int promotion = (move >> 12) & 0x7;
+            if (promotion > 0) {
+                moves.append(PROMOTIONS.charAt(promotion - 1));
+            }
+        }
+        return moves.toString();
+    }
+
+    private static int square(String text, int index) {
+        if (text.length() < index + 2) {
+            throw new IllegalArgumentException("Not a square: " + text);
+        }
+        int file = text.charAt(index) - 'a';
+        int rank = text.charAt(index + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            throw new IllegalArgumentException("Not a square: " + text);
+        }
+        return rank * 8 + file;
+    }
+
+    private static String squareName(int square) {
+        return String.valueOf((char) ('a' + square % 8)) + (char) ('1' + square / 8);
+    }
+
+    private static int pieceCode(char c) {
+        int white = PIECES.indexOf(c);
+        if (white >= 0) {
+            return white + 1;
+        }
+        int black = PIECES.indexOf(Character.toUpperCase(c));
+        if (black >= 0 && Character.isLowerCase(c)) {
+            return BLACK_PIECE + black + 1;
+        }
+        throw new IllegalArgumentException("Unknown piece: " + c);
+    }
+
+    private static char pieceChar(int code) {
+        char piece = PIECES.charAt((code & (BLACK_PIECE - 1)) - 1);
+        return (code & BLACK_PIECE) != 0 ? Character.toLowerCase(piece) : piece;
+    }
+
+    // Two squares per byte, the even square in the low nibble.
+    private static void setPiece(ByteBuffer buffer, int offset, int square, int code) {
+        int index = offset + BOARD + square / 2;
+        int packed = buffer.get(index);
+        packed = square % 2 == 0 ? (packed & 0xF0) | code : (packed & 0x0F) | code << 4;
+        buffer.put(index, (byte) packed);
+    }
+
+    private static int piece(ByteBuffer buffer, int offset, int square) {
+        int packed = buffer.get(offset + BOARD + square / 2);
+        return square % 2 == 0 ? packed & 0x0F : (packed >> 4) & 0x0F;
+    }
+}
@@ -0,0 +1,174 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Append-only log of progress events that have not reached the progress database yet.
+ * <p>
+ * Each event is one line {@code <sequence> <kind> <puzzleId>}, written without an fsync:
+ * the kernel keeps it across process death, which is what the journal has to survive.
+ * {@link ProgressStore} applies the pending events in one transaction together with the
+ * last applied sequence, so a replay after a crash between commit and truncation skips
+ * what was already applied. A torn last line is ignored, and so is a line of a kind this
+ * version does not know, such as the attempt events older versions logged.
+ */
+final class ProgressJournal {
+
+    private static final String TAG = "ProgressJournal";
+
+    static final int FLUSH_SIZE = 32;
+    static final long FLUSH_AGE_MILLIS = 10_000;
+
+    enum Kind {
+        SOLVED('S');
+
+        final char code;
+
+        Kind(char code) {
+            this.code = code;
+        }
+
+        static Kind of(char code) {
+            for (Kind kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    record Entry(long sequence, Kind kind, String puzzleId) {
+    }
+
+    private final File file;
+    private final LongSupplier clock;
+    private final List<Entry> pending = new ArrayList<>();
+    private OutputStream output;
+    private long nextSequence = 1;
+    private long oldestPendingAt;
+
+    ProgressJournal(File file, LongSupplier clock) {
+        if (isNull(file) || isNull(clock)) {
+            throw new IllegalArgumentException("file and clock must not be null");
+        }
+        this.file = file;
+        this.clock = clock;
+    }
+
+    /**
+     * Reads the events left by a previous process that are newer than {@code appliedSequence}
+     * and queues them as pending. New events continue after the highest sequence seen.
+     */
+    void recover(long appliedSequence) {
+        nextSequence = Math.max(nextSequence, appliedSequence + 1);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parse(line);
+                if (isNull(entry)) {
+                    continue;
+                }
+                nextSequence = Math.max(nextSequence, entry.sequence() + 1);
+                if (entry.sequence() > appliedSequence) {
+                    queue(entry);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read progress journal", e);
+        }
+    }
+
+    private static Entry parse(String line) {
+        String[] fields = line.split(" ", 3);
+        if (fields.length != 3 || fields[1].length() != 1 || fields[2].isEmpty()) {
+            return null;
+        }
+        Kind kind = Kind.of(fields[1].charAt(0));
+        try {
+            return isNull(kind) ? null : new Entry(Long.parseLong(fields[0]), kind, fields[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Logs an event and queues it. Returns false if it could not be logged, in which case
+     * the caller should flush right away rather than rely on the journal.
+     */
+    boolean append(Kind kind, String puzzleId) {
+        Entry entry = new Entry(nextSequence++, kind, puzzleId);
+        queue(entry);
+        try {
+            if (isNull(output)) {
+                output = new FileOutputStream(file, true);
+            }
+            output.write((entry.sequence() + " " + kind.code + " " + puzzleId + "\n").getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not append to progress journal", e);
+            return false;
+        }
+    }
+
+    private void queue(Entry entry) {
+        if (pending.isEmpty()) {
+            oldestPendingAt = clock.getAsLong();
+        }
+        pending.add(entry);
+    }
+
+    List<Entry> pending() {
+        return Collections.unmodifiableList(new ArrayList<>(pending));
+    }
+
+    boolean isFlushDue() {
+        return pending.size() >= FLUSH_SIZE || (!pending.isEmpty() && clock.getAsLong() - oldestPendingAt >= FLUSH_AGE_MILLIS);
+    }
+
+    /**
+     * Drops the events up to {@code sequence} once they are committed, and empties the file
+     * when nothing is left pending.
+     */
+    void applied(long sequence) {
+        pending.removeIf(entry -> entry.sequence() <= sequence);
+        if (!pending.isEmpty()) {
+            oldestPendingAt = clock.getAsLong();
+            return;
+        }
+        close();
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    void close() {
+        if (isNull(output)) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close progress journal", e);
+        }
+        output = null;
+    }
+}
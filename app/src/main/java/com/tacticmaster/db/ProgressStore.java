@@ -0,0 +1,148 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.COLUMN_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SEQUENCE;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SOLVED;
+import static com.tacticmaster.db.PuzzleTable.JOURNAL_STATE_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.PROGRESS_TABLE_NAME;
+import static java.util.Objects.isNull;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * User progress keyed by PuzzleId, kept apart from the read-only puzzle pack.
+ * <p>
+ * The solved ids are read once and mirrored in memory, so the sampler can skip solved
+ * puzzles without joining across databases and the solved count needs no query.
+ * <p>
+ * Writes are write-behind: each event goes to the in-memory state and a
+ * {@link ProgressJournal}, and reaches the database in one transaction once enough events
+ * are pending, the oldest is old enough, or {@link #flush()} is called (the app does so in
+ * onPause). Events left in the journal by a killed process are applied on first use.
+ * Statements are compiled once in a {@link StatementCache}.
+ */
+class ProgressStore {
+
+    private static final String TAG = "ProgressStore";
+
+    private static final String INSERT_IF_MISSING =
+            "INSERT OR IGNORE INTO " + PROGRESS_TABLE_NAME + " (" + COLUMN_PUZZLE_ID + ") VALUES (?)";
+    static final String MARK_SOLVED =
+            "UPDATE " + PROGRESS_TABLE_NAME + " SET " + COLUMN_SOLVED + " = 1 WHERE " + COLUMN_PUZZLE_ID + " = ?";
+    private static final String APPLIED_SEQUENCE =
+            "SELECT IFNULL(MAX(" + COLUMN_SEQUENCE + "), 0) FROM " + JOURNAL_STATE_TABLE_NAME;
+    private static final String SET_APPLIED_SEQUENCE =
+            "INSERT OR REPLACE INTO " + JOURNAL_STATE_TABLE_NAME + " (" + COLUMN_ID + ", " + COLUMN_SEQUENCE + ") VALUES (0, ?)";
+
+    private final SQLiteDatabase database;
+    private final ProgressJournal journal;
+    private final StatementCache statements;
+    private Set<String> solvedIds;
+
+    ProgressStore(SQLiteDatabase database, ProgressJournal journal) {
+        if (isNull(database)) {
+            throw new IllegalArgumentException("database must not be null");
+        }
+        if (isNull(journal)) {
+            throw new IllegalArgumentException("journal must not be null");
+        }
+        this.database = database;
+        this.journal = journal;
+        this.statements = new StatementCache(database);
+    }
+
+    private synchronized Set<String> solved() {
+        if (isNull(solvedIds)) {
+            // Replay first, so solves the last process only journaled are counted too.
+            journal.recover(statements.get(APPLIED_SEQUENCE).simpleQueryForLong());
+            flush();
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            try (Cursor cursor = database.rawQuery("SELECT " + COLUMN_PUZZLE_ID + " FROM " + PROGRESS_TABLE_NAME + " WHERE " + COLUMN_SOLVED + " = 1", null)) {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getString(0));
+                }
+            }
+            solvedIds = ids;
+        }
+        return solvedIds;
+    }
+
+    boolean isSolved(String puzzleId) {
+        return solved().contains(puzzleId);
+    }
+
+    int getSolvedCount() {
+        return solved().size();
+    }
+
+    Set<String> solvedIds() {
+        return Collections.unmodifiableSet(solved());
+    }
+
+    synchronized void markSolved(String puzzleId) {
+        solved().add(puzzleId);
+        record(ProgressJournal.Kind.SOLVED, puzzleId);
+    }
+
+    private void record(ProgressJournal.Kind kind, String puzzleId) {
+        boolean logged = journal.append(kind, puzzleId);
+        if (!logged || journal.isFlushDue()) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies every pending event in one transaction, together with the sequence of the
+     * last one, and then lets the journal drop them.
+     */
+    synchronized void flush() {
+        List<ProgressJournal.Entry> entries = journal.pending();
+        if (entries.isEmpty()) {
+            return;
+        }
+        long lastSequence = entries.get(entries.size() - 1).sequence();
+        database.beginTransaction();
+        try {
+            for (ProgressJournal.Entry entry : entries) {
+                execute(INSERT_IF_MISSING, entry.puzzleId());
+                execute(MARK_SOLVED, entry.puzzleId());
+            }
+            SQLiteStatement setSequence = statements.get(SET_APPLIED_SEQUENCE);
+            setSequence.bindLong(1, lastSequence);
+            setSequence.executeUpdateDelete();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        journal.applied(lastSequence);
+        Log.d(TAG, "Flushed " + entries.size() + " progress events");
+    }
+
+    private void execute(String sql, String puzzleId) {
+        SQLiteStatement statement = statements.get(sql);
+        statement.bindString(1, puzzleId);
+        statement.executeUpdateDelete();
+    }
+
+    /**
+     * Flushes pending events and releases the compiled statements; called before the
+     * underlying handle is closed.
+     */
+    synchronized void close() {
+        try {
+            flush();
+        } finally {
+            journal.close();
+            statements.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.tacticmaster.puzzle.ThemePerformance;
+
+import java.io.IOException;
+
+/**
+ * The player's progress as {@link DatabaseAccessor} and {@link BinaryPuzzleRepository} both
+ * keep it: solved puzzles, attempts and reviews in the progress database, plus the theme
+ * performance and puzzle cache snapshots. Each is opened on first use.
+ * <p>
+ * The progress database is closed with the last release of the shared pack handle, so the
+ * handle is acquired before any store is opened and released again by {@link #close()}.
+ */
+final class ProgressStores {
+
+    private static final String TAG = "ProgressStores";
+
+    private final DatabaseHelper dbHelper;
+    // Whose puzzle cache snapshot this is.
+    private final PuzzleBackend backend;
+    private SQLiteDatabase database;
+    private ProgressStore progressStore;
+    private AttemptStore attemptStore;
+    private ReviewStore reviewStore;
+    private ThemePerformance themePerformance;
+    private PuzzleCache puzzleCache;
+    private boolean closed;
+
+    ProgressStores(DatabaseHelper dbHelper, PuzzleBackend backend) {
+        this.dbHelper = dbHelper;
+        this.backend = backend;
+    }
+
+    /**
+     * Lazily installs the pack and takes one reference on the shared handle, kept until
+     * {@link #close()}. The first call may copy the asset, so callers reach it through
+     * {@link DatabaseExecutor} rather than from the UI thread.
+     */
+    synchronized SQLiteDatabase database() {
+        if (closed) {
+            throw new IllegalStateException("Puzzle repository is closed");
+        }
+        if (isNull(database)) {
+            try {
+                dbHelper.createDatabase();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to create database", e);
+            }
+            database = dbHelper.acquireDatabase();
+        }
+        return database;
+    }
+
+    synchronized ProgressStore progress() {
+        if (isNull(progressStore)) {
+            // Taking the pack reference first ties the progress handle to the same release.
+            database();
+            ProgressJournal journal = new ProgressJournal(dbHelper.progressJournalFile(), SystemClock::elapsedRealtime);
+            progressStore = new ProgressStore(dbHelper.getWritableDatabase(), journal);
+        }
+        return progressStore;
+    }
+
+    synchronized AttemptStore attempts() {
+        if (isNull(attemptStore)) {
+            database();
+            attemptStore = new AttemptStore(dbHelper.getWritableDatabase());
+        }
+        return attemptStore;
+    }
+
+    synchronized ReviewStore reviews() {
+        if (isNull(reviewStore)) {
+            database();
+            reviewStore = new ReviewStore(dbHelper.getWritableDatabase());
+        }
+        return reviewStore;
+    }
+
+    synchronized ThemePerformance themePerformance() {
+        if (isNull(themePerformance)) {
+            themePerformance = ThemePerformance.load(dbHelper.themePerformanceFile());
+        }
+        return themePerformance;
+    }
+
+    synchronized PuzzleCache puzzleCache() {
+        if (isNull(puzzleCache)) {
+            puzzleCache = PuzzleCache.load(dbHelper.puzzleCacheFile(backend), DatabaseHelper.PACK_VERSION);
+        }
+        return puzzleCache;
+    }
+
+    /**
+     * Writes journaled progress and queued attempts to the database now rather than at the
+     * next threshold, and saves the snapshots if they changed. Opens nothing that is not
+     * open yet.
+     */
+    synchronized void flush() {
+        if (!isNull(progressStore)) {
+            progressStore.flush();
+        }
+        if (!isNull(attemptStore)) {
+            attemptStore.flush();
+        }
+        saveThemePerformance();
+        savePuzzleCache();
+    }
+
+    /**
+     * Saves the snapshots, closes the stores and releases the shared handle. Safe to call more
+     * than once; later calls that need the handle fail instead of reopening it.
+     */
+    synchronized void close() {
+        closed = true;
+        saveThemePerformance();
+        savePuzzleCache();
+        puzzleCache = null;
+        if (!isNull(database)) {
+            if (!isNull(progressStore)) {
+                progressStore.close();
+            }
+            if (!isNull(attemptStore)) {
+                attemptStore.close();
+            }
+            if (!isNull(reviewStore)) {
+                reviewStore.close();
+            }
+            database = null;
+            progressStore = null;
+            attemptStore = null;
+            reviewStore = null;
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    private void saveThemePerformance() {
+        if (isNull(themePerformance) || !themePerformance.isDirty()) {
+            return;
+        }
+        try {
+            themePerformance.save(dbHelper.themePerformanceFile());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save theme performance", e);
+        }
+    }
+
+    private void savePuzzleCache() {
+        if (isNull(puzzleCache) || !puzzleCache.isDirty()) {
+            return;
+        }
+        try {
+            puzzleCache.save(dbHelper.puzzleCacheFile(backend), DatabaseHelper.PACK_VERSION);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save puzzle cache", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.COLUMN_FEN;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_MOVES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEMES;
+import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
+import static java.util.Objects.isNull;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The {@link PuzzleRepository} implementations the app can start with, so they can be
+ * compared on the same device and workload.
+ */
+public enum PuzzleBackend {
+
+    /**
+     * Puzzles read through SQLite cursors; the default.
+     */
+    SQLITE,
+    /**
+     * Puzzles read from the memory-mapped {@link BinaryPuzzlePack} by a
+     * {@link BinaryPuzzleRepository}, with the same progress as {@link #SQLITE}.
+     */
+    BINARY,
+    /**
+     * The whole pack read into an {@link InMemoryPuzzleRepository} on first use. Progress
+     * starts empty and is not saved, so {@link #fromName(String)} never picks it; tests and
+     * benchmarks open it directly.
+     */
+    MEMORY;
+
+    private static final String TAG = "PuzzleBackend";
+    static final String ALL_PUZZLES = "SELECT " + COLUMN_PUZZLE_ID + ", " + COLUMN_FEN + ", " + COLUMN_MOVES + ", " +
+            COLUMN_RATING + ", " + COLUMN_THEMES + " FROM " + PUZZLE_TABLE_NAME;
+
+    /**
+     * Creates the repository without touching the disk; the pack is installed and opened
+     * on first use, from {@link DatabaseExecutor}.
+     */
+    public PuzzleRepository open(DatabaseHelper dbHelper) {
+        return switch (this) {
+            case SQLITE -> new DatabaseAccessor(dbHelper);
+            case BINARY -> new BinaryPuzzleRepository(dbHelper);
+            case MEMORY -> new InMemoryPuzzleRepository(() -> readPack(dbHelper));
+        };
+    }
+
+    /**
+     * Registers the bundled pack, read through this backend, and the imported pack with
+     * {@code packManager}, again without touching the disk. The imported pack is read
+     * through SQLite whatever the backend, shares the bundled pack's progress, and is empty
+     * until {@link DatabaseHelper#importPuzzles} runs. {@link #MEMORY} keeps no progress to
+     * share, so it registers the bundled pack alone.
+     */
+    public void registerPacks(PackManager packManager, DatabaseHelper dbHelper) {
+        if (this == MEMORY) {
+            packManager.register(PackManager.BUNDLED_PACK, open(dbHelper));
+            return;
+        }
+        ProgressStores stores = new ProgressStores(dbHelper, this);
+        PuzzleRepository bundled = this == BINARY ? new BinaryPuzzleRepository(dbHelper, stores) : new DatabaseAccessor(stores);
+        packManager.register(PackManager.BUNDLED_PACK, bundled);
+        packManager.register(PackManager.IMPORTED_PACK, DatabaseAccessor.importedPack(dbHelper, stores));
+    }
+
+    static List<Puzzle> readPack(DatabaseHelper dbHelper) {
+        try {
+            dbHelper.createDatabase();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to create database", e);
+        }
+        SQLiteDatabase database = dbHelper.acquireDatabase();
+        try {
+            return DatabaseAccessor.executeQuery(database, ALL_PUZZLES, null, Set.of());
+        } finally {
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    /**
+     * The backend the app starts with for this name in any case, or {@link #SQLITE} if the
+     * name is null, unknown or names a backend that would lose the user's progress.
+     */
+    public static PuzzleBackend fromName(String name) {
+        if (isNull(name)) {
+            return SQLITE;
+        }
+        PuzzleBackend backend;
+        try {
+            backend = valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown puzzle backend " + name + ", using " + SQLITE);
+            return SQLITE;
+        }
+        if (backend == MEMORY) {
+            Log.w(TAG, "Puzzle backend " + backend + " does not keep progress, using " + SQLITE);
+            return SQLITE;
+        }
+        return backend;
+    }
+}
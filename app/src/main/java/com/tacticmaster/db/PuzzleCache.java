@@ -0,0 +1,180 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import android.util.Log;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of decoded puzzles by id, in front of the pack lookups.
+ * <p>
+ * Holds at most {@link #MAX_ENTRIES} puzzles and evicts the least recently used. The
+ * {@link #WARM_ENTRIES} most recently used are saved as a small snapshot and loaded on the
+ * next start, so restoring the last session's puzzle reads that file instead of the pack.
+ * The snapshot records the pack version and is discarded when another pack is installed.
+ * Cached puzzles carry their solved flag, which the owner keeps current through
+ * {@link #markSolved(String)}.
+ */
+public final class PuzzleCache {
+
+    private static final String TAG = "PuzzleCache";
+    private static final int MAGIC = 0x505A4C43;
+    private static final int FORMAT_VERSION = 1;
+
+    static final int MAX_ENTRIES = 512;
+    static final int WARM_ENTRIES = 32;
+
+    private final int maxEntries;
+    private final Map<String, Puzzle> puzzles;
+    private long hits;
+    private long misses;
+    private boolean dirty;
+
+    PuzzleCache() {
+        this(MAX_ENTRIES);
+    }
+
+    PuzzleCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.puzzles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Puzzle> eldest) {
+                return size() > PuzzleCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached puzzle and marks it most recently used, or null on a miss.
+     */
+    synchronized Puzzle get(String puzzleId) {
+        Puzzle puzzle = puzzles.get(puzzleId);
+        if (isNull(puzzle)) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return puzzle;
+    }
+
+    synchronized void put(Puzzle puzzle) {
+        puzzles.put(puzzle.puzzleId(), puzzle);
+        dirty = true;
+    }
+
+    /**
+     * Updates the solved flag of a cached puzzle; it counts as a use.
+     */
+    synchronized void markSolved(String puzzleId) {
+        Puzzle puzzle = puzzles.get(puzzleId);
+        if (!isNull(puzzle) && !puzzle.solved()) {
+            puzzles.put(puzzleId, new Puzzle(puzzle.puzzleId(), puzzle.fen(), puzzle.moves(), puzzle.rating(), puzzle.themes(), true));
+            dirty = true;
+        }
+    }
+
+    synchronized void clear() {
+        puzzles.clear();
+        dirty = true;
+    }
+
+    public synchronized int size() {
+        return puzzles.size();
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes the most recently used entries to a temporary file next to {@code file} and
+     * renames it over.
+     */
+    synchronized void save(File file, int packVersion) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            writeTo(output, packVersion);
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+        dirty = false;
+    }
+
+    // Least recently used first, so loading them in order restores their recency.
+    void writeTo(DataOutput output, int packVersion) throws IOException {
+        List<Puzzle> recent = new ArrayList<>(puzzles.values());
+        recent = recent.subList(Math.max(0, recent.size() - WARM_ENTRIES), recent.size());
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(packVersion);
+        output.writeInt(recent.size());
+        for (Puzzle puzzle : recent) {
+            output.writeUTF(puzzle.puzzleId());
+            output.writeUTF(puzzle.fen());
+            output.writeUTF(puzzle.moves());
+            output.writeInt(puzzle.rating());
+            output.writeUTF(isNull(puzzle.themes()) ? "" : puzzle.themes());
+            output.writeBoolean(puzzle.solved());
+        }
+    }
+
+    /**
+     * Loads a snapshot saved for the same pack version, or returns an empty cache if the
+     * file is missing, unreadable or from another pack.
+     */
+    static PuzzleCache load(File file, int packVersion) {
+        PuzzleCache cache = new PuzzleCache();
+        if (!file.exists()) {
+            return cache;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            cache.readFrom(input, packVersion);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable puzzle cache snapshot", e);
+            return new PuzzleCache();
+        }
+        return cache;
+    }
+
+    void readFrom(DataInput input, int packVersion) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a puzzle cache snapshot");
+        }
+        if (input.readInt() != packVersion) {
+            return;
+        }
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            Puzzle puzzle = new Puzzle(input.readUTF(), input.readUTF(), input.readUTF(), input.readInt(), input.readUTF(), input.readBoolean());
+            puzzles.put(puzzle.puzzleId(), puzzle);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.COLUMN_BYTE_OFFSET;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_FEN;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_MOVES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SOURCE;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEMES;
+import static com.tacticmaster.db.PuzzleTable.IMPORT_STATE_TABLE_NAME;
+import static com.tacticmaster.db.PuzzleTable.INDEX_SAMPLING;
+import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
+import static java.util.Objects.isNull;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Imports a full Lichess puzzle export ({@code lichess_db_puzzle.csv}) into a pack, keeping
+ * the rows that pass the same filters as {@code tactics-generator/validator.py}.
+ * <p>
+ * The file is read through one fixed buffer and split into fields in place; strings are
+ * only created for rows that are kept, so memory does not grow with the file. Rows are
+ * inserted with one compiled statement, {@link #BATCH_SIZE} lines per transaction, and each
+ * transaction also records the byte offset it reached in {@link PuzzleTable#IMPORT_STATE_TABLE_NAME}.
+ * A cancelled or killed import therefore resumes at the last committed line when run again
+ * on the same file. The sampling index is dropped for the import and rebuilt by
+ * {@link DatabaseHelper#createSamplingIndex(SQLiteDatabase)} once the file is done; the
+ * pack's UNIQUE PuzzleId skips puzzles it already has.
+ */
+public final class PuzzleCsvImporter {
+
+    private static final String TAG = "PuzzleCsvImporter";
+
+    public interface Listener {
+        void onProgress(long bytesRead, long totalBytes, int imported);
+    }
+
+    /**
+     * @param skipped rows filtered out, malformed, or already in the pack
+     * @param complete whether the end of the file was reached, rather than the import cancelled
+     */
+    public record Result(int imported, int skipped, boolean complete) {
+    }
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+    static final int BATCH_SIZE = 10_000;
+
+    // Filters of validator.py.
+    static final int MIN_RATING = 1000;
+    static final int MAX_RATING = 3500;
+    static final int MIN_POPULARITY = 90;
+    static final int MIN_PLAYS = 1000;
+    static final int MAX_RATING_DEVIATION = 100;
+    static final int MIN_MOVES = 2;
+
+    // Column order of the Lichess export; GameUrl and OpeningTags follow and are not used.
+    private static final int PUZZLE_ID = 0;
+    private static final int FEN = 1;
+    private static final int MOVES = 2;
+    private static final int RATING = 3;
+    private static final int RATING_DEVIATION = 4;
+    private static final int POPULARITY = 5;
+    private static final int NB_PLAYS = 6;
+    private static final int THEMES = 7;
+    private static final int FIELD_COUNT = 8;
+
+    private static final byte[] HEADER = "PuzzleId,".getBytes(StandardCharsets.US_ASCII);
+
+    static final String INSERT_PUZZLE = "INSERT OR IGNORE INTO " + PUZZLE_TABLE_NAME + " (" +
+            COLUMN_PUZZLE_ID + ", " + COLUMN_FEN + ", " + COLUMN_MOVES + ", " + COLUMN_RATING + ", " + COLUMN_THEMES + ") VALUES (?, ?, ?, ?, ?)";
+    static final String SAVED_OFFSET =
+            "SELECT IFNULL(MAX(" + COLUMN_BYTE_OFFSET + "), 0) FROM " + IMPORT_STATE_TABLE_NAME + " WHERE " + COLUMN_SOURCE + " = ?";
+    static final String SAVE_OFFSET =
+            "INSERT OR REPLACE INTO " + IMPORT_STATE_TABLE_NAME + " (" + COLUMN_ID + ", " + COLUMN_SOURCE + ", " + COLUMN_BYTE_OFFSET + ") VALUES (0, ?, ?)";
+
+    private final File csv;
+    private final Listener listener;
+    private final int batchSize;
+    private final int bufferSize;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    public PuzzleCsvImporter(File csv, Listener listener) {
+        this(csv, listener, BATCH_SIZE, BUFFER_SIZE);
+    }
+
+    PuzzleCsvImporter(File csv, Listener listener, int batchSize, int bufferSize) {
+        if (isNull(csv)) {
+            throw new IllegalArgumentException("csv must not be null");
+        }
+        this.csv = csv;
+        this.listener = listener;
+        this.batchSize = batchSize;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Stops the import after the current batch is committed. May be called from any thread.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    File csv() {
+        return csv;
+    }
+
+    /**
+     * Imports the file into {@code db}, starting where a previous run on the same file
+     * stopped. Returns once the file is done or {@link #cancel()} is seen between batches.
+     */
+    Result importInto(SQLiteDatabase db) throws IOException {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + IMPORT_STATE_TABLE_NAME + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_SOURCE + " TEXT NOT NULL, " +
+                COLUMN_BYTE_OFFSET + " INTEGER NOT NULL)");
+        String source = sourceOf(csv);
+        long totalBytes = csv.length();
+        long offset;
+        try (SQLiteStatement savedOffset = db.compileStatement(SAVED_OFFSET)) {
+            savedOffset.bindString(1, source);
+            offset = savedOffset.simpleQueryForLong();
+        }
+        if (offset >= totalBytes) {
+            return new Result(0, 0, true);
+        }
+        if (offset > 0) {
+            Log.i(TAG, "Resuming import of " + csv.getName() + " at byte " + offset);
+        }
+        // Rebuilt in one pass afterwards instead of being updated for every inserted row.
+        db.execSQL("DROP INDEX IF EXISTS " + INDEX_SAMPLING);
+
+        int imported = 0;
+        int skipped = 0;
+        boolean complete = false;
+        try (LineReader lines = new LineReader(csv, offset, bufferSize);
+             SQLiteStatement insert = db.compileStatement(INSERT_PUZZLE);
+             SQLiteStatement saveOffset = db.compileStatement(SAVE_OFFSET)) {
+            int[] starts = new int[FIELD_COUNT];
+            int[] ends = new int[FIELD_COUNT];
+            while (!complete && !cancelled.get()) {
+                db.beginTransaction();
+                try {
+                    for (int count = 0; count < batchSize; count++) {
+                        long lineOffset = lines.offset();
+                        if (!lines.next()) {
+                            complete = true;
+                            break;
+                        }
+                        if (lineOffset == 0 && startsWith(lines.bytes(), lines.start(), lines.end(), HEADER)) {
+                            continue;
+                        }
+                        if (lines.start() == lines.end()) {
+                            continue;
+                        }
+                        if (accept(lines.bytes(), lines.start(), lines.end(), starts, ends) && insert(insert, lines.bytes(), starts, ends)) {
+                            imported++;
+                        } else {
+                            skipped++;
+                        }
+                    }
+                    saveOffset.bindString(1, source);
+                    saveOffset.bindLong(2, lines.offset());
+                    saveOffset.executeInsert();
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (!isNull(listener)) {
+                    listener.onProgress(lines.offset(), totalBytes, imported);
+                }
+            }
+        }
+        Log.i(TAG, "Imported " + imported + " puzzles, skipped " + skipped + (complete ? "" : ", cancelled"));
+        return new Result(imported, skipped, complete);
+    }
+
+    // Identifies the file well enough that a resumed offset is never applied to a different export.
+    static String sourceOf(File csv) {
+        return csv.getName() + ":" + csv.length() + ":" + csv.lastModified();
+    }
+
+    /**
+     * Splits the line into the leading {@link #FIELD_COUNT} fields and applies the filters of
+     * validator.py. Lichess fields contain no commas or quotes, so no unquoting is needed.
+     */
+    static boolean accept(byte[] bytes, int start, int end, int[] starts, int[] ends) {
+        int field = 0;
+        starts[0] = start;
+        for (int i = start; i < end && field < FIELD_COUNT; i++) {
+            if (bytes[i] == ',') {
+                ends[field++] = i;
+                if (field < FIELD_COUNT) {
+                    starts[field] = i + 1;
+                }
+            }
+        }
+        if (field < FIELD_COUNT - 1) {
+            return false;
+        }
+        if (field == FIELD_COUNT - 1) {
+            ends[field] = end;
+        }
+        if (ends[PUZZLE_ID] == starts[PUZZLE_ID] || ends[FEN] == starts[FEN]) {
+            return false;
+        }
+        int rating = parseInt(bytes, starts[RATING], ends[RATING]);
+        return rating >= MIN_RATING && rating <= MAX_RATING
+                && parseInt(bytes, starts[POPULARITY], ends[POPULARITY]) >= MIN_POPULARITY
+                && parseInt(bytes, starts[NB_PLAYS], ends[NB_PLAYS]) >= MIN_PLAYS
+                && isBelow(parseInt(bytes, starts[RATING_DEVIATION], ends[RATING_DEVIATION]), MAX_RATING_DEVIATION)
+                && countMoves(bytes, starts[MOVES], ends[MOVES]) >= MIN_MOVES;
+    }
+
+    private static boolean isBelow(int value, int limit) {
+        return value != Integer.MIN_VALUE && value < limit;
+    }
+
+    private static boolean insert(SQLiteStatement insert, byte[] bytes, int[] starts, int[] ends) {
+        insert.bindString(1, text(bytes, starts[PUZZLE_ID], ends[PUZZLE_ID]));
+        insert.bindString(2, text(bytes, starts[FEN], ends[FEN]));
+        insert.bindString(3, text(bytes, starts[MOVES], ends[MOVES]));
+        insert.bindLong(4, parseInt(bytes, starts[RATING], ends[RATING]));
+        insert.bindString(5, text(bytes, starts[THEMES], ends[THEMES]));
+        return insert.executeUpdateDelete() > 0;
+    }
+
+    private static String text(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Parses a non-negative decimal, or returns {@link Integer#MIN_VALUE} if the field is
+     * empty or not a number.
+     */
+    static int parseInt(byte[] bytes, int start, int end) {
+        if (start >= end || end - start > 9) {
+            return Integer.MIN_VALUE;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    static int countMoves(byte[] bytes, int start, int end) {
+        int moves = 0;
+        boolean inMove = false;
+        for (int i = start; i < end; i++) {
+            boolean space = bytes[i] == ' ';
+            if (!space && !inMove) {
+                moves++;
+            }
+            inMove = !space;
+        }
+        return moves;
+    }
+
+    private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads lines out of one reused buffer. After {@link #next()} the line is
+     * {@code bytes()[start(), end())} without its line terminator, valid until the next
+     * call, and {@link #offset()} is the file position just past it.
+     */
+    static final class LineReader implements Closeable {
+
+        private final FileInputStream input;
+        private final FileChannel channel;
+        private final byte[] bytes;
+        private final ByteBuffer buffer;
+        private int position;
+        private int limit;
+        private int lineStart;
+        private int lineEnd;
+        private long offset;
+        private boolean endOfFile;
+
+        LineReader(File file, long offset, int bufferSize) throws IOException {
+            this.input = new FileInputStream(file);
+            this.channel = input.getChannel();
+            this.bytes = new byte[bufferSize];
+            this.buffer = ByteBuffer.wrap(bytes);
+            this.offset = offset;
+            channel.position(offset);
+        }
+
+        boolean next() throws IOException {
+            while (true) {
+                for (int i = position; i < limit; i++) {
+                    if (bytes[i] == '\n') {
+                        return line(i, i + 1);
+                    }
+                }
+                if (endOfFile) {
+                    return position < limit && line(limit, limit);
+                }
+                fill();
+            }
+        }
+
+        private boolean line(int end, int next) {
+            lineStart = position;
+            lineEnd = end > position && bytes[end - 1] == '\r' ? end - 1 : end;
+            offset += next - position;
+            position = next;
+            return true;
+        }
+
+        // Moves the unread tail to the front of the buffer and reads behind it.
+        private void fill() throws IOException {
+            int remaining = limit - position;
+            if (remaining == bytes.length) {
+                throw new IOException("Line at byte " + offset + " is longer than " + bytes.length + " bytes");
+            }
+            System.arraycopy(bytes, position, bytes, 0, remaining);
+            position = 0;
+            limit = remaining;
+            buffer.clear().position(limit);
+            int read = channel.read(buffer);
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                limit += read;
+            }
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        int start() {
+            return lineStart;
+        }
+
+        int end() {
+            return lineEnd;
+        }
+
+        long offset() {
+            return offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                input.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.tacticmaster.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Every puzzle id of a pack in ascending order, for completing a typed prefix.
+ * <p>
+ * Ids are packed into longs the way {@link PackedPuzzleCodec} does, which keeps their string
+ * order, so the ids starting with a prefix are one contiguous run and a lookup is a single
+ * binary search. 300k ids take 2.4 MB. Ids that do not pack (longer than eight characters
+ * or not ASCII) cannot be completed.
+ */
+public final class PuzzleIdIndex {
+
+    public static final PuzzleIdIndex EMPTY = new PuzzleIdIndex(new long[0]);
+
+    private static final int ID_LENGTH = Long.BYTES;
+
+    private final long[] keys;
+
+    /**
+     * Takes over {@code keys}, packed ids in any order.
+     */
+    PuzzleIdIndex(long[] keys) {
+        Arrays.sort(keys);
+        this.keys = keys;
+    }
+
+    static PuzzleIdIndex of(Collection<String> puzzleIds) {
+        long[] keys = new long[puzzleIds.size()];
+        int count = 0;
+        for (String puzzleId : puzzleIds) {
+            long key = PackedPuzzleCodec.encodeId(puzzleId);
+            if (key >= 0) {
+                keys[count++] = key;
+            }
+        }
+        return new PuzzleIdIndex(count == keys.length ? keys : Arrays.copyOf(keys, count));
+    }
+
+    /**
+     * All ids of {@code indexes}, each once.
+     */
+    static PuzzleIdIndex union(List<PuzzleIdIndex> indexes) {
+        if (indexes.size() == 1) {
+            return indexes.get(0);
+        }
+        int total = 0;
+        for (PuzzleIdIndex index : indexes) {
+            total += index.keys.length;
+        }
+        long[] keys = new long[total];
+        int offset = 0;
+        for (PuzzleIdIndex index : indexes) {
+            System.arraycopy(index.keys, 0, keys, offset, index.keys.length);
+            offset += index.keys.length;
+        }
+        Arrays.sort(keys);
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (count == 0 || keys[i] != keys[count - 1]) {
+                keys[count++] = keys[i];
+            }
+        }
+        return new PuzzleIdIndex(count == keys.length ? keys : Arrays.copyOf(keys, count));
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Whether the index holds {@code puzzleId}; never for an id that does not pack.
+     */
+    public boolean contains(String puzzleId) {
+        long key = PackedPuzzleCodec.encodeId(puzzleId);
+        return key >= 0 && Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    /**
+     * Returns up to {@code limit} ids starting with {@code prefix}, in ascending order; none
+     * for an empty prefix.
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        long first = PackedPuzzleCodec.encodeId(prefix);
+        if (first < 0 || limit <= 0) {
+            return matches;
+        }
+        // The prefix padded with 0xFF instead of zeros: the largest id it can start.
+        long last = prefix.length() == ID_LENGTH ? first : first | (-1L >>> (prefix.length() * Byte.SIZE));
+        for (int i = lowerBound(first); i < keys.length && keys[i] <= last && matches.size() < limit; i++) {
+            matches.add(PackedPuzzleCodec.decodeId(keys[i]));
+        }
+        return matches;
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,77 @@
+package com.tacticmaster.db;
+
+import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Puzzles and the player's progress on them, as the session and the UI see them.
+ * <p>
+ * {@link DatabaseAccessor} reads the puzzles through SQLite and {@link BinaryPuzzleRepository}
+ * from the memory-mapped {@link BinaryPuzzlePack}; {@link InMemoryPuzzleRepository} holds a
+ * small pack in arrays. {@link PuzzleBackend} picks one at startup. Calls may do disk I/O, so callers go
+ * through {@link DatabaseExecutor}.
+ */
+public interface PuzzleRepository {
+
+    /**
+     * Returns up to {@link PuzzleSampler#BATCH_SIZE} random unsolved puzzles within the
+     * inclusive rating band, at most one per distinct rating. A {@code themeMask} of
+     * {@link ThemeMask#NONE} disables the theme filter; otherwise a puzzle must carry at
+     * least one of the masked themes. {@code excludedPuzzleIds} is only probed with
+     * {@code contains}, so pass a set with constant-time lookups.
+     */
+    List<Puzzle> getPuzzlesWithinRange(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask);
+
+    Puzzle getPuzzleById(String puzzleId) throws NoSuchElementException;
+
+    Set<String> getPuzzleThemes();
+
+    /**
+     * Every puzzle id, for completing what the player types. Reads all ids on each call, so
+     * callers keep the result.
+     */
+    PuzzleIdIndex getPuzzleIdIndex();
+
+    int getAllPuzzleCount();
+
+    int getSolvedPuzzleCount();
+
+    /**
+     * Unsolved puzzle counts per rating and theme, kept current by {@link #setSolved(String)}.
+     */
+    RatingHistogram getRatingHistogram();
+
+    boolean wasNotSolved(String puzzleId);
+
+    void setSolved(String puzzleId);
+
+    void recordPuzzleAttempt(PuzzleAttempt attempt);
+
+    /**
+     * Takes the most overdue failed puzzle off the review queue, or returns null if no review
+     * is due. With a {@code themeMask} other than {@link ThemeMask#NONE}, only puzzles
+     * carrying one of the masked themes are taken; the others stay queued.
+     */
+    String pollDueReview(long themeMask);
+
+    /**
+     * Marks a puzzle as just shown, so the next session can restore it cheaply.
+     */
+    void rememberPuzzle(Puzzle puzzle);
+
+    void flushProgress();
+
+    /**
+     * Drops what was read from a pack whose file has been replaced, such as the imported pack
+     * after {@link DatabaseHelper#importPuzzles}, so the next calls read the new file. Packs
+     * that never change do nothing.
+     */
+    default void reloadPack() {
+    }
+
+    void close();
+}
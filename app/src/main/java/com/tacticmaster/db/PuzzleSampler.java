@@ -0,0 +1,205 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.COLUMN_FEN;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_MOVES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SAMPLE_KEY;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEMES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEME_MASK;
+import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
+import static java.util.Objects.isNull;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Picks random unsolved puzzles from a rating band by seeking into the
+ * (Rating, SampleKey, ThemeMask) index instead of sorting the whole band with ORDER BY RANDOM().
+ * <p>
+ * Each probe jumps to a random rating and a random SampleKey and walks the index from
+ * there in pages of {@link #PAGE_SIZE}, continuing with the next ratings above and finally
+ * wrapping around to the bottom of the band. Solved puzzles and puzzles the session already
+ * holds are skipped in memory while walking, so the statement and its bound arguments stay
+ * the same size however long the session runs. Only one puzzle is taken per distinct
+ * rating.
+ * <p>
+ * Solved ids live in the progress store, not next to the index, so a long run of solved
+ * rows costs one page query per {@link #PAGE_SIZE} rows. A walk therefore gives up after
+ * {@link #PAGES_PER_SEEK} pages and the probe seeks to another random spot, at most
+ * {@link #SEEKS_PER_PROBE} times. Only the first probe of a batch then walks the band to its
+ * end, so an empty batch still means the band is exhausted; later probes that give up just
+ * leave the batch short.
+ */
+class PuzzleSampler {
+
+    static final int BATCH_SIZE = 5;
+    static final int PAGE_SIZE = 16;
+    static final int PAGES_PER_SEEK = 8;
+    static final int SEEKS_PER_PROBE = 3;
+
+    private static final String COLUMNS = COLUMN_PUZZLE_ID + ", " + COLUMN_FEN + ", " + COLUMN_MOVES + ", " +
+            COLUMN_RATING + ", " + COLUMN_THEMES + ", " + COLUMN_SAMPLE_KEY;
+    static final String WITHIN_RATING = COLUMN_RATING + " = ? AND " + COLUMN_SAMPLE_KEY + " >= ?";
+    static final String ABOVE_RATING = COLUMN_RATING + " > ? AND " + COLUMN_RATING + " <= ?";
+
+    private final Random random;
+
+    PuzzleSampler(Random random) {
+        this.random = random;
+    }
+
+    List<Puzzle> sample(SQLiteDatabase db, int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask, Set<String> solvedPuzzleIds) {
+        List<String> filterArgs = new ArrayList<>();
+        String filter = buildFilter(themeMask, filterArgs);
+        Predicate<String> skipped = puzzleId -> excludedPuzzleIds.contains(puzzleId) || solvedPuzzleIds.contains(puzzleId);
+
+        List<Puzzle> sampled = new ArrayList<>();
+        Set<Integer> sampledRatings = new HashSet<>();
+        while (sampled.size() < BATCH_SIZE) {
+            List<String> probeArgs = new ArrayList<>(filterArgs);
+            String probeFilter = filter + excludeRatings(sampledRatings, probeArgs);
+            Puzzle puzzle = probe(db, lowestRating, highestRating, probeFilter, probeArgs, skipped, sampled.isEmpty());
+            if (isNull(puzzle) || !sampledRatings.add(puzzle.rating())) {
+                break;
+            }
+            sampled.add(puzzle);
+        }
+        return sampled;
+    }
+
+    /**
+     * Returns an unsolved, unheld puzzle from the band, or null if the band has none or, unless
+     * {@code exhaustive}, if every bounded seek gave up.
+     */
+    private Puzzle probe(SQLiteDatabase db, int lowestRating, int highestRating, String filter, List<String> filterArgs, Predicate<String> skipped, boolean exhaustive) {
+        for (int seek = 0; seek < SEEKS_PER_PROBE; seek++) {
+            PageBudget budget = new PageBudget(PAGES_PER_SEEK);
+            Puzzle puzzle = seek(db, lowestRating, highestRating, filter, filterArgs, skipped, budget);
+            if (!isNull(puzzle) || !budget.spent) {
+                return puzzle;
+            }
+        }
+        return exhaustive ? seek(db, lowestRating, highestRating, filter, filterArgs, skipped, new PageBudget(Integer.MAX_VALUE)) : null;
+    }
+
+    private Puzzle seek(SQLiteDatabase db, int lowestRating, int highestRating, String filter, List<String> filterArgs, Predicate<String> skipped, PageBudget budget) {
+        int startRating = lowestRating + random.nextInt(highestRating - lowestRating + 1);
+        Puzzle puzzle = walk(db, startRating, random.nextLong(), highestRating, filter, filterArgs, skipped, budget);
+        if (!isNull(puzzle) || budget.spent) {
+            return puzzle;
+        }
+        return walk(db, lowestRating, Long.MIN_VALUE, startRating, filter, filterArgs, skipped, budget);
+    }
+
+    /**
+     * Walks the index from (rating, sampleKey) up to the end of {@code toRating} and returns
+     * the first row that is not skipped, or null once the range or the budget runs out. Keyset
+     * paging alternates between finishing the current rating and jumping to the ratings above
+     * it, since row-value comparisons need a newer SQLite.
+     */
+    private static Puzzle walk(SQLiteDatabase db, int rating, long sampleKey, int toRating, String filter, List<String> filterArgs, Predicate<String> skipped, PageBudget budget) {
+        boolean withinRating = true;
+        while (true) {
+            if (budget.pagesLeft == 0) {
+                budget.spent = true;
+                return null;
+            }
+            budget.pagesLeft--;
+            String where = withinRating ? WITHIN_RATING : ABOVE_RATING;
+            long second = withinRating ? sampleKey : toRating;
+            Page page = query(db, where, rating, second, filter, filterArgs, skipped);
+            if (!isNull(page.puzzle)) {
+                return page.puzzle;
+            }
+            if (page.rows == PAGE_SIZE) {
+                rating = page.lastRating;
+                withinRating = page.lastSampleKey != Long.MAX_VALUE;
+                sampleKey = page.lastSampleKey + 1;
+            } else if (withinRating) {
+                withinRating = false;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private static Page query(SQLiteDatabase db, String where, long first, long second, String filter, List<String> filterArgs, Predicate<String> skipped) {
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(first));
+        args.add(String.valueOf(second));
+        args.addAll(filterArgs);
+        Page page = new Page();
+        try (Cursor cursor = db.rawQuery(pageQuery(where, filter), args.toArray(new String[0]))) {
+            while (cursor.moveToNext()) {
+                page.rows++;
+                page.lastRating = cursor.getInt(3);
+                page.lastSampleKey = cursor.getLong(5);
+                String puzzleId = cursor.getString(0);
+                if (!skipped.test(puzzleId)) {
+                    page.puzzle = new Puzzle(puzzleId, cursor.getString(1), cursor.getString(2), cursor.getInt(3), cursor.getString(4), false);
+                    break;
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * One page of the index walk: {@code where} is {@link #WITHIN_RATING} or
+     * {@link #ABOVE_RATING}, {@code filter} the theme and rating exclusions.
+     */
+    static String pageQuery(String where, String filter) {
+        return "SELECT " + COLUMNS + " FROM " + PUZZLE_TABLE_NAME +
+                " WHERE " + where + filter +
+                " ORDER BY " + COLUMN_RATING + ", " + COLUMN_SAMPLE_KEY + " LIMIT " + PAGE_SIZE;
+    }
+
+    static String excludeRatings(Set<Integer> ratings, List<String> args) {
+        if (ratings.isEmpty()) {
+            return "";
+        }
+        // Bounded by BATCH_SIZE, so this list never grows with the session.
+        StringBuilder clause = new StringBuilder(" AND ").append(COLUMN_RATING).append(" NOT IN (");
+        for (Integer rating : ratings) {
+            clause.append("?,");
+            args.add(String.valueOf(rating));
+        }
+        clause.setLength(clause.length() - 1);
+        return clause.append(')').toString();
+    }
+
+    static String buildFilter(long themeMask, List<String> filterArgs) {
+        if (themeMask == ThemeMask.NONE) {
+            return "";
+        }
+        filterArgs.add(String.valueOf(themeMask));
+        return " AND (" + COLUMN_THEME_MASK + " & ?) != 0";
+    }
+
+    private static final class Page {
+        int rows;
+        int lastRating;
+        long lastSampleKey;
+        Puzzle puzzle;
+    }
+
+    // Pages one seek may still query; spent once a walk stopped for lack of them.
+    private static final class PageBudget {
+        int pagesLeft;
+        boolean spent;
+
+        PageBudget(int pagesLeft) {
+            this.pagesLeft = pagesLeft;
+        }
+    }
+}
@@ -9,5 +9,42 @@ public class PuzzleTable {
     public static final String COLUMN_RATING = "Rating";
     public static final String COLUMN_SOLVED = "Solved";
     public static final String COLUMN_THEMES = "Themes";
+    public static final String COLUMN_SAMPLE_KEY = "SampleKey";
+    public static final String COLUMN_THEME_MASK = "ThemeMask";
+
+    public static final String PROGRESS_TABLE_NAME = "puzzle_progress";
+    public static final String COLUMN_ATTEMPTS = "Attempts";
+
+    public static final String JOURNAL_STATE_TABLE_NAME = "journal_state";
+    public static final String COLUMN_ID = "Id";
+    public static final String COLUMN_SEQUENCE = "Sequence";
+
+    public static final String ATTEMPTS_TABLE_NAME = "puzzle_attempts";
+    public static final String COLUMN_ATTEMPTED_AT = "AttemptedAt";
+    public static final String COLUMN_SOLVE_TIME_MILLIS = "SolveTimeMillis";
+    public static final String COLUMN_HINTS_USED = "HintsUsed";
+    public static final String COLUMN_RATING_BEFORE = "RatingBefore";
+    public static final String COLUMN_RATING_AFTER = "RatingAfter";
+
+    public static final String DAILY_STATS_TABLE_NAME = "attempt_stats_daily";
+    public static final String THEME_STATS_TABLE_NAME = "attempt_stats_theme";
+    public static final String RATING_STATS_TABLE_NAME = "attempt_stats_rating";
+    public static final String COLUMN_DAY = "Day";
+    public static final String COLUMN_THEME = "Theme";
+    public static final String COLUMN_BUCKET = "Bucket";
+
+    public static final String REVIEW_TABLE_NAME = "review_schedule";
+    public static final String COLUMN_DUE_AT = "DueAt";
+    public static final String COLUMN_INTERVAL_DAYS = "IntervalDays";
+    public static final String COLUMN_EASE = "Ease";
+    public static final String COLUMN_REPETITIONS = "Repetitions";
+
+    public static final String IMPORT_STATE_TABLE_NAME = "import_state";
+    public static final String COLUMN_SOURCE = "Source";
+    public static final String COLUMN_BYTE_OFFSET = "ByteOffset";
+
+    public static final String INDEX_RATING_SAMPLE_KEY = "idx_puzzle_rating_sample_key";
+    public static final String INDEX_SAMPLING = "idx_puzzle_sampling";
+    public static final String INDEX_REVIEW_DUE = "idx_review_due";
 }
 
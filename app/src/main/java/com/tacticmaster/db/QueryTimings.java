@@ -0,0 +1,88 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Latencies of the {@link PuzzleRepository} operations in this process, one
+ * {@link LatencyHistogram} per operation. {@link TimedPuzzleRepository} records into it and
+ * the diagnostics screen reads it. Calls of {@link #SLOW_CALL_MILLIS} or more are logged
+ * with the shape of their arguments, never the arguments themselves.
+ */
+public final class QueryTimings {
+
+    private static final String TAG = "QueryTimings";
+    static final long SLOW_CALL_MILLIS = 50;
+    private static final long NANOS_PER_MICRO = 1_000;
+    private static final double MICROS_PER_MILLI = 1_000.0;
+
+    private static QueryTimings instance;
+
+    /**
+     * Latency percentiles of one operation, in milliseconds.
+     */
+    public record Stats(String operation, long calls, long slowCalls, double p50Millis, double p95Millis,
+                        double p99Millis, double maxMillis) {
+    }
+
+    private final long slowNanos;
+    private final Map<String, Operation> operations = new TreeMap<>();
+
+    public static synchronized QueryTimings getInstance() {
+        if (isNull(instance)) {
+            instance = new QueryTimings(SLOW_CALL_MILLIS);
+        }
+        return instance;
+    }
+
+    QueryTimings(long slowCallMillis) {
+        this.slowNanos = slowCallMillis * 1_000_000;
+    }
+
+    /**
+     * Records one call; {@code argumentShape} is only evaluated for a slow call.
+     */
+    void record(String operation, long nanos, Supplier<String> argumentShape) {
+        boolean slow = nanos >= slowNanos;
+        Operation timings;
+        synchronized (this) {
+            timings = operations.computeIfAbsent(operation, name -> new Operation());
+            if (slow) {
+                timings.slowCalls++;
+            }
+        }
+        timings.latencies.record(nanos / NANOS_PER_MICRO);
+        if (slow) {
+            Log.w(TAG, String.format(Locale.ROOT, "Slow %s: %.1f ms (%s)", operation, nanos / 1e6, argumentShape.get()));
+        }
+    }
+
+    /**
+     * Stats of every operation called so far, by operation name.
+     */
+    public synchronized List<Stats> snapshot() {
+        List<Stats> stats = new ArrayList<>();
+        operations.forEach((operation, timings) -> {
+            LatencyHistogram latencies = timings.latencies;
+            stats.add(new Stats(operation, latencies.count(), timings.slowCalls,
+                    latencies.percentile(50) / MICROS_PER_MILLI,
+                    latencies.percentile(95) / MICROS_PER_MILLI,
+                    latencies.percentile(99) / MICROS_PER_MILLI,
+                    latencies.max() / MICROS_PER_MILLI));
+        });
+        return stats;
+    }
+
+    private static final class Operation {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        long slowCalls;
+    }
+}
@@ -0,0 +1,197 @@
+package com.tacticmaster.db;
+
+import java.util.List;
+
+/**
+ * Counts of unsolved puzzles per rating bucket, overall and per {@link ThemeMask} bit, so
+ * the narrowest rating band that still has candidates is found in memory.
+ * <p>
+ * Counts are kept in {@link #BUCKET_WIDTH}-point buckets, and a puzzle with several masked
+ * themes is counted once per theme, so {@link #unsolved(int, int, long)} is an upper
+ * bound: a band it reports as empty has no candidates, while a band it reports as non-empty
+ * may still come back empty from the sampler. Each repository builds its histogram once and
+ * removes puzzles from it as they are solved; {@link #sumOf(List)} adds up the histograms of
+ * several packs.
+ */
+public final class RatingHistogram {
+
+    static final int BUCKET_WIDTH = 10;
+    // Ratings at or above this share the last bucket.
+    public static final int MAX_RATING = 4000;
+
+    private static final int BUCKETS = MAX_RATING / BUCKET_WIDTH + 1;
+
+    private final int[] all;
+    private final int[][] byTheme;
+    // Unsolved puzzles per theme bit over all ratings.
+    private final int[] themeTotals;
+    // Non-empty for a sum of other histograms, which keeps no counts of its own.
+    private final List<RatingHistogram> parts;
+
+    RatingHistogram() {
+        this.all = new int[BUCKETS];
+        this.byTheme = new int[ThemeMask.THEMES.size()][BUCKETS];
+        this.themeTotals = new int[ThemeMask.THEMES.size()];
+        this.parts = List.of();
+    }
+
+    private RatingHistogram(List<RatingHistogram> parts) {
+        this.all = new int[0];
+        this.byTheme = new int[0][];
+        this.themeTotals = new int[0];
+        this.parts = parts;
+    }
+
+    /**
+     * A histogram reporting the sum of {@code parts}, following their updates; it must not be
+     * updated itself.
+     */
+    static RatingHistogram sumOf(List<RatingHistogram> parts) {
+        return parts.isEmpty() ? new RatingHistogram() : new RatingHistogram(List.copyOf(parts));
+    }
+
+    synchronized void add(int rating, long themeMask) {
+        update(rating, themeMask, 1);
+    }
+
+    synchronized void remove(int rating, long themeMask) {
+        update(rating, themeMask, -1);
+    }
+
+    private void update(int rating, long themeMask, int delta) {
+        int bucket = bucketOf(rating);
+        all[bucket] += delta;
+        for (int bit = 0; bit < byTheme.length; bit++) {
+            if ((themeMask & (1L << bit)) != 0) {
+                byTheme[bit][bucket] += delta;
+                themeTotals[bit] += delta;
+            }
+        }
+    }
+
+    /**
+     * Upper bound on the unsolved puzzles rated within the inclusive band that carry at least
+     * one of the masked themes, or any puzzle for {@link ThemeMask#NONE}.
+     */
+    public synchronized int unsolved(int lowestRating, int highestRating, long themeMask) {
+        if (lowestRating > highestRating) {
+            return 0;
+        }
+        if (!parts.isEmpty()) {
+            int count = 0;
+            for (RatingHistogram part : parts) {
+                count += part.unsolved(lowestRating, highestRating, themeMask);
+            }
+            return count;
+        }
+        int from = bucketOf(lowestRating);
+        int to = bucketOf(highestRating);
+        if (themeMask == ThemeMask.NONE) {
+            return sum(all, from, to);
+        }
+        int count = 0;
+        for (int bit = 0; bit < byTheme.length; bit++) {
+            if ((themeMask & (1L << bit)) != 0) {
+                count += sum(byTheme[bit], from, to);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Half-width, from {@code narrowest} on in steps of {@code step}, of the narrowest band
+     * around {@code rating} holding {@code wanted} unsolved puzzles with one of the masked
+     * themes, or all that are left if fewer are. The puzzles rated {@code excludedRatings},
+     * e.g. those already buffered, are taken off the counts first. Returns -1 if no puzzle is
+     * left at any rating. Found with one pass over the buckets, without any query.
+     */
+    public synchronized int narrowestHalfWidth(int rating, long themeMask, int narrowest, int step, int wanted, int[] excludedRatings) {
+        int[] counts = bucketCounts(themeMask);
+        if (sum(counts, 0, BUCKETS - 1) == 0) {
+            return -1;
+        }
+        int[] discounted = counts.clone();
+        for (int excludedRating : excludedRatings) {
+            int bucket = bucketOf(excludedRating);
+            discounted[bucket] = Math.max(discounted[bucket] - 1, 0);
+        }
+        // Excluded puzzles solved since are taken off twice; if that leaves nothing, the plain
+        // counts decide rather than reporting an exhaustion that may not be real.
+        int[] below = prefixSums(sum(discounted, 0, BUCKETS - 1) > 0 ? discounted : counts);
+        int target = Math.min(wanted, below[BUCKETS]);
+        for (int halfWidth = narrowest; ; halfWidth += step) {
+            int from = bucketOf(rating - halfWidth);
+            int to = bucketOf(rating + halfWidth);
+            if (below[to + 1] - below[from] >= target || (from == 0 && to == BUCKETS - 1)) {
+                return halfWidth;
+            }
+        }
+    }
+
+    private static int[] prefixSums(int[] counts) {
+        int[] below = new int[counts.length + 1];
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            below[bucket + 1] = below[bucket] + counts[bucket];
+        }
+        return below;
+    }
+
+    private synchronized int[] bucketCounts(long themeMask) {
+        int[] counts = new int[BUCKETS];
+        for (RatingHistogram part : parts) {
+            int[] partCounts = part.bucketCounts(themeMask);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] += partCounts[bucket];
+            }
+        }
+        if (!parts.isEmpty()) {
+            return counts;
+        }
+        if (themeMask == ThemeMask.NONE) {
+            return all.clone();
+        }
+        for (int bit = 0; bit < byTheme.length; bit++) {
+            if ((themeMask & (1L << bit)) != 0) {
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    counts[bucket] += byTheme[bit][bucket];
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * The {@link ThemeMask} bits that at least one unsolved puzzle carries.
+     */
+    public synchronized long unsolvedThemeMask() {
+        long themeMask = ThemeMask.NONE;
+        for (RatingHistogram part : parts) {
+            themeMask |= part.unsolvedThemeMask();
+        }
+        for (int bit = 0; bit < themeTotals.length; bit++) {
+            if (themeTotals[bit] > 0) {
+                themeMask |= 1L << bit;
+            }
+        }
+        return themeMask;
+    }
+
+    /**
+     * Whether no unsolved puzzle at any rating carries one of the masked themes.
+     */
+    public boolean isExhausted(long themeMask) {
+        return unsolved(0, MAX_RATING, themeMask) == 0;
+    }
+
+    private static int sum(int[] buckets, int from, int to) {
+        int count = 0;
+        for (int bucket = from; bucket <= to; bucket++) {
+            count += buckets[bucket];
+        }
+        return count;
+    }
+
+    private static int bucketOf(int rating) {
+        return Math.min(Math.max(rating, 0), MAX_RATING) / BUCKET_WIDTH;
+    }
+}
@@ -0,0 +1,62 @@
+package com.tacticmaster.db;
+
+/**
+ * Spaced-repetition state of one failed puzzle, updated with the SM-2 rules. {@code ease}
+ * is the SM-2 easiness factor in thousandths and {@code dueAt} is wall-clock epoch millis;
+ * {@code themeMask} holds the puzzle's {@link ThemeMask} bits for the theme filter.
+ */
+record Review(String puzzleId, long dueAt, int intervalDays, int ease, int repetitions, long themeMask) {
+
+    static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    static final int INITIAL_EASE = 2500;
+    static final int MIN_EASE = 1300;
+    // SM-2 answer quality from 0 to 5; below PASSING_QUALITY the puzzle starts over.
+    static final int PASSING_QUALITY = 3;
+    static final int MAX_QUALITY = 5;
+
+    static Review initial(String puzzleId, long themeMask) {
+        return new Review(puzzleId, 0, 0, INITIAL_EASE, 0, themeMask);
+    }
+
+    /**
+     * The state after an answer of the given quality at {@code now}: a lapse is due again
+     * the next day, a pass after 1, 6 and then the previous interval times the easiness
+     * factor, which itself moves with the quality.
+     */
+    Review next(int quality, long now) {
+        int nextRepetitions;
+        int nextInterval;
+        if (quality < PASSING_QUALITY) {
+            nextRepetitions = 0;
+            nextInterval = 1;
+        } else {
+            nextRepetitions = repetitions + 1;
+            if (nextRepetitions == 1) {
+                nextInterval = 1;
+            } else if (nextRepetitions == 2) {
+                nextInterval = 6;
+            } else {
+                nextInterval = (int) Math.round((long) intervalDays * ease / 1000.0);
+            }
+        }
+        int miss = MAX_QUALITY - quality;
+        int nextEase = Math.max(MIN_EASE, ease + 100 - miss * (80 + miss * 20));
+        return new Review(puzzleId, now + nextInterval * DAY_MILLIS, nextInterval, nextEase, nextRepetitions, themeMask);
+    }
+
+    /**
+     * Whether the puzzle carries one of the masked themes; any puzzle does for
+     * {@link ThemeMask#NONE}.
+     */
+    boolean matches(long filter) {
+        return filter == ThemeMask.NONE || (themeMask & filter) != 0;
+    }
+
+    /**
+     * Orders by due time, then by puzzle id, matching the order ReviewQueue pages in.
+     */
+    int compareTo(long otherDueAt, String otherPuzzleId) {
+        int byDue = Long.compare(dueAt, otherDueAt);
+        return byDue != 0 ? byDue : puzzleId.compareTo(otherPuzzleId);
+    }
+}
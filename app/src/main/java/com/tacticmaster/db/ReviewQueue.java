@@ -0,0 +1,142 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Min-heap of reviews by due time, filled a page at a time from the due-date index, so
+ * checking for a due review costs O(log n) however many reviews are stored and only the
+ * earliest page or so is ever in memory.
+ * <p>
+ * Pages are read in (DueAt, PuzzleId) order past the last row loaded. A review rescheduled
+ * to before that point goes straight into the heap; one rescheduled past it is left to a
+ * later page. Heap entries whose review has been rescheduled since are dropped when they
+ * surface.
+ * <p>
+ * Each review is also kept in one heap per {@link ThemeMask} bit it carries, so a poll under
+ * a theme filter only looks at the heads of the masked themes' heaps and reviews outside
+ * the filter stay queued. Such a poll pages on while the loaded reviews might still be
+ * followed by due ones.
+ */
+final class ReviewQueue {
+
+    interface PageLoader {
+        /**
+         * Reviews ordered by due time and puzzle id, strictly after the given pair.
+         */
+        List<Review> after(long dueAt, String puzzleId, int limit);
+    }
+
+    static final int PAGE_SIZE = 256;
+
+    private static final Comparator<Review> DUE_ORDER = (a, b) -> a.compareTo(b.dueAt(), b.puzzleId());
+
+    private final PageLoader loader;
+    private final PriorityQueue<Review> heap = new PriorityQueue<>(DUE_ORDER);
+    // The same entries again per theme bit they carry.
+    private final Map<Integer, PriorityQueue<Review>> byTheme = new HashMap<>();
+    // Due time of the current entry per puzzle in the heap, to recognize superseded ones.
+    private final Map<String, Long> queuedDueAt = new HashMap<>();
+    private long loadedDueAt = Long.MIN_VALUE;
+    private String loadedPuzzleId = "";
+    private boolean allLoaded;
+
+    ReviewQueue(PageLoader loader) {
+        if (isNull(loader)) {
+            throw new IllegalArgumentException("loader must not be null");
+        }
+        this.loader = loader;
+    }
+
+    /**
+     * Removes and returns the id of the most overdue review due at {@code now} that carries
+     * one of the masked themes, any review for {@link ThemeMask#NONE}, or null if none is
+     * due. A review taken here is offered again once it is rescheduled.
+     */
+    synchronized String pollDue(long now, long themeMask) {
+        while (true) {
+            Review head = peek(themeMask);
+            if (!isNull(head) && head.dueAt() <= now) {
+                // Its entries in the other heaps are stale now and dropped when they surface.
+                queuedDueAt.remove(head.puzzleId());
+                return head.puzzleId();
+            }
+            // Unloaded reviews come after every loaded one, so none of them is due if a loaded
+            // head or the last loaded review is not.
+            if (!isNull(head) || allLoaded || loadedDueAt > now) {
+                return null;
+            }
+            loadPage();
+        }
+    }
+
+    private Review peek(long themeMask) {
+        if (themeMask == ThemeMask.NONE) {
+            return peekCurrent(heap);
+        }
+        Review earliest = null;
+        for (long bits = themeMask; bits != 0; bits &= bits - 1) {
+            PriorityQueue<Review> themed = byTheme.get(Long.numberOfTrailingZeros(bits));
+            Review head = isNull(themed) ? null : peekCurrent(themed);
+            if (!isNull(head) && (isNull(earliest) || DUE_ORDER.compare(head, earliest) < 0)) {
+                earliest = head;
+            }
+        }
+        return earliest;
+    }
+
+    // Drops superseded entries off the top of the heap and returns the first current one.
+    private Review peekCurrent(PriorityQueue<Review> queue) {
+        Review head;
+        while (!isNull(head = queue.peek())) {
+            Long dueAt = queuedDueAt.get(head.puzzleId());
+            if (!isNull(dueAt) && dueAt == head.dueAt()) {
+                return head;
+            }
+            queue.poll();
+        }
+        return null;
+    }
+
+    /**
+     * Tells the queue a review was stored with a new due time.
+     */
+    synchronized void onScheduled(Review review) {
+        if (allLoaded || review.compareTo(loadedDueAt, loadedPuzzleId) <= 0) {
+            add(review);
+        } else {
+            // A later page loads it; any older heap entry for it is now stale.
+            queuedDueAt.remove(review.puzzleId());
+        }
+    }
+
+    // Loaded reviews still queued, not counting superseded heap entries.
+    synchronized int loadedSize() {
+        return queuedDueAt.size();
+    }
+
+    private void add(Review review) {
+        heap.add(review);
+        for (long bits = review.themeMask(); bits != 0; bits &= bits - 1) {
+            byTheme.computeIfAbsent(Long.numberOfTrailingZeros(bits), bit -> new PriorityQueue<>(DUE_ORDER)).add(review);
+        }
+        queuedDueAt.put(review.puzzleId(), review.dueAt());
+    }
+
+    private void loadPage() {
+        List<Review> page = loader.after(loadedDueAt, loadedPuzzleId, PAGE_SIZE);
+        page.forEach(this::add);
+        if (page.size() < PAGE_SIZE) {
+            allLoaded = true;
+        } else {
+            Review last = page.get(page.size() - 1);
+            loadedDueAt = last.dueAt();
+            loadedPuzzleId = last.puzzleId();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.COLUMN_DUE_AT;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_EASE;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_INTERVAL_DAYS;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_REPETITIONS;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEME_MASK;
+import static com.tacticmaster.db.PuzzleTable.REVIEW_TABLE_NAME;
+import static java.util.Objects.isNull;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spaced-repetition schedule for failed puzzles, in the progress database.
+ * <p>
+ * A failed attempt puts the puzzle on the schedule; every later attempt at it moves it
+ * along by the SM-2 rules in {@link Review}, graded from whether it was solved, with hints,
+ * or quickly. Due reviews are taken from a {@link ReviewQueue} paged in through the
+ * {@link PuzzleTable#INDEX_REVIEW_DUE} index. Each row keeps the puzzle's theme mask, so
+ * reviews outside the theme filter stay queued instead of being handed out.
+ */
+class ReviewStore {
+
+    // Solving without hints in this time counts as a perfect answer.
+    static final long QUICK_SOLVE_MILLIS = 20_000;
+
+    private static final String COLUMNS = COLUMN_PUZZLE_ID + ", " + COLUMN_DUE_AT + ", " + COLUMN_INTERVAL_DAYS + ", " +
+            COLUMN_EASE + ", " + COLUMN_REPETITIONS + ", " + COLUMN_THEME_MASK;
+    static final String REVIEW_BY_ID = "SELECT " + COLUMNS + " FROM " + REVIEW_TABLE_NAME + " WHERE " + COLUMN_PUZZLE_ID + " = ?";
+    static final String REVIEWS_AFTER = "SELECT " + COLUMNS + " FROM " + REVIEW_TABLE_NAME +
+            " WHERE " + COLUMN_DUE_AT + " >= ? AND (" + COLUMN_DUE_AT + " > ? OR " + COLUMN_PUZZLE_ID + " > ?)" +
+            " ORDER BY " + COLUMN_DUE_AT + ", " + COLUMN_PUZZLE_ID + " LIMIT ";
+    static final String SAVE_REVIEW = "INSERT OR REPLACE INTO " + REVIEW_TABLE_NAME + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final SQLiteDatabase database;
+    private final StatementCache statements;
+    private final ReviewQueue queue;
+
+    ReviewStore(SQLiteDatabase database) {
+        if (isNull(database)) {
+            throw new IllegalArgumentException("database must not be null");
+        }
+        this.database = database;
+        this.statements = new StatementCache(database);
+        this.queue = new ReviewQueue(this::after);
+    }
+
+    /**
+     * Schedules the puzzle after a failed attempt, or reschedules it after any attempt once
+     * it is on the schedule. Solved puzzles that never failed are not tracked.
+     */
+    synchronized void record(PuzzleAttempt attempt) {
+        Review next = next(find(attempt.puzzleId()), attempt);
+        if (isNull(next)) {
+            return;
+        }
+        SQLiteStatement save = statements.get(SAVE_REVIEW);
+        save.bindString(1, next.puzzleId());
+        save.bindLong(2, next.dueAt());
+        save.bindLong(3, next.intervalDays());
+        save.bindLong(4, next.ease());
+        save.bindLong(5, next.repetitions());
+        save.bindLong(6, next.themeMask());
+        save.executeInsert();
+        queue.onScheduled(next);
+    }
+
+    /**
+     * The review after {@code attempt}, starting one for a failed puzzle not on the schedule
+     * yet, or null for a solved one. The theme mask is taken from the attempt, which also
+     * fills it in for rows stored before it was kept.
+     */
+    static Review next(Review review, PuzzleAttempt attempt) {
+        long themeMask = ThemeMask.parse(attempt.themes());
+        if (isNull(review)) {
+            if (attempt.solved()) {
+                return null;
+            }
+            review = Review.initial(attempt.puzzleId(), themeMask);
+        }
+        Review next = review.next(quality(attempt), attempt.attemptedAt());
+        return new Review(next.puzzleId(), next.dueAt(), next.intervalDays(), next.ease(), next.repetitions(), themeMask);
+    }
+
+    static int quality(PuzzleAttempt attempt) {
+        if (!attempt.solved()) {
+            return 1;
+        }
+        if (attempt.hintsUsed() > 0) {
+            return Review.PASSING_QUALITY;
+        }
+        return attempt.solveTimeMillis() <= QUICK_SOLVE_MILLIS ? Review.MAX_QUALITY : Review.MAX_QUALITY - 1;
+    }
+
+    /**
+     * The id of the most overdue review at {@code now} carrying one of the masked themes,
+     * taken off the queue, or null.
+     */
+    synchronized String pollDue(long now, long themeMask) {
+        return queue.pollDue(now, themeMask);
+    }
+
+    private Review find(String puzzleId) {
+        try (Cursor cursor = database.rawQuery(REVIEW_BY_ID, new String[]{puzzleId})) {
+            return cursor.moveToFirst() ? read(cursor) : null;
+        }
+    }
+
+    private List<Review> after(long dueAt, String puzzleId, int limit) {
+        List<Review> reviews = new ArrayList<>();
+        String due = String.valueOf(dueAt);
+        try (Cursor cursor = database.rawQuery(REVIEWS_AFTER + limit, new String[]{due, due, puzzleId})) {
+            while (cursor.moveToNext()) {
+                reviews.add(read(cursor));
+            }
+        }
+        return reviews;
+    }
+
+    private static Review read(Cursor cursor) {
+        return new Review(cursor.getString(0), cursor.getLong(1), cursor.getInt(2), cursor.getInt(3), cursor.getInt(4), cursor.getLong(5));
+    }
+
+    synchronized void close() {
+        statements.close();
+    }
+}
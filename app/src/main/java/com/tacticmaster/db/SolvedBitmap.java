@@ -0,0 +1,470 @@
+package com.tacticmaster.db;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, here {@link BinaryPuzzlePack} ordinals of solved puzzles.
+ * <p>
+ * Roaring-style layout: values are split by their high 16 bits into containers of up to
+ * 65536 values. A container holds a sorted {@code char[]} while it has at most
+ * {@link #ARRAY_MAX} values and a 8 KiB bitmap beyond that, so a lookup is one binary
+ * search over the container keys plus one array or bit probe. When serialized, each
+ * container is written as an array, a bitmap or a list of runs, whichever is smallest,
+ * so both sparse and nearly complete progress fit in a few KB. Methods are synchronized;
+ * readers of the sampler and the writer recording solves share one instance.
+ */
+final class SolvedBitmap {
+
+    static final int ARRAY_MAX = 4096;
+
+    private static final int MAGIC = 0x534F4C56;
+    private static final int FORMAT_VERSION = 1;
+    private static final int BITMAP_WORDS = 1 << 10;
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+    private static final byte RUNS = 2;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    synchronized boolean contains(int value) {
+        int index = indexOf(value >>> 16);
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Adds a value; returns false if it was already present.
+     */
+    synchronized boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        int key = value >>> 16;
+        int index = indexOf(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, (char) key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        if (container.contains((char) value)) {
+            return false;
+        }
+        containers[index] = container.add((char) value);
+        return true;
+    }
+
+    synchronized boolean remove(int value) {
+        int index = indexOf(value >>> 16);
+        if (index < 0 || !containers[index].contains((char) value)) {
+            return false;
+        }
+        Container container = containers[index].remove((char) value);
+        if (container.cardinality() == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            containers[--size] = null;
+        } else {
+            containers[index] = container;
+        }
+        return true;
+    }
+
+    synchronized int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Number of values in {@code [from, to)}.
+     */
+    synchronized int cardinality(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int base = keys[i] << 16;
+            if (base + 0xFFFF < from || base >= to) {
+                continue;
+            }
+            int low = Math.max(from - base, 0);
+            int high = Math.min(to - base, 0x10000);
+            count += containers[i].rank(high) - containers[i].rank(low);
+        }
+        return count;
+    }
+
+    /**
+     * The smallest value not in the set that is at least {@code from}.
+     */
+    synchronized int nextAbsent(int from) {
+        int value = from;
+        int index = indexOf(value >>> 16);
+        while (index >= 0) {
+            int low = containers[index].nextAbsent(value & 0xFFFF);
+            if (low <= 0xFFFF) {
+                return (value & 0xFFFF0000) | low;
+            }
+            value = ((value >>> 16) + 1) << 16;
+            index = indexOf(value >>> 16);
+        }
+        return value;
+    }
+
+    /**
+     * Adds every value of {@code other}.
+     */
+    void or(SolvedBitmap other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Calls {@code action} with every value in ascending order.
+     */
+    synchronized void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    synchronized void writeTo(DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            output.writeChar(keys[i]);
+            writeContainer(output, containers[i]);
+        }
+    }
+
+    private static void writeContainer(DataOutput output, Container container) throws IOException {
+        char[] runs = runsOf(container);
+        // An array container is never larger than a bitmap, and a bitmap container never smaller.
+        int plainBytes = container instanceof ArrayContainer ? 2 * container.cardinality() : 8 * BITMAP_WORDS;
+        if (2 * runs.length < plainBytes) {
+            output.writeByte(RUNS);
+            output.writeChar(runs.length / 2 - 1);
+            for (char value : runs) {
+                output.writeChar(value);
+            }
+        } else if (container instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) container;
+            output.writeByte(ARRAY);
+            output.writeChar(array.cardinality - 1);
+            for (int i = 0; i < array.cardinality; i++) {
+                output.writeChar(array.values[i]);
+            }
+        } else {
+            output.writeByte(BITMAP);
+            for (long word : ((BitmapContainer) container).words) {
+                output.writeLong(word);
+            }
+        }
+    }
+
+    // Pairs of (start, length - 1) for each run of consecutive values.
+    private static char[] runsOf(Container container) {
+        char[][] runs = {new char[8]};
+        int[] count = {0};
+        int[] previous = {-2};
+        container.forEach(0, value -> {
+            if (value == previous[0] + 1) {
+                runs[0][count[0] - 1]++;
+            } else {
+                if (count[0] + 2 > runs[0].length) {
+                    runs[0] = Arrays.copyOf(runs[0], runs[0].length * 2);
+                }
+                runs[0][count[0]++] = (char) value;
+                runs[0][count[0]++] = 0;
+            }
+            previous[0] = value;
+        });
+        return Arrays.copyOf(runs[0], count[0]);
+    }
+
+    static SolvedBitmap readFrom(DataInput input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a solved bitmap");
+        }
+        int count = input.readInt();
+        if (count < 0 || count > 0x10000) {
+            throw new IOException("Corrupt solved bitmap");
+        }
+        SolvedBitmap bitmap = new SolvedBitmap();
+        int previousKey = -1;
+        for (int i = 0; i < count; i++) {
+            char key = input.readChar();
+            if (key <= previousKey) {
+                throw new IOException("Corrupt solved bitmap");
+            }
+            previousKey = key;
+            Container container = readContainer(input);
+            if (container.cardinality() > 0) {
+                bitmap.insertContainer(bitmap.size, key, container);
+            }
+        }
+        return bitmap;
+    }
+
+    private static Container readContainer(DataInput input) throws IOException {
+        byte type = input.readByte();
+        if (type == ARRAY) {
+            int cardinality = input.readChar() + 1;
+            Container container = new ArrayContainer();
+            for (int i = 0; i < cardinality; i++) {
+                container = container.add(input.readChar());
+            }
+            return container;
+        }
+        if (type == BITMAP) {
+            BitmapContainer container = new BitmapContainer();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                container.words[i] = input.readLong();
+                container.cardinality += Long.bitCount(container.words[i]);
+            }
+            return container.cardinality <= ARRAY_MAX ? container.toArray() : container;
+        }
+        if (type == RUNS) {
+            int runs = input.readChar() + 1;
+            Container container = new ArrayContainer();
+            for (int i = 0; i < runs; i++) {
+                int start = input.readChar();
+                int end = start + input.readChar();
+                if (end > 0xFFFF) {
+                    throw new IOException("Corrupt solved bitmap");
+                }
+                for (int value = start; value <= end; value++) {
+                    container = container.add((char) value);
+                }
+            }
+            return container;
+        }
+        throw new IOException("Unknown container type " + type);
+    }
+
+    private int indexOf(int key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = keys[mid];
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private abstract static class Container {
+        abstract boolean contains(char value);
+
+        // Both return the container to keep, which may have changed representation.
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract int cardinality();
+
+        // Values below the given low 16 bits.
+        abstract int rank(int below);
+
+        // Returns 0x10000 if every value from low on is present.
+        abstract int nextAbsent(int low);
+
+        abstract void forEach(int base, IntConsumer action);
+
+        abstract BitmapContainer toBitmap();
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] values = new char[4];
+        int cardinality;
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(values.length * 2, ARRAY_MAX));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int rank(int below) {
+            if (below > 0xFFFF) {
+                return cardinality;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) below);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        @Override
+        int nextAbsent(int low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) low);
+            if (index < 0) {
+                return low;
+            }
+            int value = low;
+            while (index < cardinality && values[index] == value) {
+                index++;
+                value++;
+            }
+            return value;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.words[values[i] >>> 6] |= 1L << values[i];
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words = new long[BITMAP_WORDS];
+        int cardinality;
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            long before = words[value >>> 6];
+            words[value >>> 6] = before | (1L << value);
+            if (before != words[value >>> 6]) {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long before = words[value >>> 6];
+            words[value >>> 6] = before & ~(1L << value);
+            if (before != words[value >>> 6]) {
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int rank(int below) {
+            int count = 0;
+            int word = below >>> 6;
+            for (int i = 0; i < word && i < BITMAP_WORDS; i++) {
+                count += Long.bitCount(words[i]);
+            }
+            if (word < BITMAP_WORDS && (below & 63) != 0) {
+                count += Long.bitCount(words[word] & ((1L << below) - 1));
+            }
+            return count;
+        }
+
+        @Override
+        int nextAbsent(int low) {
+            int word = low >>> 6;
+            long absent = ~words[word] & (-1L << low);
+            while (absent == 0) {
+                if (++word == BITMAP_WORDS) {
+                    return 0x10000;
+                }
+                absent = ~words[word];
+            }
+            return word * 64 + Long.numberOfTrailingZeros(absent);
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | (i * 64 + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[Math.max(cardinality, 4)];
+            forEach(0, value -> array.values[array.cardinality++] = (char) value);
+            return array;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Statements compiled once against a long-lived database handle and reused, so the hot
+ * per-puzzle writes only bind new arguments instead of parsing their SQL again.
+ * <p>
+ * A statement keeps its bindings between calls, so one must not be used from two threads
+ * at once; owners hold their own lock from {@link #get(String)} until it has executed.
+ */
+final class StatementCache implements Closeable {
+
+    private final SQLiteDatabase database;
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+    StatementCache(SQLiteDatabase database) {
+        if (isNull(database)) {
+            throw new IllegalArgumentException("database must not be null");
+        }
+        this.database = database;
+    }
+
+    /**
+     * Returns the compiled statement for {@code sql} with its bindings cleared.
+     */
+    synchronized SQLiteStatement get(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (isNull(statement)) {
+            statement = database.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        statement.clearBindings();
+        return statement;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+}
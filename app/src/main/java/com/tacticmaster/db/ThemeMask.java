@@ -0,0 +1,103 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maps every filterable Lichess theme to one bit of a 64-bit mask, which is stored
+ * per puzzle in {@link PuzzleTable#COLUMN_THEME_MASK}.
+ * <p>
+ * Bit positions are persisted, so themes may only ever be appended to {@link #THEMES}.
+ * Themes outside the list (e.g. ones Lichess adds later) simply get no bit and cannot
+ * be filtered on until they are appended.
+ */
+public final class ThemeMask {
+
+    public static final long NONE = 0L;
+
+    static final List<String> THEMES = List.of(
+            "advancedPawn", "advantage", "anastasiaMate", "arabianMate", "attackingF2F7",
+            "attraction", "backRankMate", "bishopEndgame", "bodenMate", "capturingDefender",
+            "castling", "clearance", "crushing", "defensiveMove", "deflection",
+            "discoveredAttack", "doubleBishopMate", "doubleCheck", "dovetailMate", "enPassant",
+            "endgame", "exposedKing", "fork", "hangingPiece", "hookMate", "interference",
+            "intermezzo", "killBoxMate", "kingsideAttack", "knightEndgame", "long", "master",
+            "masterVsMaster", "mate", "mateIn1", "mateIn2", "mateIn3", "mateIn4", "mateIn5",
+            "middlegame", "oneMove", "opening", "pawnEndgame", "pin", "promotion", "queenEndgame",
+            "queenRookEndgame", "queensideAttack", "quietMove", "rookEndgame", "sacrifice",
+            "short", "skewer", "smotheredMate", "superGM", "trappedPiece", "underPromotion",
+            "veryLong", "vukovicMate", "xRayAttack", "zugzwang"
+    );
+
+    private static final Map<String, Long> BIT_BY_THEME = buildIndex();
+
+    private ThemeMask() {
+    }
+
+    private static Map<String, Long> buildIndex() {
+        // The sign bit stays free so every mask is a plain positive literal in SQL.
+        if (THEMES.size() > Long.SIZE - 1) {
+            throw new IllegalStateException("Too many themes for a 64-bit mask: " + THEMES.size());
+        }
+        Map<String, Long> map = new HashMap<>();
+        for (int i = 0; i < THEMES.size(); i++) {
+            map.put(THEMES.get(i), 1L << i);
+        }
+        return map;
+    }
+
+    public static long bitOf(String theme) {
+        Long bit = BIT_BY_THEME.get(theme);
+        return isNull(bit) ? NONE : bit;
+    }
+
+    public static long of(Collection<String> themes) {
+        long mask = NONE;
+        if (!isNull(themes)) {
+            for (String theme : themes) {
+                mask |= bitOf(theme);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Parses the space-separated {@link PuzzleTable#COLUMN_THEMES} value.
+     */
+    public static long parse(String themesColumn) {
+        if (isNull(themesColumn) || themesColumn.isEmpty()) {
+            return NONE;
+        }
+        return of(List.of(themesColumn.trim().split("\\s+")));
+    }
+
+    public static Set<String> themesOf(long mask) {
+        Set<String> themes = new TreeSet<>();
+        for (int i = 0; i < THEMES.size(); i++) {
+            if ((mask & (1L << i)) != 0) {
+                themes.add(THEMES.get(i));
+            }
+        }
+        return themes;
+    }
+
+    /**
+     * SQL expression that computes the mask from the Themes column in a single pass,
+     * used to backfill the column at install and upgrade time.
+     */
+    static String sqlExpression() {
+        String paddedThemes = "(' ' || " + PuzzleTable.COLUMN_THEMES + " || ' ')";
+        StringBuilder expression = new StringBuilder("(0");
+        for (int i = 0; i < THEMES.size(); i++) {
+            expression.append(" | (CASE WHEN instr(").append(paddedThemes).append(", ' ")
+                    .append(THEMES.get(i)).append(" ') > 0 THEN ").append(1L << i).append(" ELSE 0 END)");
+        }
+        return expression.append(')').toString();
+    }
+}
@@ -0,0 +1,138 @@
+package com.tacticmaster.db;
+
+import static java.util.Objects.isNull;
+
+import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Times every call into another {@link PuzzleRepository} and records it in
+ * {@link QueryTimings} under the method's name, failed calls included.
+ */
+public final class TimedPuzzleRepository implements PuzzleRepository {
+
+    private final PuzzleRepository delegate;
+    private final QueryTimings timings;
+    private final LongSupplier nanoClock;
+
+    public TimedPuzzleRepository(PuzzleRepository delegate, QueryTimings timings) {
+        this(delegate, timings, System::nanoTime);
+    }
+
+    TimedPuzzleRepository(PuzzleRepository delegate, QueryTimings timings, LongSupplier nanoClock) {
+        if (isNull(delegate) || isNull(timings)) {
+            throw new IllegalArgumentException("delegate and timings must not be null");
+        }
+        this.delegate = delegate;
+        this.timings = timings;
+        this.nanoClock = nanoClock;
+    }
+
+    private <T> T timed(String operation, Supplier<String> argumentShape, Supplier<T> call) {
+        long start = nanoClock.getAsLong();
+        try {
+            return call.get();
+        } finally {
+            timings.record(operation, nanoClock.getAsLong() - start, argumentShape);
+        }
+    }
+
+    private void timed(String operation, Supplier<String> argumentShape, Runnable call) {
+        timed(operation, argumentShape, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private static String noArguments() {
+        return "no arguments";
+    }
+
+    private static String puzzleIdShape(String puzzleId) {
+        return "id of " + (isNull(puzzleId) ? 0 : puzzleId.length()) + " chars";
+    }
+
+    @Override
+    public List<Puzzle> getPuzzlesWithinRange(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask) {
+        return timed("getPuzzlesWithinRange",
+                () -> "band of " + (highestRating - lowestRating + 1) + " ratings, " + excludedPuzzleIds.size() +
+                        " excluded ids, " + Long.bitCount(themeMask) + " themes",
+                () -> delegate.getPuzzlesWithinRange(lowestRating, highestRating, excludedPuzzleIds, themeMask));
+    }
+
+    @Override
+    public Puzzle getPuzzleById(String puzzleId) throws NoSuchElementException {
+        return timed("getPuzzleById", () -> puzzleIdShape(puzzleId), () -> delegate.getPuzzleById(puzzleId));
+    }
+
+    @Override
+    public Set<String> getPuzzleThemes() {
+        return timed("getPuzzleThemes", TimedPuzzleRepository::noArguments, delegate::getPuzzleThemes);
+    }
+
+    @Override
+    public PuzzleIdIndex getPuzzleIdIndex() {
+        return timed("getPuzzleIdIndex", TimedPuzzleRepository::noArguments, delegate::getPuzzleIdIndex);
+    }
+
+    @Override
+    public int getAllPuzzleCount() {
+        return timed("getAllPuzzleCount", TimedPuzzleRepository::noArguments, delegate::getAllPuzzleCount);
+    }
+
+    @Override
+    public int getSolvedPuzzleCount() {
+        return timed("getSolvedPuzzleCount", TimedPuzzleRepository::noArguments, delegate::getSolvedPuzzleCount);
+    }
+
+    @Override
+    public RatingHistogram getRatingHistogram() {
+        return timed("getRatingHistogram", TimedPuzzleRepository::noArguments, delegate::getRatingHistogram);
+    }
+
+    @Override
+    public boolean wasNotSolved(String puzzleId) {
+        return timed("wasNotSolved", () -> puzzleIdShape(puzzleId), () -> delegate.wasNotSolved(puzzleId));
+    }
+
+    @Override
+    public void setSolved(String puzzleId) {
+        timed("setSolved", () -> puzzleIdShape(puzzleId), () -> delegate.setSolved(puzzleId));
+    }
+
+    @Override
+    public void recordPuzzleAttempt(PuzzleAttempt attempt) {
+        timed("recordPuzzleAttempt", () -> puzzleIdShape(attempt.puzzleId()), () -> delegate.recordPuzzleAttempt(attempt));
+    }
+
+    @Override
+    public String pollDueReview(long themeMask) {
+        return timed("pollDueReview", () -> Long.bitCount(themeMask) + " themes", () -> delegate.pollDueReview(themeMask));
+    }
+
+    @Override
+    public void rememberPuzzle(Puzzle puzzle) {
+        timed("rememberPuzzle", () -> puzzleIdShape(puzzle.puzzleId()), () -> delegate.rememberPuzzle(puzzle));
+    }
+
+    @Override
+    public void flushProgress() {
+        timed("flushProgress", TimedPuzzleRepository::noArguments, delegate::flushProgress);
+    }
+
+    @Override
+    public void reloadPack() {
+        timed("reloadPack", TimedPuzzleRepository::noArguments, delegate::reloadPack);
+    }
+
+    @Override
+    public void close() {
+        timed("close", TimedPuzzleRepository::noArguments, delegate::close);
+    }
+}
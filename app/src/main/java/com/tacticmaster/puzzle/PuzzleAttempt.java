@@ -0,0 +1,18 @@
+package com.tacticmaster.puzzle;
+
+/**
+ * One finished try at a puzzle, solved or not. {@code attemptedAt} is wall-clock epoch
+ * millis; {@code themes} is the puzzle's space-separated theme list.
+ */
+public record PuzzleAttempt(
+        String puzzleId,
+        String themes,
+        int puzzleRating,
+        long attemptedAt,
+        long solveTimeMillis,
+        int hintsUsed,
+        boolean solved,
+        int ratingBefore,
+        int ratingAfter
+) {
+}
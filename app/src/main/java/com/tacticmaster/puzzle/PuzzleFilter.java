@@ -1,31 +1,28 @@
 package com.tacticmaster.puzzle;
 
+import static com.tacticmaster.puzzle.ThemeGroups.ATTACKING_STRATEGIES;
+import static com.tacticmaster.puzzle.ThemeGroups.ENDGAME_TECHNIQUES;
+import static com.tacticmaster.puzzle.ThemeGroups.GAME_PHASES;
+import static com.tacticmaster.puzzle.ThemeGroups.MATE_IN_X_MOVES;
+import static com.tacticmaster.puzzle.ThemeGroups.MATE_PATTERNS;
+import static com.tacticmaster.puzzle.ThemeGroups.PAWN_PLAY;
+import static com.tacticmaster.puzzle.ThemeGroups.PIECE_EXPLOITATION;
+import static com.tacticmaster.puzzle.ThemeGroups.POSITIONAL_PLAY;
+import static com.tacticmaster.puzzle.ThemeGroups.SHORT_AND_LONG;
+import static com.tacticmaster.puzzle.ThemeGroups.TACTICAL_MOTIFS;
 import static java.util.Objects.isNull;
 
 import androidx.annotation.StringRes;
 
 import com.tacticmaster.R;
-import com.tacticmaster.db.DatabaseAccessor;
+import com.tacticmaster.db.PuzzleRepository;
 
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
 class PuzzleFilter {
 
-    public static final String MATE_PATTERNS = "Mate Patterns";
-    public static final String TACTICAL_MOTIFS = "Tactical Motifs";
-    public static final String ATTACKING_STRATEGIES = "Attacking Strategies";
-    public static final String ENDGAME_TECHNIQUES = "Endgame Techniques";
-    public static final String PAWN_PLAY = "Pawn Play";
-    public static final String POSITIONAL_PLAY = "Positional and Strategic Concepts";
-    public static final String GAME_PHASES = "Game Phase Specific";
-    public static final String MATE_IN_X_MOVES = "Mate in Fixed Moves";
-    public static final String SHORT_AND_LONG = "Puzzle Complexity and Skill Level";
-    public static final String PIECE_EXPLOITATION = "Piece Exploitation";
-
     private static final Map<String, Integer> LABEL_RES_BY_KEY = Map.ofEntries(
             Map.entry(MATE_PATTERNS, R.string.filter_category_mate_patterns),
             Map.entry(TACTICAL_MOTIFS, R.string.filter_category_tactical_motifs),
@@ -39,10 +36,10 @@ class PuzzleFilter {
             Map.entry(PIECE_EXPLOITATION, R.string.filter_category_piece_exploitation)
     );
 
-    private final DatabaseAccessor databaseAccessor;
+    private final PuzzleRepository puzzleRepository;
 
-    PuzzleFilter(DatabaseAccessor databaseAccessor) {
-        this.databaseAccessor = databaseAccessor;
+    PuzzleFilter(PuzzleRepository puzzleRepository) {
+        this.puzzleRepository = puzzleRepository;
     }
 
     @StringRes
@@ -54,55 +51,13 @@ class PuzzleFilter {
         return res;
     }
 
+    /**
+     * Theme groups with unsolved puzzles left. Not cached: solving the last puzzle of a
+     * theme removes it, and the repository answers from its histogram without a query.
+     */
     Map<String, Set<String>> getThemeGroups() {
-        var themesInDatabase = databaseAccessor.getPuzzleThemes();
-        Map<String, Set<String>> themeGroups = new TreeMap<>();
-
-        themeGroups.put(MATE_PATTERNS, new HashSet<>(Arrays.asList(
-                "anastasiaMate", "arabianMate", "backRankMate", "bodenMate",
-                "doubleBishopMate", "dovetailMate", "hookMate",
-                "killBoxMate", "smotheredMate", "vukovicMate", "mate"
-        )));
-
-        themeGroups.put(TACTICAL_MOTIFS, new HashSet<>(Arrays.asList(
-                "attraction", "capturingDefender", "clearance", "deflection",
-                "discoveredAttack", "doubleCheck", "fork", "interference",
-                "intermezzo", "pin", "skewer", "xRayAttack"
-        )));
-
-        themeGroups.put(ATTACKING_STRATEGIES, new HashSet<>(Arrays.asList(
-                "attackingF2F7", "kingsideAttack", "queensideAttack", "exposedKing"
-        )));
-
-        themeGroups.put(ENDGAME_TECHNIQUES, new HashSet<>(Arrays.asList(
-                "bishopEndgame", "knightEndgame", "pawnEndgame", "queenEndgame",
-                "queenRookEndgame", "rookEndgame", "zugzwang", "endgame"
-        )));
-
-        themeGroups.put(PAWN_PLAY, new HashSet<>(Arrays.asList(
-                "advancedPawn", "enPassant", "promotion", "underPromotion"
-        )));
-
-        themeGroups.put(POSITIONAL_PLAY, new HashSet<>(Arrays.asList(
-                "advantage", "defensiveMove", "quietMove", "sacrifice"
-        )));
-
-        themeGroups.put(GAME_PHASES, new HashSet<>(Arrays.asList(
-                "opening", "middlegame", "castling"
-        )));
-
-        themeGroups.put(MATE_IN_X_MOVES, new HashSet<>(Arrays.asList(
-                "mateIn1", "mateIn2", "mateIn3", "mateIn4", "mateIn5", "oneMove"
-        )));
-
-        themeGroups.put(SHORT_AND_LONG, new HashSet<>(Arrays.asList(
-                "short", "long", "veryLong", "master", "masterVsMaster", "superGM", "crushing"
-        )));
-
-        themeGroups.put(PIECE_EXPLOITATION, new HashSet<>(Arrays.asList(
-                "hangingPiece", "trappedPiece"
-        )));
-
+        var themesInDatabase = puzzleRepository.getPuzzleThemes();
+        Map<String, Set<String>> themeGroups = ThemeGroups.definitions();
         Map<String, Set<String>> themeGroupsCopy = new TreeMap<>();
 
         for (Map.Entry<String, Set<String>> entry : themeGroups.entrySet()) {
@@ -3,6 +3,8 @@ package com.tacticmaster.puzzle;
 import static java.util.Locale.ENGLISH;
 import static java.util.Objects.isNull;
 
+import com.tacticmaster.board.Chessboard;
+
 import java.util.Objects;
 
 public class PuzzleGame implements Comparable<PuzzleGame> {
@@ -11,27 +13,43 @@ public class PuzzleGame implements Comparable<PuzzleGame> {
     private final String fen;
     private final String[] moves;
     private final int rating;
+    private final String themes;
     private boolean solved;
 
     private int currentMoveIndex;
+    private int hintsUsed;
+    // Starting position built ahead of time by the prefetcher; handed out once.
+    private volatile Chessboard preparedBoard;
 
     public PuzzleGame(
             String puzzleId,
             String fen,
             String moves,
             int rating,
+            String themes,
             boolean solved
     ) {
         this.puzzleId = puzzleId;
         this.fen = fen;
         this.moves = moves.trim().isEmpty() ? new String[0] : moves.split(" ");
         this.rating = rating;
+        this.themes = isNull(themes) ? "" : themes;
         this.currentMoveIndex = 0;
         this.solved = solved;
     }
 
+    public PuzzleGame(
+            String puzzleId,
+            String fen,
+            String moves,
+            int rating,
+            boolean solved
+    ) {
+        this(puzzleId, fen, moves, rating, "", solved);
+    }
+
     public PuzzleGame(Puzzle puzzleRecord) {
-        this(puzzleRecord.puzzleId(), puzzleRecord.fen(), puzzleRecord.moves(), puzzleRecord.rating(), puzzleRecord.solved());
+        this(puzzleRecord.puzzleId(), puzzleRecord.fen(), puzzleRecord.moves(), puzzleRecord.rating(), puzzleRecord.themes(), puzzleRecord.solved());
     }
 
     public PuzzleGame(String puzzleId,
@@ -41,6 +59,13 @@ public class PuzzleGame implements Comparable<PuzzleGame> {
         this(puzzleId, fen, moves, rating, false);
     }
 
+    /**
+     * The puzzle this game was started from, with its current solved flag.
+     */
+    public Puzzle toPuzzle() {
+        return new Puzzle(puzzleId, fen, String.join(" ", moves), rating, themes, solved);
+    }
+
     public String fen() {
         return this.fen;
     }
@@ -65,6 +90,23 @@ public class PuzzleGame implements Comparable<PuzzleGame> {
         return move;
     }
 
+    /**
+     * Parses the starting position now, so the next {@link #takeBoard()} costs nothing.
+     * Safe to call from a background thread.
+     */
+    void prepareBoard() {
+        preparedBoard = new Chessboard(fen);
+    }
+
+    /**
+     * Returns a fresh board at the starting position, reusing the prepared one if any.
+     */
+    public Chessboard takeBoard() {
+        Chessboard board = preparedBoard;
+        preparedBoard = null;
+        return isNull(board) ? new Chessboard(fen) : board;
+    }
+
     public String getPuzzleId() {
         return puzzleId;
     }
@@ -73,6 +115,10 @@ public class PuzzleGame implements Comparable<PuzzleGame> {
         return this.rating;
     }
 
+    public String themes() {
+        return this.themes;
+    }
+
     public boolean solved() {
         return this.solved;
     }
@@ -83,6 +129,15 @@ public class PuzzleGame implements Comparable<PuzzleGame> {
 
     public void reset() {
         this.currentMoveIndex = 0;
+        this.hintsUsed = 0;
+    }
+
+    public void hintUsed() {
+        this.hintsUsed++;
+    }
+
+    public int hintsUsed() {
+        return this.hintsUsed;
     }
 
     public boolean isSolutionFound() {
@@ -1,9 +1,10 @@
 package com.tacticmaster.puzzle;
 
-
 import static java.util.Objects.isNull;
 
-import com.tacticmaster.db.DatabaseAccessor;
+import com.tacticmaster.db.PuzzleRepository;
+import com.tacticmaster.db.RatingHistogram;
+import com.tacticmaster.db.ThemeMask;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -11,28 +12,68 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Buffer of puzzles for the current rating band and theme selection.
+ * <p>
+ * Navigation may hit the database, so callers run it on the
+ * {@link com.tacticmaster.db.DatabaseExecutor} writer. Queries run without holding the
+ * lock, so the UI thread can still read the current puzzle while a batch is loading; a
+ * batch fetched for criteria that changed in the meantime is dropped and fetched again.
+ * With a {@link PuzzlePrefetcher}, the next batch is usually fetched in the background
+ * before the buffer runs out.
+ * <p>
+ * Failed puzzles come back through the review queue: when one is due, it is put right
+ * after the current puzzle, at most once every {@link #REVIEW_SPACING} puzzles. Reviews
+ * follow the theme filter, which the queue applies, but not the rating band, since a
+ * failed puzzle is worth repeating at its own rating. A review that cannot be shown yet is
+ * held, not dropped.
+ */
 public class PuzzleManager implements PuzzleThemesDialogHelper.PuzzleThemesListener {
 
-    private final DatabaseAccessor databaseAccessor;
-    private final Set<String> puzzleThemes = new TreeSet<>();
+    // Start prefetching once this few puzzles are left ahead of the current one.
+    static final int PREFETCH_THRESHOLD = 2;
+    // At most one review among this many puzzles, so reviews never crowd out new ones.
+    static final int REVIEW_SPACING = 3;
+    // Reviews held at most; with this many held, the queue is not polled.
+    static final int MAX_HELD_REVIEWS = 4;
+    // Bands around the rating grow by this much on each side until one has candidates.
+    static final int BAND_STEP = 50;
+    // A band is wide enough once the histogram counts a full batch of candidates in it.
+    static final int BAND_CANDIDATES = 5;
+
+    private final PuzzleRepository puzzleRepository;
+    private final PuzzlePrefetcher prefetcher;
     private final Map<String, PuzzleGame> puzzles = new LinkedHashMap<>();
+    // Mirrors the keys of puzzles so the sampler can check them without taking the lock.
+    private final Set<String> bufferedIds = ConcurrentHashMap.newKeySet();
     private final Object lock = new Object();
+    // Reviews taken off the queue but not shown yet, because they were on the board when
+    // they came due or the theme filter changed since.
+    private final List<HeldReview> heldReviews = new ArrayList<>();
     private int currentIndex = -1;
     private int rating;
+    private long themeMask = ThemeMask.NONE;
+    private int generation;
+    // New puzzles moved to since the last review.
+    private int sinceReview;
+
+    public PuzzleManager(PuzzleRepository puzzleRepository, int initialRating) {
+        this(puzzleRepository, initialRating, null);
+    }
 
-    public PuzzleManager(DatabaseAccessor databaseAccessor, int initialRating) {
-        this.databaseAccessor = databaseAccessor;
+    public PuzzleManager(PuzzleRepository puzzleRepository, int initialRating, PuzzlePrefetcher prefetcher) {
+        this.puzzleRepository = puzzleRepository;
         this.rating = initialRating;
+        this.prefetcher = prefetcher;
     }
 
     public void updateRating(int rating, boolean clearPuzzles) {
         synchronized (lock) {
             this.rating = rating;
             if (clearPuzzles) {
-                puzzles.clear();
-                currentIndex = -1;
+                clear();
             }
         }
     }
@@ -52,69 +93,251 @@ public class PuzzleManager implements PuzzleThemesDialogHelper.PuzzleThemesListe
         }
     }
 
-    public void moveToNextPuzzle() {
+    public boolean hasCurrentPuzzle() {
         synchronized (lock) {
-            moveToNextPuzzleInternal();
+            return currentIndex >= 0 && currentIndex < puzzles.size();
         }
     }
 
-    @Override
-    public void onThemesUpdated(Set<String> themes) {
+    /**
+     * Moves to the next buffered puzzle, fetching a batch first if none is left. Throws
+     * {@link NoSuchElementException} if no puzzle that is not buffered yet can be found.
+     */
+    public void moveToNextPuzzle() {
+        if (insertDueReview()) {
+            return;
+        }
+        boolean refetched = false;
+        while (true) {
+            int requestedGeneration;
+            int requestedRating;
+            long requestedThemeMask;
+            int[] requestedBufferedRatings;
+            synchronized (lock) {
+                if (currentIndex + 1 >= puzzles.size() && !isNull(prefetcher)) {
+                    addGames(prefetcher.drain());
+                }
+                if (currentIndex + 1 < puzzles.size()) {
+                    currentIndex++;
+                    sinceReview++;
+                    prefetchIfRunningLow();
+                    return;
+                }
+                requestedGeneration = generation;
+                requestedRating = rating;
+                requestedThemeMask = themeMask;
+                requestedBufferedRatings = bufferedRatings();
+            }
+            List<Puzzle> nextPuzzles = fetchNextPuzzles(requestedRating, requestedThemeMask, requestedBufferedRatings);
+            synchronized (lock) {
+                if (requestedGeneration == generation) {
+                    int buffered = puzzles.size();
+                    addAll(nextPuzzles);
+                    if (puzzles.size() > buffered) {
+                        currentIndex++;
+                        sinceReview++;
+                        prefetchIfRunningLow();
+                        return;
+                    }
+                    // Everything fetched was buffered in the meantime, e.g. by a prefetch. The
+                    // next fetch excludes it; if that one adds nothing either, nothing is left.
+                    if (refetched) {
+                        throw new NoSuchElementException("No more unsolved puzzles available");
+                    }
+                    refetched = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves to a review inserted after the current puzzle, if a review slot is open and a
+     * held or due review can be shown. The queue is polled at most once per call and only
+     * with a slot open; the due check is a poll of the review heap, so apart from paging it
+     * costs no query.
+     */
+    private boolean insertDueReview() {
+        long requestedThemeMask;
+        synchronized (lock) {
+            if (sinceReview < REVIEW_SPACING - 1) {
+                return false;
+            }
+            for (int i = 0; i < heldReviews.size(); i++) {
+                if (canShowReview(heldReviews.get(i))) {
+                    showReview(heldReviews.remove(i).puzzle());
+                    return true;
+                }
+            }
+            if (heldReviews.size() >= MAX_HELD_REVIEWS) {
+                // Due reviews wait in the queue rather than piling up here.
+                return false;
+            }
+            requestedThemeMask = themeMask;
+        }
+        String puzzleId = puzzleRepository.pollDueReview(requestedThemeMask);
+        if (isNull(puzzleId)) {
+            return false;
+        }
+        HeldReview review;
+        try {
+            Puzzle puzzle = puzzleRepository.getPuzzleById(puzzleId);
+            review = new HeldReview(puzzle, ThemeMask.parse(puzzle.themes()));
+        } catch (NoSuchElementException e) {
+            return false;
+        }
         synchronized (lock) {
-            puzzleThemes.clear();
-            if (!isNull(themes) && !themes.isEmpty()) {
-                puzzleThemes.addAll(themes);
+            if (!canShowReview(review)) {
+                heldReviews.add(review);
+                return false;
             }
-            puzzles.clear();
-            currentIndex = -1;
-            moveToNextPuzzleInternal();
+            showReview(review.puzzle());
+            return true;
         }
     }
 
-    private void moveToNextPuzzleInternal() {
-        currentIndex++;
-        if (currentIndex >= puzzles.size()) {
-            try {
-                loadNextPuzzles();
-            } catch (NoSuchElementException e) {
-                currentIndex--;
-                throw e;
+    private boolean canShowReview(HeldReview review) {
+        if (hasCurrentPuzzle() && getPuzzleIdByIndex(currentIndex).equals(review.puzzle().puzzleId())) {
+            return false;
+        }
+        return themeMask == ThemeMask.NONE || (review.themeMask() & themeMask) != 0;
+    }
+
+    /**
+     * Puts the review right after the current puzzle and moves to it. A copy already in
+     * the buffer, played before or still ahead, is moved rather than shown twice.
+     */
+    private void showReview(Puzzle review) {
+        List<PuzzleGame> games = new ArrayList<>(puzzles.values());
+        int next = currentIndex + 1;
+        int buffered = getPuzzleIndexById(review.puzzleId());
+        if (buffered >= 0) {
+            games.remove(buffered);
+            if (buffered < next) {
+                next--;
             }
         }
+        games.add(next, new PuzzleGame(review));
+        // The buffer keeps insertion order, so it is rebuilt around the review.
+        puzzles.clear();
+        addGames(games);
+        currentIndex = next;
+        sinceReview = 0;
+    }
+
+    /**
+     * Switches the theme filter and drops the buffer. The next {@link #moveToNextPuzzle()}
+     * fetches puzzles matching the new selection.
+     */
+    @Override
+    public void onThemesUpdated(Set<String> themes) {
+        synchronized (lock) {
+            themeMask = ThemeMask.of(themes);
+            clear();
+        }
     }
 
     public void moveToPreviousPuzzle() {
         synchronized (lock) {
-            if (puzzles.isEmpty()) {
-                loadNextPuzzles();
+            if (!puzzles.isEmpty()) {
+                currentIndex = (currentIndex - 1 + puzzles.size()) % puzzles.size();
+                return;
             }
+        }
+        moveToNextPuzzle();
+        synchronized (lock) {
             currentIndex = (currentIndex - 1 + puzzles.size()) % puzzles.size();
         }
     }
 
     public void loadPuzzleById(String puzzleId) {
+        synchronized (lock) {
+            if (puzzles.containsKey(puzzleId)) {
+                currentIndex = getPuzzleIndexById(puzzleId);
+                return;
+            }
+        }
+        Puzzle nextPuzzle = puzzleRepository.getPuzzleById(puzzleId);
         synchronized (lock) {
             if (!puzzles.containsKey(puzzleId)) {
-                Puzzle nextPuzzle = databaseAccessor.getPuzzleById(puzzleId);
-                puzzles.put(nextPuzzle.puzzleId(), new PuzzleGame(nextPuzzle));
+                addAll(List.of(nextPuzzle));
             }
             currentIndex = getPuzzleIndexById(puzzleId);
         }
     }
 
-    private void loadNextPuzzles() throws NoSuchElementException {
-        var lowestRating = rating - 50;
-        var highestRating = rating + 50;
-        List<Puzzle> nextPuzzles = new ArrayList<>();
-        while (nextPuzzles.isEmpty() && lowestRating > 0) {
-            nextPuzzles = databaseAccessor.getPuzzlesWithinRange(lowestRating, highestRating, puzzles.keySet(), puzzleThemes);
-            lowestRating -= 50;
-            highestRating += 50;
+    /**
+     * Queries the narrowest band around the rating, in steps of {@link #BAND_STEP}, that the
+     * {@link RatingHistogram} counts {@link #BAND_CANDIDATES} unsolved puzzles in once the
+     * buffered ones are taken off; without a histogram, the first step. The histogram counts
+     * an upper bound, so a band that comes back empty is followed by the next wider one it
+     * reports candidates in, until the whole rating range was queried. An exhausted
+     * selection fails without any query.
+     */
+    private List<Puzzle> fetchNextPuzzles(int rating, long themeMask, int[] bufferedRatings) throws NoSuchElementException {
+        RatingHistogram histogram = puzzleRepository.getRatingHistogram();
+        int halfWidth = BAND_STEP;
+        while (true) {
+            if (!isNull(histogram)) {
+                halfWidth = histogram.narrowestHalfWidth(rating, themeMask, halfWidth, BAND_STEP, BAND_CANDIDATES, bufferedRatings);
+                if (halfWidth < 0) {
+                    throw new NoSuchElementException("No more unsolved puzzles available");
+                }
+            }
+            int lowestRating = Math.max(rating - halfWidth, 0);
+            int highestRating = rating + halfWidth;
+            List<Puzzle> nextPuzzles = puzzleRepository.getPuzzlesWithinRange(lowestRating, highestRating, bufferedIds, themeMask);
+            if (!nextPuzzles.isEmpty()) {
+                return nextPuzzles;
+            }
+            if (lowestRating == 0 && highestRating >= RatingHistogram.MAX_RATING) {
+                throw new NoSuchElementException("No more unsolved puzzles available");
+            }
+            halfWidth += BAND_STEP;
+        }
+    }
+
+    /**
+     * Ratings of the buffered puzzles not solved yet, which the histogram still counts but
+     * the sampler skips.
+     */
+    private int[] bufferedRatings() {
+        return puzzles.values().stream().filter(game -> !game.solved()).mapToInt(PuzzleGame::rating).toArray();
+    }
+
+    private void prefetchIfRunningLow() {
+        if (isNull(prefetcher) || puzzles.size() - currentIndex - 1 > PREFETCH_THRESHOLD) {
+            return;
         }
-        if (nextPuzzles.isEmpty()) {
-            throw new NoSuchElementException("No more unsolved puzzles available");
+        int requestedRating = rating;
+        long requestedThemeMask = themeMask;
+        int[] requestedBufferedRatings = bufferedRatings();
+        prefetcher.request(() -> fetchNextPuzzles(requestedRating, requestedThemeMask, requestedBufferedRatings));
+    }
+
+    private void addAll(List<Puzzle> nextPuzzles) {
+        List<PuzzleGame> games = new ArrayList<>();
+        nextPuzzles.forEach(puzzle -> games.add(new PuzzleGame(puzzle)));
+        addGames(games);
+    }
+
+    private void addGames(List<PuzzleGame> games) {
+        // A prefetch and a foreground fetch may overlap and return the same puzzle.
+        games.forEach(game -> {
+            if (!puzzles.containsKey(game.getPuzzleId())) {
+                puzzles.put(game.getPuzzleId(), game);
+                bufferedIds.add(game.getPuzzleId());
+            }
+        });
+    }
+
+    private void clear() {
+        puzzles.clear();
+        bufferedIds.clear();
+        currentIndex = -1;
+        generation++;
+        if (!isNull(prefetcher)) {
+            prefetcher.invalidate();
         }
-        nextPuzzles.forEach(puzzle -> puzzles.put(puzzle.puzzleId(), new PuzzleGame(puzzle)));
     }
 
     private String getPuzzleIdByIndex(int index) {
@@ -138,4 +361,10 @@ public class PuzzleManager implements PuzzleThemesDialogHelper.PuzzleThemesListe
             return -1;
         }
     }
+
+    /**
+     * A review waiting for a slot, with its theme mask parsed once.
+     */
+    private record HeldReview(Puzzle puzzle, long themeMask) {
+    }
 }
@@ -0,0 +1,90 @@
+package com.tacticmaster.puzzle;
+
+import static java.util.Objects.isNull;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Fetches the next batch of puzzles in the background while the user is still on the
+ * current one, parsing each starting position up front, so moving on only has to render.
+ * <p>
+ * At most one batch is queued or in flight at a time. {@link #invalidate()} drops the
+ * queue and discards any batch still in flight, which {@link PuzzleManager} calls
+ * whenever the rating band or theme selection changes.
+ */
+public class PuzzlePrefetcher {
+
+    private static final String TAG = "PuzzlePrefetcher";
+
+    private final Executor executor;
+    private final ArrayDeque<PuzzleGame> ready = new ArrayDeque<>();
+    private int generation;
+    private boolean inFlight;
+
+    public PuzzlePrefetcher(Executor executor) {
+        if (isNull(executor)) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Starts fetching a batch unless one is already queued or in flight.
+     */
+    void request(Callable<List<Puzzle>> fetch) {
+        int requestedGeneration;
+        synchronized (this) {
+            if (inFlight || !ready.isEmpty()) {
+                return;
+            }
+            inFlight = true;
+            requestedGeneration = generation;
+        }
+        executor.execute(() -> {
+            List<PuzzleGame> games = new ArrayList<>();
+            try {
+                for (Puzzle puzzle : fetch.call()) {
+                    games.add(prepare(puzzle));
+                }
+            } catch (Exception e) {
+                // The foreground path reports an exhausted band; nothing to queue here.
+                Log.d(TAG, "Prefetch returned no puzzles", e);
+            }
+            synchronized (this) {
+                if (requestedGeneration == generation) {
+                    inFlight = false;
+                    ready.addAll(games);
+                }
+            }
+        });
+    }
+
+    private static PuzzleGame prepare(Puzzle puzzle) {
+        PuzzleGame game = new PuzzleGame(puzzle);
+        try {
+            game.prepareBoard();
+        } catch (RuntimeException e) {
+            // Leave it to the render path, which reports broken positions as before.
+            Log.w(TAG, "Could not prepare board for puzzle " + puzzle.puzzleId(), e);
+        }
+        return game;
+    }
+
+    synchronized List<PuzzleGame> drain() {
+        List<PuzzleGame> games = new ArrayList<>(ready);
+        ready.clear();
+        return games;
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        ready.clear();
+        inFlight = false;
+    }
+}
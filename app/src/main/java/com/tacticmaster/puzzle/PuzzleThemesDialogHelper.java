@@ -3,6 +3,7 @@ package com.tacticmaster.puzzle;
 import static java.util.Objects.isNull;
 
 import android.content.Context;
+import android.util.Log;
 import android.widget.ArrayAdapter;
 
 import androidx.appcompat.app.AlertDialog;
@@ -11,15 +12,20 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.textfield.MaterialAutoCompleteTextView;
 import com.tacticmaster.R;
-import com.tacticmaster.db.DatabaseAccessor;
+import com.tacticmaster.db.DatabaseExecutor;
+import com.tacticmaster.db.PuzzleRepository;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class PuzzleThemesDialogHelper {
 
+    private static final String TAG = "PuzzleThemesDialogHelper";
+
+    private final DatabaseExecutor databaseExecutor;
     private final PuzzleFilter puzzleFilter;
     private final PuzzleThemesListener puzzleThemesListener;
     private final Set<String> selectedThemes = new HashSet<>();
@@ -28,10 +34,10 @@ public class PuzzleThemesDialogHelper {
         void onThemesUpdated(Set<String> themes);
     }
 
-    public PuzzleThemesDialogHelper(DatabaseAccessor databaseAccessor, PuzzleThemesListener puzzleThemesListener) {
+    public PuzzleThemesDialogHelper(PuzzleRepository puzzleRepository, DatabaseExecutor databaseExecutor, PuzzleThemesListener puzzleThemesListener) {
+        this.databaseExecutor = databaseExecutor;
         this.puzzleThemesListener = puzzleThemesListener;
-        this.puzzleFilter = new PuzzleFilter(databaseAccessor);
-
+        this.puzzleFilter = new PuzzleFilter(puzzleRepository);
     }
 
     private void setDialogButtonColors(Context context, AlertDialog dialog) {
@@ -41,8 +47,19 @@ public class PuzzleThemesDialogHelper {
         dialog.getButton(AlertDialog.BUTTON_NEGATIVE).setTextColor(color);
     }
 
+    /**
+     * Wires the filter button. Each click reads the theme groups on the read pool and opens the
+     * dialog once they are known, so rendering a puzzle reads nothing and the dialog only lists
+     * themes that still have unsolved puzzles.
+     */
     public void prepareDialogContent(Context context, MaterialButton filterButton, MaterialAutoCompleteTextView filterDropdown, Runnable callback) {
-        List<String> categoryKeys = new ArrayList<>(puzzleFilter.getThemeGroups().keySet());
+        filterButton.setOnClickListener(v -> databaseExecutor.read(puzzleFilter::getThemeGroups,
+                themeGroups -> showDialog(context, filterButton, filterDropdown, callback, themeGroups),
+                e -> Log.w(TAG, "Could not load puzzle themes", e)));
+    }
+
+    private void showDialog(Context context, MaterialButton filterButton, MaterialAutoCompleteTextView filterDropdown, Runnable callback, Map<String, Set<String>> themeGroups) {
+        List<String> categoryKeys = new ArrayList<>(themeGroups.keySet());
         String[] displayLabels = new String[categoryKeys.size()];
         for (int i = 0; i < categoryKeys.size(); i++) {
             displayLabels[i] = context.getString(PuzzleFilter.getCategoryLabelRes(categoryKeys.get(i)));
@@ -53,44 +70,42 @@ public class PuzzleThemesDialogHelper {
         filterDropdown.setAdapter(adapter);
         filterDropdown.setDropDownHeight(0);
 
-        filterButton.setOnClickListener(v -> {
-            boolean[] checkedItems = new boolean[categoryKeys.size()];
+        boolean[] checkedItems = new boolean[categoryKeys.size()];
 
-            for (int i = 0; i < categoryKeys.size(); i++) {
-                checkedItems[i] = selectedThemes.contains(categoryKeys.get(i));
-            }
+        for (int i = 0; i < categoryKeys.size(); i++) {
+            checkedItems[i] = selectedThemes.contains(categoryKeys.get(i));
+        }
 
-            var builder = new MaterialAlertDialogBuilder(context).setMultiChoiceItems(displayLabels, checkedItems, (dialog, which, checked) -> {
-                        String key = categoryKeys.get(which);
-                        if (checked) {
-                            selectedThemes.add(key);
-                        } else {
-                            selectedThemes.remove(key);
+        var builder = new MaterialAlertDialogBuilder(context).setMultiChoiceItems(displayLabels, checkedItems, (dialog, which, checked) -> {
+                    String key = categoryKeys.get(which);
+                    if (checked) {
+                        selectedThemes.add(key);
+                    } else {
+                        selectedThemes.remove(key);
+                    }
+                })
+                .setPositiveButton(R.string.dialog_done, (dialog, which) -> {
+                    Set<String> allThemesInGroup = new HashSet<>();
+                    selectedThemes.forEach(theme -> {
+                        var themeGroup = themeGroups.get(theme);
+                        if (!isNull(themeGroup)) {
+                            allThemesInGroup.addAll(themeGroup);
                         }
-                    })
-                    .setPositiveButton(R.string.dialog_done, (dialog, which) -> {
-                        Set<String> allThemesInGroup = new HashSet<>();
-                        selectedThemes.forEach(theme -> {
-                            var themeGroup = puzzleFilter.getThemeGroups().get(theme);
-                            if (!isNull(themeGroup)) {
-                                allThemesInGroup.addAll(themeGroup);
-                            }
-                        });
-
-                        puzzleThemesListener.onThemesUpdated(allThemesInGroup);
-                        callback.run();
-                    })
-                    .setNeutralButton(R.string.dialog_clear_all, (dialog, which) -> {
-                        selectedThemes.clear();
-                        filterButton.setText("");
-                        puzzleThemesListener.onThemesUpdated(selectedThemes);
-                        callback.run();
-                    })
-                    .setNegativeButton(R.string.dialog_cancel, null);
-
-            AlertDialog dialog = builder.create();
-            dialog.setOnShowListener(d -> setDialogButtonColors(context, dialog));
-            dialog.show();
-        });
+                    });
+
+                    puzzleThemesListener.onThemesUpdated(allThemesInGroup);
+                    callback.run();
+                })
+                .setNeutralButton(R.string.dialog_clear_all, (dialog, which) -> {
+                    selectedThemes.clear();
+                    filterButton.setText("");
+                    puzzleThemesListener.onThemesUpdated(selectedThemes);
+                    callback.run();
+                })
+                .setNegativeButton(R.string.dialog_cancel, null);
+
+        AlertDialog dialog = builder.create();
+        dialog.setOnShowListener(d -> setDialogButtonColors(context, dialog));
+        dialog.show();
     }
 }
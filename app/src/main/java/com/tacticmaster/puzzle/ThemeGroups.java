@@ -0,0 +1,96 @@
+package com.tacticmaster.puzzle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The theme categories offered in the filter and the Lichess themes each one groups.
+ * Each theme belongs to at most one category.
+ */
+final class ThemeGroups {
+
+    static final String MATE_PATTERNS = "Mate Patterns";
+    static final String TACTICAL_MOTIFS = "Tactical Motifs";
+    static final String ATTACKING_STRATEGIES = "Attacking Strategies";
+    static final String ENDGAME_TECHNIQUES = "Endgame Techniques";
+    static final String PAWN_PLAY = "Pawn Play";
+    static final String POSITIONAL_PLAY = "Positional and Strategic Concepts";
+    static final String GAME_PHASES = "Game Phase Specific";
+    static final String MATE_IN_X_MOVES = "Mate in Fixed Moves";
+    static final String SHORT_AND_LONG = "Puzzle Complexity and Skill Level";
+    static final String PIECE_EXPLOITATION = "Piece Exploitation";
+
+    private static final Map<String, String> CATEGORY_BY_THEME = new HashMap<>();
+
+    static {
+        definitions().forEach((category, themes) -> themes.forEach(theme -> CATEGORY_BY_THEME.put(theme, category)));
+    }
+
+    private ThemeGroups() {
+    }
+
+    /**
+     * A fresh, modifiable copy of every category and its themes, ordered by category.
+     */
+    static Map<String, Set<String>> definitions() {
+        Map<String, Set<String>> themeGroups = new TreeMap<>();
+
+        themeGroups.put(MATE_PATTERNS, new HashSet<>(Arrays.asList(
+                "anastasiaMate", "arabianMate", "backRankMate", "bodenMate",
+                "doubleBishopMate", "dovetailMate", "hookMate",
+                "killBoxMate", "smotheredMate", "vukovicMate", "mate"
+        )));
+
+        themeGroups.put(TACTICAL_MOTIFS, new HashSet<>(Arrays.asList(
+                "attraction", "capturingDefender", "clearance", "deflection",
+                "discoveredAttack", "doubleCheck", "fork", "interference",
+                "intermezzo", "pin", "skewer", "xRayAttack"
+        )));
+
+        themeGroups.put(ATTACKING_STRATEGIES, new HashSet<>(Arrays.asList(
+                "attackingF2F7", "kingsideAttack", "queensideAttack", "exposedKing"
+        )));
+
+        themeGroups.put(ENDGAME_TECHNIQUES, new HashSet<>(Arrays.asList(
+                "bishopEndgame", "knightEndgame", "pawnEndgame", "queenEndgame",
+                "queenRookEndgame", "rookEndgame", "zugzwang", "endgame"
+        )));
+
+        themeGroups.put(PAWN_PLAY, new HashSet<>(Arrays.asList(
+                "advancedPawn", "enPassant", "promotion", "underPromotion"
+        )));
+
+        themeGroups.put(POSITIONAL_PLAY, new HashSet<>(Arrays.asList(
+                "advantage", "defensiveMove", "quietMove", "sacrifice"
+        )));
+
+        themeGroups.put(GAME_PHASES, new HashSet<>(Arrays.asList(
+                "opening", "middlegame", "castling"
+        )));
+
+        themeGroups.put(MATE_IN_X_MOVES, new HashSet<>(Arrays.asList(
+                "mateIn1", "mateIn2", "mateIn3", "mateIn4", "mateIn5", "oneMove"
+        )));
+
+        themeGroups.put(SHORT_AND_LONG, new HashSet<>(Arrays.asList(
+                "short", "long", "veryLong", "master", "masterVsMaster", "superGM", "crushing"
+        )));
+
+        themeGroups.put(PIECE_EXPLOITATION, new HashSet<>(Arrays.asList(
+                "hangingPiece", "trappedPiece"
+        )));
+
+        return themeGroups;
+    }
+
+    /**
+     * The category a theme is grouped under, or null if it is in none.
+     */
+    static String categoryOf(String theme) {
+        return CATEGORY_BY_THEME.get(theme);
+    }
+}
@@ -0,0 +1,216 @@
+package com.tacticmaster.puzzle;
+
+import static java.util.Objects.isNull;
+
+import android.util.Log;
+
+import com.tacticmaster.rating.EloRatingCalculator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Success rate, solve time and an Elo-style rating per theme and per {@link ThemeGroups}
+ * category, kept in memory and updated from each finished attempt.
+ * <p>
+ * An attempt touches only the entries of its own themes and their categories, so recording
+ * costs O(themes per puzzle) and queries such as {@link #weakestThemes(int, int)} never look
+ * at the history. A theme's rating starts from the player's rating on its first attempt and
+ * moves like the player rating does, against the puzzle's rating. The snapshot is saved as a
+ * small binary file; reads may run on any thread while the writer records.
+ */
+public final class ThemePerformance {
+
+    private static final String TAG = "ThemePerformance";
+    private static final int MAGIC = 0x54485046;
+    private static final int FORMAT_VERSION = 1;
+
+    public record Score(int attempts, int solved, long solveTimeMillis, int rating) {
+
+        public double successRate() {
+            return attempts == 0 ? 0 : (double) solved / attempts;
+        }
+
+        public long averageSolveTimeMillis() {
+            return attempts == 0 ? 0 : solveTimeMillis / attempts;
+        }
+
+        Score plus(PuzzleAttempt attempt) {
+            double result = attempt.solved() ? 1.0 : 0.0;
+            return new Score(attempts + 1, solved + (attempt.solved() ? 1 : 0), solveTimeMillis + attempt.solveTimeMillis(),
+                    EloRatingCalculator.calculateNewRating(rating, attempt.puzzleRating(), result));
+        }
+    }
+
+    private static final Comparator<Map.Entry<String, Score>> WEAKEST_FIRST =
+            Comparator.<Map.Entry<String, Score>>comparingInt(entry -> entry.getValue().rating())
+                    .thenComparingDouble(entry -> entry.getValue().successRate())
+                    .thenComparing(Map.Entry::getKey);
+
+    private final Map<String, Score> themes = new ConcurrentHashMap<>();
+    private final Map<String, Score> categories = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public void record(PuzzleAttempt attempt) {
+        if (isNull(attempt.themes())) {
+            return;
+        }
+        Set<String> touchedCategories = new HashSet<>();
+        for (String theme : attempt.themes().split(" ")) {
+            if (theme.isEmpty()) {
+                continue;
+            }
+            update(themes, theme, attempt);
+            String category = ThemeGroups.categoryOf(theme);
+            if (!isNull(category) && touchedCategories.add(category)) {
+                update(categories, category, attempt);
+            }
+        }
+        dirty = true;
+    }
+
+    private static void update(Map<String, Score> scores, String key, PuzzleAttempt attempt) {
+        scores.compute(key, (ignored, score) ->
+                (isNull(score) ? new Score(0, 0, 0, attempt.ratingBefore()) : score).plus(attempt));
+    }
+
+    /**
+     * The score of a theme, or null if it has not been attempted.
+     */
+    public Score theme(String theme) {
+        return themes.get(theme);
+    }
+
+    /**
+     * The score of a {@link ThemeGroups} category, or null if none of its themes has been attempted.
+     */
+    public Score category(String category) {
+        return categories.get(category);
+    }
+
+    public Map<String, Score> themes() {
+        return Collections.unmodifiableMap(themes);
+    }
+
+    public Map<String, Score> categories() {
+        return Collections.unmodifiableMap(categories);
+    }
+
+    /**
+     * Up to {@code limit} themes with at least {@code minAttempts} attempts, lowest rating
+     * first, ties broken by success rate.
+     */
+    public List<String> weakestThemes(int limit, int minAttempts) {
+        return weakest(themes, limit, minAttempts);
+    }
+
+    public List<String> weakestCategories(int limit, int minAttempts) {
+        return weakest(categories, limit, minAttempts);
+    }
+
+    private static List<String> weakest(Map<String, Score> scores, int limit, int minAttempts) {
+        List<Map.Entry<String, Score>> candidates = new ArrayList<>(scores.size());
+        for (Map.Entry<String, Score> entry : scores.entrySet()) {
+            if (entry.getValue().attempts() >= minAttempts) {
+                candidates.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        candidates.sort(WEAKEST_FIRST);
+        List<String> weakest = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = 0; i < candidates.size() && i < limit; i++) {
+            weakest.add(candidates.get(i).getKey());
+        }
+        return weakest;
+    }
+
+    /**
+     * Whether anything was recorded since the snapshot was loaded or last saved.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to {@code file} and renames it over, so a
+     * crash leaves either the old or the new snapshot.
+     */
+    public void save(File file) throws IOException {
+        dirty = false;
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            writeTo(output);
+        }
+        if (!temporary.renameTo(file)) {
+            dirty = true;
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    void writeTo(DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        writeScores(output, themes);
+        writeScores(output, categories);
+    }
+
+    private static void writeScores(DataOutput output, Map<String, Score> scores) throws IOException {
+        Map<String, Score> copy = Map.copyOf(scores);
+        output.writeInt(copy.size());
+        for (Map.Entry<String, Score> entry : copy.entrySet()) {
+            Score score = entry.getValue();
+            output.writeUTF(entry.getKey());
+            output.writeInt(score.attempts());
+            output.writeInt(score.solved());
+            output.writeLong(score.solveTimeMillis());
+            output.writeInt(score.rating());
+        }
+    }
+
+    /**
+     * Loads a saved snapshot, or returns an empty one if the file is missing or unreadable.
+     */
+    public static ThemePerformance load(File file) {
+        ThemePerformance performance = new ThemePerformance();
+        if (!file.exists()) {
+            return performance;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            performance.readFrom(input);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable theme performance snapshot", e);
+            return new ThemePerformance();
+        }
+        return performance;
+    }
+
+    void readFrom(DataInput input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a theme performance snapshot");
+        }
+        readScores(input, themes);
+        readScores(input, categories);
+    }
+
+    private static void readScores(DataInput input, Map<String, Score> scores) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            scores.put(input.readUTF(), new Score(input.readInt(), input.readInt(), input.readLong(), input.readInt()));
+        }
+    }
+}
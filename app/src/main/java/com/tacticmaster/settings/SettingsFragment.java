@@ -9,7 +9,11 @@ import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.SeekBarPreference;
 
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.tacticmaster.R;
+import com.tacticmaster.db.QueryTimings;
+
+import java.util.List;
 
 /**
  * Settings UI. All persistence is delegated to {@link SettingsManager} via
@@ -19,6 +23,7 @@ import com.tacticmaster.R;
 public class SettingsFragment extends PreferenceFragmentCompat {
 
     private static final int PLAYER_RATING_STEP = 50;
+    private static final String QUERY_TIMINGS_KEY = "query_timings";
 
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
@@ -33,6 +38,28 @@ public class SettingsFragment extends PreferenceFragmentCompat {
                 SettingsManager.ANIMATION_SPEED_NORMAL, SettingsManager.ANIMATION_SPEED_SLOW, 0);
         configureSeekBar(SettingKey.PLAYER_RATING.key,
                 SettingsManager.MIN_PLAYER_RATING, SettingsManager.MAX_PLAYER_RATING, PLAYER_RATING_STEP);
+
+        Preference queryTimings = findPreference(QUERY_TIMINGS_KEY);
+        if (!isNull(queryTimings)) {
+            queryTimings.setOnPreferenceClickListener(preference -> {
+                showQueryTimings();
+                return true;
+            });
+        }
+    }
+
+    private void showQueryTimings() {
+        List<QueryTimings.Stats> stats = QueryTimings.getInstance().snapshot();
+        StringBuilder message = new StringBuilder();
+        for (QueryTimings.Stats operation : stats) {
+            message.append(getString(R.string.query_timings_line, operation.operation(), operation.calls(),
+                    operation.p50Millis(), operation.p95Millis(), operation.p99Millis(), operation.slowCalls())).append("\n\n");
+        }
+        new MaterialAlertDialogBuilder(requireContext())
+                .setTitle(R.string.query_timings_title)
+                .setMessage(stats.isEmpty() ? getString(R.string.query_timings_empty) : message.toString().trim())
+                .setPositiveButton(R.string.dialog_done, null)
+                .show();
     }
 
     private void configureSeekBar(String key, int min, int max, int increment) {
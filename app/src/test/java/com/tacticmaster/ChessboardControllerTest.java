@@ -1,8 +1,10 @@
 package com.tacticmaster;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
@@ -13,12 +15,15 @@ import static org.mockito.Mockito.when;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.MaterialAutoCompleteTextView;
 import com.tacticmaster.board.ChessboardView;
 import com.tacticmaster.db.DatabaseAccessor;
+import com.tacticmaster.db.DatabaseExecutor;
 import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
 import com.tacticmaster.puzzle.PuzzleGame;
 import com.tacticmaster.puzzle.PuzzleManager;
 import com.tacticmaster.puzzle.PuzzleThemesDialogHelper;
@@ -27,7 +32,9 @@ import com.tacticmaster.settings.SettingsManager;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import java.util.ArrayList;
@@ -50,6 +57,8 @@ public class ChessboardControllerTest {
     @Mock
     private PuzzleTextViews puzzleTextViews;
 
+    private final DatabaseExecutor databaseExecutor = new DatabaseExecutor(Runnable::run, Runnable::run, Runnable::run);
+
     private ChessboardController chessboardController;
 
     private PuzzleGame puzzleGame;
@@ -76,7 +85,7 @@ public class ChessboardControllerTest {
         this.puzzleGames.add(new PuzzleGame("3", "fen2", "moves2", 1600));
         this.puzzleRecords.add(new Puzzle("4", "fen3", "moves3", 1400));
         this.puzzleGames.add(new PuzzleGame("4", "fen3", "moves3", 1400));
-        chessboardController = new ChessboardController(databaseAccessor, settingsManager, new PuzzleManager(databaseAccessor, 1600), puzzleThemesDialogHelper, chessboardView, puzzleTextViews);
+        chessboardController = new ChessboardController(databaseAccessor, databaseExecutor, settingsManager, new PuzzleManager(databaseAccessor, 1600), puzzleThemesDialogHelper, chessboardView, puzzleTextViews);
         when(puzzleTextViews.getFilterDropdown()).thenReturn(mock(MaterialAutoCompleteTextView.class));
         when(puzzleTextViews.getFilterButton()).thenReturn(mock(MaterialButton.class));
 
@@ -87,11 +96,11 @@ public class ChessboardControllerTest {
         when(databaseAccessor.getAllPuzzleCount()).thenReturn(256);
         when(databaseAccessor.getSolvedPuzzleCount()).thenReturn(5);
         when(settingsManager.getPlayerRating()).thenReturn(2333);
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet())).thenReturn(new ArrayList<>()).thenReturn(new ArrayList<>()).thenReturn(puzzleRecords);
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(new ArrayList<>()).thenReturn(puzzleRecords);
 
         chessboardController.loadNextPuzzle();
 
-        verify(databaseAccessor, times(3)).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet());
+        verify(databaseAccessor, times(2)).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
         verify(chessboardView).setPuzzle(puzzleGame);
         verify(puzzleTextViews).setPuzzleId(puzzleGame.getPuzzleId());
         verify(puzzleTextViews).setPuzzleRating(puzzleGame.rating());
@@ -105,7 +114,7 @@ public class ChessboardControllerTest {
         when(databaseAccessor.getAllPuzzleCount()).thenReturn(256);
         when(databaseAccessor.getSolvedPuzzleCount()).thenReturn(5);
         when(settingsManager.getPlayerRating()).thenReturn(2333);
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet())).thenReturn(new ArrayList<>());
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(new ArrayList<>());
 
         chessboardController.loadNextPuzzle();
 
@@ -137,7 +146,7 @@ public class ChessboardControllerTest {
     @Test
     public void testLoadPreviousPuzzle() {
         // Mock the database to return a list of puzzles
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet())).thenReturn(puzzleRecords);
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(puzzleRecords);
 
         // Load the first puzzle
         chessboardController.loadNextPuzzle();
@@ -156,13 +165,24 @@ public class ChessboardControllerTest {
         verify(chessboardView, atLeastOnce()).setPuzzle(puzzleGames.get(puzzleGames.size() - 1));
     }
 
+    @Test
+    public void testOnlyTheFirstBoardIsTracedForStartup() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(puzzleRecords);
+
+        chessboardController.loadNextPuzzle();
+        chessboardController.loadNextPuzzle();
+        chessboardController.renderPuzzle();
+
+        verify(chessboardView, times(1)).post(any(Runnable.class));
+    }
+
     @Test
     public void testOnPuzzleSolved() {
         var newPuzzles = new ArrayList<Puzzle>();
         newPuzzles.add(new Puzzle("2", "fen", "moves", 1000));
         newPuzzles.add(new Puzzle("3", "fen", "moves", 1000));
 
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords)
                 .thenReturn(newPuzzles);
 
@@ -190,7 +210,7 @@ public class ChessboardControllerTest {
 
     @Test
     public void testOnPuzzleNotSolved() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet())).thenReturn(puzzleRecords);
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(puzzleRecords);
         chessboardController.loadNextPuzzle();
         when(databaseAccessor.wasNotSolved(any())).thenReturn(true);
 
@@ -203,7 +223,7 @@ public class ChessboardControllerTest {
 
     @Test
     public void testOnPuzzleSolvedUpdatesSolvedState() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet())).thenReturn(puzzleRecords);
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(puzzleRecords);
         chessboardController.loadNextPuzzle();
         Assertions.assertFalse(puzzleGame.solved());
         when(databaseAccessor.wasNotSolved(puzzleGame.getPuzzleId())).thenReturn(true);
@@ -292,35 +312,42 @@ public class ChessboardControllerTest {
     @Test
     void testConstructorWithNullDatabaseAccessorThrowsException() {
         Assertions.assertThrows(IllegalArgumentException.class, () ->
-                new ChessboardController(null, settingsManager, mock(PuzzleManager.class), mock(PuzzleThemesDialogHelper.class),
+                new ChessboardController(null, databaseExecutor, settingsManager, mock(PuzzleManager.class), mock(PuzzleThemesDialogHelper.class),
                         mock(ChessboardView.class), mock(PuzzleTextViews.class)));
     }
 
+    @Test
+    void testConstructorWithNullDatabaseExecutorThrowsException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () ->
+                new ChessboardController(mock(DatabaseAccessor.class), null, settingsManager, mock(PuzzleManager.class),
+                        mock(PuzzleThemesDialogHelper.class), mock(ChessboardView.class), mock(PuzzleTextViews.class)));
+    }
+
     @Test
     void testConstructorWithNullSettingsManagerThrowsException() {
         Assertions.assertThrows(IllegalArgumentException.class, () ->
-                new ChessboardController(mock(DatabaseAccessor.class), null, mock(PuzzleManager.class),
+                new ChessboardController(mock(DatabaseAccessor.class), databaseExecutor, null, mock(PuzzleManager.class),
                         mock(PuzzleThemesDialogHelper.class), mock(ChessboardView.class), mock(PuzzleTextViews.class)));
     }
 
     @Test
     void testConstructorWithNullPuzzleManagerThrowsException() {
         Assertions.assertThrows(IllegalArgumentException.class, () ->
-                new ChessboardController(mock(DatabaseAccessor.class), settingsManager, null, mock(PuzzleThemesDialogHelper.class),
+                new ChessboardController(mock(DatabaseAccessor.class), databaseExecutor, settingsManager, null, mock(PuzzleThemesDialogHelper.class),
                         mock(ChessboardView.class), mock(PuzzleTextViews.class)));
     }
 
     @Test
     void testConstructorWithNullChessboardViewThrowsException() {
         Assertions.assertThrows(IllegalArgumentException.class, () ->
-                new ChessboardController(mock(DatabaseAccessor.class), settingsManager, mock(PuzzleManager.class),
+                new ChessboardController(mock(DatabaseAccessor.class), databaseExecutor, settingsManager, mock(PuzzleManager.class),
                         mock(PuzzleThemesDialogHelper.class), null, mock(PuzzleTextViews.class)));
     }
 
     @Test
     void testConstructorWithNullPuzzleTextViewsThrowsException() {
         Assertions.assertThrows(IllegalArgumentException.class, () ->
-                new ChessboardController(mock(DatabaseAccessor.class), settingsManager, mock(PuzzleManager.class),
+                new ChessboardController(mock(DatabaseAccessor.class), databaseExecutor, settingsManager, mock(PuzzleManager.class),
                         mock(PuzzleThemesDialogHelper.class), mock(ChessboardView.class), null));
     }
 
@@ -341,34 +368,37 @@ public class ChessboardControllerTest {
     }
 
     @Test
-    void testLoadNextPuzzleWithUnexpectedExceptionPropagates() {
+    void testLoadNextPuzzleWithUnexpectedExceptionIsNotReportedAsNoMorePuzzles() {
         // Regression: loadNextPuzzle used to catch (Exception) and silently show
         // "no more puzzles" for any failure, hiding programming errors. Only
-        // NoSuchElementException should be treated as "no more puzzles".
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        // NoSuchElementException should be treated as "no more puzzles"; other
+        // failures now arrive on the executor's error callback and are logged.
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenThrow(new RuntimeException("Database error"));
 
-        Assertions.assertThrows(RuntimeException.class,
-                () -> chessboardController.loadNextPuzzle());
+        chessboardController.loadNextPuzzle();
+
         verify(chessboardView, never()).makeText(R.string.no_more_puzzles);
+        verify(chessboardView, never()).setPuzzle(any());
     }
 
     @Test
-    void testLoadPuzzleByIdWithUnexpectedExceptionPropagates() {
+    void testLoadPuzzleByIdWithUnexpectedExceptionIsNotReportedAsInvalidId() {
         // Regression: loadPuzzleById used to catch (Exception) and silently show
         // "invalid puzzle id" for any failure. Only NoSuchElementException should
         // be treated as a missing puzzle.
         when(databaseAccessor.getPuzzleById("invalid"))
                 .thenThrow(new RuntimeException("Database error"));
 
-        Assertions.assertThrows(RuntimeException.class,
-                () -> chessboardController.loadPuzzleById("invalid"));
+        chessboardController.loadPuzzleById("invalid");
+
         verify(chessboardView, never()).makeText(R.string.invalid_puzzle_id);
+        verify(chessboardView, never()).setPuzzle(any());
     }
 
     @Test
     void testLoadNextPuzzleShowsMessageOnNoSuchElement() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenThrow(new java.util.NoSuchElementException("none"));
 
         chessboardController.loadNextPuzzle();
@@ -408,7 +438,7 @@ public class ChessboardControllerTest {
 
     @Test
     void testRenderPuzzleUpdatesAllViews() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
         when(databaseAccessor.getAllPuzzleCount()).thenReturn(100);
         when(databaseAccessor.getSolvedPuzzleCount()).thenReturn(25);
@@ -443,9 +473,50 @@ public class ChessboardControllerTest {
         verify(settingsManager, never()).setPlayerRating(anyInt());
     }
 
+    @Test
+    void testEveryFinishedPuzzleRecordsAnAttempt() {
+        when(databaseAccessor.wasNotSolved(puzzleGame.getPuzzleId())).thenReturn(false);
+
+        chessboardController.onPuzzleNotSolved(puzzleGame);
+        chessboardController.onPuzzleSolved(puzzleGame);
+
+        verify(databaseAccessor, times(2)).recordPuzzleAttempt(any(PuzzleAttempt.class));
+    }
+
+    @Test
+    void testFinishedPuzzleRecordsAttemptWithRatingChangeAndHints() {
+        when(databaseAccessor.wasNotSolved(puzzleGame.getPuzzleId())).thenReturn(true);
+        puzzleGame.hintUsed();
+        puzzleGame.hintUsed();
+
+        chessboardController.onPuzzleNotSolved(puzzleGame);
+
+        ArgumentCaptor<PuzzleAttempt> captor = ArgumentCaptor.forClass(PuzzleAttempt.class);
+        verify(databaseAccessor).recordPuzzleAttempt(captor.capture());
+        PuzzleAttempt attempt = captor.getValue();
+        Assertions.assertEquals(puzzleGame.getPuzzleId(), attempt.puzzleId());
+        Assertions.assertEquals(1049, attempt.puzzleRating());
+        Assertions.assertEquals(2, attempt.hintsUsed());
+        Assertions.assertFalse(attempt.solved());
+        Assertions.assertEquals(2333, attempt.ratingBefore());
+        Assertions.assertTrue(attempt.ratingAfter() < attempt.ratingBefore());
+    }
+
+    @Test
+    void testRepeatedSolveRecordsAttemptWithoutRatingChange() {
+        when(databaseAccessor.wasNotSolved(puzzleGame.getPuzzleId())).thenReturn(false);
+
+        chessboardController.onPuzzleSolved(puzzleGame);
+
+        ArgumentCaptor<PuzzleAttempt> captor = ArgumentCaptor.forClass(PuzzleAttempt.class);
+        verify(databaseAccessor).recordPuzzleAttempt(captor.capture());
+        Assertions.assertTrue(captor.getValue().solved());
+        Assertions.assertEquals(captor.getValue().ratingBefore(), captor.getValue().ratingAfter());
+    }
+
     @Test
     void testOnAfterPuzzleFinishedWithAutoplayLoadsNext() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
 
         chessboardController.setAutoplay(true);
@@ -458,7 +529,7 @@ public class ChessboardControllerTest {
 
     @Test
     void testOnAfterPuzzleFinishedWithoutAutoplayDoesNotLoadNext() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
 
         chessboardController.setAutoplay(false);
@@ -469,6 +540,51 @@ public class ChessboardControllerTest {
         verify(chessboardView, times(1)).setPuzzle(any()); // Only once for initial load
     }
 
+    @Test
+    void testLoadNextPuzzleRunsDatabaseWorkOnTheWriter() {
+        List<Runnable> writes = new ArrayList<>();
+        var deferredExecutor = new DatabaseExecutor(writes::add, Runnable::run, Runnable::run);
+        var controller = new ChessboardController(databaseAccessor, deferredExecutor, settingsManager,
+                new PuzzleManager(databaseAccessor, 1600), puzzleThemesDialogHelper, chessboardView, puzzleTextViews);
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(puzzleRecords);
+
+        controller.loadNextPuzzle();
+
+        verify(databaseAccessor, never()).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
+        verify(chessboardView, never()).setPuzzle(any());
+
+        writes.forEach(Runnable::run);
+
+        verify(chessboardView).setPuzzle(puzzleGame);
+    }
+
+    @Test
+    void testRerenderingKeepsTheSolveClockOfTheShownPuzzle() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(puzzleRecords);
+        when(databaseAccessor.wasNotSolved(anyString())).thenReturn(true);
+
+        try (var clock = Mockito.mockStatic(SystemClock.class)) {
+            clock.when(SystemClock::elapsedRealtime).thenReturn(1_000L);
+            chessboardController.loadNextPuzzle();
+            clock.when(SystemClock::elapsedRealtime).thenReturn(4_000L);
+            chessboardController.renderPuzzle();
+            clock.when(SystemClock::elapsedRealtime).thenReturn(9_000L);
+            chessboardController.onPuzzleSolved(puzzleGame);
+        }
+
+        ArgumentCaptor<PuzzleAttempt> captor = ArgumentCaptor.forClass(PuzzleAttempt.class);
+        verify(databaseAccessor).recordPuzzleAttempt(captor.capture());
+        Assertions.assertEquals(8_000, captor.getValue().solveTimeMillis());
+    }
+
+    @Test
+    void testRenderPuzzleBeforeFirstBatchDoesNothing() {
+        chessboardController.renderPuzzle();
+
+        verify(chessboardView, never()).setPuzzle(any());
+        verify(databaseAccessor, never()).getSolvedPuzzleCount();
+    }
+
     @Test
     void testCleanupCallsPuzzleTextViewsCleanup() {
         chessboardController.cleanup();
@@ -476,6 +592,20 @@ public class ChessboardControllerTest {
         verify(puzzleTextViews).cleanup();
     }
 
+    @Test
+    void testCleanupReleasesDatabase() {
+        chessboardController.cleanup();
+
+        verify(databaseAccessor).close();
+    }
+
+    @Test
+    void testFlushProgressRunsOnTheWriter() {
+        chessboardController.flushProgress();
+
+        verify(databaseAccessor).flushProgress();
+    }
+
     @Test
     void testMultipleCleanupCallsAreSafe() {
         chessboardController.cleanup();
@@ -486,7 +616,7 @@ public class ChessboardControllerTest {
 
     @Test
     void testPlayerRatingUpdateFlow() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
 
         String fen = "1rb2rk1/q5P1/4p2p/3p3p/3P1P2/2P5/2QK3P/3R2R1 b - - 0 29";
@@ -513,7 +643,7 @@ public class ChessboardControllerTest {
         Assertions.assertFalse(chessboardController.refreshFromSettings());
 
         verify(databaseAccessor, never())
-                .getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet());
+                .getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
         verify(puzzleTextViews, never()).setPlayerRating(anyInt());
     }
 
@@ -521,7 +651,7 @@ public class ChessboardControllerTest {
     public void testRefreshFromSettingsLoadsNewPuzzleWhenRatingChanged() {
         when(databaseAccessor.getAllPuzzleCount()).thenReturn(256);
         when(databaseAccessor.getSolvedPuzzleCount()).thenReturn(5);
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
         // Prime the manager so the cache has something to clear.
         chessboardController.loadNextPuzzle();
@@ -537,7 +667,7 @@ public class ChessboardControllerTest {
 
     @Test
     public void testRefreshFromSettingsDoesNotCrashWhenNoPuzzlesAvailable() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(new ArrayList<>());
         when(settingsManager.getPlayerRating()).thenReturn(1800);
 
@@ -583,7 +713,7 @@ public class ChessboardControllerTest {
 
     @Test
     void testRenderPuzzlePersistsCurrentPuzzleId() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
 
         chessboardController.loadNextPuzzle();
@@ -591,9 +721,19 @@ public class ChessboardControllerTest {
         verify(settingsManager).setLastPuzzleId(puzzleGame.getPuzzleId());
     }
 
+    @Test
+    void testRenderPuzzleRemembersItForTheNextSession() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(puzzleRecords);
+
+        chessboardController.loadNextPuzzle();
+
+        verify(databaseAccessor).rememberPuzzle(argThat(puzzle -> puzzle.puzzleId().equals(puzzleGame.getPuzzleId())));
+    }
+
     @Test
     void testRestoreLastPuzzleOrLoadNextWithNullFallsBackToLoadNext() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
 
         chessboardController.restoreLastPuzzleOrLoadNext(null);
@@ -603,7 +743,7 @@ public class ChessboardControllerTest {
 
     @Test
     void testRestoreLastPuzzleOrLoadNextWithEmptyFallsBackToLoadNext() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
 
         chessboardController.restoreLastPuzzleOrLoadNext("   ");
@@ -625,7 +765,7 @@ public class ChessboardControllerTest {
     void testRestoreLastPuzzleOrLoadNextWithUnknownIdFallsBackToLoadNext() {
         when(databaseAccessor.getPuzzleById("gone"))
                 .thenThrow(new java.util.NoSuchElementException("missing"));
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(puzzleRecords);
 
         chessboardController.restoreLastPuzzleOrLoadNext("gone");
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -19,7 +20,7 @@ import android.content.Context;
 import android.graphics.Color;
 import android.graphics.Typeface;
 import android.view.View;
-import android.widget.EditText;
+import android.widget.AutoCompleteTextView;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -35,7 +36,7 @@ class PuzzleTextViewsTest {
     private Activity mockActivity;
     private Context mockContext;
     private TextView mockPuzzleIdLabelTextView;
-    private EditText mockPuzzleIdEditText;
+    private AutoCompleteTextView mockPuzzleIdEditText;
     private TextView mockPuzzleRatingTextView;
     private TextView mockPuzzlesSolvedTextView;
     private TextView mockPlayerRatingTextView;
@@ -48,7 +49,7 @@ class PuzzleTextViewsTest {
         mockActivity = mock(Activity.class);
         mockContext = mock(Context.class);
         mockPuzzleIdLabelTextView = mock(TextView.class);
-        mockPuzzleIdEditText = mock(EditText.class);
+        mockPuzzleIdEditText = mock(AutoCompleteTextView.class);
         mockPuzzleRatingTextView = mock(TextView.class);
         mockPuzzlesSolvedTextView = mock(TextView.class);
         mockPlayerRatingTextView = mock(TextView.class);
@@ -121,7 +122,7 @@ class PuzzleTextViewsTest {
         puzzleTextViews.setPuzzleId(puzzleId);
 
         verify(mockPuzzleIdLabelTextView).setTypeface(null, Typeface.BOLD);
-        verify(mockPuzzleIdEditText).setText(puzzleId);
+        verify(mockPuzzleIdEditText).setText(puzzleId, false);
         verify(mockPuzzleIdEditText).setContentDescription("Puzzle ID: " + puzzleId);
     }
 
@@ -129,14 +130,14 @@ class PuzzleTextViewsTest {
     void testSetPuzzleIdWithNullIdDoesNotUpdate() {
         puzzleTextViews.setPuzzleId(null);
 
-        verify(mockPuzzleIdEditText, never()).setText(anyString());
+        verify(mockPuzzleIdEditText, never()).setText(anyString(), anyBoolean());
     }
 
     @Test
     void testSetPuzzleIdWithEmptyIdDoesNotUpdate() {
         puzzleTextViews.setPuzzleId("   ");
 
-        verify(mockPuzzleIdEditText, never()).setText(anyString());
+        verify(mockPuzzleIdEditText, never()).setText(anyString(), anyBoolean());
     }
 
     @Test
@@ -232,12 +233,12 @@ class PuzzleTextViewsTest {
     @Test
     void testWhitespaceStringValidation() {
         puzzleTextViews.setPuzzleId("  ");
-        verify(mockPuzzleIdEditText, never()).setText(anyString());
+        verify(mockPuzzleIdEditText, never()).setText(anyString(), anyBoolean());
 
         puzzleTextViews.setPuzzleId("\t\n");
-        verify(mockPuzzleIdEditText, never()).setText(anyString());
+        verify(mockPuzzleIdEditText, never()).setText(anyString(), anyBoolean());
 
         puzzleTextViews.setPuzzleId("  VALID  ");
-        verify(mockPuzzleIdEditText, times(1)).setText("  VALID  ");
+        verify(mockPuzzleIdEditText, times(1)).setText("  VALID  ", false);
     }
 }
@@ -0,0 +1,218 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+
+class AttemptStoreTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final Map<String, SQLiteStatement> compiledStatements = new HashMap<>();
+    private SQLiteDatabase database;
+    private AttemptStore store;
+    private TimeZone defaultTimeZone;
+
+    @BeforeEach
+    void setUp() {
+        database = mock(SQLiteDatabase.class);
+        when(database.compileStatement(anyString())).thenAnswer(invocation ->
+                compiledStatements.computeIfAbsent(invocation.getArgument(0), sql -> mock(SQLiteStatement.class)));
+        store = new AttemptStore(database);
+        defaultTimeZone = TimeZone.getDefault();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    private static PuzzleAttempt attempt(String puzzleId, String themes, int puzzleRating, long attemptedAt, boolean solved) {
+        return new PuzzleAttempt(puzzleId, themes, puzzleRating, attemptedAt, 4_000, 1, solved, 1500, solved ? 1508 : 1492);
+    }
+
+    private SQLiteStatement compiled(String prefix) {
+        return compiledStatements.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(prefix))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Cursor rows(Object[]... rows) {
+        Cursor cursor = mock(Cursor.class);
+        int[] position = {-1};
+        when(cursor.moveToNext()).thenAnswer(invocation -> ++position[0] < rows.length);
+        when(cursor.getLong(0)).thenAnswer(invocation -> ((Number) rows[position[0]][0]).longValue());
+        when(cursor.getInt(0)).thenAnswer(invocation -> ((Number) rows[position[0]][0]).intValue());
+        when(cursor.getString(0)).thenAnswer(invocation -> rows[position[0]][0]);
+        for (int column = 1; column <= 4; column++) {
+            int index = column;
+            when(cursor.getInt(column)).thenAnswer(invocation -> ((Number) rows[position[0]][index]).intValue());
+            when(cursor.getLong(column)).thenAnswer(invocation -> ((Number) rows[position[0]][index]).longValue());
+        }
+        return cursor;
+    }
+
+    @Test
+    void testRejectsNullDatabase() {
+        assertThrows(IllegalArgumentException.class, () -> new AttemptStore(null));
+    }
+
+    @Test
+    void testAttemptsAreQueuedUntilTheBatchIsFull() {
+        for (int i = 0; i < AttemptStore.FLUSH_SIZE - 1; i++) {
+            store.add(attempt("p" + i, "fork", 1500, 0, true));
+        }
+        verify(database, never()).beginTransaction();
+
+        store.add(attempt("last", "fork", 1500, 0, true));
+
+        verify(database, times(1)).beginTransaction();
+        verify(database, times(1)).setTransactionSuccessful();
+        verify(database, times(1)).endTransaction();
+        verify(compiled("INSERT INTO " + PuzzleTable.ATTEMPTS_TABLE_NAME), times(AttemptStore.FLUSH_SIZE)).executeInsert();
+    }
+
+    @Test
+    void testFlushWritesTheRawRow() {
+        store.add(new PuzzleAttempt("abc", "fork", 1730, 123_456, 9_000, 2, false, 1600, 1590));
+
+        store.flush();
+
+        SQLiteStatement insert = compiled("INSERT INTO " + PuzzleTable.ATTEMPTS_TABLE_NAME);
+        assertNotNull(insert);
+        InOrder inOrder = inOrder(insert);
+        inOrder.verify(insert).bindString(1, "abc");
+        inOrder.verify(insert).bindLong(2, 123_456);
+        inOrder.verify(insert).bindLong(3, 9_000);
+        inOrder.verify(insert).bindLong(4, 2);
+        inOrder.verify(insert).bindLong(5, 0);
+        inOrder.verify(insert).bindLong(6, 1600);
+        inOrder.verify(insert).bindLong(7, 1590);
+        inOrder.verify(insert).executeInsert();
+    }
+
+    @Test
+    void testRollupsAreUpdatedOncePerKeyWithTheBatchTotals() {
+        store.add(attempt("a", "fork pin", 1510, 0, true));
+        store.add(attempt("b", "fork", 1590, 0, false));
+        store.add(attempt("c", "mate", 1610, 0, true));
+
+        store.flush();
+
+        SQLiteStatement themes = compiled("UPDATE " + PuzzleTable.THEME_STATS_TABLE_NAME);
+        verify(themes, times(3)).executeUpdateDelete();
+        // Only fork has two attempts (8s in total); pin and mate have one each.
+        verify(themes).bindLong(1, 2);
+        verify(themes).bindLong(3, 8_000);
+        verify(themes, times(2)).bindLong(3, 4_000);
+        verify(themes).bindString(5, "fork");
+        verify(compiled("INSERT OR IGNORE INTO " + PuzzleTable.THEME_STATS_TABLE_NAME), times(3)).executeInsert();
+
+        SQLiteStatement buckets = compiled("UPDATE " + PuzzleTable.RATING_STATS_TABLE_NAME);
+        verify(buckets, times(2)).executeUpdateDelete();
+        verify(buckets).bindLong(5, 1500);
+        verify(buckets).bindLong(5, 1600);
+
+        SQLiteStatement days = compiled("UPDATE " + PuzzleTable.DAILY_STATS_TABLE_NAME);
+        verify(days, times(1)).executeUpdateDelete();
+        verify(days).bindLong(1, 3);
+    }
+
+    @Test
+    void testStatisticsNeverScanTheHistory() {
+        Cursor empty = rows();
+        when(database.rawQuery(anyString(), any())).thenReturn(empty);
+
+        store.dailyStats(0, 10);
+        store.themeStats();
+        store.ratingBucketStats();
+
+        verify(database, never()).rawQuery(startsWith("SELECT " + PuzzleTable.COLUMN_PUZZLE_ID), any());
+        verify(database, never()).rawQuery(contains(PuzzleTable.ATTEMPTS_TABLE_NAME), any());
+    }
+
+    @Test
+    void testStatisticsIncludeQueuedAttempts() {
+        Cursor cursor = rows(new Object[]{"fork", 10, 7, 50_000, 3}, new Object[]{"pin", 1, 0, 2_000, 0});
+        when(database.rawQuery(startsWith("SELECT " + PuzzleTable.COLUMN_THEME), any())).thenReturn(cursor);
+        store.add(attempt("a", "fork", 1500, 0, true));
+
+        SortedMap<String, AttemptStats> stats = store.themeStats();
+
+        assertEquals(new AttemptStats(11, 8, 54_000, 4), stats.get("fork"));
+        assertEquals(new AttemptStats(1, 0, 2_000, 0), stats.get("pin"));
+        verify(database, never()).beginTransaction();
+    }
+
+    @Test
+    void testDailyStatsAreLimitedToTheRange() {
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        Cursor cursor = rows(new Object[]{5L, 2, 1, 1_000, 0});
+        when(database.rawQuery(startsWith("SELECT " + PuzzleTable.COLUMN_DAY), any())).thenReturn(cursor);
+        store.add(attempt("in", "", 1500, 5 * DAY + 10, true));
+        store.add(attempt("out", "", 1500, 9 * DAY, true));
+
+        SortedMap<Long, AttemptStats> stats = store.dailyStats(4, 6);
+
+        assertEquals(1, stats.size());
+        assertEquals(new AttemptStats(3, 2, 5_000, 1), stats.get(5L));
+        verify(database).rawQuery(anyString(), eq(new String[]{"4", "6"}));
+    }
+
+    @Test
+    void testCloseWritesQueuedAttempts() {
+        store.add(attempt("a", "fork", 1500, 0, true));
+
+        store.close();
+
+        verify(database).setTransactionSuccessful();
+        compiledStatements.values().forEach(statement -> verify(statement).close());
+    }
+
+    @Test
+    void testAttemptStats() {
+        AttemptStats stats = new AttemptStats(4, 3, 10_000, 1);
+
+        assertEquals(0.75, stats.accuracy());
+        assertEquals(2_500, stats.averageSolveTimeMillis());
+        assertEquals(0, new AttemptStats(0, 0, 0, 0).accuracy());
+    }
+
+    @Test
+    void testDayOfUsesTheDeviceTimeZone() {
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+02:00"));
+
+        assertEquals(0, AttemptStats.dayOf(DAY - 2 * 60 * 60 * 1000 - 1));
+        assertEquals(1, AttemptStats.dayOf(DAY - 2 * 60 * 60 * 1000));
+        assertEquals(-1, AttemptStats.dayOf(-2 * 60 * 60 * 1000 - 1));
+    }
+}
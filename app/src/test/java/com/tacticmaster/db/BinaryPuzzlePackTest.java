@@ -0,0 +1,236 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class BinaryPuzzlePackTest {
+
+    private static final String FEN = "1rb2rk1/q5P1/4p2p/3p3p/3P1P2/2P5/2QK3P/3R2R1 b - - 0 29";
+    private static final long FORK = ThemeMask.bitOf("fork");
+    private static final long PIN = ThemeMask.bitOf("pin");
+
+    @TempDir
+    File tempDir;
+
+    private BinaryPuzzlePack writePack(Object[]... puzzles) throws IOException {
+        File file = new File(tempDir, "puzzle.pack");
+        try (BinaryPuzzlePackWriter writer = new BinaryPuzzlePackWriter(file, DatabaseHelper.PACK_VERSION)) {
+            for (Object[] puzzle : puzzles) {
+                writer.add((String) puzzle[0], FEN, "f8f7 c2h7", (int) puzzle[1], (long) puzzle[2]);
+            }
+            writer.finish();
+        }
+        return BinaryPuzzlePack.open(file);
+    }
+
+    private static Object[] puzzle(String id, int rating, long themeMask) {
+        return new Object[]{id, rating, themeMask};
+    }
+
+    private static SolvedBitmap solved(BinaryPuzzlePack pack, String... puzzleIds) {
+        SolvedBitmap solved = new SolvedBitmap();
+        for (String puzzleId : puzzleIds) {
+            solved.add(pack.ordinalOf(puzzleId));
+        }
+        return solved;
+    }
+
+    @Test
+    void testFindByIdRestoresThePuzzle() throws IOException {
+        BinaryPuzzlePack pack = writePack(puzzle("zz1", 1400, FORK), puzzle("aa1", 1500, FORK | PIN));
+
+        Puzzle puzzle = pack.findById("aa1", solved(pack, "aa1"));
+
+        assertEquals(2, pack.size());
+        assertEquals("aa1", puzzle.puzzleId());
+        assertEquals(FEN, puzzle.fen());
+        assertEquals("f8f7 c2h7", puzzle.moves());
+        assertEquals(1500, puzzle.rating());
+        assertEquals("fork pin", puzzle.themes());
+        assertTrue(puzzle.solved());
+        assertEquals("zz1", pack.findById("zz1", solved(pack)).puzzleId());
+        assertNull(pack.findById("missing", solved(pack)));
+        assertNull(pack.findById("far too long for an id", solved(pack)));
+    }
+
+    @Test
+    void testSampleStaysInBandWithOnePuzzlePerRating() throws IOException {
+        BinaryPuzzlePack pack = writePack(
+                puzzle("low", 1399, 0L),
+                puzzle("a1", 1400, 0L), puzzle("a2", 1400, 0L),
+                puzzle("b1", 1450, 0L),
+                puzzle("c1", 1500, 0L), puzzle("c2", 1500, 0L),
+                puzzle("high", 1501, 0L));
+
+        List<Puzzle> sampled = pack.sample(1400, 1500, Set.of(), ThemeMask.NONE, solved(pack), new Random(7));
+
+        assertEquals(3, sampled.size());
+        Set<Integer> ratings = new HashSet<>();
+        sampled.forEach(puzzle -> {
+            assertTrue(puzzle.rating() >= 1400 && puzzle.rating() <= 1500);
+            assertFalse(puzzle.solved());
+            ratings.add(puzzle.rating());
+        });
+        assertEquals(3, ratings.size());
+    }
+
+    @Test
+    void testSampleSkipsExcludedSolvedAndOtherThemes() throws IOException {
+        BinaryPuzzlePack pack = writePack(
+                puzzle("solved", 1500, FORK),
+                puzzle("buffered", 1500, FORK),
+                puzzle("pinOnly", 1500, PIN),
+                puzzle("wanted", 1500, FORK | PIN));
+
+        for (int seed = 0; seed < 10; seed++) {
+            List<Puzzle> sampled = pack.sample(1450, 1550, Set.of("buffered"), FORK, solved(pack, "solved"), new Random(seed));
+
+            assertEquals(1, sampled.size());
+            assertEquals("wanted", sampled.get(0).puzzleId());
+        }
+    }
+
+    @Test
+    void testSampleOfEmptyBandReturnsNothing() throws IOException {
+        BinaryPuzzlePack pack = writePack(puzzle("a1", 1500, 0L));
+
+        assertTrue(pack.sample(1600, 1700, Set.of(), ThemeMask.NONE, solved(pack), new Random()).isEmpty());
+        assertTrue(pack.sample(1450, 1550, Set.of(), ThemeMask.NONE, solved(pack, "a1"), new Random()).isEmpty());
+    }
+
+    @Test
+    void testOrdinalsFollowRatingOrder() throws IOException {
+        BinaryPuzzlePack pack = writePack(puzzle("zz1", 1400, 0L), puzzle("aa1", 1500, 0L));
+
+        assertEquals(0, pack.ordinalOf("zz1"));
+        assertEquals(1, pack.ordinalOf("aa1"));
+        assertEquals(-1, pack.ordinalOf("missing"));
+        assertEquals("aa1", pack.idAt(1));
+    }
+
+    @Test
+    void testSampleSkipsRunsOfSolvedPuzzles() throws IOException {
+        Object[][] puzzles = new Object[200][];
+        for (int i = 0; i < puzzles.length; i++) {
+            puzzles[i] = puzzle("p" + i, 1500 + i, 0L);
+        }
+        BinaryPuzzlePack pack = writePack(puzzles);
+        SolvedBitmap solved = new SolvedBitmap();
+        for (int ordinal = 0; ordinal < 200; ordinal++) {
+            if (ordinal != 150) {
+                solved.add(ordinal);
+            }
+        }
+
+        for (int seed = 0; seed < 10; seed++) {
+            List<Puzzle> sampled = pack.sample(1500, 1700, Set.of(), ThemeMask.NONE, solved, new Random(seed));
+
+            assertEquals(1, sampled.size());
+            assertEquals("p150", sampled.get(0).puzzleId());
+        }
+    }
+
+    @Test
+    void testProbesTestABoundedNumberOfRowsUnlessExhaustive() throws IOException {
+        Object[][] puzzles = new Object[2000][];
+        for (int i = 0; i < puzzles.length; i++) {
+            puzzles[i] = puzzle("p" + i, 1000 + i, FORK);
+        }
+        BinaryPuzzlePack pack = writePack(puzzles);
+        int[] tested = {0};
+        // Excludes everything and counts the rows the walk gets to test.
+        Set<String> excluded = new HashSet<>() {
+            @Override
+            public boolean contains(Object o) {
+                tested[0]++;
+                return true;
+            }
+        };
+
+        assertEquals(-1, pack.probe(0, pack.size(), excluded, ThemeMask.NONE, new SolvedBitmap(), new HashSet<>(), new Random(1), false));
+        assertEquals(PuzzleSampler.SEEKS_PER_PROBE * BinaryPuzzlePack.ROWS_PER_SEEK, tested[0]);
+
+        tested[0] = 0;
+        assertEquals(-1, pack.probe(0, pack.size(), excluded, ThemeMask.NONE, new SolvedBitmap(), new HashSet<>(), new Random(1), true));
+        assertEquals(PuzzleSampler.SEEKS_PER_PROBE * BinaryPuzzlePack.ROWS_PER_SEEK + pack.size(), tested[0]);
+    }
+
+    @Test
+    void testWriterSkipsPuzzlesThatDoNotFit() throws IOException {
+        File file = new File(tempDir, "puzzle.pack");
+        try (BinaryPuzzlePackWriter writer = new BinaryPuzzlePackWriter(file, DatabaseHelper.PACK_VERSION)) {
+            assertTrue(writer.add("ok", FEN, "f8f7", 1500, 0L));
+            assertFalse(writer.add("broken", "not a fen", "f8f7", 1500, 0L));
+            writer.finish();
+
+            assertEquals(1, writer.count());
+            assertEquals(1, writer.skipped());
+        }
+        assertEquals(1, BinaryPuzzlePack.open(file).size());
+        assertEquals(DatabaseHelper.PACK_VERSION, BinaryPuzzlePack.readPackVersion(file));
+    }
+
+    @Test
+    void testConversionFailsRatherThanDropAPuzzle() {
+        String tooLong = String.join(" ", Collections.nCopies(PackedPuzzleCodec.MAX_MOVES + 1, "f8f7"));
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true, true, false);
+        when(cursor.getString(0)).thenReturn("ok", "long");
+        when(cursor.getString(1)).thenReturn(FEN);
+        when(cursor.getString(2)).thenReturn("f8f7", tooLong);
+        when(cursor.getInt(3)).thenReturn(1500, 1600);
+        SQLiteDatabase db = mock(SQLiteDatabase.class);
+        when(db.rawQuery(anyString(), any())).thenReturn(cursor);
+
+        IOException e = assertThrows(IOException.class,
+                () -> BinaryPuzzlePackWriter.convert(db, new File(tempDir, "puzzle.pack"), DatabaseHelper.PACK_VERSION));
+        assertTrue(e.getMessage().contains("long"), e.getMessage());
+    }
+
+    @Test
+    void testWriterRequiresRatingOrderAndUniqueIds() throws IOException {
+        File file = new File(tempDir, "puzzle.pack");
+        try (BinaryPuzzlePackWriter writer = new BinaryPuzzlePackWriter(file, DatabaseHelper.PACK_VERSION)) {
+            writer.add("a1", FEN, "f8f7", 1500, 0L);
+            assertThrows(IllegalArgumentException.class, () -> writer.add("a2", FEN, "f8f7", 1400, 0L));
+            writer.add("a1", FEN, "f8f7", 1600, 0L);
+            assertThrows(IllegalArgumentException.class, writer::finish);
+        }
+    }
+
+    @Test
+    void testOpenRejectsOtherFiles() throws IOException {
+        File file = new File(tempDir, "puzzle.pack");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[]{'S', 'Q', 'L', 'i', 't', 'e', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        }
+
+        assertThrows(IOException.class, () -> BinaryPuzzlePack.open(file));
+        assertEquals(0, BinaryPuzzlePack.readPackVersion(file));
+        assertEquals(0, BinaryPuzzlePack.readPackVersion(new File(tempDir, "missing.pack")));
+    }
+}
@@ -0,0 +1,210 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The memory-mapped backend over a pack written from the same puzzles, plus what only it
+ * does. Progress goes to a mocked, initially empty progress database.
+ */
+class BinaryPuzzleRepositoryTest extends PuzzleRepositoryConformanceTest {
+
+    @TempDir
+    File filesDir;
+
+    private final DatabaseHelper dbHelper = mock(DatabaseHelper.class);
+    private final SQLiteDatabase puzzleDatabase = mock(SQLiteDatabase.class);
+    private final Cursor progressCursor = mock(Cursor.class);
+
+    @Override
+    PuzzleRepository create(List<Puzzle> puzzles) throws IOException {
+        File file = new File(filesDir, DatabaseHelper.BINARY_PACK_NAME);
+        try (BinaryPuzzlePackWriter writer = new BinaryPuzzlePackWriter(file, DatabaseHelper.PACK_VERSION)) {
+            for (Puzzle puzzle : puzzles) {
+                writer.add(puzzle.puzzleId(), puzzle.fen(), puzzle.moves(), puzzle.rating(), ThemeMask.parse(puzzle.themes()));
+            }
+            writer.finish();
+        }
+
+        SQLiteDatabase progressDatabase = mock(SQLiteDatabase.class);
+        when(progressDatabase.rawQuery(anyString(), any())).thenReturn(progressCursor);
+        when(progressDatabase.compileStatement(anyString())).thenAnswer(invocation -> mock(SQLiteStatement.class));
+        when(dbHelper.acquireDatabase()).thenReturn(puzzleDatabase);
+        when(dbHelper.getWritableDatabase()).thenReturn(progressDatabase);
+        when(dbHelper.openBinaryPack()).thenReturn(BinaryPuzzlePack.open(file));
+        when(dbHelper.progressJournalFile()).thenReturn(new File(filesDir, DatabaseHelper.PROGRESS_JOURNAL_NAME));
+        when(dbHelper.themePerformanceFile()).thenReturn(new File(filesDir, DatabaseHelper.THEME_PERFORMANCE_NAME));
+        when(dbHelper.puzzleCacheFile(PuzzleBackend.BINARY)).thenReturn(new File(filesDir, "puzzle_cache_binary.bin"));
+        return new BinaryPuzzleRepository(dbHelper);
+    }
+
+    @AfterEach
+    void verifyThePuzzleTableWasNeverQueried() {
+        verify(puzzleDatabase, never()).rawQuery(anyString(), any());
+    }
+
+    private BinaryPuzzlePack writePack(String... puzzleIds) throws IOException {
+        File file = new File(filesDir, "written.pack");
+        try (BinaryPuzzlePackWriter writer = new BinaryPuzzlePackWriter(file, DatabaseHelper.PACK_VERSION)) {
+            for (int i = 0; i < puzzleIds.length; i++) {
+                writer.add(puzzleIds[i], FEN, "a1a2", 1000 + i, 0L);
+            }
+            writer.finish();
+        }
+        return BinaryPuzzlePack.open(file);
+    }
+
+    private void givenSolvedPuzzles(String... puzzleIds) {
+        int[] position = {-1};
+        // doAnswer, so restubbing for a second repository does not call the previous answer.
+        doAnswer(invocation -> ++position[0] < puzzleIds.length).when(progressCursor).moveToNext();
+        doAnswer(invocation -> puzzleIds[position[0]]).when(progressCursor).getString(0);
+    }
+
+    @Test
+    void testReadsGoThroughTheOpenedPack() throws IOException {
+        BinaryPuzzlePack pack = mock(BinaryPuzzlePack.class);
+        Puzzle puzzle = new Puzzle("1", "fen", "moves", 1500);
+        when(dbHelper.openBinaryPack()).thenReturn(pack);
+        when(pack.size()).thenReturn(42);
+        when(pack.sample(anyInt(), anyInt(), any(), anyLong(), any(), any())).thenReturn(List.of(puzzle));
+        when(pack.findById(eq("1"), any())).thenReturn(puzzle);
+        var repository = new BinaryPuzzleRepository(dbHelper);
+
+        assertEquals(42, repository.getAllPuzzleCount());
+        assertEquals(List.of(puzzle), repository.getPuzzlesWithinRange(1400, 1600, Set.of(), ThemeMask.NONE));
+        assertEquals(puzzle, repository.getPuzzleById("1"));
+        assertThrows(NoSuchElementException.class, () -> repository.getPuzzleById("2"));
+
+        verify(dbHelper, times(1)).openBinaryPack();
+    }
+
+    @Test
+    void testPackThatCannotBeOpenedFailsEveryReadWithoutRetrying() throws IOException {
+        IOException failure = new IOException("disk full");
+        when(dbHelper.openBinaryPack()).thenThrow(failure);
+        var repository = new BinaryPuzzleRepository(dbHelper);
+
+        IllegalStateException first = assertThrows(IllegalStateException.class, repository::getAllPuzzleCount);
+        assertSame(failure, first.getCause());
+        assertThrows(IllegalStateException.class, () -> repository.getPuzzlesWithinRange(1000, 2000, Set.of(), ThemeMask.NONE));
+
+        verify(dbHelper, times(1)).openBinaryPack();
+    }
+
+    @Test
+    void testClosedRepositoryDoesNotReopenThePack() throws IOException {
+        var repository = new BinaryPuzzleRepository(dbHelper);
+        repository.close();
+
+        assertThrows(IllegalStateException.class, repository::getAllPuzzleCount);
+        verify(dbHelper, never()).acquireDatabase();
+        verify(dbHelper, never()).openBinaryPack();
+    }
+
+    @Test
+    void testThemesFollowTheUnsolvedPuzzles() throws IOException {
+        File file = new File(filesDir, "themes.pack");
+        try (BinaryPuzzlePackWriter writer = new BinaryPuzzlePackWriter(file, DatabaseHelper.PACK_VERSION)) {
+            writer.add("a1", FEN, "a1a2", 1000, ThemeMask.bitOf("fork"));
+            writer.add("b2", FEN, "a1a2", 1001, ThemeMask.bitOf("pin"));
+            writer.finish();
+        }
+        when(dbHelper.openBinaryPack()).thenReturn(BinaryPuzzlePack.open(file));
+        givenSolvedPuzzles("b2");
+        var repository = new BinaryPuzzleRepository(dbHelper);
+
+        assertEquals(Set.of("fork"), repository.getPuzzleThemes());
+        repository.setSolved("a1");
+        assertTrue(repository.getPuzzleThemes().isEmpty());
+    }
+
+    @Test
+    void testSolvedStateComesFromProgress() throws IOException {
+        when(dbHelper.openBinaryPack()).thenReturn(writePack("a1", "b2", "c3"));
+        givenSolvedPuzzles("b2", "unknown");
+        var repository = new BinaryPuzzleRepository(dbHelper);
+
+        assertTrue(repository.getPuzzleById("b2").solved());
+        assertFalse(repository.getPuzzleById("c3").solved());
+        repository.setSolved("c3");
+        assertTrue(repository.getPuzzleById("c3").solved());
+        assertEquals(List.of("a1"), repository.getPuzzlesWithinRange(900, 1100, Set.of(), ThemeMask.NONE)
+                .stream().map(Puzzle::puzzleId).toList());
+    }
+
+    @Test
+    void testSolvedProgressExportImportsIntoAnotherInstall() throws IOException {
+        when(dbHelper.openBinaryPack()).thenReturn(writePack("a1", "b2", "c3"));
+        givenSolvedPuzzles("a1", "c3");
+        var source = new BinaryPuzzleRepository(dbHelper);
+
+        byte[] export = source.exportSolvedProgress();
+
+        givenSolvedPuzzles("a1");
+        var target = new BinaryPuzzleRepository(dbHelper);
+        assertEquals(1, target.importSolvedProgress(export));
+        assertFalse(target.wasNotSolved("c3"));
+        assertTrue(target.wasNotSolved("b2"));
+        assertEquals(0, target.importSolvedProgress(export));
+    }
+
+    @Test
+    void testSolvedProgressImportRejectsAnotherPackVersion() throws IOException {
+        File file = new File(filesDir, "other.pack");
+        try (BinaryPuzzlePackWriter writer = new BinaryPuzzlePackWriter(file, DatabaseHelper.PACK_VERSION + 1)) {
+            writer.add("a1", FEN, "a1a2", 1000, 0L);
+            writer.finish();
+        }
+        when(dbHelper.openBinaryPack()).thenReturn(BinaryPuzzlePack.open(file));
+        byte[] export = new BinaryPuzzleRepository(dbHelper).exportSolvedProgress();
+        when(dbHelper.openBinaryPack()).thenReturn(writePack("a1"));
+
+        assertThrows(IOException.class, () -> new BinaryPuzzleRepository(dbHelper).importSolvedProgress(export));
+    }
+
+    @Test
+    void testRatingHistogramSkipsSolvedAndFollowsSolves() throws IOException {
+        when(dbHelper.openBinaryPack()).thenReturn(writePack("a1", "b2", "c3"));
+        givenSolvedPuzzles("b2");
+        var repository = new BinaryPuzzleRepository(dbHelper);
+
+        RatingHistogram histogram = repository.getRatingHistogram();
+
+        assertEquals(2, histogram.unsolved(1000, 1100, ThemeMask.NONE));
+        repository.setSolved("a1");
+        repository.setSolved("a1");
+        assertEquals(1, histogram.unsolved(1000, 1100, ThemeMask.NONE));
+        assertSame(histogram, repository.getRatingHistogram());
+    }
+}
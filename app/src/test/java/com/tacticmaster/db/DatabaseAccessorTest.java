@@ -4,69 +4,326 @@ import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
 import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
 import static com.tacticmaster.db.PuzzleTable.COLUMN_SOLVED;
 import static com.tacticmaster.db.PuzzleTable.COLUMN_THEMES;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_THEME_MASK;
+import static com.tacticmaster.db.PuzzleTable.PROGRESS_TABLE_NAME;
 import static com.tacticmaster.db.PuzzleTable.PUZZLE_TABLE_NAME;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
+import com.tacticmaster.puzzle.ThemePerformance;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
 class DatabaseAccessorTest {
 
+    private static final String PUZZLE_BY_ID = "SELECT " + COLUMN_PUZZLE_ID + ", " + PuzzleTable.COLUMN_FEN + ", " +
+            PuzzleTable.COLUMN_MOVES + ", " + COLUMN_RATING + ", " + COLUMN_THEMES + " FROM " + PUZZLE_TABLE_NAME +
+            " WHERE " + COLUMN_PUZZLE_ID + " = ?";
+
+    private static final String APPLIED_SEQUENCE = "SELECT IFNULL(MAX(" + PuzzleTable.COLUMN_SEQUENCE + "), 0) FROM " +
+            PuzzleTable.JOURNAL_STATE_TABLE_NAME;
+    private static final String SET_APPLIED_SEQUENCE = "INSERT OR REPLACE INTO " + PuzzleTable.JOURNAL_STATE_TABLE_NAME +
+            " (" + PuzzleTable.COLUMN_ID + ", " + PuzzleTable.COLUMN_SEQUENCE + ") VALUES (0, ?)";
+
     @Mock
     private DatabaseHelper mockDbHelper;
 
     @Mock
     private SQLiteDatabase mockDatabase;
 
+    @Mock
+    private SQLiteDatabase mockProgressDatabase;
+
     @Mock
     private Cursor mockCursor;
 
+    @Mock
+    private Cursor mockProgressCursor;
+
+    @TempDir
+    File filesDir;
+
+    private final Map<String, SQLiteStatement> compiledStatements = new HashMap<>();
+
     private DatabaseAccessor databaseAccessor;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        when(mockDbHelper.openDatabase()).thenReturn(mockDatabase);
+        when(mockDbHelper.acquireDatabase()).thenReturn(mockDatabase);
+        when(mockDbHelper.getWritableDatabase()).thenReturn(mockProgressDatabase);
+        when(mockDbHelper.progressJournalFile()).thenReturn(new File(filesDir, DatabaseHelper.PROGRESS_JOURNAL_NAME));
+        when(mockDbHelper.themePerformanceFile()).thenReturn(new File(filesDir, DatabaseHelper.THEME_PERFORMANCE_NAME));
+        when(mockDbHelper.puzzleCacheFile(PuzzleBackend.SQLITE)).thenReturn(new File(filesDir, DatabaseHelper.PUZZLE_CACHE_NAME));
+        when(mockProgressDatabase.rawQuery(anyString(), any())).thenReturn(mockProgressCursor);
+        when(mockProgressDatabase.compileStatement(anyString())).thenAnswer(invocation ->
+                compiledStatements.computeIfAbsent(invocation.getArgument(0), sql -> mock(SQLiteStatement.class)));
         databaseAccessor = new DatabaseAccessor(mockDbHelper);
     }
 
+    private SQLiteStatement compiled(String sql) {
+        SQLiteStatement statement = compiledStatements.get(sql);
+        assertNotNull(statement, "Not compiled: " + sql);
+        return statement;
+    }
+
+    // Rows in the sampler's column order: PuzzleId, FEN, Moves, Rating, Themes, SampleKey.
+    private static Cursor sampledRow(String puzzleId, int rating) {
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true, false);
+        when(cursor.getString(0)).thenReturn(puzzleId);
+        when(cursor.getString(1)).thenReturn("fen");
+        when(cursor.getString(2)).thenReturn("moves");
+        when(cursor.getInt(3)).thenReturn(rating);
+        when(cursor.getString(4)).thenReturn("fork");
+        return cursor;
+    }
+
+    private void givenSolvedPuzzles(String... puzzleIds) {
+        int[] position = {-1};
+        // doAnswer, so restubbing for a second accessor does not call the previous answer.
+        doAnswer(invocation -> ++position[0] < puzzleIds.length).when(mockProgressCursor).moveToNext();
+        doAnswer(invocation -> puzzleIds[position[0]]).when(mockProgressCursor).getString(0);
+    }
+
+    @Test
+    void testSharedHandleIsAcquiredOnceAndNeverClosedPerCall() {
+        when(mockDatabase.rawQuery(anyString(), any())).thenReturn(mockCursor);
+        when(mockCursor.moveToFirst()).thenReturn(true);
+
+        databaseAccessor.getAllPuzzleCount();
+        databaseAccessor.getSolvedPuzzleCount();
+        databaseAccessor.setSolved("1");
+
+        verify(mockDbHelper, times(1)).acquireDatabase();
+        verify(mockDbHelper, times(1)).getWritableDatabase();
+        verify(mockDatabase, never()).close();
+    }
+
+    @Test
+    void testCloseReleasesHandleOnce() {
+        when(mockDatabase.rawQuery(anyString(), any())).thenReturn(mockCursor);
+        databaseAccessor.getAllPuzzleCount();
+
+        databaseAccessor.close();
+        databaseAccessor.close();
+
+        verify(mockDbHelper, times(1)).releaseDatabase();
+    }
+
+    @Test
+    void testPackIsInstalledOnFirstUseNotInConstructor() throws IOException {
+        verify(mockDbHelper, never()).createDatabase();
+
+        databaseAccessor.getSolvedPuzzleCount();
+
+        verify(mockDbHelper, times(1)).createDatabase();
+    }
+
+    @Test
+    void testClosedAccessorDoesNotReopenTheHandle() {
+        databaseAccessor.close();
+
+        assertThrows(IllegalStateException.class, () -> databaseAccessor.getAllPuzzleCount());
+        verify(mockDbHelper, never()).acquireDatabase();
+    }
+
+    @Test
+    void testCloseWithoutUseDoesNotRelease() {
+        databaseAccessor.close();
+
+        verify(mockDbHelper, never()).releaseDatabase();
+    }
+
     @Test
     void testSetSolved() {
         String puzzleId = "12345";
         databaseAccessor.setSolved(puzzleId);
-        verify(mockDatabase).execSQL("UPDATE " + PUZZLE_TABLE_NAME + " SET " + COLUMN_SOLVED + " = 1 WHERE " + COLUMN_PUZZLE_ID + " = ?", new String[]{puzzleId});
+        databaseAccessor.flushProgress();
+
+        SQLiteStatement insert = compiled("INSERT OR IGNORE INTO " + PROGRESS_TABLE_NAME + " (" + COLUMN_PUZZLE_ID + ") VALUES (?)");
+        SQLiteStatement update = compiled("UPDATE " + PROGRESS_TABLE_NAME + " SET " + COLUMN_SOLVED + " = 1 WHERE " + COLUMN_PUZZLE_ID + " = ?");
+        verify(insert).bindString(1, puzzleId);
+        verify(insert).executeUpdateDelete();
+        verify(update).bindString(1, puzzleId);
+        verify(update).executeUpdateDelete();
+        verify(mockProgressDatabase).setTransactionSuccessful();
+        assertFalse(databaseAccessor.wasNotSolved(puzzleId));
+    }
+
+    @Test
+    void testSolvingReusesCompiledStatements() {
+        for (int i = 0; i < 10; i++) {
+            databaseAccessor.wasNotSolved("p" + i);
+            databaseAccessor.setSolved("p" + i);
+        }
+        databaseAccessor.flushProgress();
+
+        // Applied sequence, insert, solve and the new applied sequence.
+        verify(mockProgressDatabase, times(4)).compileStatement(anyString());
+        verify(mockProgressDatabase, never()).execSQL(anyString(), any());
+        verify(mockProgressDatabase, never()).execSQL(anyString());
+    }
+
+    @Test
+    void testCloseReleasesCompiledStatements() {
+        databaseAccessor.setSolved("1");
+
+        databaseAccessor.close();
+
+        compiledStatements.values().forEach(statement -> verify(statement).close());
+    }
+
+    @Test
+    void testProgressIsJournaledUntilTheFlushThreshold() {
+        for (int i = 0; i < ProgressJournal.FLUSH_SIZE - 1; i++) {
+            databaseAccessor.setSolved("p" + i);
+        }
+
+        verify(mockProgressDatabase, never()).beginTransaction();
+        assertTrue(new File(filesDir, DatabaseHelper.PROGRESS_JOURNAL_NAME).exists());
+        assertFalse(databaseAccessor.wasNotSolved("p0"));
+
+        databaseAccessor.setSolved("p" + ProgressJournal.FLUSH_SIZE);
+
+        verify(mockProgressDatabase, times(1)).beginTransaction();
+        verify(mockProgressDatabase, times(1)).setTransactionSuccessful();
+        verify(mockProgressDatabase, times(1)).endTransaction();
+        verify(compiled(SET_APPLIED_SEQUENCE)).bindLong(1, ProgressJournal.FLUSH_SIZE);
+        assertFalse(new File(filesDir, DatabaseHelper.PROGRESS_JOURNAL_NAME).exists());
+    }
+
+    @Test
+    void testJournalLeftByAKilledProcessIsAppliedOnFirstUse() throws IOException {
+        Files.write(new File(filesDir, DatabaseHelper.PROGRESS_JOURNAL_NAME).toPath(),
+                "1 S done\n2 S again\n3 S ".getBytes(StandardCharsets.UTF_8));
+
+        databaseAccessor.getSolvedPuzzleCount();
+
+        // Replayed and committed before the solved ids are read, so the read includes them.
+        InOrder inOrder = inOrder(mockProgressDatabase);
+        inOrder.verify(mockProgressDatabase).setTransactionSuccessful();
+        inOrder.verify(mockProgressDatabase).rawQuery(anyString(), any());
+        SQLiteStatement solve = compiled("UPDATE " + PROGRESS_TABLE_NAME + " SET " + COLUMN_SOLVED + " = 1 WHERE " + COLUMN_PUZZLE_ID + " = ?");
+        verify(solve).bindString(1, "done");
+        verify(solve).bindString(1, "again");
+        verify(compiled(SET_APPLIED_SEQUENCE)).bindLong(1, 2);
+        verify(mockProgressDatabase, times(1)).setTransactionSuccessful();
+    }
+
+    @Test
+    void testJournalEntriesAlreadyAppliedAreNotReplayed() throws IOException {
+        Files.write(new File(filesDir, DatabaseHelper.PROGRESS_JOURNAL_NAME).toPath(),
+                "1 S done\n".getBytes(StandardCharsets.UTF_8));
+        SQLiteStatement appliedSequence = mock(SQLiteStatement.class);
+        when(appliedSequence.simpleQueryForLong()).thenReturn(1L);
+        compiledStatements.put(APPLIED_SEQUENCE, appliedSequence);
+
+        databaseAccessor.getSolvedPuzzleCount();
+
+        verify(mockProgressDatabase, never()).beginTransaction();
+    }
+
+    @Test
+    void testFlushWithoutProgressDoesNotOpenTheProgressStore() {
+        databaseAccessor.flushProgress();
+
+        verify(mockDbHelper, never()).getWritableDatabase();
+    }
+
+    @Test
+    void testAttemptsUpdateThemePerformanceSavedOnFlush() {
+        databaseAccessor.recordPuzzleAttempt(new PuzzleAttempt("1", "fork", 1500, 0, 5_000, 0, true, 1500, 1516));
+
+        assertEquals(1, databaseAccessor.getThemePerformance().theme("fork").attempts());
+        File snapshot = new File(filesDir, DatabaseHelper.THEME_PERFORMANCE_NAME);
+        assertFalse(snapshot.exists());
+
+        databaseAccessor.flushProgress();
+
+        assertTrue(snapshot.exists());
+        assertEquals(1, ThemePerformance.load(snapshot).theme("fork").attempts());
+    }
+
+    @Test
+    void testFailedAttemptIsScheduledForReview() {
+        databaseAccessor.recordPuzzleAttempt(new PuzzleAttempt("1", "pin", 1500, 0, 5_000, 0, false, 1500, 1484));
+
+        SQLiteStatement save = compiled(ReviewStore.SAVE_REVIEW);
+        verify(save).bindString(1, "1");
+        verify(save).executeInsert();
+    }
+
+    @Test
+    void testCloseSavesChangedThemePerformance() {
+        databaseAccessor.recordPuzzleAttempt(new PuzzleAttempt("1", "pin", 1500, 0, 5_000, 0, false, 1500, 1484));
+
+        databaseAccessor.close();
+
+        assertEquals(1, ThemePerformance.load(new File(filesDir, DatabaseHelper.THEME_PERFORMANCE_NAME)).theme("pin").attempts());
+    }
+
+    @Test
+    void testProgressNeverWritesToThePack() {
+        databaseAccessor.setSolved("1");
+        databaseAccessor.recordPuzzleAttempt(new PuzzleAttempt("1", "pin", 1500, 0, 5_000, 0, true, 1500, 1516));
+        databaseAccessor.flushProgress();
+
+        verify(mockDatabase, never()).execSQL(anyString(), any());
+        verify(mockDatabase, never()).execSQL(anyString());
     }
 
     @Test
     void testGetSolvedPuzzleCount() {
-        when(mockDatabase.rawQuery("SELECT COUNT(*) FROM " + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_SOLVED + " = 1", null)).thenReturn(mockCursor);
-        when(mockCursor.moveToFirst()).thenReturn(true);
-        when(mockCursor.getInt(0)).thenReturn(5);
+        givenSolvedPuzzles("a", "b", "c", "d", "e");
+
+        assertEquals(5, databaseAccessor.getSolvedPuzzleCount());
+        assertEquals(5, databaseAccessor.getSolvedPuzzleCount());
 
-        int count = databaseAccessor.getSolvedPuzzleCount();
-        assertEquals(5, count);
+        // Loaded once from the progress store, then answered from memory.
+        verify(mockProgressDatabase, times(1)).rawQuery(anyString(), any());
+        verify(mockDatabase, never()).rawQuery(anyString(), any());
     }
 
     @Test
@@ -79,33 +336,36 @@ class DatabaseAccessorTest {
         assertEquals(10, count);
     }
 
+    @Test
+    void testCountersAreNotRecountedOnEveryRender() {
+        givenSolvedPuzzles("a", "b");
+        when(mockDatabase.rawQuery("SELECT COUNT(*) FROM " + PUZZLE_TABLE_NAME, null)).thenReturn(mockCursor);
+        when(mockCursor.moveToFirst()).thenReturn(true);
+        when(mockCursor.getInt(0)).thenReturn(10);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(10, databaseAccessor.getAllPuzzleCount());
+            assertEquals(2, databaseAccessor.getSolvedPuzzleCount());
+        }
+        databaseAccessor.setSolved("c");
+        databaseAccessor.setSolved("c");
+
+        assertEquals(3, databaseAccessor.getSolvedPuzzleCount());
+        verify(mockDatabase, times(1)).rawQuery(anyString(), any());
+        verify(mockProgressDatabase, times(1)).rawQuery(anyString(), any());
+    }
+
     @Test
     void testGetPuzzlesWithinRange() {
         Set<String> excludedIds = new HashSet<>();
         excludedIds.add("123");
         excludedIds.add("456");
 
-        Set<String> themes = new HashSet<>();
-        themes.add("theme1");
-        themes.add("theme2");
-
-        // Mock with any string array since the order of themes/IDs may vary
-        when(mockDatabase.rawQuery(anyString(), any(String[].class))).thenReturn(mockCursor);
-
-        when(mockCursor.moveToNext()).thenReturn(true, true, true, false); // 3 rows
-        when(mockCursor.getColumnIndex(COLUMN_PUZZLE_ID)).thenReturn(0);
-        when(mockCursor.getColumnIndex(PuzzleTable.COLUMN_FEN)).thenReturn(1);
-        when(mockCursor.getColumnIndex(PuzzleTable.COLUMN_MOVES)).thenReturn(2);
-        when(mockCursor.getColumnIndex(COLUMN_RATING)).thenReturn(3);
-        when(mockCursor.getColumnIndex(COLUMN_SOLVED)).thenReturn(4);
-        when(mockCursor.getColumnIndex(COLUMN_THEMES)).thenReturn(5);
+        long themes = ThemeMask.of(Set.of("fork", "pin"));
 
-        when(mockCursor.getString(0)).thenReturn("puzzle1", "puzzle2", "puzzle3");
-        when(mockCursor.getString(1)).thenReturn("fen1", "fen2", "fen3");
-        when(mockCursor.getString(2)).thenReturn("moves1", "moves2", "moves3");
-        when(mockCursor.getInt(3)).thenReturn(1700, 1750, 1800);
-        when(mockCursor.getInt(4)).thenReturn(0, 0, 0);
-        when(mockCursor.getString(5)).thenReturn("theme1", "theme2", "theme3");
+        Cursor[] cursors = {sampledRow("puzzle1", 1700), sampledRow("puzzle2", 1750), sampledRow("puzzle3", 1800), mockCursor};
+        when(mockDatabase.rawQuery(anyString(), any(String[].class))).thenReturn(cursors[0], Arrays.copyOfRange(cursors, 1, cursors.length));
+        when(mockCursor.moveToNext()).thenReturn(false);
 
         List<Puzzle> puzzles = databaseAccessor.getPuzzlesWithinRange(1600, 1800, excludedIds, themes);
 
@@ -115,61 +375,105 @@ class DatabaseAccessorTest {
         assertEquals("puzzle3", puzzles.get(2).puzzleId());
     }
 
+    @Test
+    void testGetPuzzlesWithinRange_skipsSolvedPuzzlesWithoutQueryingProgressInSql() {
+        givenSolvedPuzzles("solved");
+        Cursor page = mock(Cursor.class);
+        when(page.moveToNext()).thenReturn(true, true, false);
+        when(page.getString(0)).thenReturn("solved", "open");
+        when(page.getInt(3)).thenReturn(1700);
+        when(mockDatabase.rawQuery(anyString(), any(String[].class))).thenReturn(page, mockCursor);
+        when(mockCursor.moveToNext()).thenReturn(false);
+
+        List<Puzzle> puzzles = databaseAccessor.getPuzzlesWithinRange(1600, 1800, new HashSet<>(), ThemeMask.NONE);
+
+        assertEquals(1, puzzles.size());
+        assertEquals("open", puzzles.get(0).puzzleId());
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockDatabase, atLeastOnce()).rawQuery(queryCaptor.capture(), any(String[].class));
+        queryCaptor.getAllValues().forEach(query -> assertFalse(query.contains(COLUMN_SOLVED), query));
+    }
+
     @Test
     public void testGetPuzzlesWithinRange_ratingsAreParameterizedNotInterpolated() {
         when(mockDatabase.rawQuery(anyString(), any(String[].class))).thenReturn(mockCursor);
         when(mockCursor.moveToNext()).thenReturn(false);
 
-        databaseAccessor.getPuzzlesWithinRange(1600, 1800, new HashSet<>(), new HashSet<>());
+        databaseAccessor.getPuzzlesWithinRange(1600, 1800, new HashSet<>(), ThemeMask.NONE);
 
         ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<String[]> argsCaptor = ArgumentCaptor.forClass(String[].class);
-        verify(mockDatabase).rawQuery(queryCaptor.capture(), argsCaptor.capture());
+        verify(mockDatabase, atLeastOnce()).rawQuery(queryCaptor.capture(), argsCaptor.capture());
 
-        String query = queryCaptor.getValue();
-        // Ratings must be bound parameters, not interpolated.
-        assertFalse(query.contains("1600"), "Lowest rating must not be interpolated into SQL: " + query);
-        assertFalse(query.contains("1800"), "Highest rating must not be interpolated into SQL: " + query);
-        assertTrue(query.contains(COLUMN_RATING + " >= ?"));
-        assertTrue(query.contains(COLUMN_RATING + " <= ?"));
+        for (String query : queryCaptor.getAllValues()) {
+            // Ratings must be bound parameters, not interpolated.
+            assertFalse(query.contains("1600"), "Lowest rating must not be interpolated into SQL: " + query);
+            assertFalse(query.contains("1800"), "Highest rating must not be interpolated into SQL: " + query);
+        }
 
-        String[] args = argsCaptor.getValue();
-        assertEquals("1600", args[0]);
-        assertEquals("1800", args[1]);
+        boolean lowestBound = false;
+        boolean highestBound = false;
+        for (String[] args : argsCaptor.getAllValues()) {
+            lowestBound |= Arrays.asList(args).contains("1600");
+            highestBound |= Arrays.asList(args).contains("1800");
+        }
+        assertTrue(lowestBound, "Lowest rating must be bound as an argument");
+        assertTrue(highestBound, "Highest rating must be bound as an argument");
     }
 
     @Test
-    public void testGetPuzzlesWithinRange_themeFilterUsesWordBoundary() {
+    public void testGetPuzzlesWithinRange_neverSortsTheBandRandomly() {
+        when(mockDatabase.rawQuery(anyString(), any(String[].class))).thenReturn(mockCursor);
+        when(mockCursor.moveToNext()).thenReturn(false);
+
+        databaseAccessor.getPuzzlesWithinRange(1600, 1800, new HashSet<>(), ThemeMask.NONE);
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockDatabase, atLeastOnce()).rawQuery(queryCaptor.capture(), any(String[].class));
+        for (String query : queryCaptor.getAllValues()) {
+            assertFalse(query.contains("RANDOM()"), "Sampling must not sort the band: " + query);
+            assertTrue(query.endsWith("LIMIT " + PuzzleSampler.PAGE_SIZE), "Each probe must page through the index: " + query);
+        }
+    }
+
+    @Test
+    public void testGetPuzzlesWithinRange_themeFilterUsesMaskNotLike() {
         // Regression: LIKE '%mate%' incorrectly matched 'mateIn1', 'mateIn2', etc.
-        // Theme matching must be on whole tokens.
-        Set<String> themes = new HashSet<>();
-        themes.add("mate");
+        // Each theme now owns a distinct bit, and the filter is a single bitwise test.
+        long themeMask = ThemeMask.of(Set.of("mate"));
 
         when(mockDatabase.rawQuery(anyString(), any(String[].class))).thenReturn(mockCursor);
         when(mockCursor.moveToNext()).thenReturn(false);
 
-        databaseAccessor.getPuzzlesWithinRange(1000, 2000, new HashSet<>(), themes);
+        databaseAccessor.getPuzzlesWithinRange(1000, 2000, new HashSet<>(), themeMask);
 
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<String[]> argsCaptor = ArgumentCaptor.forClass(String[].class);
-        verify(mockDatabase).rawQuery(anyString(), argsCaptor.capture());
-
-        String[] args = argsCaptor.getValue();
-        boolean foundBoundedMatch = false;
-        for (String arg : args) {
-            if ("% mate %".equals(arg)) {
-                foundBoundedMatch = true;
-                break;
-            }
-            assertNotEquals("%mate%", arg, "Theme LIKE pattern must be word-bounded ('% mate %'), not substring ('%mate%')");
-        }
-        assertTrue(foundBoundedMatch, "Theme arg must be word-bounded; got: " + java.util.Arrays.toString(args));
+        verify(mockDatabase, atLeastOnce()).rawQuery(queryCaptor.capture(), argsCaptor.capture());
+
+        String query = queryCaptor.getValue();
+        assertFalse(query.contains("LIKE"), "Theme filter must not pattern-match strings: " + query);
+        assertTrue(query.contains("(" + COLUMN_THEME_MASK + " & ?) != 0"), query);
+        assertTrue(Arrays.asList(argsCaptor.getValue()).contains(String.valueOf(themeMask)));
+        assertEquals(0, themeMask & ThemeMask.of(Set.of("mateIn1", "mateIn2")));
+    }
+
+    @Test
+    public void testGetPuzzlesWithinRange_noThemeFilterWithoutMask() {
+        when(mockDatabase.rawQuery(anyString(), any(String[].class))).thenReturn(mockCursor);
+        when(mockCursor.moveToNext()).thenReturn(false);
+
+        databaseAccessor.getPuzzlesWithinRange(1000, 2000, new HashSet<>(), ThemeMask.NONE);
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockDatabase, atLeastOnce()).rawQuery(queryCaptor.capture(), any(String[].class));
+        assertFalse(queryCaptor.getValue().contains(COLUMN_THEME_MASK));
     }
 
     @Test
     void testGetPuzzleById() {
         String puzzleId = "1";
-        when(mockDatabase.rawQuery("SELECT * FROM " + PUZZLE_TABLE_NAME +
-                " WHERE " + COLUMN_PUZZLE_ID + " = ?", new String[]{puzzleId})).thenReturn(mockCursor);
+        when(mockDatabase.rawQuery(PUZZLE_BY_ID, new String[]{puzzleId})).thenReturn(mockCursor);
         when(mockCursor.moveToNext()).thenReturn(true, false); // 1 row
         when(mockCursor.getColumnIndex(COLUMN_PUZZLE_ID)).thenReturn(0);
         when(mockCursor.getColumnIndex(PuzzleTable.COLUMN_FEN)).thenReturn(1);
@@ -189,94 +493,213 @@ class DatabaseAccessorTest {
         Puzzle puzzle = databaseAccessor.getPuzzleById(puzzleId);
 
         assertEquals(puzzleId, puzzle.puzzleId());
+        assertFalse(puzzle.solved());
 
-        when(mockDatabase.rawQuery("SELECT * FROM " + PUZZLE_TABLE_NAME +
-                " WHERE " + COLUMN_PUZZLE_ID + " = ?", new String[]{"2"})).thenReturn(mockCursor);
+        when(mockDatabase.rawQuery(PUZZLE_BY_ID, new String[]{"2"})).thenReturn(mockCursor);
         when(mockCursor.moveToNext()).thenReturn(false); // 0 rows
 
         assertThrows(NoSuchElementException.class, () -> databaseAccessor.getPuzzleById("2"));
     }
 
     @Test
-    void testWasNotSolved() {
-        String puzzleId = "12345";
+    void testRepeatedLookupIsServedFromTheCache() {
+        when(mockDatabase.rawQuery(PUZZLE_BY_ID, new String[]{"1"})).thenReturn(mockCursor);
+        when(mockCursor.moveToNext()).thenReturn(true, false);
+        when(mockCursor.getColumnIndex(COLUMN_PUZZLE_ID)).thenReturn(0);
+        when(mockCursor.getColumnIndex(PuzzleTable.COLUMN_FEN)).thenReturn(1);
+        when(mockCursor.getColumnIndex(PuzzleTable.COLUMN_MOVES)).thenReturn(2);
+        when(mockCursor.getColumnIndex(COLUMN_RATING)).thenReturn(3);
+        when(mockCursor.getString(0)).thenReturn("1");
 
-        when(mockDatabase.rawQuery("SELECT " + COLUMN_SOLVED + " FROM " + PUZZLE_TABLE_NAME + " WHERE " + COLUMN_PUZZLE_ID + " = ?", new String[]{puzzleId}))
-                .thenReturn(mockCursor);
-        when(mockCursor.moveToFirst()).thenReturn(true);
-        when(mockCursor.getInt(0)).thenReturn(0);
+        Puzzle first = databaseAccessor.getPuzzleById("1");
+        Puzzle second = databaseAccessor.getPuzzleById("1");
+
+        assertEquals(first, second);
+        verify(mockDatabase, times(1)).rawQuery(PUZZLE_BY_ID, new String[]{"1"});
+        assertEquals(1, databaseAccessor.getPuzzleCache().hitCount());
+        assertEquals(1, databaseAccessor.getPuzzleCache().missCount());
+    }
 
-        boolean result = databaseAccessor.wasNotSolved(puzzleId);
-        assertTrue(result);
+    @Test
+    void testLastSessionsPuzzlesAreRestoredWithoutOpeningThePack() {
+        Puzzle shown = new Puzzle("1", "fen", "e2e4 e7e5", 1500, "fork", false);
+        databaseAccessor.rememberPuzzle(shown);
+        databaseAccessor.close();
+
+        DatabaseAccessor nextSession = new DatabaseAccessor(mockDbHelper);
 
-        when(mockCursor.getInt(0)).thenReturn(1);
+        assertEquals(shown, nextSession.getPuzzleById("1"));
+        verify(mockDbHelper, never()).acquireDatabase();
+    }
 
-        result = databaseAccessor.wasNotSolved(puzzleId);
-        assertFalse(result);
+    @Test
+    void testSolvingACachedPuzzleUpdatesItsSolvedFlag() {
+        databaseAccessor.rememberPuzzle(new Puzzle("1", "fen", "e2e4 e7e5", 1500, "fork", false));
 
-        when(mockCursor.moveToFirst()).thenReturn(false);
+        databaseAccessor.setSolved("1");
 
-        result = databaseAccessor.wasNotSolved(puzzleId);
-        assertTrue(result);
+        assertTrue(databaseAccessor.getPuzzleById("1").solved());
     }
 
     @Test
-    public void testGetPuzzleThemes_emptyResult() {
-        when(mockDatabase.rawQuery(anyString(), any())).thenReturn(mockCursor);
-        when(mockCursor.getColumnIndex(COLUMN_THEMES)).thenReturn(-1);
-        when(mockCursor.moveToNext()).thenReturn(false);
+    void testWasNotSolved() {
+        givenSolvedPuzzles("12345");
 
-        Set<String> themes = databaseAccessor.getPuzzleThemes();
-        assertTrue(themes.isEmpty());
+        assertFalse(databaseAccessor.wasNotSolved("12345"));
+        assertTrue(databaseAccessor.wasNotSolved("67890"));
+        verify(mockDatabase, never()).rawQuery(anyString(), any());
     }
 
     @Test
-    public void testGetPuzzleThemes_singleTheme() {
-        when(mockDatabase.rawQuery(anyString(), any())).thenReturn(mockCursor);
-        when(mockCursor.getColumnIndex(COLUMN_THEMES)).thenReturn(0);
+    void testGetPuzzleByIdTakesSolvedStateFromProgress() {
+        givenSolvedPuzzles("1");
+        when(mockDatabase.rawQuery(PUZZLE_BY_ID, new String[]{"1"})).thenReturn(mockCursor);
         when(mockCursor.moveToNext()).thenReturn(true, false);
-        when(mockCursor.getString(0)).thenReturn("strategy");
+        when(mockCursor.getColumnIndex(COLUMN_PUZZLE_ID)).thenReturn(0);
+        when(mockCursor.getColumnIndex(PuzzleTable.COLUMN_FEN)).thenReturn(1);
+        when(mockCursor.getColumnIndex(PuzzleTable.COLUMN_MOVES)).thenReturn(2);
+        when(mockCursor.getColumnIndex(COLUMN_RATING)).thenReturn(3);
+        when(mockCursor.getColumnIndex(COLUMN_THEMES)).thenReturn(4);
+        when(mockCursor.getString(0)).thenReturn("1");
 
-        Set<String> themes = databaseAccessor.getPuzzleThemes();
-        assertEquals(1, themes.size());
-        assertTrue(themes.contains("strategy"));
+        assertTrue(databaseAccessor.getPuzzleById("1").solved());
     }
 
     @Test
-    public void testGetPuzzleThemes_multipleThemes() {
+    void testPuzzleIdIndexIsReadFromSqliteInOnePass() {
         when(mockDatabase.rawQuery(anyString(), any())).thenReturn(mockCursor);
-        when(mockCursor.getColumnIndex(COLUMN_THEMES)).thenReturn(0);
-        when(mockCursor.moveToNext()).thenReturn(true, true, false);
-        when(mockCursor.getString(0)).thenReturn("strategy tactics", "endgame");
+        when(mockCursor.getCount()).thenReturn(3);
+        when(mockCursor.moveToNext()).thenReturn(true, true, true, false);
+        when(mockCursor.getString(0)).thenReturn("b0002", "a0001", "a0003");
 
-        Set<String> themes = databaseAccessor.getPuzzleThemes();
-        assertEquals(3, themes.size());
-        assertTrue(themes.contains("strategy"));
-        assertTrue(themes.contains("tactics"));
-        assertTrue(themes.contains("endgame"));
+        PuzzleIdIndex index = databaseAccessor.getPuzzleIdIndex();
+
+        assertEquals(3, index.size());
+        assertEquals(List.of("a0001", "a0003"), index.complete("a", 10));
+        verify(mockDatabase).rawQuery("SELECT " + COLUMN_PUZZLE_ID + " FROM " + PUZZLE_TABLE_NAME, null);
+    }
+
+    private void ratingsCursor(String[] puzzleIds, Integer[] ratings, Long[] themeMasks) {
+        Cursor cursor = mock(Cursor.class);
+        int[] position = {-1};
+        doAnswer(invocation -> ++position[0] < puzzleIds.length).when(cursor).moveToNext();
+        doAnswer(invocation -> puzzleIds[position[0]]).when(cursor).getString(0);
+        doAnswer(invocation -> ratings[position[0]]).when(cursor).getInt(1);
+        doAnswer(invocation -> themeMasks[position[0]]).when(cursor).getLong(2);
+        when(mockDatabase.rawQuery(startsWith("SELECT " + COLUMN_PUZZLE_ID + ", " + COLUMN_RATING), any())).thenReturn(cursor);
     }
 
     @Test
-    public void testGetPuzzleThemes_emptyAndNullThemes() {
-        when(mockDatabase.rawQuery(anyString(), any())).thenReturn(mockCursor);
-        when(mockCursor.getColumnIndex(COLUMN_THEMES)).thenReturn(0);
-        when(mockCursor.moveToNext()).thenReturn(true).thenReturn(true).thenReturn(true).thenReturn(false);
-        when(mockCursor.getString(0)).thenReturn("").thenReturn(null).thenReturn("  ");
+    public void testGetPuzzleThemes_emptyResult() {
+        ratingsCursor(new String[0], new Integer[0], new Long[0]);
 
         Set<String> themes = databaseAccessor.getPuzzleThemes();
         assertTrue(themes.isEmpty());
     }
 
     @Test
-    public void testGetPuzzleThemes_queryConstruction() {
-        String expectedQuery = "SELECT DISTINCT " + COLUMN_THEMES + " FROM " + PUZZLE_TABLE_NAME +
-                " WHERE " + COLUMN_THEMES + " IS NOT NULL AND " +
-                COLUMN_THEMES + " != '' AND " + COLUMN_SOLVED + " = 0";
-        when(mockDatabase.rawQuery(expectedQuery, null)).thenReturn(mockCursor);
-        when(mockCursor.getColumnIndex(COLUMN_THEMES)).thenReturn(0);
-        when(mockCursor.moveToNext()).thenReturn(false);
+    public void testGetPuzzleThemes_onlyThemesWithUnsolvedPuzzles() {
+        givenSolvedPuzzles("3");
+        ratingsCursor(new String[]{"1", "2", "3", "4"}, new Integer[]{1500, 1700, 1800, 1900},
+                new Long[]{ThemeMask.of(List.of("fork", "pin")), ThemeMask.of(List.of("pin", "endgame")), ThemeMask.bitOf("mate"), ThemeMask.NONE});
+
+        assertEquals(Set.of("fork", "pin", "endgame"), databaseAccessor.getPuzzleThemes());
 
+        Cursor solved = mock(Cursor.class);
+        when(solved.moveToFirst()).thenReturn(true);
+        when(solved.getInt(0)).thenReturn(1500);
+        when(solved.getLong(1)).thenReturn(ThemeMask.of(List.of("fork", "pin")));
+        when(mockDatabase.rawQuery(eq(DatabaseAccessor.RATING_BY_ID), any())).thenReturn(solved);
+        databaseAccessor.setSolved("1");
+
+        assertEquals(Set.of("pin", "endgame"), databaseAccessor.getPuzzleThemes());
+    }
+
+    @Test
+    public void testGetPuzzleThemes_packIsReadOnce() {
+        ratingsCursor(new String[]{"1"}, new Integer[]{1500}, new Long[]{ThemeMask.bitOf("fork")});
+
+        databaseAccessor.getPuzzleThemes();
         databaseAccessor.getPuzzleThemes();
-        verify(mockDatabase, times(1)).rawQuery(expectedQuery, null);
+
+        verify(mockDatabase, times(1)).rawQuery(anyString(), any());
+    }
+
+    @Test
+    void testImportedPackIsReadFromItsOwnFileWithTheBundledProgress() throws IOException {
+        SQLiteDatabase importedDatabase = mock(SQLiteDatabase.class);
+        when(mockDbHelper.openImportedPack()).thenReturn(importedDatabase);
+        when(importedDatabase.rawQuery("SELECT COUNT(*) FROM " + PUZZLE_TABLE_NAME, null)).thenReturn(mockCursor);
+        when(mockCursor.moveToFirst()).thenReturn(true);
+        when(mockCursor.getInt(0)).thenReturn(7);
+        givenSolvedPuzzles("a");
+        ProgressStores stores = new ProgressStores(mockDbHelper, PuzzleBackend.SQLITE);
+        DatabaseAccessor bundled = new DatabaseAccessor(stores);
+        DatabaseAccessor imported = DatabaseAccessor.importedPack(mockDbHelper, stores);
+
+        assertEquals(7, imported.getAllPuzzleCount());
+        imported.setSolved("i1");
+
+        assertFalse(bundled.wasNotSolved("i1"));
+        assertEquals(2, bundled.getSolvedPuzzleCount());
+        assertEquals(0, imported.getSolvedPuzzleCount());
+        assertNull(imported.pollDueReview(ThemeMask.NONE));
+        verify(mockDatabase, never()).rawQuery(anyString(), any());
+        verify(mockDbHelper, times(1)).getWritableDatabase();
+
+        imported.close();
+        verify(importedDatabase).close();
+        verify(mockDbHelper, never()).releaseDatabase();
+        assertThrows(IllegalStateException.class, imported::getPuzzleIdIndex);
+        bundled.close();
+        verify(mockDbHelper).releaseDatabase();
+    }
+
+    @Test
+    void testReloadedImportedPackIsReopenedAndCountedAgain() throws IOException {
+        SQLiteDatabase before = mock(SQLiteDatabase.class);
+        SQLiteDatabase after = mock(SQLiteDatabase.class);
+        when(mockDbHelper.openImportedPack()).thenReturn(before, after);
+        Cursor beforeCount = mock(Cursor.class);
+        when(beforeCount.moveToFirst()).thenReturn(true);
+        when(beforeCount.getInt(0)).thenReturn(7);
+        when(before.rawQuery("SELECT COUNT(*) FROM " + PUZZLE_TABLE_NAME, null)).thenReturn(beforeCount);
+        Cursor afterCount = mock(Cursor.class);
+        when(afterCount.moveToFirst()).thenReturn(true);
+        when(afterCount.getInt(0)).thenReturn(9);
+        when(after.rawQuery("SELECT COUNT(*) FROM " + PUZZLE_TABLE_NAME, null)).thenReturn(afterCount);
+        DatabaseAccessor imported = DatabaseAccessor.importedPack(mockDbHelper, new ProgressStores(mockDbHelper, PuzzleBackend.SQLITE));
+
+        assertEquals(7, imported.getAllPuzzleCount());
+        assertEquals(7, imported.getAllPuzzleCount());
+        imported.reloadPack();
+
+        verify(before).close();
+        assertEquals(9, imported.getAllPuzzleCount());
+    }
+
+    @Test
+    void testRatingHistogramFromSqliteIsBuiltOnceAndFollowsSolves() {
+        Cursor all = mock(Cursor.class);
+        when(all.moveToNext()).thenReturn(true, true, false);
+        when(all.getString(0)).thenReturn("1", "2");
+        when(all.getInt(1)).thenReturn(1500, 1700);
+        when(all.getLong(2)).thenReturn(ThemeMask.bitOf("fork"), ThemeMask.bitOf("pin"));
+        when(mockDatabase.rawQuery(startsWith("SELECT " + COLUMN_PUZZLE_ID + ", " + COLUMN_RATING), any())).thenReturn(all);
+        Cursor one = mock(Cursor.class);
+        when(one.moveToFirst()).thenReturn(true);
+        when(one.getInt(0)).thenReturn(1700);
+        when(one.getLong(1)).thenReturn(ThemeMask.bitOf("pin"));
+        when(mockDatabase.rawQuery(startsWith("SELECT " + COLUMN_RATING + ", " + COLUMN_THEME_MASK), any())).thenReturn(one);
+
+        RatingHistogram histogram = databaseAccessor.getRatingHistogram();
+        databaseAccessor.getRatingHistogram();
+
+        assertEquals(1, histogram.unsolved(1400, 1800, ThemeMask.bitOf("pin")));
+        databaseAccessor.setSolved("2");
+        assertTrue(histogram.isExhausted(ThemeMask.bitOf("pin")));
+        assertEquals(1, histogram.unsolved(1400, 1800, ThemeMask.NONE));
+        verify(mockDatabase, times(1)).rawQuery(startsWith("SELECT " + COLUMN_PUZZLE_ID + ", " + COLUMN_RATING), any());
+        verify(mockDatabase).rawQuery(anyString(), eq(new String[]{"2"}));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+class DatabaseExecutorTest {
+
+    private final List<Runnable> writes = new ArrayList<>();
+    private final List<Runnable> reads = new ArrayList<>();
+    private final List<Runnable> mainThread = new ArrayList<>();
+
+    private DatabaseExecutor databaseExecutor;
+
+    @BeforeEach
+    void setUp() {
+        databaseExecutor = new DatabaseExecutor(writes::add, reads::add, mainThread::add);
+    }
+
+    private static void drain(List<Runnable> queue) {
+        while (!queue.isEmpty()) {
+            queue.remove(0).run();
+        }
+    }
+
+    @Test
+    void testReadRunsOnReadPoolAndPostsResultToMainThread() {
+        List<Integer> results = new ArrayList<>();
+
+        databaseExecutor.read(() -> 42, results::add, e -> {
+        });
+
+        assertEquals(1, reads.size());
+        assertTrue(writes.isEmpty());
+        drain(reads);
+        assertTrue(results.isEmpty(), "Result must not be delivered on the worker thread");
+        drain(mainThread);
+        assertEquals(List.of(42), results);
+    }
+
+    @Test
+    void testWritesAreQueuedInSubmissionOrder() {
+        List<String> order = new ArrayList<>();
+
+        databaseExecutor.write(() -> order.add("first"));
+        databaseExecutor.write(() -> order.add("second"));
+
+        assertTrue(reads.isEmpty());
+        drain(writes);
+        assertEquals(List.of("first", "second"), order);
+    }
+
+    @Test
+    void testFailureIsPostedToErrorCallback() {
+        List<Exception> errors = new ArrayList<>();
+        List<Object> results = new ArrayList<>();
+
+        databaseExecutor.write(() -> {
+            throw new IllegalStateException("boom");
+        }, results::add, errors::add);
+        drain(writes);
+        drain(mainThread);
+
+        assertTrue(results.isEmpty());
+        assertEquals(1, errors.size());
+        assertEquals("boom", errors.get(0).getMessage());
+    }
+
+    @Test
+    void testConstructorRejectsNullExecutors() {
+        Executor direct = Runnable::run;
+        assertThrows(IllegalArgumentException.class, () -> new DatabaseExecutor(null, direct, direct));
+        assertThrows(IllegalArgumentException.class, () -> new DatabaseExecutor(direct, null, direct));
+        assertThrows(IllegalArgumentException.class, () -> new DatabaseExecutor(direct, direct, null));
+    }
+}
@@ -2,24 +2,44 @@ package com.tacticmaster.db;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.List;
 
 class DatabaseHelperTest {
 
@@ -73,13 +93,86 @@ class DatabaseHelperTest {
 
         databaseHelper.onCreate(mockDb);
 
-        // onCreate is empty, should complete without error
-        assertNotNull(databaseHelper);
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockDb, times(8)).execSQL(sqlCaptor.capture());
+        String sql = sqlCaptor.getAllValues().get(0);
+        assertTrue(sql.startsWith("CREATE TABLE IF NOT EXISTS " + PuzzleTable.PROGRESS_TABLE_NAME), sql);
+        assertTrue(sql.contains(PuzzleTable.COLUMN_PUZZLE_ID + " TEXT PRIMARY KEY"), sql);
+        assertTrue(sql.contains(PuzzleTable.COLUMN_ATTEMPTS), sql);
+        assertTrue(sqlCaptor.getAllValues().get(1).startsWith("CREATE TABLE IF NOT EXISTS " + PuzzleTable.JOURNAL_STATE_TABLE_NAME));
+        assertTrue(sqlCaptor.getAllValues().get(2).startsWith("CREATE TABLE IF NOT EXISTS " + PuzzleTable.ATTEMPTS_TABLE_NAME));
+    }
+
+    @Test
+    void testRollupTablesStartAtZero() {
+        databaseHelper = new DatabaseHelper(mockContext);
+        SQLiteDatabase mockDb = mock(SQLiteDatabase.class);
+
+        databaseHelper.onUpgrade(mockDb, 2, 3);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockDb, times(6)).execSQL(sqlCaptor.capture());
+        for (String table : List.of(PuzzleTable.DAILY_STATS_TABLE_NAME, PuzzleTable.THEME_STATS_TABLE_NAME, PuzzleTable.RATING_STATS_TABLE_NAME)) {
+            String sql = sqlCaptor.getAllValues().stream().filter(s -> s.contains(" " + table + " ")).findFirst().orElseThrow();
+            assertTrue(sql.contains(PuzzleTable.COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0"), sql);
+            assertTrue(sql.contains(PuzzleTable.COLUMN_SOLVE_TIME_MILLIS + " INTEGER NOT NULL DEFAULT 0"), sql);
+        }
+    }
+
+    @Test
+    void testOnUpgradeNeverTouchesThePack() throws IOException {
+        databaseHelper = new DatabaseHelper(mockContext);
+        SQLiteDatabase mockDb = mock(SQLiteDatabase.class);
+
+        databaseHelper.onUpgrade(mockDb, 1, 2);
+
+        verify(mockDb).execSQL(startsWith("CREATE TABLE IF NOT EXISTS " + PuzzleTable.JOURNAL_STATE_TABLE_NAME));
+        verify(mockDb).execSQL(startsWith("CREATE TABLE IF NOT EXISTS " + PuzzleTable.ATTEMPTS_TABLE_NAME));
+        verify(mockDb, times(6)).execSQL(startsWith("CREATE TABLE IF NOT EXISTS "));
+        verify(mockDb).execSQL(startsWith("CREATE INDEX IF NOT EXISTS " + PuzzleTable.INDEX_REVIEW_DUE));
+        verifyNoMoreInteractions(mockDb);
+        verify(mockAssetManager, never()).open(anyString());
+    }
+
+    @Test
+    void testOnUpgradeFromCurrentSchemaDoesNothing() {
+        databaseHelper = new DatabaseHelper(mockContext);
+        SQLiteDatabase mockDb = mock(SQLiteDatabase.class);
+
+        databaseHelper.onUpgrade(mockDb, 5, 6);
+
+        verifyNoInteractions(mockDb);
+    }
+
+    @Test
+    void testReviewScheduleGainsThemeMasks() {
+        databaseHelper = new DatabaseHelper(mockContext);
+        SQLiteDatabase mockDb = mock(SQLiteDatabase.class);
+
+        databaseHelper.onUpgrade(mockDb, 4, 5);
+
+        verify(mockDb).execSQL("ALTER TABLE " + PuzzleTable.REVIEW_TABLE_NAME + " ADD COLUMN " + PuzzleTable.COLUMN_THEME_MASK +
+                " INTEGER NOT NULL DEFAULT 0");
+        verifyNoMoreInteractions(mockDb);
+    }
+
+    @Test
+    void testReviewScheduleIsIndexedByDueTime() {
+        databaseHelper = new DatabaseHelper(mockContext);
+        SQLiteDatabase mockDb = mock(SQLiteDatabase.class);
+
+        databaseHelper.onUpgrade(mockDb, 3, 4);
+
+        verify(mockDb).execSQL(startsWith("CREATE TABLE IF NOT EXISTS " + PuzzleTable.REVIEW_TABLE_NAME));
+        verify(mockDb).execSQL("CREATE INDEX IF NOT EXISTS " + PuzzleTable.INDEX_REVIEW_DUE + " ON " + PuzzleTable.REVIEW_TABLE_NAME +
+                " (" + PuzzleTable.COLUMN_DUE_AT + ", " + PuzzleTable.COLUMN_PUZZLE_ID + ")");
+        verifyNoMoreInteractions(mockDb);
     }
 
     @Test
     void testDatabaseConstants() {
         assertEquals("puzzle.db", DatabaseHelper.DATABASE_NAME);
+        assertEquals("progress.db", DatabaseHelper.PROGRESS_DATABASE_NAME);
     }
 
     @Test
@@ -95,4 +188,84 @@ class DatabaseHelperTest {
                     "createDatabase must not declare java.lang.Error: " + t);
         }
     }
+
+    @Test
+    void testCreateDatabaseWithCurrentMetadataOpensNothing(@TempDir File filesDir) throws IOException {
+        when(mockContext.getFilesDir()).thenReturn(filesDir);
+        File pack = new File(filesDir, DatabaseHelper.DATABASE_NAME);
+        Files.write(pack.toPath(), new byte[]{1, 2, 3});
+        PackMetadata.of(pack, DatabaseHelper.PACK_VERSION).write(new File(filesDir, DatabaseHelper.PACK_METADATA_NAME));
+        databaseHelper = new DatabaseHelper(mockContext);
+
+        assertTrue(databaseHelper.isPackCurrent());
+        databaseHelper.createDatabase();
+
+        verifyNoInteractions(mockAssetManager);
+        verify(mockContext, never()).deleteDatabase(anyString());
+        verify(mockContext, never()).getDatabasePath(anyString());
+    }
+
+    @Test
+    void testPuzzleCacheSnapshotsAreKeptPerBackend(@TempDir File filesDir) {
+        when(mockContext.getFilesDir()).thenReturn(filesDir);
+        databaseHelper = new DatabaseHelper(mockContext);
+
+        assertEquals(new File(filesDir, DatabaseHelper.PUZZLE_CACHE_NAME), databaseHelper.puzzleCacheFile(PuzzleBackend.SQLITE));
+        assertNotEquals(databaseHelper.puzzleCacheFile(PuzzleBackend.SQLITE), databaseHelper.puzzleCacheFile(PuzzleBackend.BINARY));
+    }
+
+    @Test
+    void testPackWithoutMetadataIsNotCurrent(@TempDir File filesDir) throws IOException {
+        when(mockContext.getFilesDir()).thenReturn(filesDir);
+        Files.write(new File(filesDir, DatabaseHelper.DATABASE_NAME).toPath(), new byte[]{1, 2, 3});
+        databaseHelper = new DatabaseHelper(mockContext);
+
+        assertFalse(databaseHelper.isPackCurrent());
+    }
+
+    @Test
+    void testLegacyProgressIsImportedSetBasedInOneTransaction() {
+        SQLiteDatabase legacy = mock(SQLiteDatabase.class);
+
+        DatabaseHelper.importLegacyProgress(legacy, "/data/progress.db");
+
+        InOrder inOrder = inOrder(legacy);
+        inOrder.verify(legacy).execSQL(startsWith("ATTACH DATABASE ?"), eq(new Object[]{"/data/progress.db"}));
+        inOrder.verify(legacy).beginTransaction();
+        inOrder.verify(legacy).execSQL(startsWith("INSERT OR IGNORE INTO progress." + PuzzleTable.PROGRESS_TABLE_NAME));
+        inOrder.verify(legacy).execSQL(startsWith("UPDATE progress." + PuzzleTable.PROGRESS_TABLE_NAME));
+        inOrder.verify(legacy).setTransactionSuccessful();
+        inOrder.verify(legacy).endTransaction();
+        inOrder.verify(legacy).execSQL(startsWith("DETACH DATABASE"));
+        verify(legacy, never()).compileStatement(anyString());
+        verify(legacy, never()).rawQuery(anyString(), any());
+    }
+
+    @Test
+    void testImportDropsThePuzzlesTheBundledPackHas() {
+        SQLiteDatabase imported = mock(SQLiteDatabase.class);
+        SQLiteStatement delete = mock(SQLiteStatement.class);
+        when(imported.compileStatement(startsWith("DELETE FROM main." + PuzzleTable.PUZZLE_TABLE_NAME))).thenReturn(delete);
+        when(delete.executeUpdateDelete()).thenReturn(3);
+
+        assertEquals(3, DatabaseHelper.dropBundledPuzzles(imported, "/data/puzzle.db"));
+
+        InOrder inOrder = inOrder(imported, delete);
+        inOrder.verify(imported).execSQL(startsWith("ATTACH DATABASE ?"), eq(new Object[]{"/data/puzzle.db"}));
+        inOrder.verify(delete).executeUpdateDelete();
+        inOrder.verify(delete).close();
+        inOrder.verify(imported).execSQL(startsWith("DETACH DATABASE"));
+    }
+
+    @Test
+    void testFailedLegacyImportRollsBackAndDetaches() {
+        SQLiteDatabase legacy = mock(SQLiteDatabase.class);
+        doThrow(new SQLiteException("disk I/O error")).when(legacy).execSQL(startsWith("UPDATE"));
+
+        assertThrows(SQLiteException.class, () -> DatabaseHelper.importLegacyProgress(legacy, "/data/progress.db"));
+
+        verify(legacy, never()).setTransactionSuccessful();
+        verify(legacy).endTransaction();
+        verify(legacy).execSQL(startsWith("DETACH DATABASE"));
+    }
 }
@@ -0,0 +1,75 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.tacticmaster.puzzle.Puzzle;
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class InMemoryPuzzleRepositoryTest extends PuzzleRepositoryConformanceTest {
+
+    @Override
+    PuzzleRepository create(List<Puzzle> puzzles) {
+        return new InMemoryPuzzleRepository(() -> puzzles);
+    }
+
+    private static PuzzleAttempt attempt(String puzzleId, long attemptedAt, boolean solved) {
+        return new PuzzleAttempt(puzzleId, "fork", 1500, attemptedAt, 5_000, 0, solved, 1500, 1500);
+    }
+
+    @Test
+    void testPackIsReadOnFirstUseOnly() {
+        int[] reads = {0};
+        var repository = new InMemoryPuzzleRepository(() -> {
+            reads[0]++;
+            return PUZZLES;
+        });
+        assertEquals(0, reads[0]);
+
+        repository.getAllPuzzleCount();
+        repository.getPuzzleById("aaa01");
+
+        assertEquals(1, reads[0]);
+    }
+
+    @Test
+    void testPuzzlesGivenAsSolvedStartSolved() {
+        var solved = new Puzzle("aaa09", FEN, "a1a2", 1500, "fork", true);
+        var repository = new InMemoryPuzzleRepository(() -> List.of(PUZZLES.get(0), solved));
+
+        assertFalse(repository.wasNotSolved("aaa09"));
+        assertEquals(1, repository.getSolvedPuzzleCount());
+    }
+
+    @Test
+    void testFailedPuzzleComesDueAfterADay() {
+        var repository = create(PUZZLES);
+        long now = System.currentTimeMillis();
+
+        repository.recordPuzzleAttempt(attempt("aaa01", now, false));
+        repository.recordPuzzleAttempt(attempt("aaa02", now - 2 * Review.DAY_MILLIS, false));
+        repository.recordPuzzleAttempt(attempt("aaa03", now - 2 * Review.DAY_MILLIS, true));
+
+        assertEquals("aaa02", repository.pollDueReview(ThemeMask.NONE));
+        assertNull(repository.pollDueReview(ThemeMask.NONE));
+    }
+
+    @Test
+    void testClosedRepositoryRejectsReads() {
+        var repository = create(PUZZLES);
+        repository.close();
+
+        assertThrows(IllegalStateException.class, repository::getAllPuzzleCount);
+    }
+
+    @Test
+    void testNullSourceIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryPuzzleRepository(null));
+    }
+}
@@ -0,0 +1,57 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testEmptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    void testEveryValueFallsWithinItsBucket() {
+        for (long value = 0; value < 100_000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(bucket), "value " + value);
+            assertTrue(bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1), "value " + value);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void testPercentilesStayWithinAQuarterOfTheTrueValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros);
+        }
+
+        assertEquals(10_000, histogram.count());
+        assertWithinAQuarter(5_000, histogram.percentile(50));
+        assertWithinAQuarter(9_500, histogram.percentile(95));
+        assertWithinAQuarter(9_900, histogram.percentile(99));
+        assertEquals(10_000, histogram.percentile(100));
+    }
+
+    @Test
+    void testPercentileNeverExceedsTheLargestValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000);
+        histogram.record(-5);
+
+        assertEquals(1_000, histogram.percentile(99));
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(1_000, histogram.max());
+    }
+
+    private static void assertWithinAQuarter(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected * 5 / 4, "expected about " + expected + " but was " + actual);
+    }
+}
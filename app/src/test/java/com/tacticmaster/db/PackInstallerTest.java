@@ -0,0 +1,197 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+class PackInstallerTest {
+
+    private static final String NAME = DatabaseHelper.DATABASE_NAME;
+
+    @TempDir
+    File directory;
+
+    private AssetManager assets;
+    private File target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assets = mock(AssetManager.class);
+        when(assets.openFd(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenThrow(new FileNotFoundException());
+        when(assets.openFd(NAME)).thenThrow(new FileNotFoundException());
+        target = new File(directory, NAME + ".staging");
+    }
+
+    // A pack larger than several buffers, with the SQLite header in front.
+    private static byte[] pack() {
+        byte[] pack = new byte[PackInstaller.BUFFER_SIZE * 3 + 1234];
+        new Random(1).nextBytes(pack);
+        byte[] header = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(header, 0, pack, 0, header.length);
+        return pack;
+    }
+
+    // The checksum asset as the pack pipeline writes it.
+    private void givenChecksumOf(byte[] pack) throws IOException {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : sha256(pack)) {
+            hex.append(String.format("%02x", b));
+        }
+        String line = hex + "  " + NAME + "\n";
+        when(assets.open(NAME + PackInstaller.CHECKSUM_SUFFIX)).thenReturn(new ByteArrayInputStream(line.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance(PackInstaller.DIGEST_ALGORITHM).digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(bytes)) {
+            output.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void testCompressedAssetIsDecompressedWhileCopying() throws IOException {
+        byte[] pack = pack();
+        byte[] compressed = gzip(pack);
+        givenChecksumOf(pack);
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenReturn(new ByteArrayInputStream(compressed));
+
+        long written = PackInstaller.install(assets, NAME, target, null);
+
+        assertEquals(pack.length, written);
+        assertArrayEquals(pack, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void testPlainAssetIsUsedWithoutACompressedOne() throws IOException {
+        byte[] pack = pack();
+        givenChecksumOf(pack);
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenThrow(new FileNotFoundException());
+        when(assets.open(NAME)).thenReturn(new ByteArrayInputStream(pack));
+
+        PackInstaller.install(assets, NAME, target, null);
+
+        assertArrayEquals(pack, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void testProgressIsReportedOncePerPercentUpToTheAssetSize() throws IOException {
+        byte[] pack = pack();
+        AssetFileDescriptor descriptor = mock(AssetFileDescriptor.class);
+        when(descriptor.getLength()).thenReturn((long) pack.length);
+        givenChecksumOf(pack);
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenThrow(new FileNotFoundException());
+        when(assets.open(NAME)).thenReturn(new ByteArrayInputStream(pack));
+        doReturn(descriptor).when(assets).openFd(NAME);
+        List<Long> progress = new ArrayList<>();
+
+        PackInstaller.install(assets, NAME, target, (bytesRead, totalBytes) -> {
+            assertEquals(pack.length, totalBytes);
+            progress.add(bytesRead);
+        });
+
+        assertEquals(4, progress.size());
+        assertEquals(pack.length, progress.get(progress.size() - 1));
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) > progress.get(i - 1));
+        }
+    }
+
+    @Test
+    void testCorruptCompressedAssetFails() throws IOException {
+        byte[] pack = pack();
+        givenChecksumOf(pack);
+        byte[] compressed = gzip(pack);
+        // Flip a byte of the trailer's CRC-32.
+        compressed[compressed.length - 6] ^= 1;
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenReturn(new ByteArrayInputStream(compressed));
+
+        assertThrows(IOException.class, () -> PackInstaller.install(assets, NAME, target, null));
+    }
+
+    @Test
+    void testAssetThatIsNotADatabaseFails() throws IOException {
+        givenChecksumOf("not a database at all".getBytes(StandardCharsets.UTF_8));
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX))
+                .thenReturn(new ByteArrayInputStream(gzip("not a database at all".getBytes(StandardCharsets.UTF_8))));
+
+        assertThrows(IOException.class, () -> PackInstaller.install(assets, NAME, target, null));
+    }
+
+    @Test
+    void testCorruptBodyUnderAValidHeaderFails() throws IOException {
+        byte[] pack = pack();
+        givenChecksumOf(pack);
+        byte[] corrupt = pack.clone();
+        corrupt[PackInstaller.BUFFER_SIZE * 2 + 17] ^= 1;
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenThrow(new FileNotFoundException());
+        when(assets.open(NAME)).thenReturn(new ByteArrayInputStream(corrupt));
+
+        IOException failure = assertThrows(IOException.class, () -> PackInstaller.install(assets, NAME, target, null));
+        assertTrue(failure.getMessage().contains("checksum"), failure.getMessage());
+    }
+
+    @Test
+    void testTruncatedAssetFails() throws IOException {
+        byte[] pack = pack();
+        givenChecksumOf(pack);
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenThrow(new FileNotFoundException());
+        when(assets.open(NAME)).thenReturn(new ByteArrayInputStream(Arrays.copyOf(pack, PackInstaller.BUFFER_SIZE * 2)));
+
+        assertThrows(IOException.class, () -> PackInstaller.install(assets, NAME, target, null));
+    }
+
+    @Test
+    void testAssetWithoutAChecksumIsNotInstalled() throws IOException {
+        when(assets.open(NAME + PackInstaller.CHECKSUM_SUFFIX)).thenThrow(new FileNotFoundException());
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenThrow(new FileNotFoundException());
+        when(assets.open(NAME)).thenReturn(new ByteArrayInputStream(pack()));
+
+        assertThrows(IOException.class, () -> PackInstaller.install(assets, NAME, target, null));
+        assertFalse(target.exists());
+    }
+
+    @Test
+    void testEmptyAssetFails() throws IOException {
+        givenChecksumOf(new byte[0]);
+        when(assets.open(NAME + PackInstaller.COMPRESSED_SUFFIX)).thenThrow(new FileNotFoundException());
+        when(assets.open(NAME)).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+        assertThrows(IOException.class, () -> PackInstaller.install(assets, NAME, target, null));
+    }
+}
@@ -0,0 +1,253 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The shared contract with the pack split over two enabled packs and a disabled third one
+ * that must never show through, plus the routing itself.
+ */
+class PackManagerTest extends PuzzleRepositoryConformanceTest {
+
+    private static final Puzzle HIDDEN = new Puzzle("zzz01", FEN, "a1a2", 1400, "fork", false);
+
+    @Override
+    PuzzleRepository create(List<Puzzle> puzzles) {
+        List<Puzzle> even = new ArrayList<>();
+        List<Puzzle> odd = new ArrayList<>();
+        for (int i = 0; i < puzzles.size(); i++) {
+            (i % 2 == 0 ? even : odd).add(puzzles.get(i));
+        }
+        PackManager packManager = new PackManager(new Random(7));
+        packManager.register("even", new InMemoryPuzzleRepository(() -> even));
+        packManager.register("odd", new InMemoryPuzzleRepository(() -> odd));
+        packManager.register("hidden", new InMemoryPuzzleRepository(() -> List.of(HIDDEN)));
+        packManager.setEnabled("hidden", false);
+        return packManager;
+    }
+
+    private static List<Puzzle> puzzles(String prefix, int count, int firstRating, int ratingStep) {
+        List<Puzzle> puzzles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            puzzles.add(new Puzzle(prefix + String.format(Locale.ROOT, "%03d", i), FEN, "a1a2", firstRating + i * ratingStep, "fork", false));
+        }
+        return puzzles;
+    }
+
+    @Test
+    void testTogglingAPackNeitherReopensNorRereadsIt() {
+        int[] reads = {0};
+        PackManager packManager = new PackManager(new Random(1));
+        packManager.register("endgame", new InMemoryPuzzleRepository(() -> {
+            reads[0]++;
+            return List.of(HIDDEN);
+        }));
+        assertEquals(1, packManager.getAllPuzzleCount());
+
+        packManager.setEnabled("endgame", false);
+        assertFalse(packManager.isEnabled("endgame"));
+        assertEquals(0, packManager.getAllPuzzleCount());
+        assertThrows(NoSuchElementException.class, () -> packManager.getPuzzleById("zzz01"));
+        assertTrue(packManager.getPuzzlesWithinRange(1000, 2000, Set.of(), ThemeMask.NONE).isEmpty());
+
+        packManager.setEnabled("endgame", true);
+        assertEquals(HIDDEN, packManager.getPuzzleById("zzz01"));
+        assertEquals(1, reads[0]);
+    }
+
+    @Test
+    void testBatchesAreSplitInProportionToCandidates() {
+        PackManager packManager = new PackManager(new Random(42));
+        packManager.register("large", new InMemoryPuzzleRepository(() -> puzzles("l", 90, 1000, 2), new Random(1)));
+        packManager.register("small", new InMemoryPuzzleRepository(() -> puzzles("s", 10, 1001, 2), new Random(2)));
+
+        int fromSmall = 0;
+        int sampled = 0;
+        for (int call = 0; call < 200; call++) {
+            for (Puzzle puzzle : packManager.getPuzzlesWithinRange(1000, 1200, Set.of(), ThemeMask.NONE)) {
+                sampled++;
+                if (puzzle.puzzleId().startsWith("s")) {
+                    fromSmall++;
+                }
+            }
+        }
+
+        assertEquals(200 * PuzzleSampler.BATCH_SIZE, sampled);
+        double share = (double) fromSmall / sampled;
+        assertTrue(share > 0.05 && share < 0.16, "share of the small pack was " + share);
+    }
+
+    @Test
+    void testSlotsAPackCannotFillGoToTheOthers() {
+        // Ten candidates but a single rating, so the pack returns one puzzle whatever its share.
+        List<Puzzle> oneRating = puzzles("r", 10, 1500, 0);
+        for (int seed = 0; seed < 20; seed++) {
+            PackManager packManager = new PackManager(new Random(seed));
+            packManager.register("one-rating", new InMemoryPuzzleRepository(() -> oneRating, new Random(seed)));
+            packManager.register("spread", new InMemoryPuzzleRepository(() -> puzzles("s", 10, 1601, 1), new Random(seed)));
+
+            List<Puzzle> batch = packManager.getPuzzlesWithinRange(1000, 2000, Set.of(), ThemeMask.NONE);
+
+            assertEquals(PuzzleSampler.BATCH_SIZE, batch.size());
+            assertEquals(PuzzleSampler.BATCH_SIZE, batch.stream().map(Puzzle::rating).distinct().count());
+        }
+    }
+
+    @Test
+    void testProgressGoesToThePackThePuzzleCameFrom() {
+        InMemoryPuzzleRepository first = new InMemoryPuzzleRepository(() -> puzzles("a", 3, 1200, 10));
+        InMemoryPuzzleRepository second = new InMemoryPuzzleRepository(() -> puzzles("b", 3, 1205, 10));
+        PackManager packManager = new PackManager(new Random(3));
+        packManager.register(PackManager.BUNDLED_PACK, first);
+        packManager.register("imported", second);
+
+        packManager.setSolved("b001");
+        packManager.setEnabled("imported", false);
+
+        assertEquals(0, first.getSolvedPuzzleCount());
+        assertEquals(1, second.getSolvedPuzzleCount());
+        assertEquals(0, packManager.getSolvedPuzzleCount());
+        assertFalse(packManager.wasNotSolved("b001"));
+    }
+
+    @Test
+    void testPacksAreQueriedWhenNoneCountsCandidates() {
+        Puzzle uncounted = new Puzzle("c001", FEN, "a1a2", 1500, "fork", false);
+        PuzzleRepository stale = mock(PuzzleRepository.class);
+        when(stale.getRatingHistogram()).thenReturn(new RatingHistogram());
+        when(stale.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong())).thenReturn(List.of(uncounted));
+        PackManager packManager = new PackManager(new Random(5));
+        packManager.register("empty", new InMemoryPuzzleRepository(List::of));
+        packManager.register("stale", stale);
+
+        assertEquals(List.of(uncounted), packManager.getPuzzlesWithinRange(1000, 2000, Set.of(), ThemeMask.NONE));
+    }
+
+    @Test
+    void testOwnersAreFoundThroughTheIdIndexes() {
+        PuzzleRepository first = mock(PuzzleRepository.class);
+        PuzzleRepository second = mock(PuzzleRepository.class);
+        when(first.getPuzzleIdIndex()).thenReturn(PuzzleIdIndex.of(List.of("a001")));
+        when(second.getPuzzleIdIndex()).thenReturn(PuzzleIdIndex.of(List.of("b001", "b002")));
+        PackManager packManager = new PackManager(new Random(6));
+        packManager.register("first", first);
+        packManager.register("second", second);
+
+        packManager.setSolved("b001");
+        packManager.setSolved("b002");
+        packManager.setSolved("z001");
+
+        verify(second).setSolved("b001");
+        verify(second).setSolved("b002");
+        verify(first, never()).setSolved(anyString());
+        verify(first, never()).getPuzzleById(anyString());
+        verify(second, never()).getPuzzleById(anyString());
+        verify(first).getPuzzleIdIndex();
+        verify(second).getPuzzleIdIndex();
+    }
+
+    @Test
+    void testReviewFromASharedQueueGoesToThePackThatHasIt() {
+        PuzzleRepository first = mock(PuzzleRepository.class);
+        PuzzleRepository second = mock(PuzzleRepository.class);
+        when(first.pollDueReview(ThemeMask.NONE)).thenReturn("b001");
+        when(first.getPuzzleIdIndex()).thenReturn(PuzzleIdIndex.of(List.of("a001")));
+        when(second.getPuzzleIdIndex()).thenReturn(PuzzleIdIndex.of(List.of("b001")));
+        PackManager packManager = new PackManager(new Random(8));
+        packManager.register("first", first);
+        packManager.register("second", second);
+
+        assertEquals("b001", packManager.pollDueReview(ThemeMask.NONE));
+        packManager.setSolved("b001");
+
+        verify(second).setSolved("b001");
+        verify(first, never()).setSolved(anyString());
+    }
+
+    @Test
+    void testReloadedPacksAreIndexedAgain() {
+        PuzzleRepository imported = mock(PuzzleRepository.class);
+        when(imported.getPuzzleIdIndex()).thenReturn(PuzzleIdIndex.of(List.of("a001")), PuzzleIdIndex.of(List.of("a001", "a002")));
+        PackManager packManager = new PackManager(new Random(9));
+        packManager.register(PackManager.IMPORTED_PACK, imported);
+        assertEquals(1, packManager.getPuzzleIdIndex().size());
+
+        packManager.reloadPack();
+
+        verify(imported).reloadPack();
+        assertEquals(2, packManager.getPuzzleIdIndex().size());
+    }
+
+    @Test
+    void testOwnersFollowTheIndexesRatherThanWhatWasHandedOut() {
+        Puzzle moved = new Puzzle("a001", FEN, "a1a2", 1500, "fork", false);
+        PuzzleRepository first = mock(PuzzleRepository.class);
+        PuzzleRepository second = mock(PuzzleRepository.class);
+        when(first.getPuzzleById("a001")).thenReturn(moved);
+        when(first.getPuzzleIdIndex()).thenReturn(PuzzleIdIndex.of(List.of("a001")), PuzzleIdIndex.of(List.of()));
+        when(second.getPuzzleIdIndex()).thenReturn(PuzzleIdIndex.of(List.of("a001")));
+        PackManager packManager = new PackManager(new Random(10));
+        packManager.register("first", first);
+        packManager.register("second", second);
+        assertEquals(moved, packManager.getPuzzleById("a001"));
+        packManager.setSolved("a001");
+
+        packManager.reloadPack();
+        packManager.setSolved("a001");
+
+        verify(first).setSolved("a001");
+        verify(second).setSolved("a001");
+    }
+
+    @Test
+    void testHistogramAndIdIndexCoverTheEnabledPacks() {
+        PackManager packManager = new PackManager(new Random(4));
+        packManager.register("a", new InMemoryPuzzleRepository(() -> puzzles("a", 3, 1200, 10)));
+        packManager.register("b", new InMemoryPuzzleRepository(() -> puzzles("b", 2, 1205, 10)));
+
+        RatingHistogram histogram = packManager.getRatingHistogram();
+        assertEquals(5, histogram.unsolved(1000, 2000, ThemeMask.NONE));
+        packManager.setSolved("a000");
+        assertEquals(4, histogram.unsolved(1000, 2000, ThemeMask.NONE));
+        assertEquals(5, packManager.getPuzzleIdIndex().size());
+        assertEquals(List.of("a000", "a001", "a002"), packManager.getPuzzleIdIndex().complete("a", 10));
+
+        packManager.setEnabled("a", false);
+        assertEquals(2, packManager.getRatingHistogram().unsolved(1000, 2000, ThemeMask.NONE));
+        assertEquals(List.of("b000", "b001"), packManager.getPuzzleIdIndex().complete("b", 10));
+        assertTrue(packManager.getPuzzleIdIndex().complete("a", 10).isEmpty());
+    }
+
+    @Test
+    void testPackNamesAreUniqueAndKnown() {
+        PackManager packManager = new PackManager();
+        packManager.register(PackManager.BUNDLED_PACK, new InMemoryPuzzleRepository(List::of));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> packManager.register(PackManager.BUNDLED_PACK, new InMemoryPuzzleRepository(List::of)));
+        assertThrows(IllegalArgumentException.class, () -> packManager.setEnabled("endgame", false));
+        assertThrows(IllegalArgumentException.class, () -> packManager.register("endgame", null));
+        assertEquals(List.of(PackManager.BUNDLED_PACK), packManager.getPackNames());
+    }
+}
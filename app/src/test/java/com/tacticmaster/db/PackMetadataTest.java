@@ -0,0 +1,80 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+class PackMetadataTest {
+
+    @TempDir
+    File directory;
+
+    private File pack(String content) throws IOException {
+        File pack = new File(directory, DatabaseHelper.DATABASE_NAME);
+        Files.write(pack.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return pack;
+    }
+
+    @Test
+    void testDescribesTheInstalledPackUntilItChanges() throws IOException {
+        File pack = pack("puzzles");
+        File metadataFile = new File(directory, DatabaseHelper.PACK_METADATA_NAME);
+
+        PackMetadata.of(pack, 4).write(metadataFile);
+
+        assertTrue(PackMetadata.isCurrent(metadataFile, pack, 4));
+        assertFalse(PackMetadata.isCurrent(metadataFile, pack, 5));
+        Files.write(pack.toPath(), "other puzzles".getBytes(StandardCharsets.UTF_8));
+        assertFalse(PackMetadata.isCurrent(metadataFile, pack, 4));
+        assertFalse(new File(directory, DatabaseHelper.PACK_METADATA_NAME + ".tmp").exists());
+    }
+
+    @Test
+    void testRecordsTheVersionAndAttributesOfTheInstalledFile() throws IOException {
+        File pack = pack("puzzles");
+        File metadataFile = new File(directory, DatabaseHelper.PACK_METADATA_NAME);
+
+        PackMetadata.of(pack, 4).write(metadataFile);
+
+        assertEquals(new PackMetadata(4, 7, pack.lastModified()), PackMetadata.read(metadataFile));
+    }
+
+    @Test
+    void testMetadataWithTheFormerChecksumIsNotCurrent() throws IOException {
+        File pack = pack("puzzles");
+        File metadataFile = new File(directory, DatabaseHelper.PACK_METADATA_NAME);
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(metadataFile))) {
+            output.writeInt(0x544D4D44);
+            output.writeInt(1);
+            output.writeInt(4);
+            output.writeLong(pack.length());
+            output.writeLong(pack.lastModified());
+            output.writeLong(0);
+        }
+
+        assertFalse(PackMetadata.isCurrent(metadataFile, pack, 4));
+    }
+
+    @Test
+    void testMissingOrCorruptMetadataIsNotCurrent() throws IOException {
+        File pack = pack("puzzles");
+        File metadataFile = new File(directory, DatabaseHelper.PACK_METADATA_NAME);
+
+        assertNull(PackMetadata.read(metadataFile));
+        assertFalse(PackMetadata.isCurrent(metadataFile, pack, 4));
+        Files.write(metadataFile.toPath(), "garbage".getBytes(StandardCharsets.UTF_8));
+        assertNull(PackMetadata.read(metadataFile));
+        assertFalse(PackMetadata.isCurrent(metadataFile, new File(directory, "missing.db"), 4));
+    }
+}
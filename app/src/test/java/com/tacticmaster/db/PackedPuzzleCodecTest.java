@@ -0,0 +1,71 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+
+class PackedPuzzleCodecTest {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(PackedPuzzleCodec.RECORD_SIZE * 2);
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "1rb2rk1/q5P1/4p2p/3p3p/3P1P2/2P5/2QK3P/3R2R1 b - - 0 29",
+            "r3k2r/8/8/3pP3/8/8/8/R3K2R w Kq d6 0 41",
+            "8/8/8/8/8/8/8/K6k b - - 120 300"
+    })
+    void testFenRoundTrips(String fen) {
+        PackedPuzzleCodec.encode(buffer, PackedPuzzleCodec.RECORD_SIZE, "abc12", fen, "e2e4", 1500, 0L);
+
+        assertEquals(fen, PackedPuzzleCodec.decodeFen(buffer, PackedPuzzleCodec.RECORD_SIZE));
+    }
+
+    @Test
+    void testFieldsRoundTrip() {
+        long themeMask = ThemeMask.bitOf("fork") | ThemeMask.bitOf("zugzwang");
+
+        PackedPuzzleCodec.encode(buffer, 0, "00sHx", "8/8/8/8/8/8/8/K6k w - - 0 1", "a7a8q h2h1n b1c3", 2890, themeMask);
+
+        assertEquals("00sHx", PackedPuzzleCodec.decodeId(PackedPuzzleCodec.id(buffer, 0)));
+        assertEquals(2890, PackedPuzzleCodec.rating(buffer, 0));
+        assertEquals(themeMask, PackedPuzzleCodec.themeMask(buffer, 0));
+        assertEquals("a7a8q h2h1n b1c3", PackedPuzzleCodec.decodeMoves(buffer, 0));
+    }
+
+    @Test
+    void testPackedIdsSortLikeStrings() {
+        long a = PackedPuzzleCodec.encodeId("0000D");
+        long b = PackedPuzzleCodec.encodeId("0000Da");
+        long c = PackedPuzzleCodec.encodeId("zzzzz");
+
+        assertTrue(a >= 0 && a < b && b < c);
+        assertEquals("0000Da", PackedPuzzleCodec.decodeId(b));
+    }
+
+    @Test
+    void testUnencodableIds() {
+        assertEquals(-1, PackedPuzzleCodec.encodeId(null));
+        assertEquals(-1, PackedPuzzleCodec.encodeId(""));
+        assertEquals(-1, PackedPuzzleCodec.encodeId("123456789"));
+        assertEquals(-1, PackedPuzzleCodec.encodeId("ab\u00e9"));
+    }
+
+    @Test
+    void testRecordsThatDoNotFitAreRejected() {
+        String fen = "8/8/8/8/8/8/8/K6k w - - 0 1";
+
+        assertThrows(IllegalArgumentException.class, () -> PackedPuzzleCodec.encode(buffer, 0, "id", fen, "e2e4 ".repeat(17).trim(), 1500, 0L));
+        assertThrows(IllegalArgumentException.class, () -> PackedPuzzleCodec.encode(buffer, 0, "id", fen, "e2e9", 1500, 0L));
+        assertThrows(IllegalArgumentException.class, () -> PackedPuzzleCodec.encode(buffer, 0, "id", "8/8/8 w - - 0 1", "e2e4", 1500, 0L));
+        assertThrows(IllegalArgumentException.class, () -> PackedPuzzleCodec.encode(buffer, 0, "id", fen, "e2e4", 40000, 0L));
+        // Non-canonical empty-square runs would not survive the round trip.
+        assertThrows(IllegalArgumentException.class, () -> PackedPuzzleCodec.encode(buffer, 0, "id", "8/8/8/8/8/8/8/K33k w - - 0 1", "e2e4", 1500, 0L));
+    }
+}
@@ -0,0 +1,147 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+class ProgressJournalTest {
+
+    @TempDir
+    File directory;
+
+    private File file;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        file = new File(directory, "progress.journal");
+        now = 1_000;
+    }
+
+    private ProgressJournal journal() {
+        return new ProgressJournal(file, () -> now);
+    }
+
+    @Test
+    void testRejectsNullArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ProgressJournal(null, () -> 0));
+        assertThrows(IllegalArgumentException.class, () -> new ProgressJournal(file, null));
+    }
+
+    @Test
+    void testAppendedEntriesAreRecoveredByTheNextProcess() {
+        ProgressJournal journal = journal();
+        journal.recover(0);
+        assertTrue(journal.append(ProgressJournal.Kind.SOLVED, "a"));
+        assertTrue(journal.append(ProgressJournal.Kind.SOLVED, "b"));
+        journal.close();
+
+        ProgressJournal next = journal();
+        next.recover(0);
+
+        assertEquals(List.of(
+                new ProgressJournal.Entry(1, ProgressJournal.Kind.SOLVED, "a"),
+                new ProgressJournal.Entry(2, ProgressJournal.Kind.SOLVED, "b")), next.pending());
+    }
+
+    @Test
+    void testRecoverSkipsAppliedEntriesAndContinuesTheSequence() {
+        ProgressJournal journal = journal();
+        journal.append(ProgressJournal.Kind.SOLVED, "a");
+        journal.append(ProgressJournal.Kind.SOLVED, "b");
+        journal.close();
+
+        ProgressJournal next = journal();
+        next.recover(1);
+        next.append(ProgressJournal.Kind.SOLVED, "c");
+
+        assertEquals(List.of(
+                new ProgressJournal.Entry(2, ProgressJournal.Kind.SOLVED, "b"),
+                new ProgressJournal.Entry(3, ProgressJournal.Kind.SOLVED, "c")), next.pending());
+    }
+
+    @Test
+    void testRecoverContinuesAfterTheAppliedSequenceWithoutAFile() {
+        ProgressJournal journal = journal();
+        journal.recover(41);
+        journal.append(ProgressJournal.Kind.SOLVED, "a");
+
+        assertEquals(42, journal.pending().get(0).sequence());
+    }
+
+    @Test
+    void testTornAndUnknownLinesAreIgnored() throws IOException {
+        Files.write(file.toPath(), "1 S a\nx S b\n2 Z c\n3 A d\n4 S".getBytes(StandardCharsets.UTF_8));
+
+        ProgressJournal journal = journal();
+        journal.recover(0);
+
+        // "A" lines are the attempt events older versions journaled.
+        assertEquals(List.of(new ProgressJournal.Entry(1, ProgressJournal.Kind.SOLVED, "a")), journal.pending());
+    }
+
+    @Test
+    void testFlushIsDueBySize() {
+        ProgressJournal journal = journal();
+        for (int i = 0; i < ProgressJournal.FLUSH_SIZE - 1; i++) {
+            journal.append(ProgressJournal.Kind.SOLVED, "p" + i);
+        }
+        assertFalse(journal.isFlushDue());
+
+        journal.append(ProgressJournal.Kind.SOLVED, "last");
+
+        assertTrue(journal.isFlushDue());
+    }
+
+    @Test
+    void testFlushIsDueByAgeOfTheOldestEntry() {
+        ProgressJournal journal = journal();
+        assertFalse(journal.isFlushDue());
+
+        journal.append(ProgressJournal.Kind.SOLVED, "a");
+        now += ProgressJournal.FLUSH_AGE_MILLIS - 1;
+        journal.append(ProgressJournal.Kind.SOLVED, "b");
+        assertFalse(journal.isFlushDue());
+
+        now += 1;
+        assertTrue(journal.isFlushDue());
+    }
+
+    @Test
+    void testAppliedDropsEntriesAndDeletesTheEmptyJournal() {
+        ProgressJournal journal = journal();
+        journal.append(ProgressJournal.Kind.SOLVED, "a");
+        journal.append(ProgressJournal.Kind.SOLVED, "b");
+
+        journal.applied(1);
+        assertEquals(1, journal.pending().size());
+        assertTrue(file.exists());
+
+        journal.applied(2);
+        assertTrue(journal.pending().isEmpty());
+        assertFalse(file.exists());
+
+        journal.append(ProgressJournal.Kind.SOLVED, "c");
+        assertTrue(file.exists());
+        assertEquals(3, journal.pending().get(0).sequence());
+    }
+
+    @Test
+    void testAppendReportsAnUnwritableJournal() {
+        ProgressJournal journal = new ProgressJournal(directory, () -> now);
+
+        assertFalse(journal.append(ProgressJournal.Kind.SOLVED, "a"));
+        assertEquals(1, journal.pending().size());
+    }
+}
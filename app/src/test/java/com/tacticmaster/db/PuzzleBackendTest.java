@@ -0,0 +1,93 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.List;
+
+class PuzzleBackendTest {
+
+    @Test
+    void testBackendIsChosenByNameInAnyCase() {
+        assertEquals(PuzzleBackend.BINARY, PuzzleBackend.fromName("Binary"));
+        assertEquals(PuzzleBackend.SQLITE, PuzzleBackend.fromName("SQLITE"));
+    }
+
+    @Test
+    void testBackendThatLosesProgressIsNeverPickedByName() {
+        assertEquals(PuzzleBackend.SQLITE, PuzzleBackend.fromName("memory"));
+    }
+
+    @Test
+    void testMissingOrUnknownNameFallsBackToSqlite() {
+        assertEquals(PuzzleBackend.SQLITE, PuzzleBackend.fromName(null));
+        assertEquals(PuzzleBackend.SQLITE, PuzzleBackend.fromName("redis"));
+    }
+
+    @Test
+    void testOpeningTouchesNoDatabase() {
+        DatabaseHelper dbHelper = mock(DatabaseHelper.class);
+
+        assertInstanceOf(DatabaseAccessor.class, PuzzleBackend.SQLITE.open(dbHelper));
+        assertInstanceOf(BinaryPuzzleRepository.class, PuzzleBackend.BINARY.open(dbHelper));
+        assertInstanceOf(InMemoryPuzzleRepository.class, PuzzleBackend.MEMORY.open(dbHelper));
+        verify(dbHelper, never()).acquireDatabase();
+    }
+
+    @Test
+    void testBundledAndImportedPacksAreRegisteredWithoutTouchingTheDisk() throws Exception {
+        DatabaseHelper dbHelper = mock(DatabaseHelper.class);
+
+        for (PuzzleBackend backend : List.of(PuzzleBackend.SQLITE, PuzzleBackend.BINARY)) {
+            PackManager packManager = new PackManager();
+            backend.registerPacks(packManager, dbHelper);
+            assertEquals(List.of(PackManager.BUNDLED_PACK, PackManager.IMPORTED_PACK), packManager.getPackNames());
+        }
+        PackManager memory = new PackManager();
+        PuzzleBackend.MEMORY.registerPacks(memory, dbHelper);
+        assertEquals(List.of(PackManager.BUNDLED_PACK), memory.getPackNames());
+        verify(dbHelper, never()).acquireDatabase();
+        verify(dbHelper, never()).openImportedPack();
+    }
+
+    @Test
+    void testMemoryBackendReadsThePackOnceAndReleasesIt() throws Exception {
+        DatabaseHelper dbHelper = mock(DatabaseHelper.class);
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        Cursor cursor = mock(Cursor.class);
+        when(dbHelper.acquireDatabase()).thenReturn(database);
+        when(database.rawQuery(eq(PuzzleBackend.ALL_PUZZLES), isNull())).thenReturn(cursor);
+        when(cursor.getColumnIndex(PuzzleTable.COLUMN_PUZZLE_ID)).thenReturn(0);
+        when(cursor.getColumnIndex(PuzzleTable.COLUMN_FEN)).thenReturn(1);
+        when(cursor.getColumnIndex(PuzzleTable.COLUMN_MOVES)).thenReturn(2);
+        when(cursor.getColumnIndex(PuzzleTable.COLUMN_RATING)).thenReturn(3);
+        when(cursor.getColumnIndex(PuzzleTable.COLUMN_THEMES)).thenReturn(4);
+        when(cursor.moveToNext()).thenReturn(true, false);
+        when(cursor.getString(0)).thenReturn("aaa01");
+        when(cursor.getInt(3)).thenReturn(1500);
+        when(cursor.getString(4)).thenReturn("fork");
+        PuzzleRepository repository = PuzzleBackend.MEMORY.open(dbHelper);
+
+        assertEquals(1, repository.getAllPuzzleCount());
+        assertEquals(1500, repository.getPuzzleById("aaa01").rating());
+
+        InOrder inOrder = inOrder(dbHelper, database);
+        inOrder.verify(dbHelper).createDatabase();
+        inOrder.verify(dbHelper).acquireDatabase();
+        inOrder.verify(database).rawQuery(PuzzleBackend.ALL_PUZZLES, null);
+        inOrder.verify(dbHelper).releaseDatabase();
+    }
+}
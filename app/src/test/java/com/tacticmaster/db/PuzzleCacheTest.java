@@ -0,0 +1,102 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+class PuzzleCacheTest {
+
+    @TempDir
+    File directory;
+
+    private static Puzzle puzzle(String puzzleId) {
+        return new Puzzle(puzzleId, "8/8/8/8/8/8/8/K6k w - - 0 1", "a1a2 h1h2", 1500, "fork", false);
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvictedFirst() {
+        PuzzleCache cache = new PuzzleCache(2);
+        cache.put(puzzle("a"));
+        cache.put(puzzle("b"));
+        cache.get("a");
+
+        cache.put(puzzle("c"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    void testHitsAndMissesAreCounted() {
+        PuzzleCache cache = new PuzzleCache();
+        cache.put(puzzle("a"));
+
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void testSnapshotKeepsTheMostRecentlyUsedInOrder() throws IOException {
+        PuzzleCache cache = new PuzzleCache();
+        for (int i = 0; i < PuzzleCache.WARM_ENTRIES + 10; i++) {
+            cache.put(puzzle("p" + i));
+        }
+        cache.get("p0");
+        cache.markSolved("p0");
+        File file = new File(directory, DatabaseHelper.PUZZLE_CACHE_NAME);
+
+        cache.save(file, 4);
+        PuzzleCache loaded = PuzzleCache.load(file, 4);
+
+        assertEquals(PuzzleCache.WARM_ENTRIES, loaded.size());
+        assertTrue(loaded.get("p0").solved());
+        assertEquals(puzzle("p41"), loaded.get("p41"));
+        assertNull(loaded.get("p10"));
+        assertFalse(loaded.isDirty());
+        assertFalse(cache.isDirty());
+    }
+
+    @Test
+    void testSnapshotOfAnotherPackIsDiscarded() throws IOException {
+        PuzzleCache cache = new PuzzleCache();
+        cache.put(puzzle("a"));
+        File file = new File(directory, DatabaseHelper.PUZZLE_CACHE_NAME);
+        cache.save(file, 4);
+
+        assertEquals(0, PuzzleCache.load(file, 5).size());
+    }
+
+    @Test
+    void testMissingOrCorruptSnapshotGivesAnEmptyCache() throws IOException {
+        File file = new File(directory, DatabaseHelper.PUZZLE_CACHE_NAME);
+        assertEquals(0, PuzzleCache.load(file, 4).size());
+
+        Files.write(file.toPath(), "garbage".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, PuzzleCache.load(file, 4).size());
+    }
+
+    @Test
+    void testSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new PuzzleCache(0));
+    }
+}
@@ -0,0 +1,213 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+class PuzzleCsvImporterTest {
+
+    private static final String HEADER = "PuzzleId,FEN,Moves,Rating,RatingDeviation,Popularity,NbPlays,Themes,GameUrl,OpeningTags\n";
+
+    @TempDir
+    File directory;
+
+    private SQLiteDatabase db;
+    private SQLiteStatement savedOffset;
+    private SQLiteStatement insert;
+    private SQLiteStatement saveOffset;
+
+    @BeforeEach
+    void setUp() {
+        db = mock(SQLiteDatabase.class);
+        savedOffset = mock(SQLiteStatement.class);
+        insert = mock(SQLiteStatement.class);
+        saveOffset = mock(SQLiteStatement.class);
+        when(db.compileStatement(PuzzleCsvImporter.SAVED_OFFSET)).thenReturn(savedOffset);
+        when(db.compileStatement(PuzzleCsvImporter.INSERT_PUZZLE)).thenReturn(insert);
+        when(db.compileStatement(PuzzleCsvImporter.SAVE_OFFSET)).thenReturn(saveOffset);
+        when(insert.executeUpdateDelete()).thenReturn(1);
+    }
+
+    private static String row(String id, int rating, int deviation, int popularity, int plays, String moves) {
+        return id + ",r1bqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2," + moves + "," + rating + "," +
+                deviation + "," + popularity + "," + plays + ",fork middlegame,https://lichess.org/abc#10,Italian_Game\n";
+    }
+
+    private static String row(String id) {
+        return row(id, 1500, 75, 95, 2000, "e2e4 e7e5");
+    }
+
+    private File csv(String content) throws IOException {
+        File csv = new File(directory, "lichess_db_puzzle.csv");
+        Files.write(csv.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return csv;
+    }
+
+    private void assertInserted(String... ids) {
+        ArgumentCaptor<String> inserted = ArgumentCaptor.forClass(String.class);
+        verify(insert, times(ids.length)).bindString(eq(1), inserted.capture());
+        assertEquals(List.of(ids), inserted.getAllValues());
+    }
+
+    private List<Long> savedOffsets(int batches) {
+        ArgumentCaptor<Long> offsets = ArgumentCaptor.forClass(Long.class);
+        verify(saveOffset, times(batches)).bindLong(eq(2), offsets.capture());
+        return offsets.getAllValues();
+    }
+
+    @Test
+    void testOnlyRowsPassingTheValidatorFiltersAreInserted() throws IOException {
+        File csv = csv(HEADER +
+                row("kept") +
+                row("unpopular", 1500, 75, 89, 2000, "e2e4 e7e5") +
+                row("rarelyPlayed", 1500, 75, 95, 999, "e2e4 e7e5") +
+                row("uncertain", 1500, 100, 95, 2000, "e2e4 e7e5") +
+                row("tooEasy", 999, 75, 95, 2000, "e2e4 e7e5") +
+                row("oneMove", 1500, 75, 95, 2000, "e2e4") +
+                "broken,line\n" +
+                row("alsoKept", 3500, 99, 90, 1000, "e2e4 e7e5 g1f3"));
+
+        PuzzleCsvImporter.Result result = new PuzzleCsvImporter(csv, null).importInto(db);
+
+        assertInserted("kept", "alsoKept");
+        assertEquals(2, result.imported());
+        assertEquals(6, result.skipped());
+        assertTrue(result.complete());
+        verify(insert).bindLong(4, 1500);
+        verify(insert, times(2)).bindString(5, "fork middlegame");
+        verify(db).execSQL("DROP INDEX IF EXISTS " + PuzzleTable.INDEX_SAMPLING);
+    }
+
+    @Test
+    void testPuzzlesAlreadyInThePackCountAsSkipped() throws IOException {
+        when(insert.executeUpdateDelete()).thenReturn(1, 0);
+
+        PuzzleCsvImporter.Result result = new PuzzleCsvImporter(csv(HEADER + row("a") + row("a")), null).importInto(db);
+
+        assertEquals(1, result.imported());
+        assertEquals(1, result.skipped());
+    }
+
+    @Test
+    void testEachBatchCommitsTheOffsetItReached() throws IOException {
+        String content = HEADER + row("a") + row("b") + row("c") + row("d") + row("e");
+        File csv = csv(content);
+
+        // A buffer of a few lines also makes lines straddle refills.
+        PuzzleCsvImporter.Result result = new PuzzleCsvImporter(csv, null, 2, 400).importInto(db);
+
+        // The header counts as a line; the last batch only finds the end of the file.
+        assertEquals(5, result.imported());
+        verify(db, times(4)).beginTransaction();
+        verify(db, times(4)).setTransactionSuccessful();
+        verify(db, times(4)).endTransaction();
+        long afterA = (HEADER + row("a")).length();
+        long afterC = (HEADER + row("a") + row("b") + row("c")).length();
+        long end = content.length();
+        assertEquals(List.of(afterA, afterC, end, end), savedOffsets(4));
+        verify(saveOffset, times(4)).bindString(1, PuzzleCsvImporter.sourceOf(csv));
+    }
+
+    @Test
+    void testImportResumesAtTheSavedOffset() throws IOException {
+        String content = HEADER + row("a") + row("b") + row("c");
+        File csv = csv(content);
+        when(savedOffset.simpleQueryForLong()).thenReturn((long) (HEADER + row("a")).length());
+
+        PuzzleCsvImporter.Result result = new PuzzleCsvImporter(csv, null).importInto(db);
+
+        assertInserted("b", "c");
+        assertTrue(result.complete());
+        verify(savedOffset).bindString(1, PuzzleCsvImporter.sourceOf(csv));
+    }
+
+    @Test
+    void testFinishedImportDoesNothing() throws IOException {
+        String content = HEADER + row("a");
+        when(savedOffset.simpleQueryForLong()).thenReturn((long) content.length());
+
+        PuzzleCsvImporter.Result result = new PuzzleCsvImporter(csv(content), null).importInto(db);
+
+        assertTrue(result.complete());
+        assertEquals(0, result.imported());
+        verify(db, never()).beginTransaction();
+        verify(db, never()).execSQL("DROP INDEX IF EXISTS " + PuzzleTable.INDEX_SAMPLING);
+    }
+
+    @Test
+    void testCancelStopsAfterTheCommittedBatch() throws IOException {
+        File csv = csv(HEADER + row("a") + row("b") + row("c") + row("d"));
+        List<Integer> progress = new ArrayList<>();
+        PuzzleCsvImporter[] importer = new PuzzleCsvImporter[1];
+        importer[0] = new PuzzleCsvImporter(csv, (bytesRead, totalBytes, imported) -> {
+            progress.add(imported);
+            importer[0].cancel();
+        }, 2, PuzzleCsvImporter.BUFFER_SIZE);
+
+        PuzzleCsvImporter.Result result = importer[0].importInto(db);
+
+        assertFalse(result.complete());
+        assertEquals(1, result.imported());
+        assertEquals(List.of(1), progress);
+        assertEquals(List.of((long) (HEADER + row("a")).length()), savedOffsets(1));
+        assertTrue(importer[0].isCancelled());
+    }
+
+    @Test
+    void testCarriageReturnsAndAMissingFinalNewlineAreHandled() throws IOException {
+        String last = row("b");
+        File csv = csv(HEADER.replace("\n", "\r\n") + row("a").replace("\n", "\r\n") + last.substring(0, last.length() - 1));
+
+        PuzzleCsvImporter.Result result = new PuzzleCsvImporter(csv, null).importInto(db);
+
+        assertInserted("a", "b");
+        assertEquals(0, result.skipped());
+        verify(insert, times(2)).bindString(5, "fork middlegame");
+    }
+
+    @Test
+    void testLineLongerThanTheBufferFails() throws IOException {
+        File csv = csv(HEADER + row("a"));
+
+        assertThrows(IOException.class, () -> new PuzzleCsvImporter(csv, null, 10, 64).importInto(db));
+    }
+
+    @Test
+    void testFieldParsing() {
+        byte[] bytes = "1234,x12,,e2e4  e7e5 ".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(1234, PuzzleCsvImporter.parseInt(bytes, 0, 4));
+        assertEquals(Integer.MIN_VALUE, PuzzleCsvImporter.parseInt(bytes, 5, 8));
+        assertEquals(Integer.MIN_VALUE, PuzzleCsvImporter.parseInt(bytes, 9, 9));
+        assertEquals(2, PuzzleCsvImporter.countMoves(bytes, 10, bytes.length));
+    }
+
+    @Test
+    void testNullFileIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new PuzzleCsvImporter(null, null));
+        verify(db, never()).compileStatement(anyString());
+    }
+}
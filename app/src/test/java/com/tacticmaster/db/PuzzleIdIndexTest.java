@@ -0,0 +1,87 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+class PuzzleIdIndexTest {
+
+    private final PuzzleIdIndex index = PuzzleIdIndex.of(List.of("00sHx", "00sJ9", "00sO1", "01AbC", "zzzzz", "0"));
+
+    @Test
+    void testCompletesInAscendingOrder() {
+        assertEquals(List.of("00sHx", "00sJ9", "00sO1"), index.complete("00s", 10));
+        assertEquals(List.of("0", "00sHx", "00sJ9", "00sO1", "01AbC"), index.complete("0", 10));
+    }
+
+    @Test
+    void testCompletionIsCaseSensitive() {
+        assertEquals(List.of("01AbC"), index.complete("01Ab", 10));
+        assertTrue(index.complete("01ab", 10).isEmpty());
+    }
+
+    @Test
+    void testStopsAtTheLimit() {
+        assertEquals(List.of("0", "00sHx"), index.complete("0", 2));
+        assertTrue(index.complete("0", 0).isEmpty());
+    }
+
+    @Test
+    void testFullIdCompletesToItself() {
+        assertEquals(List.of("zzzzz"), index.complete("zzzzz", 10));
+        assertEquals(List.of("0"), PuzzleIdIndex.of(List.of("0", "00")).complete("0", 1));
+    }
+
+    @Test
+    void testContainsWholeIdsOnly() {
+        assertTrue(index.contains("00sJ9"));
+        assertTrue(index.contains("0"));
+        assertFalse(index.contains("00s"));
+        assertFalse(index.contains("toolongid"));
+        assertFalse(index.contains(null));
+    }
+
+    @Test
+    void testEmptyTooLongOrNonAsciiPrefixCompletesNothing() {
+        assertTrue(index.complete("", 10).isEmpty());
+        assertTrue(index.complete(null, 10).isEmpty());
+        assertTrue(index.complete("000000000", 10).isEmpty());
+        assertTrue(index.complete("ö", 10).isEmpty());
+    }
+
+    @Test
+    void testEightCharacterIdsAreCompleted() {
+        PuzzleIdIndex longIds = PuzzleIdIndex.of(List.of("abcdefgh", "abcdefgi", "abcdefg"));
+
+        assertEquals(List.of("abcdefg", "abcdefgh", "abcdefgi"), longIds.complete("abcdefg", 10));
+        assertEquals(List.of("abcdefgh"), longIds.complete("abcdefgh", 10));
+    }
+
+    @Test
+    void testIdsThatDoNotPackAreLeftOut() {
+        PuzzleIdIndex withInvalid = PuzzleIdIndex.of(List.of("aaaaa", "ä1234", "aaaaaaaaaaa"));
+
+        assertEquals(1, withInvalid.size());
+        assertEquals(List.of("aaaaa"), withInvalid.complete("a", 10));
+    }
+
+    @Test
+    void testLargeIndexAnswersEveryPrefix() {
+        List<String> puzzleIds = new ArrayList<>();
+        for (int i = 0; i < 300_000; i++) {
+            puzzleIds.add(String.format(Locale.ROOT, "%05x", i * 3));
+        }
+        PuzzleIdIndex large = PuzzleIdIndex.of(puzzleIds);
+
+        assertEquals(300_000, large.size());
+        assertEquals(List.of("00000", "00003", "00006"), large.complete("0000", 3));
+        assertEquals(List.of("dbb9d"), large.complete("dbb9d", 10));
+        assertEquals(List.of("dbb91", "dbb94", "dbb97", "dbb9a", "dbb9d"), large.complete("dbb9", 10));
+    }
+}
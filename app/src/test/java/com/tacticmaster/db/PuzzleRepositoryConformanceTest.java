@@ -0,0 +1,163 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Behavior every {@link PuzzleRepository} backend shares, run against each of them over the
+ * same small pack. Themes are sorted and all carry a {@link ThemeMask} bit, and the puzzles
+ * come in rating order, so the binary pack can hold them unchanged.
+ */
+abstract class PuzzleRepositoryConformanceTest {
+
+    static final String FEN = "8/8/8/8/8/8/8/K6k w - - 0 1";
+    static final List<Puzzle> PUZZLES = List.of(
+            new Puzzle("aaa01", FEN, "a1a2 h1h2", 1200, "fork", false),
+            new Puzzle("aaa02", FEN, "a1b1", 1200, "pin", false),
+            new Puzzle("aaa03", FEN, "a1a2", 1400, "fork pin", false),
+            new Puzzle("aaa04", FEN, "a1b2 h1g1", 1600, "endgame", false),
+            new Puzzle("aaa05", FEN, "a1a2", 1800, "fork", false)
+    );
+
+    private PuzzleRepository repository;
+
+    /**
+     * A fresh repository holding {@code puzzles}, none of them solved.
+     */
+    abstract PuzzleRepository create(List<Puzzle> puzzles) throws IOException;
+
+    @BeforeEach
+    void createRepository() throws IOException {
+        repository = create(PUZZLES);
+    }
+
+    private List<Puzzle> sample(int lowestRating, int highestRating, Set<String> excludedPuzzleIds, long themeMask) {
+        return repository.getPuzzlesWithinRange(lowestRating, highestRating, excludedPuzzleIds, themeMask);
+    }
+
+    private static Set<String> idsOf(List<Puzzle> puzzles) {
+        return puzzles.stream().map(Puzzle::puzzleId).collect(Collectors.toSet());
+    }
+
+    @Test
+    void testEveryPuzzleIsFoundById() {
+        for (Puzzle puzzle : PUZZLES) {
+            assertEquals(puzzle, repository.getPuzzleById(puzzle.puzzleId()));
+        }
+    }
+
+    @Test
+    void testUnknownIdIsNotFound() {
+        assertThrows(NoSuchElementException.class, () -> repository.getPuzzleById("zzz99"));
+    }
+
+    @Test
+    void testCountsPuzzlesAndSolves() {
+        assertEquals(PUZZLES.size(), repository.getAllPuzzleCount());
+        assertEquals(0, repository.getSolvedPuzzleCount());
+
+        repository.setSolved("aaa03");
+        repository.setSolved("aaa03");
+
+        assertEquals(1, repository.getSolvedPuzzleCount());
+    }
+
+    @Test
+    void testSamplesStayInTheBandWithOnePuzzlePerRating() {
+        for (int i = 0; i < 20; i++) {
+            List<Puzzle> sampled = sample(1200, 1400, Set.of(), ThemeMask.NONE);
+
+            assertEquals(2, sampled.size());
+            assertEquals(2, sampled.stream().map(Puzzle::rating).distinct().count());
+            assertTrue(sampled.stream().allMatch(puzzle -> puzzle.rating() >= 1200 && puzzle.rating() <= 1400));
+            assertTrue(sampled.stream().noneMatch(Puzzle::solved));
+        }
+    }
+
+    @Test
+    void testSamplesEveryRatingOfAWideBand() {
+        Set<Integer> ratings = new HashSet<>();
+        sample(0, 3000, Set.of(), ThemeMask.NONE).forEach(puzzle -> ratings.add(puzzle.rating()));
+
+        assertEquals(Set.of(1200, 1400, 1600, 1800), ratings);
+    }
+
+    @Test
+    void testSolvedAndExcludedPuzzlesAreNotSampled() {
+        repository.setSolved("aaa03");
+
+        assertFalse(repository.wasNotSolved("aaa03"));
+        assertTrue(repository.wasNotSolved("aaa04"));
+        assertTrue(repository.getPuzzleById("aaa03").solved());
+        assertEquals(Set.of("aaa04"), idsOf(sample(1300, 1700, Set.of(), ThemeMask.NONE)));
+        assertTrue(sample(1300, 1700, Set.of("aaa04"), ThemeMask.NONE).isEmpty());
+    }
+
+    @Test
+    void testSamplesOnlyPuzzlesWithAMaskedTheme() {
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Set.of("aaa02", "aaa03"), idsOf(sample(1000, 2000, Set.of("aaa01"), ThemeMask.bitOf("pin"))));
+        }
+        assertTrue(sample(1000, 2000, Set.of(), ThemeMask.bitOf("zugzwang")).isEmpty());
+    }
+
+    @Test
+    void testEmptyBandSamplesNothing() {
+        assertTrue(sample(1900, 2500, Set.of(), ThemeMask.NONE).isEmpty());
+        assertTrue(sample(1300, 1350, Set.of(), ThemeMask.NONE).isEmpty());
+    }
+
+    @Test
+    void testListsTheThemesOfThePack() {
+        assertEquals(Set.of("endgame", "fork", "pin"), repository.getPuzzleThemes());
+    }
+
+    @Test
+    void testThemesWithoutUnsolvedPuzzlesAreNotListed() {
+        repository.setSolved("aaa04");
+
+        assertEquals(Set.of("fork", "pin"), repository.getPuzzleThemes());
+    }
+
+    @Test
+    void testIdIndexCompletesEveryIdOfThePack() {
+        PuzzleIdIndex index = repository.getPuzzleIdIndex();
+
+        assertEquals(PUZZLES.size(), index.size());
+        assertEquals(List.of("aaa01", "aaa02", "aaa03", "aaa04", "aaa05"), index.complete("aaa0", 10));
+        assertEquals(List.of("aaa04"), index.complete("aaa04", 10));
+        assertTrue(index.complete("b", 10).isEmpty());
+    }
+
+    @Test
+    void testRatingHistogramFollowsSolves() {
+        RatingHistogram histogram = repository.getRatingHistogram();
+        assertEquals(PUZZLES.size(), histogram.unsolved(1000, 2000, ThemeMask.NONE));
+
+        repository.setSolved("aaa01");
+        repository.setSolved("aaa01");
+
+        assertEquals(PUZZLES.size() - 1, histogram.unsolved(1000, 2000, ThemeMask.NONE));
+        assertEquals(2, histogram.unsolved(1000, 2000, ThemeMask.bitOf("pin")));
+    }
+
+    @Test
+    void testNoReviewIsDueWithoutAFailedAttempt() {
+        assertNull(repository.pollDueReview(ThemeMask.NONE));
+    }
+}
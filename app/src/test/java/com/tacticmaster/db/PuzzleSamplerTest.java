@@ -0,0 +1,220 @@
+package com.tacticmaster.db;
+
+import static com.tacticmaster.db.PuzzleTable.COLUMN_PUZZLE_ID;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_RATING;
+import static com.tacticmaster.db.PuzzleTable.COLUMN_SAMPLE_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class PuzzleSamplerTest {
+
+    private SQLiteDatabase database;
+    private PuzzleSampler sampler;
+
+    @BeforeEach
+    void setUp() {
+        database = mock(SQLiteDatabase.class);
+        sampler = new PuzzleSampler(new Random(42));
+    }
+
+    private static Cursor emptyCursor() {
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(false);
+        return cursor;
+    }
+
+    private static Cursor singleRowCursor(String puzzleId, int rating) {
+        return rowsCursor(rating, 0L, puzzleId);
+    }
+
+    // Rows in the sampler's column order: PuzzleId, FEN, Moves, Rating, Themes, SampleKey.
+    private static Cursor rowsCursor(int rating, long firstSampleKey, String... puzzleIds) {
+        Cursor cursor = mock(Cursor.class);
+        int[] position = {-1};
+        when(cursor.moveToNext()).thenAnswer(invocation -> ++position[0] < puzzleIds.length);
+        when(cursor.getString(0)).thenAnswer(invocation -> puzzleIds[position[0]]);
+        when(cursor.getString(1)).thenReturn("fen");
+        when(cursor.getString(2)).thenReturn("moves");
+        when(cursor.getInt(3)).thenReturn(rating);
+        when(cursor.getString(4)).thenReturn("");
+        when(cursor.getLong(5)).thenAnswer(invocation -> firstSampleKey + position[0]);
+        return cursor;
+    }
+
+    private static Cursor solvedPageCursor(String[] solved) {
+        return rowsCursor(1500, 100L, solved);
+    }
+
+    private static String[] solvedIds() {
+        String[] solved = new String[PuzzleSampler.PAGE_SIZE];
+        for (int i = 0; i < solved.length; i++) {
+            solved[i] = "solved" + i;
+        }
+        return solved;
+    }
+
+    @Test
+    void testExhaustedBandStopsAfterOneProbe() {
+        when(database.rawQuery(anyString(), any(String[].class))).thenAnswer(invocation -> emptyCursor());
+
+        List<Puzzle> puzzles = sampler.sample(database, 1500, 1600, new HashSet<>(), ThemeMask.NONE, Set.of());
+
+        assertTrue(puzzles.isEmpty());
+        // Random seek, ratings above, then both halves of the wrap-around: the band is empty.
+        verify(database, times(4)).rawQuery(anyString(), any(String[].class));
+    }
+
+    @Test
+    void testFillsBatchWithDistinctRatings() {
+        Cursor[] cursors = {
+                singleRowCursor("a", 1500),
+                singleRowCursor("b", 1510),
+                singleRowCursor("c", 1520),
+                singleRowCursor("d", 1530),
+                singleRowCursor("e", 1540),
+                singleRowCursor("f", 1550)};
+        when(database.rawQuery(anyString(), any(String[].class)))
+                .thenReturn(cursors[0], Arrays.copyOfRange(cursors, 1, cursors.length));
+
+        List<Puzzle> puzzles = sampler.sample(database, 1500, 1600, new HashSet<>(), ThemeMask.NONE, Set.of());
+
+        assertEquals(PuzzleSampler.BATCH_SIZE, puzzles.size());
+        assertEquals(PuzzleSampler.BATCH_SIZE, puzzles.stream().map(Puzzle::rating).distinct().count());
+        verify(database, times(PuzzleSampler.BATCH_SIZE)).rawQuery(anyString(), any(String[].class));
+    }
+
+    @Test
+    void testSampledRatingsAreExcludedFromLaterProbes() {
+        Cursor first = singleRowCursor("a", 1555);
+        Cursor empty = emptyCursor();
+        when(database.rawQuery(anyString(), any(String[].class))).thenReturn(first, empty);
+
+        sampler.sample(database, 1500, 1600, new HashSet<>(), ThemeMask.NONE, Set.of());
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String[]> argsCaptor = ArgumentCaptor.forClass(String[].class);
+        verify(database, times(5)).rawQuery(queryCaptor.capture(), argsCaptor.capture());
+
+        String secondQuery = queryCaptor.getAllValues().get(1);
+        assertTrue(secondQuery.contains(COLUMN_RATING + " NOT IN (?)"), secondQuery);
+        assertTrue(Arrays.asList(argsCaptor.getAllValues().get(1)).contains("1555"));
+    }
+
+    @Test
+    void testRepeatedRatingDoesNotLoopForever() {
+        when(database.rawQuery(anyString(), any(String[].class))).thenAnswer(invocation -> singleRowCursor("a", 1500));
+
+        List<Puzzle> puzzles = sampler.sample(database, 1500, 1600, new HashSet<>(), ThemeMask.NONE, Set.of());
+
+        assertEquals(1, puzzles.size());
+    }
+
+    @Test
+    void testSolvedPuzzlesAreSkippedInMemory() {
+        Cursor cursor = rowsCursor(1500, 0L, "solved", "open");
+        Cursor empty = emptyCursor();
+        when(database.rawQuery(anyString(), any(String[].class))).thenReturn(cursor, empty);
+
+        List<Puzzle> puzzles = sampler.sample(database, 1500, 1600, new HashSet<>(), ThemeMask.NONE, Set.of("solved"));
+
+        assertEquals("open", puzzles.get(0).puzzleId());
+        assertFalse(puzzles.get(0).solved());
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        verify(database, atLeastOnce()).rawQuery(queryCaptor.capture(), any(String[].class));
+        queryCaptor.getAllValues().forEach(query -> assertFalse(query.contains("Solved"), query));
+    }
+
+    @Test
+    void testFullPageOfSolvedPuzzlesContinuesAfterLastKey() {
+        String[] solved = solvedIds();
+        Cursor fullPage = solvedPageCursor(solved);
+        Cursor next = singleRowCursor("open", 1500);
+        Cursor empty = emptyCursor();
+        when(database.rawQuery(anyString(), any(String[].class))).thenReturn(fullPage, next, empty);
+
+        List<Puzzle> puzzles = sampler.sample(database, 1500, 1500, new HashSet<>(), ThemeMask.NONE, Set.of(solved));
+
+        assertEquals("open", puzzles.get(0).puzzleId());
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String[]> argsCaptor = ArgumentCaptor.forClass(String[].class);
+        verify(database, atLeastOnce()).rawQuery(queryCaptor.capture(), argsCaptor.capture());
+        assertTrue(queryCaptor.getAllValues().get(1).contains(COLUMN_SAMPLE_KEY + " >= ?"));
+        assertEquals("1500", argsCaptor.getAllValues().get(1)[0]);
+        assertEquals(String.valueOf(100L + PuzzleSampler.PAGE_SIZE), argsCaptor.getAllValues().get(1)[1]);
+    }
+
+    @Test
+    void testLaterProbeGivesUpAfterItsPageBudget() {
+        String[] solved = solvedIds();
+        Cursor first = singleRowCursor("a", 1510);
+        when(database.rawQuery(anyString(), any(String[].class)))
+                .thenReturn(first)
+                .thenAnswer(invocation -> solvedPageCursor(solved));
+
+        List<Puzzle> puzzles = sampler.sample(database, 1500, 1600, new HashSet<>(), ThemeMask.NONE, Set.of(solved));
+
+        assertEquals(1, puzzles.size());
+        verify(database, times(1 + PuzzleSampler.SEEKS_PER_PROBE * PuzzleSampler.PAGES_PER_SEEK))
+                .rawQuery(anyString(), any(String[].class));
+    }
+
+    @Test
+    void testFirstProbeWalksOnUntilItFindsAPuzzle() {
+        String[] solved = solvedIds();
+        int boundedPages = PuzzleSampler.SEEKS_PER_PROBE * PuzzleSampler.PAGES_PER_SEEK;
+        int[] calls = {0};
+        when(database.rawQuery(anyString(), any(String[].class))).thenAnswer(invocation -> {
+            if (calls[0]++ < boundedPages + 5) {
+                return solvedPageCursor(solved);
+            }
+            return calls[0] == boundedPages + 6 ? singleRowCursor("open", 1500) : emptyCursor();
+        });
+
+        List<Puzzle> puzzles = sampler.sample(database, 1500, 1500, new HashSet<>(), ThemeMask.NONE, Set.of(solved));
+
+        assertEquals("open", puzzles.get(0).puzzleId());
+    }
+
+    @Test
+    void testExcludedPuzzlesAreSkippedWithoutGrowingTheStatement() {
+        Set<String> excluded = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            excluded.add("served" + i);
+        }
+        Cursor page = rowsCursor(1500, 0L, "served1", "served2", "fresh");
+        Cursor empty = emptyCursor();
+        when(database.rawQuery(anyString(), any(String[].class))).thenReturn(page, empty);
+
+        List<Puzzle> puzzles = sampler.sample(database, 1500, 1600, excluded, ThemeMask.NONE, Set.of());
+
+        assertEquals("fresh", puzzles.get(0).puzzleId());
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String[]> argsCaptor = ArgumentCaptor.forClass(String[].class);
+        verify(database, atLeastOnce()).rawQuery(queryCaptor.capture(), argsCaptor.capture());
+        assertFalse(queryCaptor.getAllValues().get(0).contains(COLUMN_PUZZLE_ID + " NOT IN"), queryCaptor.getAllValues().get(0));
+        assertEquals(2, argsCaptor.getAllValues().get(0).length);
+    }
+}
@@ -15,5 +15,9 @@ class PuzzleTableTest {
         assertEquals("Rating", PuzzleTable.COLUMN_RATING);
         assertEquals("Solved", PuzzleTable.COLUMN_SOLVED);
         assertEquals("Themes", PuzzleTable.COLUMN_THEMES);
+        assertEquals("SampleKey", PuzzleTable.COLUMN_SAMPLE_KEY);
+        assertEquals("ThemeMask", PuzzleTable.COLUMN_THEME_MASK);
+        assertEquals("puzzle_progress", PuzzleTable.PROGRESS_TABLE_NAME);
+        assertEquals("Attempts", PuzzleTable.COLUMN_ATTEMPTS);
     }
 }
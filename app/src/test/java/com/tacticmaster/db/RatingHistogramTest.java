@@ -0,0 +1,133 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class RatingHistogramTest {
+
+    private static final long FORK = ThemeMask.bitOf("fork");
+    private static final long PIN = ThemeMask.bitOf("pin");
+    private static final long SKEWER = ThemeMask.bitOf("skewer");
+    private static final int[] NONE_EXCLUDED = {};
+
+    @Test
+    void testCountsPerBandAndTheme() {
+        RatingHistogram histogram = new RatingHistogram();
+        histogram.add(1500, FORK);
+        histogram.add(1520, FORK | PIN);
+        histogram.add(1800, PIN);
+
+        assertEquals(3, histogram.unsolved(1400, 1900, ThemeMask.NONE));
+        assertEquals(2, histogram.unsolved(1500, 1529, ThemeMask.NONE));
+        assertEquals(2, histogram.unsolved(1400, 1900, FORK));
+        assertEquals(1, histogram.unsolved(1700, 1900, PIN | FORK));
+        assertEquals(0, histogram.unsolved(1400, 1900, SKEWER));
+        assertEquals(0, histogram.unsolved(1600, 1700, ThemeMask.NONE));
+        assertEquals(0, histogram.unsolved(1900, 1400, ThemeMask.NONE));
+    }
+
+    @Test
+    void testPuzzleWithSeveralMaskedThemesIsAnUpperBound() {
+        RatingHistogram histogram = new RatingHistogram();
+        histogram.add(1520, FORK | PIN);
+
+        assertEquals(2, histogram.unsolved(1500, 1550, FORK | PIN));
+    }
+
+    @Test
+    void testSolvingRemovesTheLastCandidate() {
+        RatingHistogram histogram = new RatingHistogram();
+        histogram.add(1500, FORK);
+        assertFalse(histogram.isExhausted(FORK));
+
+        histogram.remove(1500, FORK);
+
+        assertTrue(histogram.isExhausted(FORK));
+        assertTrue(histogram.isExhausted(ThemeMask.NONE));
+    }
+
+    @Test
+    void testUnsolvedThemeMaskDropsThemesWithoutCandidates() {
+        RatingHistogram histogram = new RatingHistogram();
+        histogram.add(1500, FORK | PIN);
+        histogram.add(1800, PIN);
+        assertEquals(FORK | PIN, histogram.unsolvedThemeMask());
+
+        histogram.remove(1500, FORK | PIN);
+
+        assertEquals(PIN, histogram.unsolvedThemeMask());
+        RatingHistogram other = new RatingHistogram();
+        other.add(1600, SKEWER);
+        assertEquals(PIN | SKEWER, RatingHistogram.sumOf(List.of(histogram, other)).unsolvedThemeMask());
+    }
+
+    @Test
+    void testNarrowestHalfWidthReachesTheClosestCandidate() {
+        RatingHistogram histogram = new RatingHistogram();
+        histogram.add(1500, FORK);
+        histogram.add(1320, PIN);
+
+        assertEquals(50, histogram.narrowestHalfWidth(1520, ThemeMask.NONE, 50, 50, 1, NONE_EXCLUDED));
+        assertEquals(200, histogram.narrowestHalfWidth(1520, PIN, 50, 50, 1, NONE_EXCLUDED));
+        assertEquals(1750, histogram.narrowestHalfWidth(3250, FORK, 50, 50, 1, NONE_EXCLUDED));
+        assertEquals(-1, histogram.narrowestHalfWidth(1520, SKEWER, 50, 50, 1, NONE_EXCLUDED));
+
+        RatingHistogram other = new RatingHistogram();
+        other.add(1540, SKEWER);
+        assertEquals(50, RatingHistogram.sumOf(List.of(histogram, other)).narrowestHalfWidth(1520, SKEWER, 50, 50, 1, NONE_EXCLUDED));
+        assertEquals(-1, RatingHistogram.sumOf(List.of()).narrowestHalfWidth(1520, ThemeMask.NONE, 50, 50, 1, NONE_EXCLUDED));
+    }
+
+    @Test
+    void testNarrowestHalfWidthWidensUntilEnoughCandidatesAreLeft() {
+        RatingHistogram histogram = new RatingHistogram();
+        histogram.add(1500, FORK);
+        histogram.add(1510, FORK);
+        histogram.add(1600, PIN);
+        histogram.add(2500, PIN);
+
+        assertEquals(50, histogram.narrowestHalfWidth(1500, ThemeMask.NONE, 50, 50, 2, NONE_EXCLUDED));
+        assertEquals(100, histogram.narrowestHalfWidth(1500, ThemeMask.NONE, 50, 50, 3, NONE_EXCLUDED));
+        // Fewer than wanted are left, so the band reaches the last of them.
+        assertEquals(1000, histogram.narrowestHalfWidth(1500, ThemeMask.NONE, 50, 50, 10, NONE_EXCLUDED));
+        // Buffered puzzles no longer count, so the band reaches past them.
+        assertEquals(100, histogram.narrowestHalfWidth(1500, ThemeMask.NONE, 50, 50, 1, new int[]{1500, 1510}));
+        // The next band after one that sampled empty.
+        assertEquals(100, histogram.narrowestHalfWidth(1500, ThemeMask.NONE, 100, 50, 1, NONE_EXCLUDED));
+        // Discounting everything left falls back to the plain counts instead of reporting exhaustion.
+        assertEquals(50, histogram.narrowestHalfWidth(1500, FORK, 50, 50, 1, new int[]{1500, 1510, 1520}));
+    }
+
+    @Test
+    void testRatingsOutsideTheRangeAreClamped() {
+        RatingHistogram histogram = new RatingHistogram();
+        histogram.add(-5, ThemeMask.NONE);
+        histogram.add(RatingHistogram.MAX_RATING + 700, ThemeMask.NONE);
+
+        assertEquals(1, histogram.unsolved(0, 9, ThemeMask.NONE));
+        assertEquals(1, histogram.unsolved(RatingHistogram.MAX_RATING, Integer.MAX_VALUE, ThemeMask.NONE));
+    }
+
+    @Test
+    void testSumFollowsItsParts() {
+        RatingHistogram bundled = new RatingHistogram();
+        RatingHistogram endgame = new RatingHistogram();
+        bundled.add(1500, FORK);
+        endgame.add(1510, PIN);
+        RatingHistogram sum = RatingHistogram.sumOf(List.of(bundled, endgame));
+
+        assertEquals(2, sum.unsolved(1500, 1550, ThemeMask.NONE));
+        assertEquals(1, sum.unsolved(1500, 1550, PIN));
+
+        endgame.remove(1510, PIN);
+
+        assertTrue(sum.isExhausted(PIN));
+        assertFalse(sum.isExhausted(FORK));
+        assertTrue(RatingHistogram.sumOf(List.of()).isExhausted(ThemeMask.NONE));
+    }
+}
@@ -0,0 +1,194 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+class ReviewQueueTest {
+
+    private static final long NOW = 1_000_000;
+    private static final long FORK = ThemeMask.bitOf("fork");
+    private static final long PIN = ThemeMask.bitOf("pin");
+
+    /**
+     * Stands in for the review table and its (DueAt, PuzzleId) index.
+     */
+    private static final class Table implements ReviewQueue.PageLoader {
+        final TreeMap<String, Review> rows = new TreeMap<>();
+        int pagesLoaded;
+
+        void put(Review review) {
+            rows.put(review.puzzleId(), review);
+        }
+
+        @Override
+        public List<Review> after(long dueAt, String puzzleId, int limit) {
+            pagesLoaded++;
+            List<Review> sorted = new ArrayList<>(rows.values());
+            sorted.sort((a, b) -> a.compareTo(b.dueAt(), b.puzzleId()));
+            List<Review> page = new ArrayList<>();
+            for (Review review : sorted) {
+                if (review.compareTo(dueAt, puzzleId) > 0 && page.size() < limit) {
+                    page.add(review);
+                }
+            }
+            return page;
+        }
+    }
+
+    private static Review review(String puzzleId, long dueAt) {
+        return review(puzzleId, dueAt, ThemeMask.NONE);
+    }
+
+    private static Review review(String puzzleId, long dueAt, long themeMask) {
+        return new Review(puzzleId, dueAt, 1, Review.INITIAL_EASE, 0, themeMask);
+    }
+
+    // Stores the review and tells the queue, as ReviewStore does.
+    private static void schedule(Table table, ReviewQueue queue, Review review) {
+        table.put(review);
+        queue.onScheduled(review);
+    }
+
+    @Test
+    void testDueReviewsComeOutMostOverdueFirst() {
+        Table table = new Table();
+        table.put(review("b", NOW - 10));
+        table.put(review("a", NOW - 20));
+        table.put(review("c", NOW + 10));
+        ReviewQueue queue = new ReviewQueue(table);
+
+        assertEquals("a", queue.pollDue(NOW, ThemeMask.NONE));
+        assertEquals("b", queue.pollDue(NOW, ThemeMask.NONE));
+        assertNull(queue.pollDue(NOW, ThemeMask.NONE));
+        assertEquals("c", queue.pollDue(NOW + 10, ThemeMask.NONE));
+    }
+
+    @Test
+    void testTensOfThousandsOfReviewsAreLoadedOnePageAtATime() {
+        Table table = new Table();
+        int reviews = 40_000;
+        for (int i = 0; i < reviews; i++) {
+            table.put(review(String.format("p%05d", i), NOW - reviews + i));
+        }
+        ReviewQueue queue = new ReviewQueue(table);
+
+        assertEquals("p00000", queue.pollDue(NOW, ThemeMask.NONE));
+        assertEquals(1, table.pagesLoaded);
+        assertTrue(queue.loadedSize() < ReviewQueue.PAGE_SIZE);
+
+        for (int i = 1; i < ReviewQueue.PAGE_SIZE + 1; i++) {
+            assertEquals(String.format("p%05d", i), queue.pollDue(NOW, ThemeMask.NONE));
+        }
+        assertEquals(2, table.pagesLoaded);
+    }
+
+    @Test
+    void testRescheduledReviewIsOfferedAtItsNewDueTime() {
+        Table table = new Table();
+        table.put(review("a", NOW - 20));
+        table.put(review("b", NOW - 10));
+        ReviewQueue queue = new ReviewQueue(table);
+        assertEquals("a", queue.pollDue(NOW, ThemeMask.NONE));
+
+        schedule(table, queue, review("b", NOW + 100));
+        schedule(table, queue, review("a", NOW + 50));
+
+        assertNull(queue.pollDue(NOW, ThemeMask.NONE));
+        assertEquals("a", queue.pollDue(NOW + 100, ThemeMask.NONE));
+        assertEquals("b", queue.pollDue(NOW + 100, ThemeMask.NONE));
+        assertNull(queue.pollDue(NOW + 100, ThemeMask.NONE));
+    }
+
+    @Test
+    void testReviewRescheduledPastTheLoadedPageComesFromALaterPage() {
+        Table table = new Table();
+        int reviews = ReviewQueue.PAGE_SIZE * 2;
+        for (int i = 0; i < reviews; i++) {
+            table.put(review(String.format("p%05d", i), NOW - reviews + i));
+        }
+        ReviewQueue queue = new ReviewQueue(table);
+        assertEquals("p00000", queue.pollDue(NOW, ThemeMask.NONE));
+
+        // Beyond the first page: only a later page may bring it back, once.
+        schedule(table, queue, review("p00001", NOW));
+
+        List<String> due = new ArrayList<>();
+        String puzzleId;
+        while ((puzzleId = queue.pollDue(NOW, ThemeMask.NONE)) != null) {
+            due.add(puzzleId);
+        }
+        assertEquals(reviews - 1, due.size());
+        assertEquals("p00002", due.get(0));
+        assertEquals("p00001", due.get(due.size() - 1));
+    }
+
+    @Test
+    void testReviewFailedAfterEverythingIsLoadedIsQueued() {
+        Table table = new Table();
+        ReviewQueue queue = new ReviewQueue(table);
+        assertNull(queue.pollDue(NOW, ThemeMask.NONE));
+
+        schedule(table, queue, review("new", NOW + 1));
+
+        assertEquals("new", queue.pollDue(NOW + 1, ThemeMask.NONE));
+        assertEquals(1, table.pagesLoaded);
+    }
+
+    @Test
+    void testFilteredPollLeavesOtherThemesQueued() {
+        Table table = new Table();
+        table.put(review("a", NOW - 30, PIN));
+        table.put(review("b", NOW - 20, FORK));
+        table.put(review("c", NOW - 10, FORK | PIN));
+        table.put(review("d", NOW + 10, FORK));
+        ReviewQueue queue = new ReviewQueue(table);
+
+        assertEquals("b", queue.pollDue(NOW, FORK));
+        assertEquals("c", queue.pollDue(NOW, FORK));
+        assertNull(queue.pollDue(NOW, FORK));
+        assertEquals("a", queue.pollDue(NOW, ThemeMask.NONE));
+        assertNull(queue.pollDue(NOW, PIN));
+        assertEquals("d", queue.pollDue(NOW + 10, FORK | PIN));
+    }
+
+    @Test
+    void testFilteredPollPagesPastReviewsOutsideTheFilter() {
+        Table table = new Table();
+        for (int i = 0; i < ReviewQueue.PAGE_SIZE; i++) {
+            table.put(review(String.format("p%05d", i), NOW - 2 * ReviewQueue.PAGE_SIZE + i, PIN));
+        }
+        table.put(review("fork", NOW - 1, FORK));
+        ReviewQueue queue = new ReviewQueue(table);
+
+        assertEquals("fork", queue.pollDue(NOW, FORK));
+        assertEquals(2, table.pagesLoaded);
+        assertNull(queue.pollDue(NOW, FORK));
+        assertEquals("p00000", queue.pollDue(NOW, ThemeMask.NONE));
+    }
+
+    @Test
+    void testNoPageIsLoadedOnceTheLoadedReviewsAreNotDue() {
+        Table table = new Table();
+        for (int i = 0; i < ReviewQueue.PAGE_SIZE + 1; i++) {
+            table.put(review(String.format("p%05d", i), NOW + i, PIN));
+        }
+        ReviewQueue queue = new ReviewQueue(table);
+
+        assertNull(queue.pollDue(NOW - 1, FORK));
+        assertNull(queue.pollDue(NOW - 1, FORK));
+        assertEquals(1, table.pagesLoaded);
+    }
+
+    @Test
+    void testNullLoaderIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ReviewQueue(null));
+    }
+}
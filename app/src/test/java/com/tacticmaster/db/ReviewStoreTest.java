@@ -0,0 +1,147 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.tacticmaster.puzzle.PuzzleAttempt;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ReviewStoreTest {
+
+    private static final long DAY = Review.DAY_MILLIS;
+
+    private SQLiteDatabase database;
+    private SQLiteStatement save;
+    private Cursor empty;
+    private ReviewStore store;
+
+    @BeforeEach
+    void setUp() {
+        database = mock(SQLiteDatabase.class);
+        save = mock(SQLiteStatement.class);
+        empty = mock(Cursor.class);
+        when(database.compileStatement(ReviewStore.SAVE_REVIEW)).thenReturn(save);
+        when(database.rawQuery(anyString(), any())).thenReturn(empty);
+        store = new ReviewStore(database);
+    }
+
+    private static PuzzleAttempt attempt(String puzzleId, long attemptedAt, boolean solved, int hintsUsed, long solveTimeMillis) {
+        return new PuzzleAttempt(puzzleId, "fork", 1500, attemptedAt, solveTimeMillis, hintsUsed, solved, 1500, 1500);
+    }
+
+    private static Cursor row(Review review) {
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToFirst()).thenReturn(true);
+        when(cursor.getString(0)).thenReturn(review.puzzleId());
+        when(cursor.getLong(1)).thenReturn(review.dueAt());
+        when(cursor.getInt(2)).thenReturn(review.intervalDays());
+        when(cursor.getInt(3)).thenReturn(review.ease());
+        when(cursor.getInt(4)).thenReturn(review.repetitions());
+        when(cursor.getLong(5)).thenReturn(review.themeMask());
+        return cursor;
+    }
+
+    @Test
+    void testIntervalsFollowSm2() {
+        Review review = Review.initial("1", ThemeMask.NONE).next(1, 0);
+        assertEquals(1, review.intervalDays());
+        assertEquals(DAY, review.dueAt());
+        assertEquals(Review.INITIAL_EASE - 540, review.ease());
+
+        review = review.next(4, DAY);
+        assertEquals(1, review.intervalDays());
+        review = review.next(4, 2 * DAY);
+        assertEquals(6, review.intervalDays());
+        review = review.next(5, 8 * DAY);
+        assertEquals(Math.round(6 * 1960 / 1000.0), review.intervalDays());
+        assertEquals(3, review.repetitions());
+        assertEquals(2060, review.ease());
+
+        review = review.next(1, 20 * DAY);
+        assertEquals(0, review.repetitions());
+        assertEquals(1, review.intervalDays());
+        assertEquals(21 * DAY, review.dueAt());
+    }
+
+    @Test
+    void testEaseNeverDropsBelowTheSm2Minimum() {
+        Review review = Review.initial("1", ThemeMask.NONE);
+        for (int i = 0; i < 10; i++) {
+            review = review.next(0, 0);
+        }
+        assertEquals(Review.MIN_EASE, review.ease());
+    }
+
+    @Test
+    void testAttemptsAreGradedFromSolvedHintsAndTime() {
+        assertEquals(1, ReviewStore.quality(attempt("1", 0, false, 0, 1_000)));
+        assertEquals(3, ReviewStore.quality(attempt("1", 0, true, 1, 1_000)));
+        assertEquals(5, ReviewStore.quality(attempt("1", 0, true, 0, ReviewStore.QUICK_SOLVE_MILLIS)));
+        assertEquals(4, ReviewStore.quality(attempt("1", 0, true, 0, ReviewStore.QUICK_SOLVE_MILLIS + 1)));
+    }
+
+    @Test
+    void testFailedPuzzleIsScheduledForTheNextDay() {
+        // Nothing stored yet, so the queue has loaded everything and takes the new review directly.
+        assertNull(store.pollDue(0, ThemeMask.NONE));
+
+        store.record(attempt("1", 1_000, false, 0, 5_000));
+
+        verify(save).bindString(1, "1");
+        verify(save).bindLong(2, 1_000 + DAY);
+        verify(save).bindLong(6, ThemeMask.bitOf("fork"));
+        verify(save).executeInsert();
+        assertNull(store.pollDue(1_000, ThemeMask.NONE));
+        assertNull(store.pollDue(1_000 + DAY, ThemeMask.bitOf("pin")));
+        assertEquals("1", store.pollDue(1_000 + DAY, ThemeMask.bitOf("fork")));
+    }
+
+    @Test
+    void testSolvedPuzzleNotUnderReviewIsNotScheduled() {
+        store.record(attempt("1", 1_000, true, 0, 5_000));
+
+        verify(save, never()).executeInsert();
+    }
+
+    @Test
+    void testSolvedReviewMovesAlong() {
+        Review review = new Review("1", DAY, 1, 2000, 1, ThemeMask.NONE);
+        Cursor existing = row(review);
+        when(database.rawQuery(ReviewStore.REVIEW_BY_ID, new String[]{"1"})).thenReturn(existing);
+
+        store.record(attempt("1", 2 * DAY, true, 0, 5_000));
+
+        verify(save).bindLong(2, 8 * DAY);
+        verify(save).bindLong(3, 6);
+        verify(save).bindLong(5, 2);
+        // Stored before theme masks were kept; the attempt fills it in.
+        verify(save).bindLong(6, ThemeMask.bitOf("fork"));
+    }
+
+    @Test
+    void testDueReviewsArePagedThroughTheDueIndex() {
+        store.pollDue(0, ThemeMask.NONE);
+
+        verify(database).rawQuery(startsWith(ReviewStore.REVIEWS_AFTER), eq(new String[]{String.valueOf(Long.MIN_VALUE), String.valueOf(Long.MIN_VALUE), ""}));
+    }
+
+    @Test
+    void testNullDatabaseIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ReviewStore(null));
+    }
+}
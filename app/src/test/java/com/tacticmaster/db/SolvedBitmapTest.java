@@ -0,0 +1,175 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+class SolvedBitmapTest {
+
+    private static final int PUZZLES = 300_000;
+
+    private static byte[] serialize(SolvedBitmap bitmap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            bitmap.writeTo(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SolvedBitmap deserialize(byte[] bytes) throws IOException {
+        return SolvedBitmap.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    // Solves a random fraction of the puzzles, recording them in both the bitmap and a reference.
+    private static BitSet solveRandomly(SolvedBitmap bitmap, double density, long seed) {
+        Random random = new Random(seed);
+        BitSet reference = new BitSet(PUZZLES);
+        for (int ordinal = 0; ordinal < PUZZLES; ordinal++) {
+            if (random.nextDouble() < density) {
+                bitmap.add(ordinal);
+                reference.set(ordinal);
+            }
+        }
+        return reference;
+    }
+
+    private static void assertSameValues(BitSet reference, SolvedBitmap bitmap) {
+        assertEquals(reference.cardinality(), bitmap.cardinality());
+        for (int ordinal = 0; ordinal < PUZZLES; ordinal++) {
+            assertEquals(reference.get(ordinal), bitmap.contains(ordinal), "ordinal " + ordinal);
+        }
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        List<Integer> expected = new ArrayList<>();
+        reference.stream().forEach(expected::add);
+        assertEquals(expected, values);
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.0, 0.001, 0.01, 0.1, 0.5, 0.99, 1.0})
+    void testRoundTripAtEveryDensity(double density) throws IOException {
+        SolvedBitmap bitmap = new SolvedBitmap();
+        BitSet reference = solveRandomly(bitmap, density, 42);
+
+        assertSameValues(reference, bitmap);
+        assertSameValues(reference, deserialize(serialize(bitmap)));
+    }
+
+    @Test
+    void testSparseAndNearlyCompleteProgressSerializeToAFewKilobytes() throws IOException {
+        SolvedBitmap sparse = new SolvedBitmap();
+        solveRandomly(sparse, 0.005, 1);
+        SolvedBitmap complete = new SolvedBitmap();
+        solveRandomly(complete, 0.999, 2);
+        SolvedBitmap contiguous = new SolvedBitmap();
+        for (int ordinal = 0; ordinal < PUZZLES; ordinal++) {
+            contiguous.add(ordinal);
+        }
+
+        // 1,500 solved puzzles: about two bytes each.
+        assertTrue(serialize(sparse).length < 4_000, "sparse " + serialize(sparse).length);
+        // 300 gaps: about four bytes each.
+        assertTrue(serialize(complete).length < 2_000, "complete " + serialize(complete).length);
+        assertTrue(serialize(contiguous).length < 100, "contiguous " + serialize(contiguous).length);
+        // Random progress at any density never exceeds one 8 KiB bitmap per 65,536 puzzles.
+        SolvedBitmap half = new SolvedBitmap();
+        solveRandomly(half, 0.5, 3);
+        assertTrue(serialize(half).length < (PUZZLES / 65_536 + 1) * 8_192 + 100, "half " + serialize(half).length);
+    }
+
+    @Test
+    void testRemoveShrinksBitmapContainersBackToArrays() throws IOException {
+        SolvedBitmap bitmap = new SolvedBitmap();
+        for (int value = 0; value <= SolvedBitmap.ARRAY_MAX; value++) {
+            assertTrue(bitmap.add(value * 3));
+        }
+        assertFalse(bitmap.add(0));
+
+        assertTrue(bitmap.remove(0));
+        assertFalse(bitmap.remove(0));
+        assertTrue(bitmap.remove(3));
+
+        assertEquals(SolvedBitmap.ARRAY_MAX - 1, bitmap.cardinality());
+        assertFalse(bitmap.contains(3));
+        assertTrue(bitmap.contains(6));
+        assertEquals(SolvedBitmap.ARRAY_MAX - 1, deserialize(serialize(bitmap)).cardinality());
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+    }
+
+    @Test
+    void testRangeCardinalityAndNextAbsent() {
+        SolvedBitmap bitmap = new SolvedBitmap();
+        for (int ordinal = 65_530; ordinal < 65_600; ordinal++) {
+            bitmap.add(ordinal);
+        }
+        bitmap.add(200_000);
+
+        assertEquals(71, bitmap.cardinality(0, PUZZLES));
+        assertEquals(6, bitmap.cardinality(0, 65_536));
+        assertEquals(10, bitmap.cardinality(65_531, 65_541));
+        assertEquals(0, bitmap.cardinality(65_600, 200_000));
+        assertEquals(1, bitmap.cardinality(200_000, 200_001));
+        assertEquals(0, bitmap.nextAbsent(0));
+        assertEquals(65_600, bitmap.nextAbsent(65_530));
+        assertEquals(200_001, bitmap.nextAbsent(200_000));
+    }
+
+    @Test
+    void testNextAbsentCrossesFullContainers() {
+        SolvedBitmap bitmap = new SolvedBitmap();
+        for (int ordinal = 0; ordinal < 3 * 65_536 + 5; ordinal++) {
+            bitmap.add(ordinal);
+        }
+
+        assertEquals(3 * 65_536 + 5, bitmap.nextAbsent(17));
+    }
+
+    @Test
+    void testOrAddsEveryValue() {
+        SolvedBitmap bitmap = new SolvedBitmap();
+        bitmap.add(1);
+        SolvedBitmap other = new SolvedBitmap();
+        other.add(1);
+        other.add(100_000);
+
+        bitmap.or(other);
+
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.contains(100_000));
+    }
+
+    @Test
+    void testRejectsCorruptInput() {
+        assertThrows(IOException.class, () -> deserialize(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}));
+        assertThrows(IOException.class, () -> deserialize(new byte[0]));
+    }
+
+    @Test
+    void testLookupsAgreeWithABitSetAtThreeHundredThousandPuzzles() {
+        SolvedBitmap bitmap = new SolvedBitmap();
+        BitSet reference = solveRandomly(bitmap, 0.3, 4);
+
+        assertSameValues(reference, bitmap);
+        // Windows wider than a 65536-value container, starting inside and ending across them.
+        for (int from = 0; from < PUZZLES; from += 7_919) {
+            int to = Math.min(PUZZLES, from + 70_001);
+            assertEquals(reference.get(from, to).cardinality(), bitmap.cardinality(from, to), "[" + from + ", " + to + ")");
+            assertEquals(reference.nextClearBit(from), bitmap.nextAbsent(from), "from " + from);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StatementCacheTest {
+
+    private SQLiteDatabase database;
+    private StatementCache statementCache;
+
+    @BeforeEach
+    void setUp() {
+        database = mock(SQLiteDatabase.class);
+        when(database.compileStatement(anyString())).thenAnswer(invocation -> mock(SQLiteStatement.class));
+        statementCache = new StatementCache(database);
+    }
+
+    @Test
+    void testStatementIsCompiledOncePerSql() {
+        SQLiteStatement first = statementCache.get("UPDATE t SET a = 1 WHERE id = ?");
+        SQLiteStatement second = statementCache.get("UPDATE t SET a = 1 WHERE id = ?");
+        statementCache.get("UPDATE t SET b = 1 WHERE id = ?");
+
+        assertSame(first, second);
+        verify(database, times(2)).compileStatement(anyString());
+    }
+
+    @Test
+    void testBindingsAreClearedOnEveryGet() {
+        SQLiteStatement statement = statementCache.get("UPDATE t SET a = 1 WHERE id = ?");
+        statementCache.get("UPDATE t SET a = 1 WHERE id = ?");
+
+        verify(statement, times(2)).clearBindings();
+    }
+
+    @Test
+    void testCloseClosesEveryStatement() {
+        SQLiteStatement first = statementCache.get("UPDATE t SET a = 1 WHERE id = ?");
+        SQLiteStatement second = statementCache.get("UPDATE t SET b = 1 WHERE id = ?");
+
+        statementCache.close();
+
+        verify(first).close();
+        verify(second).close();
+    }
+
+    @Test
+    void testConstructorRejectsNullDatabase() {
+        assertThrows(IllegalArgumentException.class, () -> new StatementCache(null));
+    }
+}
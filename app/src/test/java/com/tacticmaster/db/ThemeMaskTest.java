@@ -0,0 +1,80 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class ThemeMaskTest {
+
+    @Test
+    void testEveryThemeHasADistinctPositiveBit() {
+        Set<Long> bits = new HashSet<>();
+        for (String theme : ThemeMask.THEMES) {
+            long bit = ThemeMask.bitOf(theme);
+            assertTrue(bit > 0, "Bit must be positive for " + theme);
+            assertEquals(1, Long.bitCount(bit));
+            assertTrue(bits.add(bit), "Duplicate bit for " + theme);
+        }
+    }
+
+    @Test
+    void testBitPositionsAreStable() {
+        // Persisted in the database: changing these requires a data migration.
+        assertEquals(1L, ThemeMask.bitOf("advancedPawn"));
+        assertEquals(1L << 22, ThemeMask.bitOf("fork"));
+        assertEquals(1L << 60, ThemeMask.bitOf("zugzwang"));
+    }
+
+    @Test
+    void testUnknownThemeHasNoBit() {
+        assertEquals(ThemeMask.NONE, ThemeMask.bitOf("notATheme"));
+        assertEquals(ThemeMask.NONE, ThemeMask.of(null));
+    }
+
+    @Test
+    void testParseMatchesWholeTokensOnly() {
+        long mask = ThemeMask.parse("mateIn2 short");
+
+        assertNotEquals(0, mask & ThemeMask.bitOf("mateIn2"));
+        assertNotEquals(0, mask & ThemeMask.bitOf("short"));
+        assertEquals(0, mask & ThemeMask.bitOf("mate"));
+    }
+
+    @Test
+    void testParseHandlesEmptyAndNull() {
+        assertEquals(ThemeMask.NONE, ThemeMask.parse(null));
+        assertEquals(ThemeMask.NONE, ThemeMask.parse(""));
+        assertEquals(ThemeMask.NONE, ThemeMask.parse("   "));
+    }
+
+    @Test
+    void testThemesOfRoundTrips() {
+        Set<String> themes = Set.of("fork", "pin", "endgame");
+
+        assertEquals(themes, ThemeMask.themesOf(ThemeMask.of(themes)));
+    }
+
+    @Test
+    void testSqlExpressionCoversEveryTheme() {
+        String expression = ThemeMask.sqlExpression();
+
+        for (String theme : ThemeMask.THEMES) {
+            assertTrue(expression.contains("' " + theme + " '"), theme);
+        }
+        assertFalse(expression.contains("LIKE"));
+    }
+
+    @Test
+    void testCatalogMatchesFilterableThemeCount() {
+        List<String> themes = ThemeMask.THEMES;
+        assertEquals(61, themes.size());
+        assertEquals(themes.size(), new HashSet<>(themes).size());
+    }
+}
@@ -0,0 +1,104 @@
+package com.tacticmaster.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tacticmaster.puzzle.Puzzle;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+class TimedPuzzleRepositoryTest {
+
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private PuzzleRepository delegate;
+    private QueryTimings timings;
+    private AtomicLong clock;
+    private long callMillis;
+    private TimedPuzzleRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(PuzzleRepository.class);
+        timings = new QueryTimings(QueryTimings.SLOW_CALL_MILLIS);
+        clock = new AtomicLong();
+        callMillis = 2;
+        // Every read of the clock advances it by callMillis, so that is how long each call takes.
+        repository = new TimedPuzzleRepository(delegate, timings, () -> clock.getAndAdd(callMillis * NANOS_PER_MILLI));
+    }
+
+    @Test
+    void testCallsAreDelegatedAndRecordedByMethodName() {
+        Puzzle puzzle = new Puzzle("aaa01", "8/8/8/8/8/8/8/K6k w - - 0 1", "a1a2 h1h2", 1500, "fork", false);
+        when(delegate.getPuzzleById("aaa01")).thenReturn(puzzle);
+        when(delegate.getPuzzlesWithinRange(1400, 1600, Set.of(), 0L)).thenReturn(List.of(puzzle));
+
+        assertSame(puzzle, repository.getPuzzleById("aaa01"));
+        assertSame(puzzle, repository.getPuzzleById("aaa01"));
+        assertEquals(List.of(puzzle), repository.getPuzzlesWithinRange(1400, 1600, Set.of(), 0L));
+        repository.setSolved("aaa01");
+
+        verify(delegate).setSolved("aaa01");
+        List<QueryTimings.Stats> stats = timings.snapshot();
+        assertEquals(List.of("getPuzzleById", "getPuzzlesWithinRange", "setSolved"),
+                stats.stream().map(QueryTimings.Stats::operation).toList());
+        QueryTimings.Stats byId = stats.get(0);
+        assertEquals(2, byId.calls());
+        assertEquals(0, byId.slowCalls());
+        assertEquals(2.0, byId.p50Millis(), 0.5);
+        assertEquals(2.0, byId.maxMillis(), 0.001);
+    }
+
+    @Test
+    void testSlowCallsAreCounted() {
+        repository.getAllPuzzleCount();
+        callMillis = QueryTimings.SLOW_CALL_MILLIS;
+        repository.getAllPuzzleCount();
+
+        QueryTimings.Stats stats = timings.snapshot().get(0);
+        assertEquals(2, stats.calls());
+        assertEquals(1, stats.slowCalls());
+        assertEquals(QueryTimings.SLOW_CALL_MILLIS, stats.p99Millis(), QueryTimings.SLOW_CALL_MILLIS / 4.0);
+    }
+
+    @Test
+    void testArgumentShapeIsOnlyBuiltForSlowCalls() {
+        int[] shapes = new int[1];
+        timings.record("getPuzzleById", NANOS_PER_MILLI, () -> {
+            shapes[0]++;
+            return "id of 5 chars";
+        });
+        assertEquals(0, shapes[0]);
+
+        timings.record("getPuzzleById", QueryTimings.SLOW_CALL_MILLIS * NANOS_PER_MILLI, () -> {
+            shapes[0]++;
+            return "id of 5 chars";
+        });
+        assertEquals(1, shapes[0]);
+    }
+
+    @Test
+    void testFailedCallsAreStillRecorded() {
+        when(delegate.getPuzzleById("missing")).thenThrow(new NoSuchElementException());
+
+        assertThrows(NoSuchElementException.class, () -> repository.getPuzzleById("missing"));
+
+        assertEquals(1, timings.snapshot().get(0).calls());
+    }
+
+    @Test
+    void testNullDelegateIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TimedPuzzleRepository(null, timings));
+        assertThrows(IllegalArgumentException.class, () -> new TimedPuzzleRepository(delegate, null));
+    }
+}
@@ -1,6 +1,7 @@
 package com.tacticmaster.puzzle;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
@@ -72,4 +73,15 @@ public class PuzzleFilterTest {
 
         assertEquals(55, totalSize, "Total size of themes should be 55 after removing mateInX");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testThemeGroupsDropThemesSolvedSinceTheLastCall() {
+        assertTrue(puzzleFilter.getThemeGroups().containsKey(ThemeGroups.MATE_IN_X_MOVES));
+
+        var remaining = new HashSet<>(allThemes);
+        remaining.removeAll(Set.of("mateIn1", "mateIn2", "mateIn3", "mateIn4", "mateIn5", "oneMove"));
+        when(databaseAccessor.getPuzzleThemes()).thenReturn(remaining);
+
+        assertFalse(puzzleFilter.getThemeGroups().containsKey(ThemeGroups.MATE_IN_X_MOVES));
+    }
+}
@@ -3,8 +3,11 @@ package com.tacticmaster.puzzle;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.tacticmaster.board.Chessboard;
+
 import org.junit.jupiter.api.Test;
 
 import java.util.TreeSet;
@@ -116,6 +119,15 @@ public class PuzzleGameTest {
         assertFalse(puzzleGame.isSolutionFound());
     }
 
+    @Test
+    public void testToPuzzleRebuildsTheRecord() {
+        Puzzle puzzle = new Puzzle("1", "fen1", "m1 m2 m3", 1500, "fork pin", true);
+        PuzzleGame puzzleGame = new PuzzleGame(puzzle);
+        puzzleGame.getNextMove();
+
+        assertEquals(puzzle, puzzleGame.toPuzzle());
+    }
+
     @Test
     public void testEqualsAndHashCodeAreIdBasedOnly() {
         // Regression: equals previously included currentMoveIndex/solved/etc, so identity
@@ -144,4 +156,33 @@ public class PuzzleGameTest {
         assertTrue(set.contains(b), "PuzzleGame should remain equal to its starting copy after moves and solving");
         assertTrue(set.contains(a), "PuzzleGame should still match itself in a HashSet after state changes");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPreparedBoardIsHandedOutOnce() {
+        PuzzleGame puzzleGame = new PuzzleGame("1", "1rb2rk1/q5P1/4p2p/3p3p/3P1P2/2P5/2QK3P/3R2R1 b - - 0 29", "f8f7 c2h7", 1500);
+
+        puzzleGame.prepareBoard();
+        Chessboard prepared = puzzleGame.takeBoard();
+
+        assertNotSame(prepared, puzzleGame.takeBoard());
+    }
+
+    @Test
+    void testHintsAreCountedUntilReset() {
+        PuzzleGame puzzleGame = new PuzzleGame("1", "fen", "m1 m2", 1500);
+
+        puzzleGame.hintUsed();
+        puzzleGame.hintUsed();
+        assertEquals(2, puzzleGame.hintsUsed());
+
+        puzzleGame.reset();
+        assertEquals(0, puzzleGame.hintsUsed());
+    }
+
+    @Test
+    void testThemesComeFromThePuzzleRecord() {
+        assertEquals("fork pin", new PuzzleGame(new Puzzle("1", "fen", "m1", 1500, "fork pin", false)).themes());
+        assertEquals("", new PuzzleGame(new Puzzle("1", "fen", "m1", 1500, null, false)).themes());
+        assertEquals("", new PuzzleGame("1", "fen", "m1", 1500).themes());
+    }
+}
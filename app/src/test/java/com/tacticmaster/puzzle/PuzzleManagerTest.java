@@ -4,21 +4,32 @@ package com.tacticmaster.puzzle;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anySet;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.tacticmaster.db.DatabaseAccessor;
+import com.tacticmaster.db.InMemoryPuzzleRepository;
+import com.tacticmaster.db.RatingHistogram;
+import com.tacticmaster.db.ThemeMask;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 class PuzzleManagerTest {
 
@@ -38,7 +49,7 @@ class PuzzleManagerTest {
 
     @Test
     void testMoveToNextPuzzleLoadsNewPuzzles() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(List.of(new Puzzle("1", "fen", "moves", 1000)));
 
         puzzleManager.moveToNextPuzzle();
@@ -48,7 +59,7 @@ class PuzzleManagerTest {
 
     @Test
     void testMoveToNextPuzzleThrowsExceptionWhenNoPuzzlesAvailable() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(List.of());
 
         assertThrows(NoSuchElementException.class, puzzleManager::moveToNextPuzzle);
@@ -56,7 +67,7 @@ class PuzzleManagerTest {
 
     @Test
     void testMoveToPreviousPuzzleWrapsAround() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(List.of(new Puzzle("1", "fen", "moves", 1000), new Puzzle("2", "fen", "moves", 1100)));
 
         puzzleManager.moveToNextPuzzle();
@@ -69,9 +80,11 @@ class PuzzleManagerTest {
     @Test
     void testMoveToPreviousPuzzleLoadsPuzzles() {
         assertThrows(NoSuchElementException.class, () -> puzzleManager.moveToPreviousPuzzle());
-        verify(databaseAccessor, times(23)).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet());
+        // Without a histogram the band widens step by step until it spans every rating.
+        verify(databaseAccessor).getPuzzlesWithinRange(eq(1150), eq(1250), anySet(), anyLong());
+        verify(databaseAccessor).getPuzzlesWithinRange(eq(0), eq(RatingHistogram.MAX_RATING), anySet(), anyLong());
 
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(List.of(new Puzzle("1", "fen", "moves", 1000)));
 
         puzzleManager.moveToPreviousPuzzle();
@@ -114,7 +127,7 @@ class PuzzleManagerTest {
 
     @Test
     void testUpdateRatingWithoutClearKeepsCachedPuzzles() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(List.of(new Puzzle("1", "fen", "moves", 1000)));
 
         puzzleManager.moveToNextPuzzle();
@@ -123,12 +136,12 @@ class PuzzleManagerTest {
         // Same puzzle is still current — no re-fetch.
         assertEquals("1", puzzleManager.getCurrentPuzzle().getPuzzleId());
         verify(databaseAccessor, times(1))
-                .getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet());
+                .getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
     }
 
     @Test
     void testUpdateRatingWithClearDropsCachedPuzzles() {
-        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anySet()))
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
                 .thenReturn(List.of(new Puzzle("1", "fen", "moves", 1000)));
 
         puzzleManager.moveToNextPuzzle();
@@ -137,4 +150,286 @@ class PuzzleManagerTest {
         // After clear, getCurrentPuzzle has no valid index until next fetch.
         assertThrows(NoSuchElementException.class, puzzleManager::getCurrentPuzzle);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBatchFetchedForStaleCriteriaIsDropped() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenAnswer(invocation -> {
+                    // The selection changes while the first batch is being fetched.
+                    puzzleManager.onThemesUpdated(Set.of("fork"));
+                    return List.of(new Puzzle("stale", "fen", "moves", 1200));
+                })
+                .thenReturn(List.of(new Puzzle("fresh", "fen", "moves", 1200)));
+
+        puzzleManager.moveToNextPuzzle();
+
+        assertEquals("fresh", puzzleManager.getCurrentPuzzle().getPuzzleId());
+        verify(databaseAccessor).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), eq(ThemeMask.of(Set.of("fork"))));
+    }
+
+    @Test
+    void testBatchOfBufferedPuzzlesIsFetchedAgain() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1"))
+                .thenReturn(batch("1"))
+                .thenReturn(batch("2"));
+
+        puzzleManager.moveToNextPuzzle();
+        puzzleManager.moveToNextPuzzle();
+
+        assertEquals("2", puzzleManager.getCurrentPuzzle().getPuzzleId());
+        verify(databaseAccessor, times(3)).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
+    }
+
+    @Test
+    void testOnlyBufferedPuzzlesLeftIsReportedAsExhaustion() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1"));
+
+        puzzleManager.moveToNextPuzzle();
+
+        assertThrows(NoSuchElementException.class, puzzleManager::moveToNextPuzzle);
+        assertEquals("1", puzzleManager.getCurrentPuzzle().getPuzzleId());
+    }
+
+    @Test
+    void testOnThemesUpdatedOnlyClearsTheBuffer() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(List.of(new Puzzle("1", "fen", "moves", 1000)));
+        puzzleManager.moveToNextPuzzle();
+
+        puzzleManager.onThemesUpdated(Set.of("pin"));
+
+        Assertions.assertFalse(puzzleManager.hasCurrentPuzzle());
+        verify(databaseAccessor, times(1)).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
+    }
+
+    @Test
+    void testPrefetchedBatchIsServedWithoutForegroundQuery() {
+        List<Runnable> background = new ArrayList<>();
+        var prefetchingManager = new PuzzleManager(databaseAccessor, 1200, new PuzzlePrefetcher(background::add));
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("a1", "a2", "a3", "a4"))
+                .thenReturn(batch("b1", "b2"));
+
+        prefetchingManager.moveToNextPuzzle();
+        assertTrue(background.isEmpty(), "Enough puzzles ahead, nothing to prefetch yet");
+        prefetchingManager.moveToNextPuzzle();
+        assertEquals(1, background.size());
+        background.remove(0).run();
+
+        prefetchingManager.moveToNextPuzzle();
+        prefetchingManager.moveToNextPuzzle();
+        prefetchingManager.moveToNextPuzzle();
+
+        assertEquals("b1", prefetchingManager.getCurrentPuzzle().getPuzzleId());
+        verify(databaseAccessor, times(2)).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
+    }
+
+    @Test
+    void testPrefetchIsInvalidatedWhenCriteriaChange() {
+        List<Runnable> background = new ArrayList<>();
+        var prefetchingManager = new PuzzleManager(databaseAccessor, 1200, new PuzzlePrefetcher(background::add));
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("a1"))
+                .thenReturn(batch("stale"))
+                .thenReturn(batch("fresh"));
+
+        prefetchingManager.moveToNextPuzzle();
+        prefetchingManager.updateRating(1800, true);
+        background.remove(0).run();
+        prefetchingManager.moveToNextPuzzle();
+
+        assertEquals("fresh", prefetchingManager.getCurrentPuzzle().getPuzzleId());
+    }
+
+    @Test
+    void testHistogramSkipsEmptyBandsWithoutQuerying() {
+        RatingHistogram histogram = mock(RatingHistogram.class);
+        // Only bands reaching down to 1000 hold unsolved puzzles.
+        when(histogram.narrowestHalfWidth(eq(1200), eq(ThemeMask.NONE), eq(PuzzleManager.BAND_STEP), eq(PuzzleManager.BAND_STEP),
+                eq(PuzzleManager.BAND_CANDIDATES), any(int[].class))).thenReturn(200);
+        when(databaseAccessor.getRatingHistogram()).thenReturn(histogram);
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(List.of(new Puzzle("1", "fen", "moves", 1000)));
+
+        puzzleManager.moveToNextPuzzle();
+
+        assertEquals("1", puzzleManager.getCurrentPuzzle().getPuzzleId());
+        verify(databaseAccessor, times(1)).getPuzzlesWithinRange(eq(1000), eq(1400), anySet(), anyLong());
+        verify(databaseAccessor, times(1)).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
+    }
+
+    @Test
+    void testExhaustedHistogramFailsWithoutQuerying() {
+        RatingHistogram histogram = mock(RatingHistogram.class);
+        when(histogram.narrowestHalfWidth(anyInt(), anyLong(), anyInt(), anyInt(), anyInt(), any(int[].class))).thenReturn(-1);
+        when(databaseAccessor.getRatingHistogram()).thenReturn(histogram);
+
+        assertThrows(NoSuchElementException.class, puzzleManager::moveToNextPuzzle);
+        verify(databaseAccessor, never()).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
+    }
+
+    @Test
+    void testBandReportedNonEmptyButSampledEmptyWidensToTheNextBand() {
+        RatingHistogram histogram = mock(RatingHistogram.class);
+        when(histogram.narrowestHalfWidth(anyInt(), anyLong(), anyInt(), anyInt(), anyInt(), any(int[].class)))
+                .thenAnswer(invocation -> invocation.getArgument(2, Integer.class) < 150 ? 100 : 150);
+        when(databaseAccessor.getRatingHistogram()).thenReturn(histogram);
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(List.of())
+                .thenReturn(List.of(new Puzzle("1", "fen", "moves", 1340)));
+
+        puzzleManager.moveToNextPuzzle();
+
+        assertEquals("1", puzzleManager.getCurrentPuzzle().getPuzzleId());
+        verify(databaseAccessor).getPuzzlesWithinRange(eq(1100), eq(1300), anySet(), anyLong());
+        verify(databaseAccessor).getPuzzlesWithinRange(eq(1050), eq(1350), anySet(), anyLong());
+        verify(databaseAccessor, times(2)).getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong());
+    }
+
+    @Test
+    void testExhaustedNearBandKeepsRatingsClose() {
+        List<Puzzle> pack = new ArrayList<>();
+        // Three puzzles right at the rating, seven a little above and five far away.
+        for (int rating : new int[]{1200, 1210, 1220, 1300, 1310, 1320, 1330, 1340, 1350, 1360, 3000, 3010, 3020, 3030, 3040}) {
+            pack.add(new Puzzle("p" + rating, "8/8/8/8/8/8/8/K6k w - - 0 1", "a1a2", rating));
+        }
+        puzzleManager = new PuzzleManager(new InMemoryPuzzleRepository(() -> pack), 1200);
+
+        List<Integer> ratings = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            puzzleManager.moveToNextPuzzle();
+            ratings.add(puzzleManager.getCurrentPuzzle().rating());
+        }
+
+        assertTrue(ratings.stream().allMatch(rating -> rating < 1400), ratings.toString());
+        puzzleManager.moveToNextPuzzle();
+        assertTrue(puzzleManager.getCurrentPuzzle().rating() >= 3000);
+    }
+
+    @Test
+    void testDueReviewIsInsertedAfterTheCurrentPuzzle() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1", "2", "3", "4"));
+        when(databaseAccessor.pollDueReview(anyLong())).thenReturn("failed");
+        when(databaseAccessor.getPuzzleById("failed")).thenReturn(batch("failed").get(0));
+
+        List<String> shown = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            puzzleManager.moveToNextPuzzle();
+            shown.add(puzzleManager.getCurrentPuzzle().getPuzzleId());
+        }
+
+        assertEquals(List.of("1", "2", "failed", "3", "4"), shown);
+        puzzleManager.moveToPreviousPuzzle();
+        assertEquals("3", puzzleManager.getCurrentPuzzle().getPuzzleId());
+        // Polled only once the spacing allows a review.
+        verify(databaseAccessor, times(1)).pollDueReview(anyLong());
+    }
+
+    @Test
+    void testNoDueReviewKeepsTheBufferOrder() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1", "2", "3", "4"));
+
+        for (int i = 0; i < 4; i++) {
+            puzzleManager.moveToNextPuzzle();
+        }
+
+        assertEquals("4", puzzleManager.getCurrentPuzzle().getPuzzleId());
+        verify(databaseAccessor, never()).getPuzzleById(anyString());
+    }
+
+    @Test
+    void testReviewAlreadyInTheBufferIsMovedUpRatherThanDropped() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1", "2", "3", "4"));
+        when(databaseAccessor.pollDueReview(anyLong())).thenReturn("1", (String) null);
+        when(databaseAccessor.getPuzzleById("1")).thenReturn(batch("1").get(0));
+
+        assertEquals(List.of("1", "2", "1", "3", "4"), shownIds(5));
+        // Moved, not copied: going back passes each puzzle once.
+        List<String> back = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            puzzleManager.moveToPreviousPuzzle();
+            back.add(puzzleManager.getCurrentPuzzle().getPuzzleId());
+        }
+        assertEquals(List.of("3", "1", "2", "4"), back);
+    }
+
+    @Test
+    void testReviewOfThePuzzleOnTheBoardIsHeldForTheNextSlot() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1", "2", "3", "4", "5"));
+        when(databaseAccessor.pollDueReview(anyLong())).thenReturn("2", (String) null);
+        when(databaseAccessor.getPuzzleById("2")).thenReturn(batch("2").get(0));
+
+        assertEquals(List.of("1", "2", "3", "2", "4"), shownIds(5));
+        verify(databaseAccessor, times(1)).pollDueReview(anyLong());
+    }
+
+    @Test
+    void testReviewQueueIsPolledUnderTheThemeFilter() {
+        long fork = ThemeMask.bitOf("fork");
+        long pin = ThemeMask.bitOf("pin");
+        puzzleManager.onThemesUpdated(Set.of("fork"));
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1", "2", "3", "4"));
+        when(databaseAccessor.pollDueReview(fork | pin)).thenReturn("failed", (String) null);
+        when(databaseAccessor.getPuzzleById("failed"))
+                .thenReturn(new Puzzle("failed", "8/8/8/8/8/8/8/K6k w - - 0 1", "a1a2", 1900, "pin", false));
+
+        assertEquals(List.of("1", "2", "3", "4"), shownIds(4));
+        verify(databaseAccessor, times(2)).pollDueReview(fork);
+
+        puzzleManager.onThemesUpdated(Set.of("fork", "pin"));
+        puzzleManager.moveToNextPuzzle();
+
+        assertEquals("failed", puzzleManager.getCurrentPuzzle().getPuzzleId());
+        verify(databaseAccessor, times(1)).getPuzzleById("failed");
+    }
+
+    @Test
+    void testHeldReviewsAreCappedAndLeftInTheQueue() {
+        puzzleManager.onThemesUpdated(Set.of("fork"));
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1", "2", "3", "4", "5", "6", "7", "8", "9"));
+        // Each review handed out is the puzzle on the board, which is outside the filter.
+        when(databaseAccessor.pollDueReview(anyLong()))
+                .thenAnswer(invocation -> puzzleManager.getCurrentPuzzle().getPuzzleId());
+        when(databaseAccessor.getPuzzleById(anyString()))
+                .thenAnswer(invocation -> batch(invocation.getArgument(0, String.class)).get(0));
+
+        assertEquals(List.of("1", "2", "3", "4", "5", "6", "7", "8", "9"), shownIds(9));
+        verify(databaseAccessor, times(PuzzleManager.MAX_HELD_REVIEWS)).pollDueReview(anyLong());
+    }
+
+    @Test
+    void testReviewQueueIsNotPolledBetweenSlots() {
+        when(databaseAccessor.getPuzzlesWithinRange(anyInt(), anyInt(), anySet(), anyLong()))
+                .thenReturn(batch("1", "2", "3", "4"));
+
+        shownIds(2);
+        verify(databaseAccessor, never()).pollDueReview(anyLong());
+        shownIds(2);
+        verify(databaseAccessor, times(2)).pollDueReview(anyLong());
+    }
+
+    private List<String> shownIds(int moves) {
+        List<String> shown = new ArrayList<>();
+        for (int i = 0; i < moves; i++) {
+            puzzleManager.moveToNextPuzzle();
+            shown.add(puzzleManager.getCurrentPuzzle().getPuzzleId());
+        }
+        return shown;
+    }
+
+    private static List<Puzzle> batch(String... ids) {
+        List<Puzzle> puzzles = new ArrayList<>();
+        for (String id : ids) {
+            puzzles.add(new Puzzle(id, "8/8/8/8/8/8/8/K6k w - - 0 1", "a1a2", 1200));
+        }
+        return puzzles;
+    }
+}
@@ -0,0 +1,105 @@
+package com.tacticmaster.puzzle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class PuzzlePrefetcherTest {
+
+    private static final String FEN = "1rb2rk1/q5P1/4p2p/3p3p/3P1P2/2P5/2QK3P/3R2R1 b - - 0 29";
+
+    private final List<Runnable> background = new ArrayList<>();
+    private PuzzlePrefetcher prefetcher;
+
+    @BeforeEach
+    void setUp() {
+        prefetcher = new PuzzlePrefetcher(background::add);
+    }
+
+    private static List<Puzzle> batch(String... ids) {
+        List<Puzzle> puzzles = new ArrayList<>();
+        for (String id : ids) {
+            puzzles.add(new Puzzle(id, FEN, "f8f7 c2h7", 1500));
+        }
+        return puzzles;
+    }
+
+    @Test
+    void testBatchIsFetchedInBackgroundAndDrainedOnce() {
+        prefetcher.request(() -> batch("1", "2"));
+
+        assertTrue(prefetcher.drain().isEmpty(), "Nothing is ready before the background task ran");
+        background.remove(0).run();
+
+        List<PuzzleGame> games = prefetcher.drain();
+        assertEquals(2, games.size());
+        assertEquals("1", games.get(0).getPuzzleId());
+        assertTrue(prefetcher.drain().isEmpty());
+    }
+
+    @Test
+    void testOnlyOneBatchQueuedOrInFlight() {
+        AtomicInteger fetches = new AtomicInteger();
+
+        prefetcher.request(() -> batch("1"));
+        prefetcher.request(() -> {
+            fetches.incrementAndGet();
+            return batch("2");
+        });
+        assertEquals(1, background.size());
+
+        background.remove(0).run();
+        prefetcher.request(() -> batch("3"));
+
+        assertTrue(background.isEmpty(), "A queued batch blocks further requests until drained");
+        assertEquals(0, fetches.get());
+    }
+
+    @Test
+    void testInvalidateDropsBatchInFlight() {
+        prefetcher.request(() -> batch("stale"));
+
+        prefetcher.invalidate();
+        background.remove(0).run();
+
+        assertTrue(prefetcher.drain().isEmpty());
+        prefetcher.request(() -> batch("fresh"));
+        assertEquals(1, background.size());
+    }
+
+    @Test
+    void testExhaustedBandQueuesNothing() {
+        prefetcher.request(() -> {
+            throw new NoSuchElementException("none");
+        });
+        background.remove(0).run();
+
+        assertTrue(prefetcher.drain().isEmpty());
+        prefetcher.request(() -> batch("1"));
+        assertEquals(1, background.size());
+    }
+
+    @Test
+    void testBoardsArePreparedInBackground() {
+        prefetcher.request(() -> batch("1"));
+        background.remove(0).run();
+
+        PuzzleGame game = prefetcher.drain().get(0);
+
+        assertNotNull(game.takeBoard());
+    }
+
+    @Test
+    void testConstructorRejectsNullExecutor() {
+        assertThrows(IllegalArgumentException.class, () -> new PuzzlePrefetcher(null));
+    }
+}
@@ -0,0 +1,119 @@
+package com.tacticmaster.puzzle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+class ThemePerformanceTest {
+
+    @TempDir
+    File directory;
+
+    private static PuzzleAttempt attempt(String themes, int puzzleRating, boolean solved, long solveTimeMillis) {
+        return new PuzzleAttempt("p", themes, puzzleRating, 0, solveTimeMillis, 0, solved, 1500, 1500);
+    }
+
+    @Test
+    void testRecordUpdatesEachThemeAndItsCategoryOnce() {
+        ThemePerformance performance = new ThemePerformance();
+
+        performance.record(attempt("fork pin mateIn2", 1500, true, 6_000));
+
+        ThemePerformance.Score fork = performance.theme("fork");
+        assertEquals(1, fork.attempts());
+        assertEquals(1, fork.solved());
+        assertEquals(6_000, fork.solveTimeMillis());
+        assertEquals(1516, fork.rating());
+        // fork and pin are both tactical motifs, but the attempt counts once for the category.
+        assertEquals(1, performance.category(ThemeGroups.TACTICAL_MOTIFS).attempts());
+        assertEquals(1, performance.category(ThemeGroups.MATE_IN_X_MOVES).attempts());
+        assertNull(performance.theme("skewer"));
+        assertNull(performance.category(ThemeGroups.PAWN_PLAY));
+    }
+
+    @Test
+    void testThemeRatingStartsFromThePlayerRatingAndFollowsResults() {
+        ThemePerformance performance = new ThemePerformance();
+
+        performance.record(new PuzzleAttempt("a", "fork", 1800, 0, 1_000, 0, false, 1800, 1784));
+        performance.record(new PuzzleAttempt("b", "fork", 1800, 0, 3_000, 0, false, 1784, 1769));
+
+        ThemePerformance.Score fork = performance.theme("fork");
+        assertEquals(2, fork.attempts());
+        assertEquals(0, fork.successRate());
+        assertEquals(2_000, fork.averageSolveTimeMillis());
+        assertTrue(fork.rating() < 1784, "rating " + fork.rating());
+    }
+
+    @Test
+    void testThemesOutsideAnyCategoryAreStillTracked() {
+        ThemePerformance performance = new ThemePerformance();
+
+        performance.record(attempt("  unknownTheme ", 1500, true, 0));
+
+        assertEquals(1, performance.theme("unknownTheme").attempts());
+        assertTrue(performance.categories().isEmpty());
+        assertEquals(1, performance.themes().size());
+    }
+
+    @Test
+    void testWeakestThemesOrderedByRatingAndFilteredByAttempts() {
+        ThemePerformance performance = new ThemePerformance();
+        performance.record(attempt("fork", 1500, true, 0));
+        performance.record(attempt("fork", 1500, true, 0));
+        performance.record(attempt("pin", 1500, false, 0));
+        performance.record(attempt("pin", 1500, true, 0));
+        performance.record(attempt("skewer", 1500, false, 0));
+        performance.record(attempt("skewer", 1500, false, 0));
+        performance.record(attempt("zugzwang", 1500, false, 0));
+
+        assertEquals(List.of("skewer", "pin", "fork"), performance.weakestThemes(5, 2));
+        assertEquals(List.of("skewer", "zugzwang"), performance.weakestThemes(2, 1));
+        assertEquals(List.of(ThemeGroups.ENDGAME_TECHNIQUES, ThemeGroups.TACTICAL_MOTIFS), performance.weakestCategories(5, 1));
+    }
+
+    @Test
+    void testSnapshotSurvivesSaveAndLoad() throws IOException {
+        ThemePerformance performance = new ThemePerformance();
+        performance.record(attempt("fork endgame", 1700, true, 4_000));
+        performance.record(attempt("fork", 1400, false, 9_000));
+        File file = new File(directory, "theme_performance.bin");
+        assertTrue(performance.isDirty());
+
+        performance.save(file);
+
+        assertFalse(performance.isDirty());
+        ThemePerformance loaded = ThemePerformance.load(file);
+        assertEquals(performance.themes(), loaded.themes());
+        assertEquals(performance.categories(), loaded.categories());
+        assertFalse(loaded.isDirty());
+        assertFalse(new File(directory, "theme_performance.bin.tmp").exists());
+    }
+
+    @Test
+    void testMissingOrCorruptSnapshotLoadsEmpty() throws IOException {
+        File file = new File(directory, "theme_performance.bin");
+        assertTrue(ThemePerformance.load(file).themes().isEmpty());
+
+        Files.write(file.toPath(), "garbage".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(ThemePerformance.load(file).themes().isEmpty());
+    }
+
+    @Test
+    void testEveryThemeHasOneCategory() {
+        ThemeGroups.definitions().forEach((category, themes) ->
+                themes.forEach(theme -> assertEquals(category, ThemeGroups.categoryOf(theme), theme)));
+        assertNull(ThemeGroups.categoryOf("unknownTheme"));
+    }
+}
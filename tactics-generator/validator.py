@@ -1,3 +1,4 @@
+import hashlib
 import os
 import sqlite3
 import threading
@@ -132,8 +133,19 @@ def validate_and_store_moves(sqlite_input_db_path, sqlite_output_db_path, lowest
     conn_input.close()
 
 
+def write_checksum(db_path):
+    # Ship as app/src/main/assets/puzzle.db.sha256 next to puzzle.db; the app verifies the copy against it.
+    digest = hashlib.sha256()
+    with open(db_path, 'rb') as db:
+        for chunk in iter(lambda: db.read(1024 * 1024), b''):
+            digest.update(chunk)
+    with open(db_path + '.sha256', 'w') as checksum:
+        checksum.write(f'{digest.hexdigest()}  puzzle.db\n')
+
+
 sqlite_db_path = 'validated_puzzles.db'
 sqlite_input_db_path = 'all_puzzles.db'
 max_puzzles = 300000
 validate_and_store_moves(sqlite_input_db_path, sqlite_db_path, 1000, 3500, 2200, 400, max_puzzles)
+write_checksum(sqlite_db_path)
 # view_db_content(sqlite_db_path)